@@ -40,7 +40,16 @@ import org.bouncycastle.tsp.TimeStampToken;
 
 import java.io.InputStream;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
@@ -52,8 +61,17 @@ import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse
 @RequiredArgsConstructor
 abstract class AbstractTimestampRequest {
 
+    private static final ExecutorService REQUEST_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "TimestampRequest");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
     protected final Long[] logRecords;
 
+    private final TspScoreboard scoreboard = TspScoreboard.getShared();
+
     abstract byte[] getRequestData() throws Exception;
 
     abstract Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) throws Exception;
@@ -75,30 +93,93 @@ abstract class AbstractTimestampRequest {
         }
     }
 
+    /**
+     * Requests the time-stamp from the TSPs in the order of their scores. If the TSP does not respond within the
+     * hedge delay, the request is also sent to the next TSP, and so on. A failed request is followed by the request
+     * to the next TSP at once. The first valid response is used and the other requests are cancelled.
+     */
     protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest,
                                       List<String> tspUrls) throws Exception {
-        log.debug("tspUrls: {}", tspUrls);
-        for (String url: tspUrls) {
-            try {
-                log.debug("Sending time-stamp request to {}", url);
+        List<String> urls = scoreboard.order(tspUrls);
+        log.debug("tspUrls: {}", urls);
+
+        long hedgeDelay = MessageLogProperties.getTimestamperHedgeDelay();
+
+        CompletionService<Timestamper.TimestampResult> completionService =
+                new ExecutorCompletionService<>(REQUEST_EXECUTOR);
+        List<Future<Timestamper.TimestampResult>> requests = new ArrayList<>();
+
+        try {
+            int next = 0;
+            int running = 0;
+
+            while (running > 0 || next < urls.size()) {
+                if (running == 0) {
+                    requests.add(completionService.submit(scoredTsRequest(tsRequest, urls.get(next++))));
+                    running++;
+                }
+
+                Future<Timestamper.TimestampResult> done = next < urls.size() && hedgeDelay > 0
+                        ? completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS)
+                        : completionService.take();
+
+                if (done == null) {
+                    log.debug("No time-stamp response in {} ms, hedging with {}", hedgeDelay, urls.get(next));
+
+                    requests.add(completionService.submit(scoredTsRequest(tsRequest, urls.get(next++))));
+                    running++;
+                } else {
+                    running--;
+
+                    try {
+                        return done.get();
+                    } catch (ExecutionException e) {
+                        // Logged by the failed request, continue with the other TSPs
+                    }
+                }
+            }
+        } finally {
+            requests.forEach(request -> request.cancel(true));
+        }
 
-                TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url), url);
+        // All the URLs failed. Throw exception.
+        throw new RuntimeException(
+                "Failed to get time stamp from any time-stamping providers");
+    }
 
-                TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
-                log.info("tsresponse {}", tsResponse);
+    private Callable<Timestamper.TimestampResult> scoredTsRequest(TimeStampRequest tsRequest, String url) {
+        return () -> {
+            long start = System.nanoTime();
 
-                verify(tsRequest, tsResponse);
+            try {
+                Timestamper.TimestampResult result = makeTsRequest(tsRequest, url);
+                scoreboard.success(url, System.nanoTime() - start);
 
-                return result(tsResponse, url);
+                return result;
+            } catch (Exception e) {
+                // A request cancelled after another TSP responded does not count against this TSP
+                if (!Thread.currentThread().isInterrupted()) {
+                    scoreboard.failure(url, System.nanoTime() - start);
 
-            } catch (Exception ex) {
-                log.error("Failed to get time stamp from " + url, ex);
+                    log.error("Failed to get time stamp from " + url, e);
+                }
+
+                throw e;
             }
-        }
+        };
+    }
 
-        // All the URLs failed. Throw exception.
-        throw new RuntimeException(
-                "Failed to get time stamp from any time-stamping providers");
+    protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest, String url) throws Exception {
+        log.debug("Sending time-stamp request to {}", url);
+
+        TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url), url);
+
+        TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
+        log.info("tsresponse {}", tsResponse);
+
+        verify(tsRequest, tsResponse);
+
+        return result(tsResponse, url);
     }
 
     private TimeStampRequest createTimestampRequest(byte[] data)
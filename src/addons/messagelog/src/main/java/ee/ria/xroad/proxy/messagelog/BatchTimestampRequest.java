@@ -53,7 +53,9 @@ class BatchTimestampRequest extends AbstractTimestampRequest {
     byte[] getRequestData() throws Exception {
         HashChainBuilder hcBuilder = buildHashChain(signatureHashes);
         hashChainResult = hcBuilder.getHashChainResult(TS_HASH_CHAIN);
-        hashChains = hcBuilder.getHashChains(SIGNATURE);
+        // The hash chains are stored in compact form and rendered to XML
+        // only when an ASiC container is produced.
+        hashChains = hcBuilder.getCompactHashChains(SIGNATURE);
         return hashChainResult.getBytes(UTF_8.name());
     }
 
@@ -35,7 +35,6 @@ import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
 
 import akka.actor.UntypedAbstractActor;
 import lombok.RequiredArgsConstructor;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
@@ -50,11 +49,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveWorkerCount;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveWorkerMaxPendingBytes;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -76,6 +80,23 @@ public class LogArchiver extends UntypedAbstractActor {
     private final Path archivePath;
     private final Path workingPath;
 
+    // Creates the ASiC containers of the archived message records, null if they are created by the archiver itself
+    private ExecutorService entryExecutor;
+
+    @Override
+    public void preStart() {
+        if (getArchiveWorkerCount() > 0) {
+            entryExecutor = Executors.newFixedThreadPool(getArchiveWorkerCount());
+        }
+    }
+
+    @Override
+    public void postStop() {
+        if (entryExecutor != null) {
+            entryExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
@@ -108,9 +129,13 @@ public class LogArchiver extends UntypedAbstractActor {
             long start = System.currentTimeMillis();
             int recordsArchived = 0;
             final int limit = getArchiveTransactionBatchSize();
+            //try to continue if the batch was full (there might be more)
+            boolean continueArchiving = batch.size() == MAX_RECORDS_IN_BATCH;
             log.info("Archiving log records...");
 
-            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
+            final HibernateLogArchiveBase archiveBase = new HibernateLogArchiveBase(session);
+
+            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(archiveBase)) {
                 for (TimestampRecord ts : batch) {
 
                     try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, ts.getId())) {
@@ -133,9 +158,8 @@ public class LogArchiver extends UntypedAbstractActor {
                     }
 
                     if (recordsArchived >= limit) {
-                        log.info("Archived {} log records in {} ms", recordsArchived,
-                                System.currentTimeMillis() - start);
-                        return true;
+                        continueArchiving = true;
+                        break;
                     }
                 }
             } catch (Exception e) {
@@ -144,17 +168,22 @@ public class LogArchiver extends UntypedAbstractActor {
                 runTransferCommand(getArchiveTransferCommand());
             }
 
-            log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
+            archiveBase.markTimestampedRecordsArchived();
 
-            //try to continue if the batch was full (there might be more)
-            return batch.size() == MAX_RECORDS_IN_BATCH;
+            long duration = System.currentTimeMillis() - start;
+            log.info("Archived {} log records in {} ms ({} records/s)", recordsArchived, duration,
+                    duration > 0 ? recordsArchived * 1000L / duration : recordsArchived);
+
+            return continueArchiving;
         });
     }
 
-    private LogArchiveWriter createLogArchiveWriter(Session session) {
+    private LogArchiveWriter createLogArchiveWriter(HibernateLogArchiveBase archiveBase) {
         return new LogArchiveWriter(
                 getArchivePath(),
-                this.new HibernateLogArchiveBase(session)
+                archiveBase,
+                entryExecutor,
+                getArchiveWorkerMaxPendingBytes()
         );
     }
 
@@ -258,10 +287,13 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
-    @Value
+    @RequiredArgsConstructor
     private class HibernateLogArchiveBase implements LogArchiveBase {
 
-        private Session session;
+        private final Session session;
+
+        // Archived time-stamp records, whose message records are marked archived in bulk
+        private final List<Long> archivedTimestampIds = new ArrayList<>();
 
         @Override
         public void markArchiveCreated(DigestEntry lastArchive) throws Exception {
@@ -272,11 +304,29 @@ public class LogArchiver extends UntypedAbstractActor {
         public void markRecordArchived(LogRecord logRecord) {
             if (logRecord instanceof TimestampRecord) {
                 logRecord.setArchived(true);
-                session.createQuery(
-                        "UPDATE MessageRecord m set m.archived = true where m.timestampRecord = ?1")
-                        .setParameter(1, logRecord)
-                        .executeUpdate();
+                archivedTimestampIds.add(logRecord.getId());
+            }
+        }
+
+        /**
+         * Marks the archived time-stamp records and their message records as archived. The records are selected
+         * by time-stamp record id instead of an id range, since a concurrently saved time-stamp record may fall
+         * inside the range of the archived ones.
+         */
+        void markTimestampedRecordsArchived() {
+            if (archivedTimestampIds.isEmpty()) {
+                return;
             }
+
+            session.createQuery("UPDATE TimestampRecord t set t.archived = true where t.id in (:ids)")
+                    .setParameterList("ids", archivedTimestampIds)
+                    .executeUpdate();
+
+            session.createQuery("UPDATE MessageRecord m set m.archived = true where m.timestampRecord.id in (:ids)")
+                    .setParameterList("ids", archivedTimestampIds)
+                    .executeUpdate();
+
+            archivedTimestampIds.clear();
         }
 
         @Override
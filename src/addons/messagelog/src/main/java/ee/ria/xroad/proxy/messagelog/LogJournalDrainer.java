@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.UntypedAbstractActor;
+import lombok.extern.slf4j.Slf4j;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the message records from the message log journal to the database. The drainer runs when the journal
+ * writer has synced new records and periodically, so the records left over from a previous run are saved at
+ * startup and saving is retried after database failures.
+ */
+@Slf4j
+public class LogJournalDrainer extends UntypedAbstractActor {
+
+    static final String DRAIN = "Drain";
+
+    private static final FiniteDuration DRAIN_INTERVAL = Duration.create(1, TimeUnit.SECONDS);
+
+    private final MessageJournal journal;
+
+    private final int batchSize = MessageLogProperties.getWriterBatchSize();
+
+    private Cancellable tick;
+
+    /**
+     * Creates a new journal drainer.
+     * @param journal the journal to drain
+     */
+    public LogJournalDrainer(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void preStart() {
+        tick = getContext().system().scheduler().schedule(Duration.Zero(), DRAIN_INTERVAL, getSelf(), DRAIN,
+                getContext().dispatcher(), ActorRef.noSender());
+    }
+
+    @Override
+    public void postStop() {
+        if (tick != null) {
+            tick.cancel();
+        }
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (DRAIN.equals(message)) {
+            drain();
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<MessageRecord> messageRecords;
+
+            while (!(messageRecords = journal.read(batchSize)).isEmpty()) {
+                log.trace("drain({})", messageRecords.size());
+
+                saveMessageRecords(messageRecords);
+                journal.commit();
+            }
+        } catch (Exception e) {
+            log.error("Failed to save message records from the message log journal, retrying later", e);
+
+            journal.rollback();
+        }
+    }
+
+    protected void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        LogRecordManager.saveMessageRecords(messageRecords);
+    }
+}
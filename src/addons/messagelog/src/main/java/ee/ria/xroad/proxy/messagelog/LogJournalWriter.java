@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.LogMessage;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import akka.actor.ActorRef;
+import akka.actor.UntypedAbstractActor;
+import lombok.extern.slf4j.Slf4j;
+import scala.concurrent.duration.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.messagelog.LogJournalDrainer.DRAIN;
+
+/**
+ * Appends message records to the message log journal. The journal is synced to disk when the sync interval has
+ * passed since the first unsynced record or when enough data has been appended, after which the senders get
+ * their replies and the journal drainer is notified.
+ */
+@Slf4j
+public class LogJournalWriter extends UntypedAbstractActor {
+
+    static final String SYNC = "Sync";
+
+    private final MessageJournal journal;
+    private final ActorRef drainer;
+
+    private final long syncInterval = MessageLogProperties.getJournalSyncInterval();
+    private final long syncSize = MessageLogProperties.getJournalSyncSize();
+
+    private final List<ActorRef> pending = new ArrayList<>();
+    private long pendingBytes;
+
+    /**
+     * Creates a new journal writer.
+     * @param journal the journal to append the message records to
+     * @param drainer the drainer to notify when new records have been synced
+     */
+    public LogJournalWriter(MessageJournal journal, ActorRef drainer) {
+        this.journal = journal;
+        this.drainer = drainer;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        log.trace("onReceive({})", message);
+
+        if (message instanceof LogMessage) {
+            handleLogMessage((LogMessage) message);
+        } else if (SYNC.equals(message)) {
+            sync();
+        } else {
+            unhandled(message);
+        }
+    }
+
+    @Override
+    public void postStop() {
+        sync();
+    }
+
+    private void handleLogMessage(LogMessage message) {
+        try {
+            MessageRecord messageRecord = LogManager.createMessageRecord(message);
+            pendingBytes += journal.append(messageRecord, LogManager.getClientId(message));
+        } catch (Exception e) {
+            getSender().tell(e, getSelf());
+
+            return;
+        }
+
+        pending.add(getSender());
+
+        if (pendingBytes >= syncSize) {
+            sync();
+        } else if (pending.size() == 1) {
+            scheduleSync();
+        }
+    }
+
+    private void scheduleSync() {
+        if (syncInterval > 0) {
+            getContext().system().scheduler().scheduleOnce(Duration.create(syncInterval, TimeUnit.MILLISECONDS),
+                    getSelf(), SYNC, getContext().dispatcher(), ActorRef.noSender());
+        } else {
+            getSelf().tell(SYNC, ActorRef.noSender());
+        }
+    }
+
+    private void sync() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        log.trace("sync({})", pending.size());
+
+        Object reply;
+        try {
+            journal.sync();
+            reply = new Object();
+        } catch (Exception e) {
+            log.error("Failed to sync message log journal", e);
+
+            reply = e;
+        }
+
+        for (ActorRef sender : pending) {
+            sender.tell(reply, getSelf());
+        }
+
+        pending.clear();
+        pendingBytes = 0;
+
+        drainer.tell(DRAIN, getSelf());
+    }
+}
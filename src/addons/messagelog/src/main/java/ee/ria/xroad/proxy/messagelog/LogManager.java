@@ -32,6 +32,7 @@ import ee.ria.xroad.common.DiagnosticsUtils;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.LogRecord;
@@ -50,6 +51,7 @@ import akka.actor.Props;
 import akka.actor.UntypedAbstractActor;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
+import com.codahale.metrics.JmxReporter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.BoundedInputStream;
 import org.joda.time.DateTime;
@@ -61,7 +63,10 @@ import scala.concurrent.duration.FiniteDuration;
 
 import java.nio.file.Paths;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
@@ -94,8 +99,12 @@ public class LogManager extends AbstractLogManager {
     // Actor names of message log components
     static final String TASK_QUEUE_NAME = "RequestLogTaskQueue";
     static final String TIMESTAMPER_NAME = "RequestLogTimestamper";
+    static final String TIMESTAMP_COALESCER_NAME = "RequestLogTimestampCoalescer";
     static final String ARCHIVER_NAME = "RequestLogArchiver";
     static final String CLEANER_NAME = "RequestLogCleaner";
+    static final String WRITER_NAME = "RequestLogWriter";
+    static final String JOURNAL_WRITER_NAME = "RequestLogJournalWriter";
+    static final String JOURNAL_DRAINER_NAME = "RequestLogJournalDrainer";
 
     static final long MAX_LOGGABLE_BODY_SIZE = MessageLogProperties.getMaxLoggableBodySize();
     static final boolean TRUNCATED_BODY_ALLOWED = MessageLogProperties.isTruncatedBodyAllowed();
@@ -105,11 +114,18 @@ public class LogManager extends AbstractLogManager {
 
     private final ActorRef timestamper;
     private final ActorRef timestamperJob;
+    private final ActorRef timestampCoalescer;
+
+    private final JmxReporter tspMetricsReporter = JmxReporter.forRegistry(TspScoreboard.getShared().getRegistry())
+            .convertDurationsTo(TimeUnit.MILLISECONDS)
+            .build();
 
     // package private for testing
     final ActorRef taskQueueRef;
     final ActorRef logArchiver;
     final ActorRef logCleaner;
+    final List<ActorRef> logWriters;
+    final ActorRef journalWriter;
 
     LogManager(JobManager jobManager) throws Exception {
         super(jobManager);
@@ -117,8 +133,18 @@ public class LogManager extends AbstractLogManager {
         taskQueueRef = createTaskQueue();
         timestamper = createTimestamper();
         timestamperJob = createTimestamperJob();
+        timestampCoalescer = createTimestampCoalescer();
         logArchiver = createArchiver(jobManager);
         logCleaner = createCleaner(jobManager);
+        logWriters = createWriters();
+        journalWriter = createJournalWriter();
+
+        tspMetricsReporter.start();
+    }
+
+    @Override
+    public void postStop() {
+        tspMetricsReporter.stop();
     }
 
     private ActorRef createTaskQueue() {
@@ -135,6 +161,11 @@ public class LogManager extends AbstractLogManager {
         return ref;
     }
 
+    private ActorRef createTimestampCoalescer() {
+        return getContext().actorOf(Props.create(TimestampCoalescer.class, timestamper, TIMESTAMP_TIMEOUT.duration()),
+                TIMESTAMP_COALESCER_NAME);
+    }
+
     /**
      * Can be overwritten in test classes if we want to make sure that timestamping does not start prematurely.
      *
@@ -156,6 +187,30 @@ public class LogManager extends AbstractLogManager {
         return ref;
     }
 
+    private List<ActorRef> createWriters() {
+        List<ActorRef> writers = new ArrayList<>();
+
+        for (int i = 0; i < MessageLogProperties.getWriterCount(); i++) {
+            writers.add(getContext().actorOf(getWriterImpl(), WRITER_NAME + i));
+        }
+
+        return writers;
+    }
+
+    private ActorRef createJournalWriter() throws Exception {
+        if (!MessageLogProperties.isJournalEnabled()) {
+            return null;
+        }
+
+        MessageJournal journal = new MessageJournal(Paths.get(MessageLogProperties.getJournalPath()),
+                MessageLogProperties.getJournalSegmentSize());
+
+        ActorRef drainer = getContext().actorOf(Props.create(LogJournalDrainer.class, journal),
+                JOURNAL_DRAINER_NAME);
+
+        return getContext().actorOf(Props.create(LogJournalWriter.class, journal, drainer), JOURNAL_WRITER_NAME);
+    }
+
     // ------------------------------------------------------------------------
 
     @Override
@@ -164,13 +219,7 @@ public class LogManager extends AbstractLogManager {
 
         verifyCanLogMessage(shouldTimestampImmediately);
 
-        MessageRecord logRecord;
-        if (message instanceof SoapLogMessage) {
-            logRecord = createMessageRecord((SoapLogMessage) message);
-        } else {
-            logRecord = createMessageRecord((RestLogMessage) message);
-        }
-        logRecord = saveMessageRecord(logRecord);
+        MessageRecord logRecord = saveMessageRecord(createMessageRecord(message));
 
         if (shouldTimestampImmediately) {
             timestampImmediately(logRecord);
@@ -212,6 +261,13 @@ public class LogManager extends AbstractLogManager {
                 getSender().tell(statusMap, getSelf());
             } else if (message instanceof SetTimestampingStatusMessage) {
                 setTimestampingStatus((SetTimestampingStatusMessage) message);
+            } else if (message instanceof LogMessage && shouldTimestampImmediately()
+                    && MessageLogProperties.getTimestampImmediatelyCoalesceWindow() > 0) {
+                logAndTimestampCoalesced((LogMessage) message);
+            } else if (message instanceof LogMessage && hasWriters() && !shouldTimestampImmediately()) {
+                verifyCanLogMessage(false);
+                // The writer replies directly to the original sender
+                getLogWriter((LogMessage) message).forward(message, getContext());
             } else {
                 super.onReceive(message);
             }
@@ -239,6 +295,39 @@ public class LogManager extends AbstractLogManager {
         return Props.create(LogCleaner.class);
     }
 
+    protected Props getWriterImpl() {
+        return Props.create(LogWriter.class, MessageLogProperties.getWriterBatchSize());
+    }
+
+    /**
+     * Messages are partitioned between the writers by query id, so all the messages of a message exchange
+     * are written in order by the same writer. If the journal is enabled, all the messages go through the
+     * journal writer.
+     */
+    private ActorRef getLogWriter(LogMessage message) {
+        if (journalWriter != null) {
+            return journalWriter;
+        }
+
+        return logWriters.get(Math.floorMod(Objects.hashCode(message.getQueryId()), logWriters.size()));
+    }
+
+    private boolean hasWriters() {
+        return journalWriter != null || !logWriters.isEmpty();
+    }
+
+    /**
+     * Saves the message record and passes it to the time-stamp coalescer, which replies to the original sender
+     * once the message record has been time-stamped together with the other records that arrived meanwhile.
+     */
+    private void logAndTimestampCoalesced(LogMessage message) throws Exception {
+        verifyCanLogMessage(true);
+
+        MessageRecord logRecord = saveMessageRecord(createMessageRecord(message));
+
+        timestampCoalescer.forward(logRecord, getContext());
+    }
+
     private TimestampRecord timestampImmediately(MessageRecord logRecord) throws Exception {
         log.trace("timestampImmediately({})", logRecord);
 
@@ -252,9 +341,7 @@ public class LogManager extends AbstractLogManager {
 
             log.error("Timestamping failed", e);
 
-            for (String tspUrl : ServerConf.getTspUrl()) {
-                statusMap.put(tspUrl, new DiagnosticsStatus(DiagnosticsUtils.getErrorCode(e), LocalTime.now(), tspUrl));
-            }
+            setTimestampFailureStatus(e);
 
             throw e;
         } else {
@@ -262,6 +349,24 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    static void setTimestampFailureStatus(Exception e) {
+        for (String tspUrl : ServerConf.getTspUrl()) {
+            statusMap.put(tspUrl, new DiagnosticsStatus(DiagnosticsUtils.getErrorCode(e), LocalTime.now(), tspUrl));
+        }
+    }
+
+    static MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        if (message instanceof SoapLogMessage) {
+            return createMessageRecord((SoapLogMessage) message);
+        } else {
+            return createMessageRecord((RestLogMessage) message);
+        }
+    }
+
+    static ClientId getClientId(LogMessage message) {
+        return message.isClientSide() ? message.getClient() : message.getService().getClientId();
+    }
+
     private static MessageRecord createMessageRecord(SoapLogMessage message) throws Exception {
         log.trace("createMessageRecord()");
 
@@ -272,7 +377,7 @@ public class LogManager extends AbstractLogManager {
                 loggedMessage,
                 message.getSignature().getSignatureXml(),
                 message.isResponse(),
-                message.isClientSide() ? message.getClient() : message.getService().getClientId(),
+                getClientId(message),
                 message.getXRequestId());
 
         messageRecord.setTime(new Date().getTime());
@@ -295,7 +400,7 @@ public class LogManager extends AbstractLogManager {
                 manipulator.getLoggableMessageText(message),
                 message.getSignature().getSignatureXml(),
                 message.isResponse(),
-                message.isClientSide() ? message.getClient() : message.getService().getClientId(),
+                getClientId(message),
                 message.getXRequestId());
 
         messageRecord.setTime(new Date().getTime());
@@ -0,0 +1,153 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.LogMessage;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import akka.actor.ActorRef;
+import akka.actor.UntypedAbstractActor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Writes message records to the database on behalf of the log manager. Log messages that arrive while the
+ * writer is busy with the database are saved together in a single transaction, after which every sender
+ * gets its reply.
+ */
+@Slf4j
+public class LogWriter extends UntypedAbstractActor {
+
+    static final String FLUSH = "Flush";
+
+    private final int maxBatchSize;
+
+    private final List<PendingRecord> pending = new ArrayList<>();
+
+    @RequiredArgsConstructor
+    private static final class PendingRecord {
+        final MessageRecord messageRecord;
+        final ActorRef sender;
+    }
+
+    /**
+     * Creates a new log writer.
+     * @param maxBatchSize the maximum number of message records to save in one transaction
+     */
+    public LogWriter(Integer maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        log.trace("onReceive({})", message);
+
+        if (message instanceof LogMessage) {
+            handleLogMessage((LogMessage) message);
+        } else if (FLUSH.equals(message)) {
+            flush();
+        } else {
+            unhandled(message);
+        }
+    }
+
+    @Override
+    public void postStop() {
+        flush();
+    }
+
+    private void handleLogMessage(LogMessage message) {
+        MessageRecord messageRecord;
+        try {
+            messageRecord = LogManager.createMessageRecord(message);
+        } catch (Exception e) {
+            getSender().tell(e, getSelf());
+
+            return;
+        }
+
+        pending.add(new PendingRecord(messageRecord, getSender()));
+
+        if (pending.size() >= maxBatchSize) {
+            flush();
+        } else if (pending.size() == 1) {
+            // The flush message is processed after the log messages already waiting in the mailbox,
+            // so these end up in the same batch.
+            getSelf().tell(FLUSH, ActorRef.noSender());
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PendingRecord> batch = new ArrayList<>(pending);
+        pending.clear();
+
+        log.trace("flush({})", batch.size());
+
+        try {
+            saveMessageRecords(batch.stream().map(p -> p.messageRecord).collect(Collectors.toList()));
+            batch.forEach(p -> p.sender.tell(new Object(), getSelf()));
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).sender.tell(e, getSelf());
+            } else {
+                log.warn("Saving a batch of {} message records failed, saving one by one", batch.size(), e);
+
+                batch.forEach(p -> saveSeparately(p, e));
+            }
+        }
+    }
+
+    private void saveSeparately(PendingRecord pendingRecord, Exception batchError) {
+        MessageRecord messageRecord = pendingRecord.messageRecord;
+
+        // The attachment stream has been (partially) read by the failed batch and cannot be saved again
+        if (messageRecord.getAttachmentStream() != null) {
+            pendingRecord.sender.tell(batchError, getSelf());
+
+            return;
+        }
+
+        try {
+            messageRecord.setId(null);
+            saveMessageRecords(Collections.singletonList(messageRecord));
+            pendingRecord.sender.tell(new Object(), getSelf());
+        } catch (Exception e) {
+            pendingRecord.sender.tell(e, getSelf());
+        }
+    }
+
+    protected void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        LogRecordManager.saveMessageRecords(messageRecords);
+    }
+}
@@ -0,0 +1,453 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only journal of message records that are waiting to be saved to the database.
+ *
+ * The journal consists of memory-mapped segment files that are written sequentially. Each entry is stored as
+ * its length, CRC32 checksum and serialized message record; a zero length marks the end of the written data.
+ * A checkpoint file holds the position up to which the entries have been saved to the database, segment files
+ * before that position are deleted.
+ *
+ * Entries are appended and synced by the journal writer and read by the journal drainer, the synced position is
+ * the only state shared between the two.
+ */
+@Slf4j
+class MessageJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "messagelog-journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "messagelog-journal.checkpoint";
+
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int ENTRY_VERSION = 1;
+
+    /**
+     * Position of an entry in the journal.
+     */
+    static final class Position {
+        final long segment;
+        final int offset;
+
+        Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        boolean isBefore(Position other) {
+            return segment < other.segment || (segment == other.segment && offset < other.offset);
+        }
+
+        @Override
+        public String toString() {
+            return segment + ":" + offset;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // Writer state
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    // Position up to which the written entries have been synced to disk
+    private volatile Position syncedPosition;
+
+    // Reader state
+    private Position committedPosition;
+    private Position readPosition;
+    private MappedByteBuffer readBuffer;
+    private long readBufferSegment = -1;
+
+    /**
+     * Opens the journal in the given directory. Entries left over from previous runs are kept for reading,
+     * new entries are written to a new segment.
+     * @param directory the journal directory
+     * @param segmentSize the size of a segment file in bytes
+     * @throws IOException if the journal cannot be opened
+     */
+    MessageJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+
+        TreeSet<Long> segments = listSegments();
+
+        writeSegment = segments.isEmpty() ? 0 : segments.last() + 1;
+        writeBuffer = mapSegment(writeSegment, segmentSize);
+        syncedPosition = new Position(writeSegment, 0);
+
+        readPosition = readCheckpoint();
+
+        if (readPosition == null) {
+            readPosition = new Position(segments.isEmpty() ? writeSegment : segments.first(), 0);
+        }
+
+        committedPosition = readPosition;
+
+        log.info("Opened message log journal {}, reading from {}", directory, readPosition);
+    }
+
+    /**
+     * Appends the message record to the journal. The entry becomes visible to the reader after the next sync.
+     * @param messageRecord the message record
+     * @param clientId the client the record belongs to
+     * @return the size of the appended entry in bytes
+     * @throws IOException if the entry cannot be written
+     */
+    int append(MessageRecord messageRecord, ClientId clientId) throws IOException {
+        byte[] entry = serialize(messageRecord, clientId);
+
+        if (writeBuffer.remaining() < ENTRY_HEADER_SIZE + entry.length) {
+            sync();
+
+            writeSegment++;
+            writeBuffer = mapSegment(writeSegment, Math.max(segmentSize, ENTRY_HEADER_SIZE + entry.length));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(entry);
+
+        int start = writeBuffer.position();
+
+        writeBuffer.position(start + Integer.BYTES);
+        writeBuffer.putInt((int) crc.getValue());
+        writeBuffer.put(entry);
+
+        if (writeBuffer.remaining() >= Integer.BYTES) {
+            // Terminate the written data, the rest of the segment may contain an entry from an interrupted run
+            writeBuffer.putInt(writeBuffer.position(), 0);
+        }
+
+        // The length is written last, so a partially written entry is never considered valid
+        writeBuffer.putInt(start, entry.length);
+
+        return ENTRY_HEADER_SIZE + entry.length;
+    }
+
+    /**
+     * Forces the appended entries to disk and makes them visible to the reader.
+     */
+    void sync() {
+        writeBuffer.force();
+
+        syncedPosition = new Position(writeSegment, writeBuffer.position());
+    }
+
+    /**
+     * Reads the next synced entries from the journal. The read position is not saved until
+     * {@link #commit()} is called.
+     * @param maxCount the maximum number of message records to read
+     * @return the message records, empty if there are no more synced entries
+     * @throws IOException if the entries cannot be read
+     */
+    List<MessageRecord> read(int maxCount) throws IOException {
+        List<MessageRecord> messageRecords = new ArrayList<>();
+        Position synced = syncedPosition;
+
+        while (messageRecords.size() < maxCount && readPosition.isBefore(synced)) {
+            MessageRecord messageRecord = readEntry(synced);
+
+            if (messageRecord != null) {
+                messageRecords.add(messageRecord);
+            }
+        }
+
+        return messageRecords;
+    }
+
+    /**
+     * Saves the current read position and deletes the segments that have been read completely.
+     * @throws IOException if the checkpoint cannot be saved
+     */
+    void commit() throws IOException {
+        writeCheckpoint(readPosition);
+        committedPosition = readPosition;
+
+        for (Long segment : listSegments()) {
+            if (segment < readPosition.segment) {
+                Files.deleteIfExists(getSegmentFile(segment));
+            }
+        }
+    }
+
+    /**
+     * Moves the read position back to the last committed position, so the entries read after that are read again.
+     */
+    void rollback() {
+        readPosition = committedPosition;
+    }
+
+    /**
+     * @return true if all the synced entries have been read
+     */
+    boolean isDrained() {
+        return !readPosition.isBefore(syncedPosition);
+    }
+
+    @Override
+    public void close() {
+        sync();
+    }
+
+    // Reads the entry at the read position and advances the position. Returns null if there was no valid entry
+    // in the rest of the segment, in which case the position is moved to the next segment.
+    private MessageRecord readEntry(Position synced) throws IOException {
+        ByteBuffer buffer = getReadBuffer(readPosition.segment);
+        int offset = readPosition.offset;
+        int limit = readPosition.segment == synced.segment ? synced.offset : buffer.capacity();
+
+        int length = offset + ENTRY_HEADER_SIZE <= limit ? buffer.getInt(offset) : 0;
+
+        if (length > 0 && offset + ENTRY_HEADER_SIZE + length <= limit) {
+            byte[] entry = new byte[length];
+            int checksum = buffer.getInt(offset + Integer.BYTES);
+
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset + ENTRY_HEADER_SIZE);
+            slice.get(entry);
+
+            CRC32 crc = new CRC32();
+            crc.update(entry);
+
+            if ((int) crc.getValue() == checksum) {
+                readPosition = new Position(readPosition.segment, offset + ENTRY_HEADER_SIZE + length);
+
+                return deserialize(entry);
+            }
+
+            log.warn("Message log journal entry at {} is corrupted, skipping rest of the segment", readPosition);
+        }
+
+        if (readPosition.segment == synced.segment) {
+            // Only possible if the synced data itself is damaged
+            readPosition = synced;
+        } else {
+            readPosition = new Position(readPosition.segment + 1, 0);
+        }
+
+        return null;
+    }
+
+    private ByteBuffer getReadBuffer(long segment) throws IOException {
+        if (readBufferSegment != segment) {
+            Path file = getSegmentFile(segment);
+
+            if (Files.exists(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    readBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } else {
+                readBuffer = null;
+            }
+
+            readBufferSegment = segment;
+        }
+
+        return readBuffer != null ? readBuffer : ByteBuffer.allocate(0);
+    }
+
+    private MappedByteBuffer mapSegment(long segment, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(getSegmentFile(segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private Path getSegmentFile(long segment) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private TreeSet<Long> listSegments() throws IOException {
+        TreeSet<Long> segments = new TreeSet<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+
+        return segments;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        String[] parts = new String(Files.readAllBytes(file), UTF_8).trim().split(":");
+
+        return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private void writeCheckpoint(Position position) throws IOException {
+        Path tempFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(position.toString().getBytes(UTF_8)));
+            channel.force(true);
+        }
+
+        Files.move(tempFile, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] serialize(MessageRecord messageRecord, ClientId clientId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ENTRY_VERSION);
+            out.writeLong(messageRecord.getTime());
+            out.writeBoolean(messageRecord.isResponse());
+
+            writeString(out, clientId.getXRoadInstance());
+            writeString(out, clientId.getMemberClass());
+            writeString(out, clientId.getMemberCode());
+            writeString(out, clientId.getSubsystemCode());
+
+            writeString(out, messageRecord.getQueryId());
+            writeString(out, messageRecord.getMessage());
+            writeString(out, messageRecord.getSignature());
+            writeString(out, messageRecord.getHashChain());
+            writeString(out, messageRecord.getHashChainResult());
+            writeString(out, messageRecord.getSignatureHash());
+            writeString(out, messageRecord.getXRequestId());
+
+            InputStream attachment = messageRecord.getAttachmentStream();
+
+            if (attachment != null) {
+                writeBytes(out, IOUtils.toByteArray(attachment));
+            } else {
+                out.writeInt(-1);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static MessageRecord deserialize(byte[] entry) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            int version = in.readByte();
+
+            if (version != ENTRY_VERSION) {
+                throw new IOException("Unsupported message log journal entry version " + version);
+            }
+
+            long time = in.readLong();
+            boolean response = in.readBoolean();
+
+            ClientId clientId = ClientId.create(readString(in), readString(in), readString(in), readString(in));
+
+            String queryId = readString(in);
+            String message = readString(in);
+            String signature = readString(in);
+
+            MessageRecord messageRecord = new MessageRecord(queryId, message, signature, response, clientId, null);
+            messageRecord.setTime(time);
+            messageRecord.setHashChain(readString(in));
+            messageRecord.setHashChainResult(readString(in));
+            messageRecord.setSignatureHash(readString(in));
+            messageRecord.setXRequestId(readString(in));
+
+            byte[] attachment = readBytes(in);
+
+            if (attachment != null) {
+                messageRecord.setAttachmentStream(new ByteArrayInputStream(attachment), attachment.length);
+            }
+
+            return messageRecord;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] value = readBytes(in);
+
+        return value != null ? new String(value, UTF_8) : null;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        in.readFully(value);
+
+        return value;
+    }
+}
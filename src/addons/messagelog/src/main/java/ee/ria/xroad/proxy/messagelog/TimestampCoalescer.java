@@ -0,0 +1,204 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
+import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
+import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampTask;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.UntypedAbstractActor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-stamps message records in timestamp-immediately mode on behalf of the log manager. Message records that
+ * arrive within the coalesce window are time-stamped together with one batch time-stamp request, after which every
+ * sender gets its reply. Each message record gets its own hash chain, so every message is still time-stamped before
+ * its sender continues.
+ */
+@Slf4j
+public class TimestampCoalescer extends UntypedAbstractActor {
+
+    static final String FLUSH = "Flush";
+
+    private final ActorRef timestamper;
+    private final FiniteDuration timeout;
+
+    private final List<PendingRecord> pending = new ArrayList<>();
+
+    // Groups sent to the timestamper, by the id of their first message record
+    private final Map<Long, List<PendingRecord>> inProgress = new HashMap<>();
+
+    private Cancellable flushTick;
+
+    @RequiredArgsConstructor
+    private static final class PendingRecord {
+        final Long messageRecordId;
+        final String signatureHash;
+        final ActorRef sender;
+    }
+
+    @Data
+    static final class GroupTimeout implements Serializable {
+        private final Long firstMessageRecord;
+    }
+
+    /**
+     * Creates a new time-stamp coalescer.
+     * @param timestamper the timestamper actor
+     * @param timeout time to wait for the time-stamp of a group before failing its senders
+     */
+    public TimestampCoalescer(ActorRef timestamper, FiniteDuration timeout) {
+        this.timestamper = timestamper;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        log.trace("onReceive({})", message);
+
+        if (message instanceof MessageRecord) {
+            handleMessageRecord((MessageRecord) message);
+        } else if (FLUSH.equals(message)) {
+            flush();
+        } else if (message instanceof TimestampSucceeded) {
+            handleTimestampSucceeded((TimestampSucceeded) message);
+        } else if (message instanceof TimestampFailed) {
+            handleTimestampFailed((TimestampFailed) message);
+        } else if (message instanceof GroupTimeout) {
+            handleGroupTimeout((GroupTimeout) message);
+        } else {
+            unhandled(message);
+        }
+    }
+
+    @Override
+    public void postStop() {
+        cancelFlushTick();
+    }
+
+    private void handleMessageRecord(MessageRecord messageRecord) {
+        pending.add(new PendingRecord(messageRecord.getId(), messageRecord.getSignatureHash(), getSender()));
+
+        if (pending.size() >= MessageLogProperties.getTimestampImmediatelyCoalesceSize()) {
+            flush();
+        } else if (pending.size() == 1) {
+            flushTick = getContext().system().scheduler().scheduleOnce(
+                    Duration.create(MessageLogProperties.getTimestampImmediatelyCoalesceWindow(),
+                            TimeUnit.MILLISECONDS),
+                    getSelf(), FLUSH, getContext().dispatcher(), ActorRef.noSender());
+        }
+    }
+
+    private void flush() {
+        cancelFlushTick();
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PendingRecord> group = new ArrayList<>(pending);
+        pending.clear();
+
+        Long[] messageRecords = new Long[group.size()];
+        String[] signatureHashes = new String[group.size()];
+
+        for (int i = 0; i < group.size(); i++) {
+            messageRecords[i] = group.get(i).messageRecordId;
+            signatureHashes[i] = group.get(i).signatureHash;
+        }
+
+        log.trace("flush({})", group.size());
+
+        inProgress.put(messageRecords[0], group);
+        timestamper.tell(new TimestampTask(messageRecords, signatureHashes), getSelf());
+
+        getContext().system().scheduler().scheduleOnce(timeout, getSelf(), new GroupTimeout(messageRecords[0]),
+                getContext().dispatcher(), ActorRef.noSender());
+    }
+
+    private void handleTimestampSucceeded(TimestampSucceeded result) {
+        List<PendingRecord> group = inProgress.remove(result.getMessageRecords()[0]);
+        if (group == null) {
+            log.warn("Time-stamp received for message records {} that are no longer waiting",
+                    Arrays.toString(result.getMessageRecords()));
+
+            return;
+        }
+
+        try {
+            LogManager.saveTimestampRecord(result);
+            group.forEach(p -> p.sender.tell(new Object(), getSelf()));
+        } catch (Exception e) {
+            log.error("Failed to save time-stamp record", e);
+
+            group.forEach(p -> p.sender.tell(e, getSelf()));
+        }
+    }
+
+    private void handleTimestampFailed(TimestampFailed result) {
+        List<PendingRecord> group = inProgress.remove(result.getMessageRecords()[0]);
+        if (group != null) {
+            fail(group, result.getCause());
+        }
+    }
+
+    private void handleGroupTimeout(GroupTimeout message) {
+        List<PendingRecord> group = inProgress.remove(message.getFirstMessageRecord());
+        if (group != null) {
+            fail(group, new RuntimeException("Time-stamping timed out after " + timeout));
+        }
+    }
+
+    private void fail(List<PendingRecord> group, Exception cause) {
+        log.error("Timestamping failed", cause);
+
+        LogManager.setTimestampFailureStatus(cause);
+
+        group.forEach(p -> p.sender.tell(cause, getSelf()));
+    }
+
+    private void cancelFlushTick() {
+        if (flushTick != null) {
+            flushTick.cancel();
+            flushTick = null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.DiagnosticsStatus;
+import ee.ria.xroad.common.messagelog.AbstractLogManager;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps score of the time-stamping services. For each TSP URL the scoreboard tracks exponentially weighted moving
+ * averages of the response latency and of the error rate of the time-stamp requests. The scores outlive the
+ * timestamper workers, so that every time-stamping run tries the TSPs in the order of their expected time to a
+ * valid time-stamp.
+ *
+ * The scores are exported as gauges in the metric registry of the scoreboard, together with the return code of the
+ * TSP in the time-stamping status of the log manager.
+ */
+final class TspScoreboard {
+
+    static final String PREFIX = "messagelog.tsp";
+
+    static final String LATENCY = "latency";
+    static final String ERROR_RATE = "errorRate";
+    static final String REQUESTS = "requests";
+    static final String FAILURES = "failures";
+    static final String STATUS = "status";
+
+    private static final TspScoreboard SHARED = new TspScoreboard(new MetricRegistry());
+
+    // Weight of the latest request in the moving averages
+    private static final double WEIGHT = 0.2;
+
+    // Lower limit of the success rate when estimating the expected time to a valid time-stamp
+    private static final double MIN_SUCCESS_RATE = 0.05;
+
+    private final MetricRegistry registry;
+
+    private final ConcurrentMap<String, Score> scores = new ConcurrentHashMap<>();
+
+    TspScoreboard(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return the scoreboard shared by all the time-stamp requests
+     */
+    static TspScoreboard getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the registry holding the gauges of the scores
+     */
+    MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Records a valid time-stamp response from the TSP.
+     * @param url the TSP URL
+     * @param latencyNanos time it took to get the response
+     */
+    void success(String url, long latencyNanos) {
+        getScore(url).update(latencyNanos, false);
+    }
+
+    /**
+     * Records a failed time-stamp request to the TSP.
+     * @param url the TSP URL
+     * @param latencyNanos time it took for the request to fail
+     */
+    void failure(String url, long latencyNanos) {
+        getScore(url).update(latencyNanos, true);
+    }
+
+    /**
+     * Orders the TSP URLs by the expected time to a valid time-stamp, i.e. the average latency divided by the
+     * success rate. The TSPs that have not been requested yet come first, in the configured order.
+     * @param urls the configured TSP URLs
+     * @return the TSP URLs in the order they should be tried
+     */
+    List<String> order(List<String> urls) {
+        List<String> ordered = new ArrayList<>(urls);
+        ordered.sort(Comparator.comparingDouble(this::expectedLatency));
+
+        return ordered;
+    }
+
+    private double expectedLatency(String url) {
+        Score score = scores.get(url);
+
+        return score == null ? 0 : score.getLatency() / Math.max(1 - score.getErrorRate(), MIN_SUCCESS_RATE);
+    }
+
+    private Score getScore(String url) {
+        return scores.computeIfAbsent(url, this::createScore);
+    }
+
+    private Score createScore(String url) {
+        Score score = new Score();
+
+        registry.register(MetricRegistry.name(PREFIX, url, LATENCY),
+                (Gauge<Double>) () -> score.getLatency() / TimeUnit.MILLISECONDS.toNanos(1));
+        registry.register(MetricRegistry.name(PREFIX, url, ERROR_RATE), (Gauge<Double>) score::getErrorRate);
+        registry.register(MetricRegistry.name(PREFIX, url, REQUESTS), (Gauge<Long>) score::getRequests);
+        registry.register(MetricRegistry.name(PREFIX, url, FAILURES), (Gauge<Long>) score::getFailures);
+        registry.register(MetricRegistry.name(PREFIX, url, STATUS), (Gauge<Integer>) () -> {
+            DiagnosticsStatus status = AbstractLogManager.getStatusMap().get(url);
+
+            return status == null ? null : status.getReturnCode();
+        });
+
+        return score;
+    }
+
+    private static final class Score {
+        // Moving average of the response latency in nanoseconds
+        private double latency;
+        private double errorRate;
+        private long requests;
+        private long failures;
+
+        synchronized void update(long latencyNanos, boolean failed) {
+            if (requests == 0) {
+                latency = latencyNanos;
+                errorRate = failed ? 1 : 0;
+            } else {
+                latency = WEIGHT * latencyNanos + (1 - WEIGHT) * latency;
+                errorRate = WEIGHT * (failed ? 1 : 0) + (1 - WEIGHT) * errorRate;
+            }
+
+            requests++;
+
+            if (failed) {
+                failures++;
+            }
+        }
+
+        synchronized double getLatency() {
+            return latency;
+        }
+
+        synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        synchronized long getRequests() {
+            return requests;
+        }
+
+        synchronized long getFailures() {
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for sending the time-stamp requests to the time-stamping services.
+ */
+public class AbstractTimestampRequestTest {
+
+    private static final long SLOW = 10000;
+    private static final long FAIL = -1;
+
+    /**
+     * Restores the default hedge delay.
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(MessageLogProperties.TIMESTAMPER_HEDGE_DELAY);
+    }
+
+    /**
+     * The request is also sent to the second TSP when the first one does not respond within the hedge delay.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void hedgesSlowTsp() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_HEDGE_DELAY, "100");
+
+        long start = System.currentTimeMillis();
+        Timestamper.TimestampSucceeded result = request(tsps("hedge-slow", SLOW, "hedge-fast", 0L));
+
+        assertEquals("hedge-fast", result.getUrl());
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+    }
+
+    /**
+     * The request is sent to the second TSP at once when the first one fails, without waiting for the hedge delay.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void continuesAfterFailedTsp() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_HEDGE_DELAY, String.valueOf(SLOW));
+
+        long start = System.currentTimeMillis();
+        Timestamper.TimestampSucceeded result = request(tsps("fail-first", FAIL, "fail-second", 0L));
+
+        assertEquals("fail-second", result.getUrl());
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+    }
+
+    /**
+     * The TSPs are tried one at a time when hedging is disabled.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void triesTspsOneAtATimeWithoutHedging() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMPER_HEDGE_DELAY, "0");
+
+        Timestamper.TimestampSucceeded result = request(tsps("sequential-first", 500L, "sequential-second", 0L));
+
+        assertEquals("sequential-first", result.getUrl());
+    }
+
+    /**
+     * The request fails when every TSP fails.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failsWhenAllTspsFail() throws Exception {
+        try {
+            request(tsps("all-first", FAIL, "all-second", FAIL));
+
+            fail("Should fail to get time stamp");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage().contains("any time-stamping providers"));
+        }
+    }
+
+    private static Map<String, Long> tsps(String first, long firstDelay, String second, long secondDelay) {
+        Map<String, Long> tsps = new LinkedHashMap<>();
+        tsps.put(first, firstDelay);
+        tsps.put(second, secondDelay);
+
+        return tsps;
+    }
+
+    private static Timestamper.TimestampSucceeded request(Map<String, Long> tsps) throws Exception {
+        AbstractTimestampRequest request = new AbstractTimestampRequest(new Long[] {1L}) {
+            @Override
+            byte[] getRequestData() {
+                return new byte[0];
+            }
+
+            @Override
+            Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) {
+                return new Timestamper.TimestampSucceeded(logRecords, null, null, null, url);
+            }
+
+            @Override
+            protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest, String url)
+                    throws Exception {
+                long delay = tsps.get(url);
+                if (delay == FAIL) {
+                    throw new RuntimeException("time-stamping failed");
+                }
+
+                Thread.sleep(delay);
+
+                return result(null, url);
+            }
+        };
+
+        return (Timestamper.TimestampSucceeded) request.makeTsRequest(null, new ArrayList<>(tsps.keySet()));
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the message log journal.
+ */
+public class MessageJournalTest {
+
+    private static final ClientId CLIENT = ClientId.create("EE", "BUSINESS", "consumer", "sub");
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Test that appended records become readable after sync.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void appendedRecordsAreReadAfterSync() throws Exception {
+        MessageJournal journal = new MessageJournal(tempFolder.getRoot().toPath(), SEGMENT_SIZE);
+
+        journal.append(createRecord("q1"), CLIENT);
+        journal.append(createRecord("q2"), CLIENT);
+
+        assertTrue(journal.read(10).isEmpty());
+
+        journal.sync();
+
+        List<MessageRecord> records = journal.read(10);
+        assertEquals(2, records.size());
+        assertEquals("q1", records.get(0).getQueryId());
+        assertEquals("q2", records.get(1).getQueryId());
+        assertEquals("BUSINESS", records.get(0).getMemberClass());
+        assertEquals("sub", records.get(0).getSubsystemCode());
+        assertEquals(Long.valueOf(1234L), records.get(0).getTime());
+        assertNull(records.get(0).getHashChain());
+        assertTrue(journal.isDrained());
+    }
+
+    /**
+     * Test that the attachment is stored in the journal.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void attachmentIsJournaled() throws Exception {
+        MessageJournal journal = new MessageJournal(tempFolder.getRoot().toPath(), SEGMENT_SIZE);
+
+        byte[] body = "attachment body".getBytes(UTF_8);
+        MessageRecord record = createRecord("q1");
+        record.setAttachmentStream(new ByteArrayInputStream(body), body.length);
+
+        journal.append(record, CLIENT);
+        journal.sync();
+
+        MessageRecord read = journal.read(1).get(0);
+        assertEquals(body.length, read.getAttachmentStreamSize());
+        assertArrayEquals(body, IOUtils.toByteArray(read.getAttachmentStream()));
+    }
+
+    /**
+     * Test that the records are read across segments and that fully read segments are deleted on commit.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void recordsAreReadAcrossSegments() throws Exception {
+        Path dir = tempFolder.getRoot().toPath();
+        MessageJournal journal = new MessageJournal(dir, SEGMENT_SIZE);
+
+        for (int i = 0; i < 20; i++) {
+            journal.append(createRecord("q" + i), CLIENT);
+        }
+
+        journal.sync();
+
+        assertTrue(countSegments() > 1);
+
+        List<MessageRecord> records = journal.read(100);
+        assertEquals(20, records.size());
+        assertEquals("q19", records.get(19).getQueryId());
+
+        journal.commit();
+
+        assertEquals(1, countSegments());
+    }
+
+    /**
+     * Test that uncommitted records are read again after a rollback and after reopening the journal.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void uncommittedRecordsAreReplayed() throws Exception {
+        Path dir = tempFolder.getRoot().toPath();
+        MessageJournal journal = new MessageJournal(dir, SEGMENT_SIZE);
+
+        journal.append(createRecord("q1"), CLIENT);
+        journal.append(createRecord("q2"), CLIENT);
+        journal.sync();
+
+        assertEquals(1, journal.read(1).size());
+        journal.commit();
+
+        assertEquals("q2", journal.read(1).get(0).getQueryId());
+        journal.rollback();
+        assertEquals("q2", journal.read(1).get(0).getQueryId());
+
+        // Simulates a restart without committing q2
+        MessageJournal reopened = new MessageJournal(dir, SEGMENT_SIZE);
+        reopened.append(createRecord("q3"), CLIENT);
+        reopened.sync();
+
+        List<MessageRecord> records = reopened.read(10);
+        assertEquals(2, records.size());
+        assertEquals("q2", records.get(0).getQueryId());
+        assertEquals("q3", records.get(1).getQueryId());
+    }
+
+    private int countSegments() {
+        File[] files = tempFolder.getRoot().listFiles((d, name) -> name.endsWith(".seg"));
+
+        return files != null ? files.length : 0;
+    }
+
+    private static MessageRecord createRecord(String queryId) {
+        MessageRecord record = new MessageRecord(queryId, "<message/>", "<signature/>", false, CLIENT, null);
+        record.setTime(1234L);
+        record.setSignatureHash("hash");
+
+        return record;
+    }
+}
@@ -33,6 +33,7 @@ import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.messagelog.SoapLogMessage;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
 import ee.ria.xroad.common.signature.SignatureData;
@@ -41,6 +42,8 @@ import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
 
 import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.filefilter.RegexFileFilter;
@@ -50,6 +53,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
@@ -61,7 +66,9 @@ import java.io.File;
 import java.io.FileFilter;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +81,7 @@ import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -172,6 +180,32 @@ public class MessageLogTest extends AbstractMessageLogTest {
         log.info("dead letters: " + getDeadLetters());
     }
 
+    /**
+     * Logs messages concurrently through the log manager actor, so that the message records are saved in batches by
+     * the log writers. Every sender must get a reply and every message must end up in the task queue.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void logMessagesThroughWriters() throws Exception {
+        log.trace("logMessagesThroughWriters()");
+
+        final int messageCount = 20;
+        final Timeout timeout = new Timeout(Duration.create(30, TimeUnit.SECONDS));
+
+        List<Future<Object>> replies = new ArrayList<>();
+
+        for (int i = 0; i < messageCount; i++) {
+            replies.add(Patterns.ask(getLogManagerRef(),
+                    new SoapLogMessage(createMessage("writer" + i), createSignature(), true), timeout));
+        }
+
+        for (Future<Object> reply : replies) {
+            assertFalse(Await.result(reply, timeout.duration()) instanceof Exception);
+        }
+
+        assertTaskQueueSize(messageCount);
+    }
+
     /**
      * Log message with xRequestId
      * @throws Exception in case of any unexpected errors
@@ -246,6 +280,57 @@ public class MessageLogTest extends AbstractMessageLogTest {
         }
     }
 
+    /**
+     * Logs messages concurrently through the log manager actor in timestamp-immediately mode, so that the messages
+     * are time-stamped together. Every sender must get its reply only after its message has been time-stamped.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void timestampImmediatelyCoalesced() throws Exception {
+        log.trace("timestampImmediatelyCoalesced()");
+
+        final int messageCount = 20;
+        final Timeout timeout = new Timeout(Duration.create(30, TimeUnit.SECONDS));
+
+        System.setProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY, "true");
+        System.setProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW, "10000");
+        System.setProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY_COALESCE_SIZE, String.valueOf(messageCount));
+
+        try {
+            List<Future<Object>> replies = new ArrayList<>();
+
+            for (int i = 0; i < messageCount; i++) {
+                replies.add(Patterns.ask(getLogManagerRef(),
+                        new SoapLogMessage(createMessage("coalesced" + i), createSignature(), true), timeout));
+            }
+
+            for (Future<Object> reply : replies) {
+                assertFalse(Await.result(reply, timeout.duration()) instanceof Exception);
+            }
+
+            assertTaskQueueSize(0);
+
+            Long timestampRecordId = null;
+
+            for (int i = 0; i < messageCount; i++) {
+                MessageRecord record = (MessageRecord) logManager.findByQueryId("coalesced" + i,
+                        new Date(0), new Date(Long.MAX_VALUE));
+
+                assertNotNull(record.getTimestampRecord());
+                assertNotNull(record.getTimestampHashChain());
+
+                if (timestampRecordId == null) {
+                    timestampRecordId = record.getTimestampRecord().getId();
+                }
+
+                assertEquals(timestampRecordId, record.getTimestampRecord().getId());
+            }
+        } finally {
+            System.clearProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW);
+            System.clearProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY_COALESCE_SIZE);
+        }
+    }
+
     /**
      * Logs messages, time-stamps them. Then archives the messages and cleans the database.
      * @throws Exception in case of any unexpected errors
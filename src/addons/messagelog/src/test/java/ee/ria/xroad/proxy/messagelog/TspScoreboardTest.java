@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the time-stamping service scoreboard.
+ */
+public class TspScoreboardTest {
+
+    private static final String TSP_A = "http://tsp-a.example.org";
+    private static final String TSP_B = "http://tsp-b.example.org";
+    private static final String TSP_C = "http://tsp-c.example.org";
+
+    private static final List<String> URLS = Arrays.asList(TSP_A, TSP_B, TSP_C);
+
+    private MetricRegistry registry;
+    private TspScoreboard scoreboard;
+
+    /**
+     * Creates an empty scoreboard.
+     */
+    @Before
+    public void setUp() {
+        registry = new MetricRegistry();
+        scoreboard = new TspScoreboard(registry);
+    }
+
+    @Test
+    public void keepsConfiguredOrderWithoutScores() {
+        assertEquals(URLS, scoreboard.order(URLS));
+    }
+
+    @Test
+    public void ordersByLatency() {
+        scoreboard.success(TSP_A, millis(300));
+        scoreboard.success(TSP_B, millis(100));
+        scoreboard.success(TSP_C, millis(200));
+
+        assertEquals(Arrays.asList(TSP_B, TSP_C, TSP_A), scoreboard.order(URLS));
+    }
+
+    @Test
+    public void triesUnscoredTspsFirst() {
+        scoreboard.success(TSP_A, millis(100));
+        scoreboard.success(TSP_C, millis(100));
+
+        assertEquals(Arrays.asList(TSP_B, TSP_A, TSP_C), scoreboard.order(URLS));
+    }
+
+    @Test
+    public void ordersFailingTspsLast() {
+        scoreboard.success(TSP_A, millis(100));
+        scoreboard.failure(TSP_A, millis(100));
+        scoreboard.failure(TSP_A, millis(100));
+        scoreboard.failure(TSP_A, millis(100));
+        scoreboard.success(TSP_B, millis(150));
+        scoreboard.success(TSP_C, millis(120));
+
+        assertEquals(Arrays.asList(TSP_C, TSP_B, TSP_A), scoreboard.order(URLS));
+    }
+
+    @Test
+    public void exportsScores() {
+        scoreboard.success(TSP_A, millis(100));
+        scoreboard.failure(TSP_A, millis(200));
+
+        assertEquals(120.0, (Double) gauge(TSP_A, TspScoreboard.LATENCY).getValue(), 0.001);
+        assertEquals(0.2, (Double) gauge(TSP_A, TspScoreboard.ERROR_RATE).getValue(), 0.001);
+        assertEquals(2L, gauge(TSP_A, TspScoreboard.REQUESTS).getValue());
+        assertEquals(1L, gauge(TSP_A, TspScoreboard.FAILURES).getValue());
+    }
+
+    private Gauge<?> gauge(String url, String name) {
+        return registry.getGauges().get(MetricRegistry.name(TspScoreboard.PREFIX, url, name));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
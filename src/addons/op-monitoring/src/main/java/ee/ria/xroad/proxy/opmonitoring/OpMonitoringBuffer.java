@@ -29,14 +29,12 @@ import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
-import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
-import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
-import com.google.gson.Gson;
+import akka.routing.SmallestMailboxPool;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
@@ -44,10 +42,11 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
@@ -56,7 +55,9 @@ import static java.util.Collections.list;
 /**
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
- * monitoring daemon (using OpMonitoringDaemonSender).
+ * monitoring daemon (using OpMonitoringDaemonSender). Several batches of
+ * records can be sent at the same time. When the buffer is full, the eldest
+ * records are dropped.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -65,10 +66,6 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final String NO_ADDRESS_FOUND = "No suitable IP address is bound to the network interface ";
     private static final String NO_INTERFACE_FOUND = "No non-loopback network interface found";
 
-    private static final long MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
-
-    private static final int MAX_RECORDS_IN_MESSAGE =
-            OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
     private static final long SENDING_INTERVAL_SECONDS =
             OpMonitoringSystemProperties.getOpMonitorBufferSendingIntervalSeconds();
 
@@ -78,27 +75,36 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final int CLIENT_SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
-    private static final Gson GSON = JsonUtils.getSerializer();
+    private final int maxBufferSize = OpMonitoringSystemProperties.getOpMonitorBufferSize();
+
+    private final int maxRecordsInMessage = OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
+
+    private final int maxConcurrentSends = Math.max(1,
+            OpMonitoringSystemProperties.getOpMonitorBufferMaxConcurrentSends());
 
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    // Preallocated ring buffer of the records, the record with sequence number
+    // n is stored at position n % buffer.length. The buffer contains the
+    // records from sequence number head (inclusive) to tail (exclusive).
+    private final OpMonitoringData[] buffer;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
+    private long head = 0;
+    private long tail = 0;
 
-                    return overflow;
-                }
-            };
+    // Sequence number of the first record not yet assigned to a batch
+    private long sendPosition = 0;
+
+    // Batches assigned records in sequence number order. The records are
+    // removed from the buffer once all the preceding batches have been sent.
+    private final Deque<Batch> batches = new ArrayDeque<>();
 
-    private long bufferIndex = 0;
+    private long nextBatchId = 0;
+    private int batchesInFlight = 0;
 
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    private long sentRecords = 0;
+    private long droppedRecords = 0;
+    private long reportedDroppedRecords = 0;
 
     private final CloseableHttpClient httpClient;
 
@@ -106,6 +112,21 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     private static String ipAddress;
 
+    private enum BatchState { IN_FLIGHT, FAILED, SENT }
+
+    private static final class Batch {
+        final long id;
+        long from;
+        final long to;
+        BatchState state = BatchState.IN_FLIGHT;
+
+        Batch(long id, long from, long to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
     /**
      * Constructor.
      * @throws Exception if an error occurs
@@ -114,24 +135,44 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            buffer = null;
             httpClient = null;
             sender = null;
         } else {
+            buffer = new OpMonitoringData[maxBufferSize];
             httpClient = createHttpClient();
             sender = createSender();
         }
     }
 
     CloseableHttpClient createHttpClient() throws Exception {
-        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), 1, 1,
-                CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
+        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), maxConcurrentSends,
+                maxConcurrentSends, CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
     }
 
     ActorRef createSender() {
-        return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
+        return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient)
+                        .withRouter(new SmallestMailboxPool(maxConcurrentSends)),
                 OP_MONITORING_DAEMON_SENDER);
     }
 
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message instanceof OpMonitoringDaemonSender.BatchResult) {
+            OpMonitoringDaemonSender.BatchResult result = (OpMonitoringDaemonSender.BatchResult) message;
+
+            log.trace("onReceive: {}", result);
+
+            try {
+                batchSent(result.getId(), result.isSuccess());
+            } catch (Exception e) {
+                log.error("Operational monitoring buffer failed", e);
+            }
+        } else {
+            super.onReceive(message);
+        }
+    }
+
     @Override
     protected void store(OpMonitoringData data) throws Exception {
         if (ignoreOpMonitoringData()) {
@@ -140,64 +181,155 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
         data.setSecurityServerInternalIp(getIpAddress());
 
-        buffer.put(getNextBufferIndex(), data);
+        add(data);
 
-        send();
+        sendBatches();
+    }
+
+    void add(OpMonitoringData data) {
+        if (tail - head == buffer.length) {
+            removeEldest();
+        }
+
+        buffer[position(tail++)] = data;
     }
 
     @Override
     protected void send() throws Exception {
-        if (!canSend()) {
-            return;
-        }
+        if (droppedRecords > reportedDroppedRecords) {
+            log.warn("Operational monitoring buffer overflow, {} records dropped ({} dropped and {} sent in total)",
+                    droppedRecords - reportedDroppedRecords, droppedRecords, sentRecords);
 
-        String json = prepareMonitoringMessage();
+            reportedDroppedRecords = droppedRecords;
+        }
 
-        sender.tell(json, getSelf());
+        sendBatches();
     }
 
-    private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
+    @Override
+    protected void sendingSuccess() throws Exception {
+        // The results of the batches are received as BatchResult messages
     }
 
-    private String prepareMonitoringMessage() {
-        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+    @Override
+    protected void sendingFailure() throws Exception {
+        // The results of the batches are received as BatchResult messages
+    }
 
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
+    /**
+     * Sends the failed batches again and new batches of the records not yet
+     * sent, up to the maximum number of batches in flight.
+     */
+    private void sendBatches() {
+        for (Batch batch : batches) {
+            if (batchesInFlight == maxConcurrentSends) {
+                return;
+            }
 
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
+            if (batch.state == BatchState.FAILED) {
+                sendBatch(batch);
             }
         }
 
-        log.debug("Op monitoring buffer records count: {}", buffer.size());
+        while (batchesInFlight < maxConcurrentSends && sendPosition < tail) {
+            Batch batch = new Batch(nextBatchId++, sendPosition, Math.min(tail, sendPosition + maxRecordsInMessage));
+            sendPosition = batch.to;
 
-        return GSON.toJson(request);
+            batches.add(batch);
+            sendBatch(batch);
+        }
+
+        log.debug("Op monitoring buffer records count: {}, batches in flight: {}", size(), batchesInFlight);
     }
 
-    @Override
-    protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+    private void sendBatch(Batch batch) {
+        List<Map<String, Object>> records = new ArrayList<>((int) (batch.to - batch.from));
 
-        if (canSend()) {
-            send();
+        for (long i = batch.from; i < batch.to; i++) {
+            records.add(buffer[position(i)].getData());
         }
+
+        batch.state = BatchState.IN_FLIGHT;
+        batchesInFlight++;
+
+        sender.tell(new OpMonitoringDaemonSender.Batch(batch.id, records), getSelf());
     }
 
-    @Override
-    protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
+    void batchSent(long batchId, boolean success) {
+        Batch batch = batches.stream().filter(b -> b.id == batchId).findFirst().orElse(null);
+
+        if (batch == null || batch.state != BatchState.IN_FLIGHT) {
+            // The records of the batch have been dropped from the buffer
+            return;
+        }
+
+        batchesInFlight--;
+
+        if (!success) {
+            // Do not worry, the batch is sent again with the next records or
+            // by the scheduled sending.
+            batch.state = BatchState.FAILED;
+
+            return;
+        }
+
+        batch.state = BatchState.SENT;
+        sentRecords += batch.to - batch.from;
+
+        while (!batches.isEmpty() && batches.peek().state == BatchState.SENT) {
+            Batch sent = batches.poll();
+
+            while (head < sent.to) {
+                buffer[position(head++)] = null;
+            }
+        }
+
+        sendBatches();
+    }
+
+    private void removeEldest() {
+        buffer[position(head++)] = null;
+        droppedRecords++;
+
+        if (droppedRecords == reportedDroppedRecords + 1) {
+            log.warn("Operational monitoring buffer overflow, removing eldest records");
+        }
+
+        sendPosition = Math.max(sendPosition, head);
+
+        Batch eldest = batches.peek();
+
+        if (eldest != null) {
+            eldest.from = head;
+
+            if (eldest.from == eldest.to) {
+                batches.poll();
+
+                if (eldest.state == BatchState.IN_FLIGHT) {
+                    batchesInFlight--;
+                }
+            }
+        }
+    }
 
-        // Do not worry, scheduled sending retries..
+    private int position(long sequence) {
+        return (int) (sequence % buffer.length);
     }
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
+    int size() {
+        return (int) (tail - head);
+    }
+
+    OpMonitoringData getRecord(long sequence) {
+        return sequence >= head && sequence < tail ? buffer[position(sequence)] : null;
+    }
+
+    long getSentRecords() {
+        return sentRecords;
+    }
 
-        return bufferIndex;
+    long getDroppedRecords() {
+        return droppedRecords;
     }
 
     private void scheduleSendMonitoringData() {
@@ -228,7 +360,7 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     }
 
     private boolean ignoreOpMonitoringData() {
-        return MAX_BUFFER_SIZE < 1;
+        return maxBufferSize < 1;
     }
 
     private static String getIpAddress() {
@@ -24,9 +24,9 @@
  */
 package ee.ria.xroad.proxy.opmonitoring;
 
-import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.JsonUtils;
@@ -37,13 +37,22 @@ import ee.ria.xroad.common.util.TimeUtils;
 import akka.actor.ActorRef;
 import akka.actor.UntypedAbstractActor;
 import com.google.gson.Gson;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
@@ -51,6 +60,7 @@ import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STA
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
  * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * The records are compressed with gzip once the daemon has announced it accepts compressed requests.
  */
 @Slf4j
 public class OpMonitoringDaemonSender extends UntypedAbstractActor {
@@ -63,46 +73,85 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     private static final int SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
+    private static final String CONTENT_ENCODING_GZIP = "gzip";
+
     private CloseableHttpClient httpClient;
 
+    // Set when the daemon has announced it accepts gzip-compressed requests
+    private boolean compress;
+
     OpMonitoringDaemonSender(CloseableHttpClient httpClient) {
         this.httpClient = httpClient;
     }
 
+    /**
+     * A batch of operational monitoring records to be sent to the operational monitoring daemon.
+     */
+    @Value
+    static class Batch {
+        private long id;
+        private List<Map<String, Object>> records;
+    }
+
+    /**
+     * The result of sending a batch, sent back to the sender of the batch.
+     */
+    @Value
+    static class BatchResult {
+        private long id;
+        private boolean success;
+    }
+
     @Override
     public void onReceive(Object message) throws Exception {
-        if (message instanceof String) {
-            String json = (String) message;
+        if (message instanceof Batch) {
+            Batch batch = (Batch) message;
 
-            log.trace("onReceive: {}", json);
+            log.trace("onReceive: batch {} of {} records", batch.getId(), batch.getRecords().size());
 
             try {
-                send(json);
-                success();
+                send(encode(batch));
+
+                getSender().tell(new BatchResult(batch.getId(), true), ActorRef.noSender());
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
 
-                failure();
+                getSender().tell(new BatchResult(batch.getId(), false), ActorRef.noSender());
             }
         } else {
             unhandled(message);
         }
     }
 
-    private void success() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, ActorRef.noSender());
-    }
+    private byte[] encode(Batch batch) throws IOException {
+        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+        batch.getRecords().forEach(request::addRecord);
 
-    private void failure() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
+        byte[] json = GSON.toJson(request).getBytes(StandardCharsets.UTF_8);
+
+        if (!compress) {
+            return json;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+
+        return out.toByteArray();
     }
 
-    private void send(String json) throws Exception {
+    private void send(byte[] content) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            if (compress) {
+                sender.addHeader(HttpHeaders.CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+            }
+
+            sender.doPost(getAddress(), new ByteArrayInputStream(content), content.length, MimeTypes.JSON);
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -113,6 +162,9 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
                 throw new Exception("Received invalid response: " + responseJson);
             }
 
+            // The daemon announces the encodings it accepts in requests (RFC 7694)
+            compress = acceptsGzip(sender.getResponseHeaders());
+
             if (STATUS_OK.equals(response.getStatus())) {
                 log.trace("Received OK response");
 
@@ -128,6 +180,12 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
         }
     }
 
+    private static boolean acceptsGzip(Map<String, String> responseHeaders) {
+        return responseHeaders.entrySet().stream()
+                .anyMatch(header -> HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(header.getKey())
+                        && StringUtils.containsIgnoreCase(header.getValue(), CONTENT_ENCODING_GZIP));
+    }
+
     private URI getAddress() throws URISyntaxException {
         return new URI(OpMonitoringSystemProperties.getOpMonitorDaemonScheme(), null,
                 OpMonitoringSystemProperties.getOpMonitorHost(), OpMonitoringSystemProperties.getOpMonitorPort(),
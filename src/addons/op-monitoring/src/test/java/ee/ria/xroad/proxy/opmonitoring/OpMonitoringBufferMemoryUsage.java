@@ -38,8 +38,6 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 /**
  * Operational monitoring buffer simulation class to measure heap size usage.
@@ -151,11 +149,11 @@ public final class OpMonitoringBufferMemoryUsage {
         return runtime.totalMemory() - runtime.freeMemory();
     }
 
-    private static Map<Long, OpMonitoringData> createBuffer(int count, int shortStrLen, int longStrLen) {
-        Map<Long, OpMonitoringData> buffer = new LinkedHashMap<>();
+    private static OpMonitoringData[] createBuffer(int count, int shortStrLen, int longStrLen) {
+        OpMonitoringData[] buffer = new OpMonitoringData[count];
         OpMonitoringData record;
 
-        for (long i = 0; i < count; ++i) {
+        for (int i = 0; i < count; ++i) {
             record = new OpMonitoringData(OpMonitoringData.SecurityServerType.PRODUCER, MILLIS);
             record.setRequestInTs(MILLIS);
             record.setRequestOutTs(MILLIS);
@@ -183,7 +181,7 @@ public final class OpMonitoringBufferMemoryUsage {
 
             record.setSucceeded(true);
 
-            buffer.put(i, record);
+            buffer[i] = record;
         }
 
         return buffer;
@@ -30,10 +30,14 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.TestActorRef;
+import akka.testkit.javadsl.TestKit;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests operational monitoring buffer.
@@ -41,6 +45,8 @@ import static org.junit.Assert.assertEquals;
 public class OpMonitoringBufferTest {
     private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
 
+    private static ActorRef testSender;
+
     private static class TestOpMonitoringBuffer extends OpMonitoringBuffer {
         TestOpMonitoringBuffer() throws Exception {
             super();
@@ -53,15 +59,20 @@ public class OpMonitoringBufferTest {
 
         @Override
         ActorRef createSender() {
-            return null;
+            return testSender;
         }
 
         @Override
         protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+            add(data);
         }
     }
 
+    @After
+    public void tearDown() {
+        testSender = null;
+    }
+
     @Test
     public void bufferOverflow() throws Exception {
         System.setProperty("xroad.op-monitor-buffer.size", "2");
@@ -73,15 +84,76 @@ public class OpMonitoringBufferTest {
         TestOpMonitoringBuffer opMonitoringBuffer =
                 testActorRef.underlyingActor();
 
-        OpMonitoringData opMonitoringData = new OpMonitoringData(
+        OpMonitoringData first = new OpMonitoringData(
                 OpMonitoringData.SecurityServerType.CLIENT, 100);
+        OpMonitoringData second = new OpMonitoringData(
+                OpMonitoringData.SecurityServerType.CLIENT, 200);
+        OpMonitoringData third = new OpMonitoringData(
+                OpMonitoringData.SecurityServerType.CLIENT, 300);
+
+        opMonitoringBuffer.store(first);
+        opMonitoringBuffer.store(second);
+        opMonitoringBuffer.store(third);
+
+        assertEquals(2, opMonitoringBuffer.size());
+        assertNull(opMonitoringBuffer.getRecord(0));
+        assertSame(second, opMonitoringBuffer.getRecord(1));
+        assertSame(third, opMonitoringBuffer.getRecord(2));
+        assertEquals(1, opMonitoringBuffer.getDroppedRecords());
+    }
+
+    @Test
+    public void sendConcurrentBatches() throws Exception {
+        System.setProperty("xroad.op-monitor-buffer.size", "1000");
+        System.setProperty("xroad.op-monitor-buffer.max-records-in-message", "100");
+        System.setProperty("xroad.op-monitor-buffer.max-concurrent-sends", "2");
+
+        TestKit daemonSender = new TestKit(ACTOR_SYSTEM);
+        testSender = daemonSender.getRef();
+
+        final TestActorRef<TestOpMonitoringBuffer> testActorRef = TestActorRef.create(ACTOR_SYSTEM,
+                Props.create(TestOpMonitoringBuffer.class), "testConcurrentActorRef");
+
+        TestOpMonitoringBuffer opMonitoringBuffer = testActorRef.underlyingActor();
+
+        for (int i = 0; i < 250; i++) {
+            opMonitoringBuffer.store(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, i));
+        }
+
+        opMonitoringBuffer.send();
+
+        // Two batches are sent at the same time.
+        OpMonitoringDaemonSender.Batch first = daemonSender.expectMsgClass(OpMonitoringDaemonSender.Batch.class);
+        OpMonitoringDaemonSender.Batch second = daemonSender.expectMsgClass(OpMonitoringDaemonSender.Batch.class);
+        daemonSender.expectNoMessage();
+
+        assertEquals(100, first.getRecords().size());
+        assertEquals(100, second.getRecords().size());
+
+        // The records are removed from the buffer in order.
+        opMonitoringBuffer.batchSent(second.getId(), true);
+        assertEquals(250, opMonitoringBuffer.size());
+
+        OpMonitoringDaemonSender.Batch third = daemonSender.expectMsgClass(OpMonitoringDaemonSender.Batch.class);
+        assertEquals(50, third.getRecords().size());
+
+        opMonitoringBuffer.batchSent(first.getId(), true);
+        assertEquals(50, opMonitoringBuffer.size());
+        assertEquals(200, opMonitoringBuffer.getSentRecords());
+
+        // A failed batch is sent again.
+        opMonitoringBuffer.batchSent(third.getId(), false);
+        daemonSender.expectNoMessage();
+
+        opMonitoringBuffer.send();
 
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
+        OpMonitoringDaemonSender.Batch resent = daemonSender.expectMsgClass(OpMonitoringDaemonSender.Batch.class);
+        assertEquals(third.getId(), resent.getId());
+        assertEquals(50, resent.getRecords().size());
 
-        assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        opMonitoringBuffer.batchSent(resent.getId(), true);
+        assertEquals(0, opMonitoringBuffer.size());
+        assertEquals(250, opMonitoringBuffer.getSentRecords());
+        assertEquals(0, opMonitoringBuffer.getDroppedRecords());
     }
 }
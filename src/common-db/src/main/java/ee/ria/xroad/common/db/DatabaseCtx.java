@@ -26,13 +26,13 @@ package ee.ria.xroad.common.db;
 
 import ee.ria.xroad.common.CodedException;
 
-import lombok.AllArgsConstructor;
-import lombok.RequiredArgsConstructor;
+import com.codahale.metrics.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Interceptor;
 import org.hibernate.JDBCException;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.resource.transaction.spi.TransactionStatus;
 
@@ -41,16 +41,38 @@ import static ee.ria.xroad.common.db.HibernateUtil.getSessionFactory;
 
 /**
  * Database context manages database connections for a specific session
- * factory.
+ * factory. The session factory is resolved once and then used without
+ * locking, so concurrent transactions only contend in the connection pool.
  */
 @Slf4j
-@RequiredArgsConstructor
-@AllArgsConstructor
 public class DatabaseCtx {
 
     private final String sessionFactoryName;
 
-    private Interceptor interceptor = null;
+    private final Interceptor interceptor;
+
+    private final Timer transactionTimer;
+
+    private volatile SessionFactory sessionFactory;
+
+    /**
+     * Creates a database context for the given session factory.
+     * @param sessionFactoryName the name of the session factory
+     */
+    public DatabaseCtx(String sessionFactoryName) {
+        this(sessionFactoryName, null);
+    }
+
+    /**
+     * Creates a database context for the given session factory.
+     * @param sessionFactoryName the name of the session factory
+     * @param interceptor the interceptor to use on sessions, may be null
+     */
+    public DatabaseCtx(String sessionFactoryName, Interceptor interceptor) {
+        this.sessionFactoryName = sessionFactoryName;
+        this.interceptor = interceptor;
+        this.transactionTimer = DatabaseMetrics.transactionTimer(sessionFactoryName);
+    }
 
     /**
      * Gets called within a transactional context. Begins a transaction,
@@ -65,11 +87,13 @@ public class DatabaseCtx {
     public <T> T doInTransaction(TransactionCallback<T> callback)
             throws Exception {
         Session session = null;
+        Timer.Context timerContext = null;
         try {
             boolean newTransaction = false;
 
             session = getSession();
             if (session.getTransaction().getStatus() == TransactionStatus.NOT_ACTIVE) {
+                timerContext = transactionTimer.time();
                 session.beginTransaction();
                 newTransaction = true;
             }
@@ -100,6 +124,10 @@ public class DatabaseCtx {
             }
 
             throw customizeException(e);
+        } finally {
+            if (timerContext != null) {
+                timerContext.stop();
+            }
         }
     }
 
@@ -107,8 +135,13 @@ public class DatabaseCtx {
      * @return the current session
      */
     public Session getSession() {
-        return getSessionFactory(sessionFactoryName, interceptor)
-                .getCurrentSession();
+        SessionFactory factory = sessionFactory;
+        if (factory == null || factory.isClosed()) {
+            factory = getSessionFactory(sessionFactoryName, interceptor);
+            sessionFactory = factory;
+        }
+
+        return factory.getCurrentSession();
     }
 
     /**
@@ -154,6 +187,7 @@ public class DatabaseCtx {
      * Closes the session factory.
      */
     public void closeSessionFactory() {
+        sessionFactory = null;
         HibernateUtil.closeSessionFactory(sessionFactoryName);
     }
 
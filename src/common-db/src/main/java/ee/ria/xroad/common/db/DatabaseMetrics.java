@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.db;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-database metrics. The HikariCP pool of every session factory reports its connection wait time and
+ * active/idle connection counts under {@code <database>.pool.*}, and {@link DatabaseCtx} reports the duration
+ * of its transactions under {@code <database>.transaction}. The metrics are exported via JMX once the first
+ * session factory has been created, until all session factories are closed.
+ */
+@Slf4j
+public final class DatabaseMetrics {
+
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    private static JmxReporter reporter;
+
+    private DatabaseMetrics() {
+    }
+
+    /**
+     * @return the registry holding the metrics of all databases
+     */
+    public static MetricRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Returns the transaction duration timer of the given database.
+     * @param name the session factory name of the database
+     * @return the timer
+     */
+    public static Timer transactionTimer(String name) {
+        return REGISTRY.timer(MetricRegistry.name(name, "transaction"));
+    }
+
+    static synchronized void startReporting() {
+        if (reporter == null) {
+            log.trace("Starting database metrics JMX reporter");
+
+            reporter = JmxReporter.forRegistry(REGISTRY)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            reporter.start();
+        }
+    }
+
+    static synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.stop();
+            reporter = null;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.util.PrefixedProperties;
 
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
@@ -36,6 +37,7 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
 import org.hibernate.internal.util.config.ConfigurationHelper;
 
 import java.io.FileInputStream;
@@ -43,9 +45,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DATABASE_ERROR;
 
@@ -63,7 +65,9 @@ public final class HibernateUtil {
     private HibernateUtil() {
     }
 
-    private static Map<String, SessionFactoryCtx> sessionFactoryCache = new HashMap<>();
+    private static final String HIKARI_POOL_NAME = "hibernate.hikari.poolName";
+
+    private static final Map<String, SessionFactoryCtx> SESSION_FACTORY_CACHE = new ConcurrentHashMap<>();
 
     /**
      * Returns the session factory for the given session factory name.
@@ -72,25 +76,35 @@ public final class HibernateUtil {
      * @param name the name of the session factory
      * @return the session factory
      */
-    public static synchronized SessionFactory getSessionFactory(String name) {
+    public static SessionFactory getSessionFactory(String name) {
         return getSessionFactory(name, null);
     }
 
     /**
      * Returns the session factory for the given session factory name.
      * If the session factory has not been already created, it is created and stored in the cache.
+     * Looking up an already created session factory does not lock.
      *
      * @param name        the name of the session factory
      * @param interceptor the interceptor to use on sessions created with this factory
      * @return the session factory
      */
-    public static synchronized SessionFactory getSessionFactory(String name, Interceptor interceptor) {
-        if (sessionFactoryCache.containsKey(name)) {
-            return sessionFactoryCache.get(name).getSessionFactory();
+    public static SessionFactory getSessionFactory(String name, Interceptor interceptor) {
+        SessionFactoryCtx ctx = SESSION_FACTORY_CACHE.get(name);
+        if (ctx != null) {
+            return ctx.getSessionFactory();
+        }
+
+        return createSessionFactory(name, interceptor);
+    }
+
+    private static synchronized SessionFactory createSessionFactory(String name, Interceptor interceptor) {
+        if (SESSION_FACTORY_CACHE.containsKey(name)) {
+            return SESSION_FACTORY_CACHE.get(name).getSessionFactory();
         } else {
             try {
                 SessionFactoryCtx ctx = createSessionFactoryCtx(name, interceptor);
-                sessionFactoryCache.put(name, ctx);
+                SESSION_FACTORY_CACHE.put(name, ctx);
 
                 return ctx.getSessionFactory();
             } catch (Exception e) {
@@ -109,9 +123,8 @@ public final class HibernateUtil {
     public static synchronized void closeSessionFactory(String name) {
         log.trace("closeSessionFactory({})", name);
 
-        if (sessionFactoryCache.containsKey(name)) {
-            closeSessionFactory(sessionFactoryCache.get(name));
-            sessionFactoryCache.remove(name);
+        if (SESSION_FACTORY_CACHE.containsKey(name)) {
+            closeSessionFactory(SESSION_FACTORY_CACHE.remove(name));
         }
     }
 
@@ -121,13 +134,14 @@ public final class HibernateUtil {
     public static synchronized void closeSessionFactories() {
         log.trace("closeSessionFactories()");
 
-        Collection<SessionFactoryCtx> sessionFactories = new ArrayList<>(sessionFactoryCache.values());
+        Collection<SessionFactoryCtx> sessionFactories = new ArrayList<>(SESSION_FACTORY_CACHE.values());
 
         for (SessionFactoryCtx ctx : sessionFactories) {
             closeSessionFactory(ctx);
         }
 
-        sessionFactoryCache.clear();
+        SESSION_FACTORY_CACHE.clear();
+        DatabaseMetrics.stopReporting();
     }
 
     private static void closeSessionFactory(SessionFactoryCtx ctx) {
@@ -159,11 +173,35 @@ public final class HibernateUtil {
         applyDatabasePropertyFile(configuration, name);
         applySystemProperties(configuration, name);
 
+        if (configuration.getProperty(HIKARI_POOL_NAME) == null) {
+            configuration.setProperty(HIKARI_POOL_NAME, name);
+        }
+
         SessionFactory sessionFactory = configuration.buildSessionFactory();
+        registerPoolMetrics(sessionFactory, name);
+        DatabaseMetrics.startReporting();
 
         return new SessionFactoryCtx(sessionFactory);
     }
 
+    private static void registerPoolMetrics(SessionFactory sessionFactory, String name) {
+        try {
+            ConnectionProvider connectionProvider = sessionFactory.getSessionFactoryOptions()
+                    .getServiceRegistry()
+                    .getService(ConnectionProvider.class);
+
+            if (connectionProvider == null || !connectionProvider.isUnwrappableAs(HikariDataSource.class)) {
+                log.debug("Session factory '{}' does not use a HikariCP pool, pool metrics not available", name);
+
+                return;
+            }
+
+            connectionProvider.unwrap(HikariDataSource.class).setMetricRegistry(DatabaseMetrics.getRegistry());
+        } catch (RuntimeException e) {
+            log.warn("Failed to register pool metrics for session factory '{}'", name, e);
+        }
+    }
+
     private static void applySystemProperties(Configuration configuration, String name) {
         final String prefix = name + ".hibernate.";
         for (String key : System.getProperties().stringPropertyNames()) {
@@ -53,9 +53,29 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
+    private static final int DEFAULT_TIMESTAMPER_HEDGE_DELAY = 3000;
+
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_ARCHIVE_WORKER_COUNT = 4;
+
+    private static final int DEFAULT_ARCHIVE_WORKER_MAX_PENDING_BYTES = 67108864;
+
+    private static final int DEFAULT_TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW = 10;
+
+    private static final int DEFAULT_TIMESTAMP_IMMEDIATELY_COALESCE_SIZE = 100;
+
+    private static final int DEFAULT_WRITER_COUNT = 2;
+
+    private static final int DEFAULT_WRITER_BATCH_SIZE = 100;
+
+    private static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int DEFAULT_JOURNAL_SYNC_INTERVAL = 10;
+
+    private static final int DEFAULT_JOURNAL_SYNC_SIZE = 1024 * 1024;
+
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
 
@@ -67,8 +87,17 @@ public final class MessageLogProperties {
     /** Property name of the timestamper client read timeout (milliseconds). */
     public static final String TIMESTAMPER_CLIENT_READ_TIMEOUT = PREFIX + "timestamper-client-read-timeout";
 
+    /** Property name of the time to wait for a time-stamp before also requesting it from the next TSP (milliseconds) */
+    public static final String TIMESTAMPER_HEDGE_DELAY = PREFIX + "timestamper-hedge-delay";
+
     public static final String TIMESTAMP_IMMEDIATELY = PREFIX + "timestamp-immediately";
 
+    /** Property name of the time to collect immediate time-stamp requests into one request (milliseconds) */
+    public static final String TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW = PREFIX + "timestamp-immediately-coalesce-window";
+
+    /** Property name of the maximum number of message records time-stamped together in timestamp-immediately mode */
+    public static final String TIMESTAMP_IMMEDIATELY_COALESCE_SIZE = PREFIX + "timestamp-immediately-coalesce-size";
+
     public static final String TIMESTAMP_RECORDS_LIMIT = PREFIX + "timestamp-records-limit";
 
     /** Property name of the timestamp retry delay (seconds). */
@@ -86,6 +115,12 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    /** Property name of the number of threads creating ASiC containers for the archive */
+    public static final String ARCHIVE_WORKER_COUNT = PREFIX + "archive-worker-count";
+
+    /** Property name of the maximum size of the ASiC containers being created in memory for the archive */
+    public static final String ARCHIVE_WORKER_MAX_PENDING_BYTES = PREFIX + "archive-worker-max-pending-bytes";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
@@ -94,6 +129,27 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
 
+    /** Property name of the number of parallel message record writers */
+    public static final String WRITER_COUNT = PREFIX + "writer-count";
+
+    /** Property name of the maximum number of message records a writer saves in one transaction */
+    public static final String WRITER_BATCH_SIZE = PREFIX + "writer-batch-size";
+
+    /** Property name for toggling the message log journal on/off */
+    public static final String JOURNAL_ENABLED = PREFIX + "journal-enabled";
+
+    /** Property name of the message log journal directory */
+    public static final String JOURNAL_PATH = PREFIX + "journal-path";
+
+    /** Property name of the message log journal segment file size (bytes) */
+    public static final String JOURNAL_SEGMENT_SIZE = PREFIX + "journal-segment-size";
+
+    /** Property name of the maximum time to wait before syncing the message log journal (milliseconds) */
+    public static final String JOURNAL_SYNC_INTERVAL = PREFIX + "journal-sync-interval";
+
+    /** Property name of the amount of appended data after which the message log journal is synced (bytes) */
+    public static final String JOURNAL_SYNC_SIZE = PREFIX + "journal-sync-size";
+
     /**
      * Property name for toggling SOAP body logging on/off
      * @deprecated
@@ -148,6 +204,15 @@ public final class MessageLogProperties {
                 DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT);
     }
 
+    /**
+     * @return the time in milliseconds to wait for a time-stamp response before also sending the request to the
+     * next time-stamping service. A delay of zero is interpreted as the services are tried one at a time.
+     * '3000' by default.
+     */
+    public static int getTimestamperHedgeDelay() {
+        return getInt(System.getProperty(TIMESTAMPER_HEDGE_DELAY), DEFAULT_TIMESTAMPER_HEDGE_DELAY);
+    }
+
     /**
      * @return the timestamp retry delay in seconds. A retry delay of zero is
      * interpreted as retry delay is disabled. '60' by default.
@@ -165,6 +230,24 @@ public final class MessageLogProperties {
         return "true".equalsIgnoreCase(System.getProperty(TIMESTAMP_IMMEDIATELY, "false"));
     }
 
+    /**
+     * @return the time in milliseconds during which immediate time-stamp requests are collected and time-stamped
+     * together, '10' by default. If 0, every message is time-stamped separately.
+     */
+    public static int getTimestampImmediatelyCoalesceWindow() {
+        return getInt(System.getProperty(TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW),
+                DEFAULT_TIMESTAMP_IMMEDIATELY_COALESCE_WINDOW);
+    }
+
+    /**
+     * @return the maximum number of message records time-stamped together in timestamp-immediately mode,
+     * '100' by default.
+     */
+    public static int getTimestampImmediatelyCoalesceSize() {
+        return getInt(System.getProperty(TIMESTAMP_IMMEDIATELY_COALESCE_SIZE),
+                DEFAULT_TIMESTAMP_IMMEDIATELY_COALESCE_SIZE);
+    }
+
     /**
      * @return the maximum number of records to time-stamp in one batch.
      */
@@ -195,6 +278,23 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the number of threads creating ASiC containers for the archive, '4' by default. If 0, the containers
+     * are created by the archiver itself.
+     */
+    public static int getArchiveWorkerCount() {
+        return getInt(System.getProperty(ARCHIVE_WORKER_COUNT), DEFAULT_ARCHIVE_WORKER_COUNT);
+    }
+
+    /**
+     * @return the maximum approximate size in bytes of the ASiC containers being created in memory for the archive
+     * at once, '67108864' (64 MiB) by default. Records larger than 1/8 of this and records with attachments are
+     * streamed to the archive file instead.
+     */
+    public static int getArchiveWorkerMaxPendingBytes() {
+        return getInt(System.getProperty(ARCHIVE_WORKER_MAX_PENDING_BYTES), DEFAULT_ARCHIVE_WORKER_MAX_PENDING_BYTES);
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -294,6 +394,60 @@ public final class MessageLogProperties {
         return Boolean.getBoolean(REST_TRUNCATED_BODY_ALLOWED);
     }
 
+    /**
+     * @return the number of parallel message record writers, '2' by default. If 0, the message records are
+     * written by the log manager itself.
+     */
+    public static int getWriterCount() {
+        return getInt(System.getProperty(WRITER_COUNT), DEFAULT_WRITER_COUNT);
+    }
+
+    /**
+     * @return the maximum number of message records a writer saves in one transaction, '100' by default.
+     */
+    public static int getWriterBatchSize() {
+        return getInt(System.getProperty(WRITER_BATCH_SIZE), DEFAULT_WRITER_BATCH_SIZE);
+    }
+
+    /**
+     * @return true if the message records are appended to a local journal and saved to the database in the
+     * background, 'false' by default.
+     */
+    public static boolean isJournalEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(JOURNAL_ENABLED, "false"));
+    }
+
+    /**
+     * @return the path to the directory of the message log journal, '/var/lib/xroad/messagelog-journal' by
+     * default.
+     */
+    public static String getJournalPath() {
+        return System.getProperty(JOURNAL_PATH, "/var/lib/xroad/messagelog-journal");
+    }
+
+    /**
+     * @return the size of a message log journal segment file in bytes, '67108864' by default.
+     */
+    public static int getJournalSegmentSize() {
+        return getInt(System.getProperty(JOURNAL_SEGMENT_SIZE), DEFAULT_JOURNAL_SEGMENT_SIZE);
+    }
+
+    /**
+     * @return the maximum time in milliseconds the appended message records wait before the message log journal
+     * is synced, '10' by default.
+     */
+    public static int getJournalSyncInterval() {
+        return getInt(System.getProperty(JOURNAL_SYNC_INTERVAL), DEFAULT_JOURNAL_SYNC_INTERVAL);
+    }
+
+    /**
+     * @return the amount of appended data in bytes after which the message log journal is synced at once,
+     * '1048576' by default.
+     */
+    public static int getJournalSyncSize() {
+        return getInt(System.getProperty(JOURNAL_SYNC_SIZE), DEFAULT_JOURNAL_SYNC_SIZE);
+    }
+
     public static int getCleanTransactionBatchSize() {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
@@ -26,6 +26,7 @@ package ee.ria.xroad.common.messagelog;
 
 import ee.ria.xroad.common.asic.AsicContainer;
 import ee.ria.xroad.common.asic.TimestampData;
+import ee.ria.xroad.common.hashchain.CompactHashChain;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.signature.SignatureData;
@@ -171,7 +172,7 @@ public class MessageRecord extends AbstractLogRecord {
             timestamp = new TimestampData(
                     timestampRecord.getTimestamp(),
                     timestampRecord.getHashChainResult(),
-                    timestampHashChain);
+                    CompactHashChain.toXml(timestampHashChain));
         }
 
         return new AsicContainer(message, signatureData, timestamp,
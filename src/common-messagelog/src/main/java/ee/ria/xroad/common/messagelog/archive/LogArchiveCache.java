@@ -34,6 +34,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -50,6 +51,7 @@ import java.util.zip.ZipOutputStream;
 import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveMaxFilesize;
 import static ee.ria.xroad.common.messagelog.archive.LogArchiveWriter.MAX_RANDOM_GEN_ATTEMPTS;
+import static org.apache.commons.lang3.StringUtils.length;
 
 /**
  * Encapsulates logic of creating log archive from ASiC containers.
@@ -86,11 +88,68 @@ class LogArchiveCache implements Closeable {
         reset();
     }
 
+    /**
+     * ASiC container of a message record, written out to memory and digested.
+     */
+    static final class Entry {
+        final MessageRecord messageRecord;
+        final byte[] container;
+        final byte[] digest;
+
+        private Entry(MessageRecord messageRecord, byte[] container, byte[] digest) {
+            this.messageRecord = messageRecord;
+            this.container = container;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Creates the archive entry of the message record in memory. Does not depend on the state of the cache, so
+     * entries can be created in parallel and added to the cache afterwards. Meant for small records only, large
+     * records and records with attachments should be streamed to the archive with {@link #add(MessageRecord)}.
+     * @param messageRecord the message record
+     * @return the archive entry
+     * @throws Exception if creating the ASiC container fails
+     */
+    static Entry createEntry(MessageRecord messageRecord) throws Exception {
+        validateMessageRecord(messageRecord);
+
+        final MessageDigest digest = MessageDigest.getInstance(MessageLogProperties.getHashAlg());
+        final ByteArrayOutputStream container = new ByteArrayOutputStream();
+
+        try (OutputStream out = new DigestOutputStream(container, digest)) {
+            messageRecord.toAsicContainer().write(out);
+        }
+
+        return new Entry(messageRecord, container.toByteArray(), digest.digest());
+    }
+
+    /**
+     * Returns the approximate size of the ASiC container of the message record, not counting the attachment.
+     * @param messageRecord the message record
+     * @return approximate size of the container in bytes
+     */
+    static long estimateSize(MessageRecord messageRecord) {
+        return (long) length(messageRecord.getMessage()) + length(messageRecord.getSignature())
+                + length(messageRecord.getHashChain()) + length(messageRecord.getHashChainResult())
+                + length(messageRecord.getTimestampHashChain());
+    }
+
     void add(MessageRecord messageRecord) throws Exception {
         try {
             validateMessageRecord(messageRecord);
             handleRotation();
-            cacheRecord(messageRecord);
+            cacheRecord(messageRecord, null);
+            updateState();
+        } catch (Exception e) {
+            handleCacheError(e);
+        }
+    }
+
+    void addEntry(Entry entry) throws Exception {
+        try {
+            handleRotation();
+            cacheRecord(entry.messageRecord, entry);
             updateState();
         } catch (Exception e) {
             handleCacheError(e);
@@ -150,7 +209,7 @@ class LogArchiveCache implements Closeable {
         deleteArchiveArtifacts();
     }
 
-    private void validateMessageRecord(MessageRecord record) {
+    private static void validateMessageRecord(MessageRecord record) {
         if (record == null) {
             throw new IllegalArgumentException(
                     "Message record to be archived must not be null");
@@ -166,7 +225,7 @@ class LogArchiveCache implements Closeable {
     }
 
     @SuppressWarnings("checkstyle:InnerAssignment")
-    private void cacheRecord(MessageRecord messageRecord) throws Exception {
+    private void cacheRecord(MessageRecord messageRecord, Entry entry) throws Exception {
         final Date creationTime = new Date(messageRecord.getTime());
 
         if (minCreationTime == null && maxCreationTime == null) {
@@ -176,7 +235,12 @@ class LogArchiveCache implements Closeable {
         } else if (creationTime.after(maxCreationTime)) {
             maxCreationTime = creationTime;
         }
-        addContainerToArchive(messageRecord);
+
+        if (entry != null) {
+            addEntryToArchive(entry);
+        } else {
+            addContainerToArchive(messageRecord);
+        }
     }
 
     private void updateState() {
@@ -188,10 +252,7 @@ class LogArchiveCache implements Closeable {
     }
 
     private void addContainerToArchive(MessageRecord record) throws Exception {
-        String archiveFilename =
-                nameGenerator.getArchiveFilename(record.getQueryId(),
-                        record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
-                                : AsicContainerNameGenerator.TYPE_REQUEST);
+        String archiveFilename = getArchiveFilename(record);
 
         final MessageDigest digest = MessageDigest.getInstance(MessageLogProperties.getHashAlg());
         archiveTmp.putNextEntry(new ZipEntry(archiveFilename));
@@ -208,6 +269,22 @@ class LogArchiveCache implements Closeable {
         linkingInfoBuilder.addNextFile(archiveFilename, digest.digest());
     }
 
+    private void addEntryToArchive(Entry entry) throws Exception {
+        String archiveFilename = getArchiveFilename(entry.messageRecord);
+
+        archiveTmp.putNextEntry(new ZipEntry(archiveFilename));
+        archiveTmp.write(entry.container);
+        archiveTmp.closeEntry();
+        archivesTotalSize += entry.container.length;
+        linkingInfoBuilder.addNextFile(archiveFilename, entry.digest);
+    }
+
+    private String getArchiveFilename(MessageRecord record) {
+        return nameGenerator.getArchiveFilename(record.getQueryId(),
+                record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
+                        : AsicContainerNameGenerator.TYPE_REQUEST);
+    }
+
     private void reset() {
         try {
             resetArchive();
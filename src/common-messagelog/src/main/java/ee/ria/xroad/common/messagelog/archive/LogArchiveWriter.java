@@ -35,6 +35,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
@@ -44,6 +49,12 @@ import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
 /**
  * Class for writing log records to zip file containing ASiC containers
  * (archive).
+ *
+ * If an executor is given, the ASiC containers of small message records are
+ * created in memory and digested by the executor while the records are written
+ * to the archive in their original order by the calling thread. Large records
+ * and records with attachments are always streamed to the archive by the
+ * calling thread.
  */
 @Slf4j
 public class LogArchiveWriter implements Closeable {
@@ -54,22 +65,64 @@ public class LogArchiveWriter implements Closeable {
 
     private static final int RANDOM_LENGTH = 10;
 
+    // A record is created in memory only if at least this many records of its size fit in the pending bytes limit
+    private static final int MIN_PENDING_RECORDS = 8;
+
     private final Path outputPath;
     private final LogArchiveBase archiveBase;
 
     private final LinkingInfoBuilder linkingInfoBuilder;
     private final LogArchiveCache logArchiveCache;
 
+    private final Executor entryExecutor;
+    private final long maxPendingBytes;
+
+    // Records whose archive entries are being created, in the order they were written
+    private final Deque<PendingRecord> pendingRecords = new ArrayDeque<>();
+
+    // Approximate size of the archive entries being created
+    private long pendingBytes;
+
     private Path archiveTmp;
 
+    // Set if writing a pending record failed, the rest of the pending records are then discarded
+    private boolean failed;
+
+    private static final class PendingRecord {
+        final LogRecord logRecord;
+        final CompletableFuture<LogArchiveCache.Entry> entry;
+        final long size;
+
+        PendingRecord(LogRecord logRecord, CompletableFuture<LogArchiveCache.Entry> entry, long size) {
+            this.logRecord = logRecord;
+            this.entry = entry;
+            this.size = size;
+        }
+    }
+
     /**
      * Creates new LogArchiveWriter
      * @param outputPath  directory where the log archive is created.
      * @param archiveBase interface to archive database.
      */
     public LogArchiveWriter(Path outputPath, LogArchiveBase archiveBase) {
+        this(outputPath, archiveBase, null, 0);
+    }
+
+    /**
+     * Creates new LogArchiveWriter that creates the archive entries in parallel.
+     * @param outputPath  directory where the log archive is created.
+     * @param archiveBase interface to archive database.
+     * @param entryExecutor executor for creating the archive entries, null to create them in the calling thread.
+     * @param maxPendingBytes maximum approximate size of the archive entries that are being created in memory at
+     * once. Records larger than a fraction of this are streamed to the archive by the calling thread.
+     */
+    public LogArchiveWriter(Path outputPath, LogArchiveBase archiveBase, Executor entryExecutor,
+            long maxPendingBytes) {
         this.outputPath = outputPath;
         this.archiveBase = archiveBase;
+        this.entryExecutor = entryExecutor;
+        this.maxPendingBytes = maxPendingBytes;
 
         this.linkingInfoBuilder = new LinkingInfoBuilder(
                 MessageLogProperties.getHashAlg(),
@@ -96,10 +149,106 @@ public class LogArchiveWriter implements Closeable {
 
         if (log.isTraceEnabled()) log.trace("write({})", logRecord.getId());
 
+        if (entryExecutor == null) {
+            return writeRecord(logRecord);
+        }
+
+        if (logRecord instanceof MessageRecord && !isCreatedInMemory((MessageRecord) logRecord)) {
+            // Write the pending records first to keep the original order
+            boolean rotated = flush();
+            rotated |= writeRecord(logRecord);
+
+            return rotated;
+        }
+
+        long size = logRecord instanceof MessageRecord ? LogArchiveCache.estimateSize((MessageRecord) logRecord) : 0;
+
+        boolean rotated = false;
+        while (!pendingRecords.isEmpty() && pendingBytes + size > maxPendingBytes) {
+            rotated |= writeNextPending();
+        }
+
+        pendingRecords.add(new PendingRecord(logRecord, createEntry(logRecord), size));
+        pendingBytes += size;
+
+        return rotated;
+    }
+
+    /**
+     * Writes the records whose archive entries are being created.
+     * @return true if the archive file was rotated
+     * @throws Exception in case of any errors
+     */
+    public boolean flush() throws Exception {
+        boolean rotated = false;
+        while (!pendingRecords.isEmpty()) {
+            rotated |= writeNextPending();
+        }
+
+        return rotated;
+    }
+
+    private boolean writeRecord(LogRecord logRecord) throws Exception {
         if (logRecord instanceof MessageRecord) {
-            logArchiveCache.add((MessageRecord)logRecord);
+            logArchiveCache.add((MessageRecord) logRecord);
+        }
+
+        return recordWritten(logRecord);
+    }
+
+    private boolean isCreatedInMemory(MessageRecord messageRecord) {
+        // The attachment is read from the database connection, which must not be used by other threads, and can be
+        // too large to be kept in memory
+        return messageRecord.getAttachment() == null
+                && LogArchiveCache.estimateSize(messageRecord) <= maxPendingBytes / MIN_PENDING_RECORDS;
+    }
+
+    private CompletableFuture<LogArchiveCache.Entry> createEntry(LogRecord logRecord) {
+        if (!(logRecord instanceof MessageRecord)) {
+            return CompletableFuture.completedFuture(null);
         }
 
+        MessageRecord messageRecord = (MessageRecord) logRecord;
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return LogArchiveCache.createEntry(messageRecord);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, entryExecutor);
+    }
+
+    private boolean writeNextPending() throws Exception {
+        PendingRecord pending = pendingRecords.remove();
+        pendingBytes -= pending.size;
+
+        try {
+            LogArchiveCache.Entry entry = getEntry(pending);
+
+            if (entry != null) {
+                logArchiveCache.addEntry(entry);
+            }
+
+            return recordWritten(pending.logRecord);
+        } catch (Exception e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private static LogArchiveCache.Entry getEntry(PendingRecord pending) throws Exception {
+        try {
+            return pending.entry.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof IllegalStateException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private boolean recordWritten(LogRecord logRecord) throws Exception {
         archiveBase.markRecordArchived(logRecord);
 
         if (logArchiveCache.isRotating()) {
@@ -114,8 +263,19 @@ public class LogArchiveWriter implements Closeable {
         log.trace("Closing log archive writer ...");
 
         try {
+            if (!failed) {
+                flush();
+            }
+
             saveArchive();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
         } finally {
+            pendingRecords.forEach(pending -> pending.entry.cancel(false));
+            pendingRecords.clear();
+            pendingBytes = 0;
             logArchiveCache.close();
             clearTempArchive();
         }
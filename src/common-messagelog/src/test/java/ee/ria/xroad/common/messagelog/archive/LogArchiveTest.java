@@ -32,6 +32,7 @@ import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -40,7 +41,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -51,9 +57,15 @@ public class LogArchiveTest {
 
     private static final int NUM_TIMESTAMPS = 3;
     private static final int NUM_RECORDS_PER_TIMESTAMP = 5;
+    private static final int MAX_PENDING_BYTES = 1024;
+    private static final int LARGE_MESSAGE_SIZE = 1000;
 
     private static boolean rotated;
     private long recordNo;
+    private final List<Long> writtenRecordIds = new ArrayList<>();
+    private final List<Long> archivedRecordIds = new ArrayList<>();
+    private ExecutorService entryExecutor;
+    private int largeRecordInterval;
 
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
@@ -66,11 +78,19 @@ public class LogArchiveTest {
     public void beforeTest() throws Exception {
         recordNo = 0;
         rotated = false;
+        writtenRecordIds.clear();
+        archivedRecordIds.clear();
+        entryExecutor = null;
+        largeRecordInterval = 0;
         Files.createDirectory(Paths.get("build/slog"));
     }
 
     @After
     public void afterTest() {
+        if (entryExecutor != null) {
+            entryExecutor.shutdownNow();
+        }
+
         FileUtils.deleteQuietly(Paths.get("build/slog").toFile());
     }
 
@@ -99,6 +119,41 @@ public class LogArchiveTest {
         assertTrue(rotated);
     }
 
+    /**
+     * Writes many records, creating the archive entries in parallel, and rotates to new file.
+     * The records must be archived in their original order.
+     * @throws Exception - when cannot either write or rotate
+     */
+    @Test
+    public void writeInParallelAndRotate() throws Exception {
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "50");
+        entryExecutor = Executors.newFixedThreadPool(4);
+
+        writeRecordsToLog(false);
+        assertTrue(rotated);
+
+        assertEquals(NUM_TIMESTAMPS * (NUM_RECORDS_PER_TIMESTAMP + 1), archivedRecordIds.size());
+        assertEquals(writtenRecordIds, archivedRecordIds);
+    }
+
+    /**
+     * Writes records, creating the archive entries of small records in parallel and streaming the large records,
+     * and rotates to new file. The records must be archived in their original order.
+     * @throws Exception - when cannot either write or rotate
+     */
+    @Test
+    public void writeLargeRecordsInParallelAndRotate() throws Exception {
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "50");
+        entryExecutor = Executors.newFixedThreadPool(4);
+        largeRecordInterval = 3;
+
+        writeRecordsToLog(false);
+        assertTrue(rotated);
+
+        assertEquals(NUM_TIMESTAMPS * (NUM_RECORDS_PER_TIMESTAMP + 1), archivedRecordIds.size());
+        assertEquals(writtenRecordIds, archivedRecordIds);
+    }
+
     // ------------------------------------------------------------------------
 
     private void writeRecordsToLog(boolean finishAfterRotate) throws Exception {
@@ -110,11 +165,14 @@ public class LogArchiveTest {
                     MessageRecord messageRecord = nextMessageRecord();
                     messageRecord.setTimestampRecord(ts);
                     messageRecord.setTimestampHashChain("foo");
+                    writtenRecordIds.add(messageRecord.getId());
 
                     if (writer.write(messageRecord) && finishAfterRotate) {
                         break outer;
                     }
                 }
+                writtenRecordIds.add(ts.getId());
+                writer.write(ts);
             }
         }
     }
@@ -122,7 +180,9 @@ public class LogArchiveTest {
     private LogArchiveWriter getWriter() {
         return new LogArchiveWriter(
                 Paths.get("build/slog"),
-                dummyLogArchiveBase()) {
+                dummyLogArchiveBase(),
+                entryExecutor,
+                MAX_PENDING_BYTES) {
 
             @Override
             protected void rotate() throws IOException {
@@ -143,7 +203,7 @@ public class LogArchiveTest {
             @Override
             public void markRecordArchived(LogRecord logRecord)
                     throws Exception {
-                // Do nothing.
+                archivedRecordIds.add(logRecord.getId());
             }
 
             @Override
@@ -156,8 +216,11 @@ public class LogArchiveTest {
     private MessageRecord nextMessageRecord() {
         recordNo++;
 
+        String message = largeRecordInterval > 0 && recordNo % largeRecordInterval == 0
+                ? StringUtils.repeat('x', LARGE_MESSAGE_SIZE) : "msg" + recordNo;
+
         MessageRecord record = new MessageRecord("qid" + recordNo,
-                "msg" + recordNo, "sig" + recordNo, false,
+                message, "sig" + recordNo, false,
                 ClientId.create("memberClass", "memberCode", "subsystemCode"),
                 "92060130-3ba8-4e35-89e2-41b90aac074b");
         record.setId(recordNo);
@@ -60,6 +60,13 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_SENDING_INTERVAL_SECONDS =
             PREFIX + "op-monitor-buffer.sending-interval-seconds";
 
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer sends to the operational
+     * monitoring daemon at the same time.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_CONCURRENT_SENDS =
+            PREFIX + "op-monitor-buffer.max-concurrent-sends";
+
 
     /**
      * Property name of the operational monitoring buffer HTTP client SO_TIMEOUT seconds.
@@ -170,6 +177,13 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_RECORDS_IN_MESSAGE, "100"));
     }
 
+    /**
+     * @return max number of messages sent to the operational monitoring daemon at the same time, '4' by default.
+     */
+    public static int getOpMonitorBufferMaxConcurrentSends() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_CONCURRENT_SENDS, "4"));
+    }
+
     /**
      * @return the interval in seconds at which operational monitoring buffer additionally tries to send records to the
      * operational monitoring daemon, '5' by default.
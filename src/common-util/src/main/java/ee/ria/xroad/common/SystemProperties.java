@@ -212,6 +212,21 @@ public final class SystemProperties {
     private static final String SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS =
             PREFIX + "proxy.server-support-clients-pooled-connections";
 
+    /**
+     * Property name of the switch that makes the server proxy send SOAP requests to the services with an
+     * asynchronous HTTP client, releasing the request thread while the service request is in flight
+     */
+    private static final String SERVERPROXY_ASYNC_SERVICE_REQUESTS =
+            PREFIX + "proxy.server-async-service-requests";
+
+    /** Property name of the number of threads that process the asynchronously received service responses */
+    private static final String SERVERPROXY_ASYNC_RESPONSE_THREADS =
+            PREFIX + "proxy.server-async-response-threads";
+
+    /** Property name of the number of asynchronously received service responses that can wait for a thread */
+    private static final String SERVERPROXY_ASYNC_RESPONSE_QUEUE_SIZE =
+            PREFIX + "proxy.server-async-response-queue-size";
+
     /**
      * Property name of the idle time that connections to the clientproxy connector are initially allowed,
      * in milliseconds
@@ -265,12 +280,56 @@ public final class SystemProperties {
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /**
+     * Property name of the number of connections the client proxy keeps open to each of its most used partner
+     * security server groups, 0 disables opening the connections in advance
+     */
+    private static final String CLIENTPROXY_POOL_PREWARM_CONNECTIONS = PREFIX + "proxy.pool-prewarm-connections";
+
+    /** Property name of the maximum number of most used partners the client proxy keeps connections open to */
+    private static final String CLIENTPROXY_POOL_PREWARM_PARTNERS = PREFIX + "proxy.pool-prewarm-partners";
+
+    /** Property name of the interval in milliseconds at which the client proxy opens the partner connections */
+    private static final String CLIENTPROXY_POOL_PREWARM_INTERVAL = PREFIX + "proxy.pool-prewarm-interval";
+
+    /**
+     * Property name of the switch that makes the client proxy process SOAP requests on the request thread,
+     * streaming the decoded parts directly to the server proxy instead of through a separate handler thread
+     */
+    private static final String CLIENTPROXY_SOAP_STREAMING = PREFIX + "proxy.client-soap-streaming";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
 
     private static final String PROXY_ACTORSYSTEM_PORT = PREFIX + "proxy.actorsystem-port";
 
+    private static final String PROXY_BATCH_SIGNER_MAX_CONCURRENT_SIGNS =
+            PREFIX + "proxy.batch-signer-max-concurrent-signs";
+
+    private static final String PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = PREFIX + "proxy.batch-signer-max-batch-size";
+
+    /**
+     * Property name of the switch that makes the SOAP parser stop parsing the message after the beginning of the
+     * SOAP body, passing the rest of the body through without parsing it
+     */
+    private static final String PROXY_SOAP_HEADER_ONLY_PARSING = PREFIX + "proxy.soap-header-only-parsing";
+
+    /**
+     * Property name of the size in bytes up to which SOAP attachments and REST bodies are cached in memory before
+     * spilling over to a temporary file
+     */
+    private static final String PROXY_ATTACHMENT_CACHE_MEMORY_THRESHOLD =
+            PREFIX + "proxy.attachment-cache-memory-threshold";
+
+    /** Property name of the maximum number of memory buffers kept for reuse by the attachment caches */
+    private static final String PROXY_ATTACHMENT_CACHE_BUFFER_POOL_SIZE =
+            PREFIX + "proxy.attachment-cache-buffer-pool-size";
+
+    /** Property name of the switch that makes the attachment caches use direct memory buffers */
+    private static final String PROXY_ATTACHMENT_CACHE_DIRECT_BUFFERS =
+            PREFIX + "proxy.attachment-cache-direct-buffers";
+
     private static final String DEFAULT_CENTER_TRUSTED_ANCHORS_ALLOWED = "false";
 
     private static final String DEFAULT_CENTER_AUTO_APPROVE_AUTH_CERT_REG_REQUESTS = "false";
@@ -287,6 +346,12 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS = "false";
 
+    private static final String DEFAULT_SERVERPROXY_ASYNC_SERVICE_REQUESTS = "false";
+
+    private static final String DEFAULT_SERVERPROXY_ASYNC_RESPONSE_THREADS = "32";
+
+    private static final String DEFAULT_SERVERPROXY_ASYNC_RESPONSE_QUEUE_SIZE = "256";
+
     private static final String DEFAULT_CLIENTPROXY_CONNECTOR_MAX_IDLE_TIME = "0";
 
     private static final String DEFAULT_CLIENTPROXY_CONNECTOR_SO_LINGER = "-1";
@@ -323,6 +388,22 @@ public final class SystemProperties {
      **/
     private static final String DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS = "false";
 
+    private static final String DEFAULT_CLIENTPROXY_POOL_PREWARM_CONNECTIONS = "0";
+
+    private static final String DEFAULT_CLIENTPROXY_POOL_PREWARM_PARTNERS = "20";
+
+    private static final String DEFAULT_CLIENTPROXY_POOL_PREWARM_INTERVAL = "10000";
+
+    private static final String DEFAULT_CLIENTPROXY_SOAP_STREAMING = "false";
+
+    private static final String DEFAULT_PROXY_SOAP_HEADER_ONLY_PARSING = "false";
+
+    private static final String DEFAULT_PROXY_ATTACHMENT_CACHE_MEMORY_THRESHOLD = "65536";
+
+    private static final String DEFAULT_PROXY_ATTACHMENT_CACHE_BUFFER_POOL_SIZE = "1024";
+
+    private static final String DEFAULT_PROXY_ATTACHMENT_CACHE_DIRECT_BUFFERS = "false";
+
     private static final String DEFAULT_PROXY_HEALTH_CHECK_INTERFACE = "0.0.0.0";
 
     private static final String DEFAULT_PROXY_HEALTH_CHECK_PORT = "0";
@@ -334,6 +415,13 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    /**
+     * Property name of the maximum number of verified certificate chains kept in the cache of the signature verifier
+     */
+    private static final String CERT_CHAIN_VERIFIER_CACHE_SIZE = PREFIX + "proxy.cert-chain-verifier-cache-size";
+
+    private static final String DEFAULT_CERT_CHAIN_VERIFIER_CACHE_SIZE = "1000";
+
 
     // Signer -----------------------------------------------------------------
 
@@ -406,6 +494,10 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the system resource usage sampling interval */
+    public static final String ANTIDOS_RESOURCE_SAMPLE_INTERVAL =
+            PREFIX + "anti-dos.resource-sample-interval";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -1146,6 +1238,21 @@ public final class SystemProperties {
         return Integer.getInteger(PROXY_ACTORSYSTEM_PORT, PortNumbers.PROXY_ACTORSYSTEM_PORT);
     }
 
+    /**
+     * @return the maximum number of concurrent signature calculation requests the proxy sends to the signer
+     * per signing key, '4' by default.
+     */
+    public static int getBatchSignerMaxConcurrentSigns() {
+        return Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_CONCURRENT_SIGNS, "4"));
+    }
+
+    /**
+     * @return the maximum number of messages signed with a single batch signature, '256' by default.
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_BATCH_SIZE, "256"));
+    }
+
     /**
      * @return environmental monitoring port, '2552' by default.
      */
@@ -1244,6 +1351,14 @@ public final class SystemProperties {
         return Double.parseDouble(System.getProperty(ANTIDOS_MAX_HEAP_USAGE, "1.1"));
     }
 
+    /**
+     * @return the interval in milliseconds during which Anti-Dos reuses the
+     * sampled system resource usage, '100' by default.
+     */
+    public static long getAntiDosResourceSampleInterval() {
+        return Long.parseLong(System.getProperty(ANTIDOS_RESOURCE_SAMPLE_INTERVAL, "100"));
+    }
+
     /**
      * @return whether Anti-Dos should be used, 'true' by default.
      */
@@ -1326,6 +1441,15 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return the maximum number of verified certificate chains with their OCSP responses kept in the cache of the
+     * signature verifier, 0 disables the cache. Default is 1000.
+     */
+    public static int getCertChainVerifierCacheSize() {
+        return Integer.parseInt(System.getProperty(CERT_CHAIN_VERIFIER_CACHE_SIZE,
+                DEFAULT_CERT_CHAIN_VERIFIER_CACHE_SIZE));
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1426,11 +1550,78 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS));
     }
 
+    /**
+     * @return true if the client proxy should process SOAP requests on a single thread without a piped stream
+     * between the request parsing and the sending to the server proxy, false by default
+     */
+    public static boolean isClientProxySoapStreamingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_SOAP_STREAMING,
+                DEFAULT_CLIENTPROXY_SOAP_STREAMING));
+    }
+
+    /**
+     * @return true if SOAP messages should be parsed only up to the beginning of the SOAP body, false by default
+     */
+    public static boolean isSoapHeaderOnlyParsingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PROXY_SOAP_HEADER_ONLY_PARSING,
+                DEFAULT_PROXY_SOAP_HEADER_ONLY_PARSING));
+    }
+
+    /**
+     * @return the size in bytes up to which SOAP attachments and REST bodies are cached in memory, 0 caches them
+     * always in a temporary file, '65536' by default
+     */
+    public static long getCachingStreamMemoryThreshold() {
+        return Long.parseLong(System.getProperty(PROXY_ATTACHMENT_CACHE_MEMORY_THRESHOLD,
+                DEFAULT_PROXY_ATTACHMENT_CACHE_MEMORY_THRESHOLD));
+    }
+
+    /**
+     * @return the maximum number of memory buffers kept for reuse by the attachment caches, '1024' by default
+     */
+    public static int getCachingStreamBufferPoolSize() {
+        return Integer.parseInt(System.getProperty(PROXY_ATTACHMENT_CACHE_BUFFER_POOL_SIZE,
+                DEFAULT_PROXY_ATTACHMENT_CACHE_BUFFER_POOL_SIZE));
+    }
+
+    /**
+     * @return true if the attachment caches should use direct memory buffers, false by default
+     */
+    public static boolean isCachingStreamDirectBuffers() {
+        return Boolean.parseBoolean(System.getProperty(PROXY_ATTACHMENT_CACHE_DIRECT_BUFFERS,
+                DEFAULT_PROXY_ATTACHMENT_CACHE_DIRECT_BUFFERS));
+    }
+
     public static boolean isServerProxySupportClientsPooledConnections() {
         return Boolean.parseBoolean(System.getProperty(SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS,
                 DEFAULT_SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS));
     }
 
+    /**
+     * @return true if the server proxy should send SOAP requests to the services asynchronously, false by default
+     */
+    public static boolean isServerProxyAsyncServiceRequestsEnabled() {
+        return Boolean.parseBoolean(System.getProperty(SERVERPROXY_ASYNC_SERVICE_REQUESTS,
+                DEFAULT_SERVERPROXY_ASYNC_SERVICE_REQUESTS));
+    }
+
+    /**
+     * @return the number of threads that process the asynchronously received service responses, 32 by default
+     */
+    public static int getServerProxyAsyncResponseThreads() {
+        return Integer.parseInt(System.getProperty(SERVERPROXY_ASYNC_RESPONSE_THREADS,
+                DEFAULT_SERVERPROXY_ASYNC_RESPONSE_THREADS));
+    }
+
+    /**
+     * @return the number of asynchronously received service responses that can wait for a processing thread before
+     * the requests are failed, 256 by default
+     */
+    public static int getServerProxyAsyncResponseQueueSize() {
+        return Integer.parseInt(System.getProperty(SERVERPROXY_ASYNC_RESPONSE_QUEUE_SIZE,
+                DEFAULT_SERVERPROXY_ASYNC_RESPONSE_QUEUE_SIZE));
+    }
+
     public static int getClientProxyPoolTotalMaxConnections() {
         return Integer.parseInt(System.getProperty(CLIENTPROXY_POOL_TOTAL_MAX_CONNECTIONS,
                 DEFAULT_CLIENTPROXY_POOL_TOTAL_MAX_CONNECTIONS));
@@ -1441,6 +1632,32 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_DEFAULT_MAX_CONN_PER_ROUTE));
     }
 
+    /**
+     * @return the number of connections the client proxy keeps open to each of its most used partners when pooled
+     * connections are reused, '0' (disabled) by default
+     */
+    public static int getClientProxyPoolPrewarmConnections() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_POOL_PREWARM_CONNECTIONS,
+                DEFAULT_CLIENTPROXY_POOL_PREWARM_CONNECTIONS));
+    }
+
+    /**
+     * @return the maximum number of most used partners the client proxy keeps connections open to, '20' by default
+     */
+    public static int getClientProxyPoolPrewarmPartners() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_POOL_PREWARM_PARTNERS,
+                DEFAULT_CLIENTPROXY_POOL_PREWARM_PARTNERS));
+    }
+
+    /**
+     * @return the interval in milliseconds at which the client proxy opens connections to its most used partners,
+     * '10000' by default
+     */
+    public static int getClientProxyPoolPrewarmInterval() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_POOL_PREWARM_INTERVAL,
+                DEFAULT_CLIENTPROXY_POOL_PREWARM_INTERVAL));
+    }
+
     /**
      * @return true if SSL sockets should close the underlying socket layer when the SSL socket is closed
      */
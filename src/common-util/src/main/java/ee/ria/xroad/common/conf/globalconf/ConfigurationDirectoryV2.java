@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -75,6 +76,9 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     private Map<String, PrivateParametersV2> privateParameters = new HashMap<>();
     private Map<String, SharedParametersV2> sharedParameters = new HashMap<>();
 
+    // Incremented every time parameters are loaded, reloaded or removed
+    private final AtomicLong generation = new AtomicLong();
+
     // ------------------------------------------------------------------------
 
     /**
@@ -141,8 +145,26 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             }
         }
 
+        boolean instancesChanged = !privateParams.keySet().equals(privateParameters.keySet())
+                || !sharedParams.keySet().equals(sharedParameters.keySet());
+
         privateParameters = privateParams;
         sharedParameters = sharedParams;
+
+        if (instancesChanged) {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the generation of the configuration. The generation is incremented every time parameters are
+     * loaded, reloaded or removed, so it can be used for detecting whether data derived from the parameters
+     * is still up to date.
+     *
+     * @return the generation of the configuration
+     */
+    public long getGeneration() {
+        return generation.get();
     }
 
     /**
@@ -165,6 +187,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            generation.incrementAndGet();
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -194,6 +217,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            generation.incrementAndGet();
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -375,7 +399,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
     // Loads the parameters from file if the file has changed.
     // Returns the parameters or null if the file does not exist.
-    private static <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
+    private <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
             throws Exception {
         T params = existingInstance != null ? existingInstance : (T) clazz.newInstance();
 
@@ -383,6 +407,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             log.trace("Loading {} from {}", clazz.getSimpleName(), path);
 
             params.load(path.toString());
+            generation.incrementAndGet();
         }
 
         return params;
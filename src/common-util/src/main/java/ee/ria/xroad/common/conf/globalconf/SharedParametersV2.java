@@ -41,8 +41,6 @@ import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 
-import lombok.AccessLevel;
-import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.cert.X509CertificateHolder;
@@ -69,27 +67,11 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 /**
  * Contains shared parameters of a configuration instance.
  */
-@Getter(AccessLevel.PACKAGE)
 public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2> {
 
-    // Cached items, filled at conf reload
-    private final Map<X500Name, X509Certificate> subjectsAndCaCerts =
-            new HashMap<>();
-    private final Map<X509Certificate, String> caCertsAndCertProfiles =
-            new HashMap<>();
-    private final Map<X509Certificate, ApprovedCATypeV2> caCertsAndApprovedCAData =
-            new HashMap<>();
-    private final Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData =
-            new HashMap<>();
-    private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
-    private final Map<ClientId, Set<byte[]>> memberAuthCerts = new HashMap<>();
-    private final Map<String, SecurityServerType> serverByAuthCert =
-            new HashMap<>();
-    private final Map<SecurityServerId, Set<ClientId>> securityServerClients =
-            new HashMap<>();
-    private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
-    private final Set<String> knownAddresses = new HashSet<>();
-    private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
+    // Cached items, filled at conf reload. Replaced as a whole, so that
+    // the readers always see the items of one configuration version.
+    private volatile Caches caches = new Caches();
 
     SharedParametersV2() {
         super(ObjectFactory.class, SharedParametersSchemaValidatorV2.class);
@@ -149,9 +131,75 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             return null;
         }
 
-        return confType.getGlobalGroup().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+        return caches.globalGroupsByCode.get(groupId.getGroupCode());
+    }
+
+    boolean isGlobalGroupMember(GlobalGroupId groupId, ClientId clientId) {
+        if (!groupId.getXRoadInstance().equals(
+                confType.getInstanceIdentifier())) {
+            return false;
+        }
+
+        Set<ClientId> members = caches.globalGroupMembers.get(groupId.getGroupCode());
+
+        return members != null && members.contains(clientId);
+    }
+
+    MemberType findMember(ClientId memberId) {
+        return caches.membersById.get(ClientId.create(memberId.getXRoadInstance(),
+                memberId.getMemberClass(), memberId.getMemberCode()));
+    }
+
+    boolean isOcspResponderCert(X509Certificate caCert, X509Certificate ocspCert) {
+        Set<X509Certificate> responderCerts = caches.ocspResponderCerts.get(caCert);
+
+        return responderCerts != null && responderCerts.contains(ocspCert);
+    }
+
+    boolean authCertMatchesMember(String certHash, ClientId memberId) {
+        Set<String> certHashes = caches.memberAuthCerts.get(memberId);
+
+        return certHashes != null && certHashes.contains(certHash);
+    }
+
+    Map<X500Name, X509Certificate> getSubjectsAndCaCerts() {
+        return caches.subjectsAndCaCerts;
+    }
+
+    Map<X509Certificate, String> getCaCertsAndCertProfiles() {
+        return caches.caCertsAndCertProfiles;
+    }
+
+    Map<X509Certificate, ApprovedCATypeV2> getCaCertsAndApprovedCAData() {
+        return caches.caCertsAndApprovedCAData;
+    }
+
+    Map<X509Certificate, List<OcspInfoType>> getCaCertsAndOcspData() {
+        return caches.caCertsAndOcspData;
+    }
+
+    Map<ClientId, Set<String>> getMemberAddresses() {
+        return caches.memberAddresses;
+    }
+
+    Map<String, SecurityServerType> getServerByAuthCert() {
+        return caches.serverByAuthCert;
+    }
+
+    Map<SecurityServerId, Set<ClientId>> getSecurityServerClients() {
+        return caches.securityServerClients;
+    }
+
+    List<X509Certificate> getVerificationCaCerts() {
+        return caches.verificationCaCerts;
+    }
+
+    Set<String> getKnownAddresses() {
+        return caches.knownAddresses;
+    }
+
+    Map<SecurityServerId, SecurityServerType> getSecurityServersById() {
+        return caches.securityServersById;
     }
 
     X509Certificate getCaCertForSubject(X509Certificate subject)
@@ -162,7 +210,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             return null;
         }
 
-        return subjectsAndCaCerts.get(certHolder.getIssuer());
+        return caches.subjectsAndCaCerts.get(certHolder.getIssuer());
     }
 
     @Override
@@ -174,10 +222,14 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
 
         try {
-            clearCache();
-            cacheCaCerts();
-            cacheKnownAddresses();
-            cacheSecurityServers();
+            Caches newCaches = new Caches();
+
+            cacheCaCerts(newCaches);
+            cacheKnownAddresses(newCaches);
+            cacheSecurityServers(newCaches);
+            cacheMembersAndGlobalGroups(newCaches);
+
+            caches = newCaches;
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -193,29 +245,15 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
 
     // ------------------------------------------------------------------------
 
-    private void clearCache() {
-        subjectsAndCaCerts.clear();
-        caCertsAndCertProfiles.clear();
-        caCertsAndApprovedCAData.clear();
-        caCertsAndOcspData.clear();
-        memberAddresses.clear();
-        memberAuthCerts.clear();
-        serverByAuthCert.clear();
-        securityServerClients.clear();
-        verificationCaCerts.clear();
-        knownAddresses.clear();
-        securityServersById.clear();
-    }
-
-    private void cacheCaCerts() throws CertificateException, IOException {
+    private void cacheCaCerts(Caches c) throws CertificateException, IOException {
         List<X509Certificate> allCaCerts = new ArrayList<>();
 
         for (ApprovedCATypeV2 caType : confType.getApprovedCA()) {
             List<CaInfoType> topCAs = Arrays.asList(caType.getTopCA());
             List<CaInfoType> intermediateCAs = caType.getIntermediateCA();
 
-            cacheOcspData(topCAs);
-            cacheOcspData(intermediateCAs);
+            cacheOcspData(c, topCAs);
+            cacheOcspData(c, intermediateCAs);
 
             List<X509Certificate> pkiCaCerts = new ArrayList<>();
 
@@ -224,13 +262,13 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
 
             Boolean authenticationOnly = caType.isAuthenticationOnly();
             if (authenticationOnly == null || !authenticationOnly) {
-                verificationCaCerts.addAll(pkiCaCerts);
+                c.verificationCaCerts.addAll(pkiCaCerts);
             }
 
             for (X509Certificate pkiCaCert : pkiCaCerts) {
-                caCertsAndCertProfiles.put(pkiCaCert,
+                c.caCertsAndCertProfiles.put(pkiCaCert,
                         caType.getCertificateProfileInfo());
-                caCertsAndApprovedCAData.put(pkiCaCert,
+                c.caCertsAndApprovedCAData.put(pkiCaCert,
                         caType);
             }
             allCaCerts.addAll(pkiCaCerts);
@@ -239,47 +277,47 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         for (X509Certificate cert : allCaCerts) {
             X509CertificateHolder certHolder =
                     new X509CertificateHolder(cert.getEncoded());
-            subjectsAndCaCerts.put(certHolder.getSubject(), cert);
+            c.subjectsAndCaCerts.put(certHolder.getSubject(), cert);
         }
     }
 
-    private void cacheKnownAddresses() {
+    private void cacheKnownAddresses(Caches c) {
         confType.getSecurityServer().stream().map(s -> s.getAddress())
             .filter(StringUtils::isNotBlank)
-            .forEach(knownAddresses::add);
+            .forEach(c.knownAddresses::add);
     }
 
-    private void cacheSecurityServers() {
+    private void cacheSecurityServers(Caches c) {
         // Map of XML ID fields mapped to client IDs
         Map<String, ClientId> clientIds = getClientIds();
 
         for (SecurityServerType securityServer : confType.getSecurityServer()) {
             // Cache the server.
             for (byte[] certHash: securityServer.getAuthCertHash()) {
-                serverByAuthCert.put(encodeBase64(certHash),
+                c.serverByAuthCert.put(encodeBase64(certHash),
                         securityServer);
             }
 
             // Add owner of the security server.
             MemberType owner = (MemberType) securityServer.getOwner();
-            addServerClient(createMemberId(owner), securityServer);
+            addServerClient(c, createMemberId(owner), securityServer);
 
             // cache security server information by serverId
             SecurityServerId securityServerId = SecurityServerId.create(
                     confType.getInstanceIdentifier(),
                     owner.getMemberClass().getCode(),
                     owner.getMemberCode(), securityServer.getServerCode());
-            securityServersById.put(securityServerId, securityServer);
+            c.securityServersById.put(securityServerId, securityServer);
 
             // Add clients of the security server.
             for (JAXBElement<?> client : securityServer.getClient()) {
                 Object val = client.getValue();
 
                 if (val instanceof MemberType) {
-                    addServerClient(createMemberId((MemberType) val),
+                    addServerClient(c, createMemberId((MemberType) val),
                             securityServer);
                 } else if (val instanceof SubsystemType) {
-                    addServerClient(
+                    addServerClient(c,
                             clientIds.get(((SubsystemType) val).getId()),
                             securityServer);
                 }
@@ -287,15 +325,27 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
     }
 
-    private void addServerClient(ClientId client, SecurityServerType server) {
+    private void cacheMembersAndGlobalGroups(Caches c) {
+        for (MemberType member : confType.getMember()) {
+            c.membersById.put(createMemberId(member), member);
+        }
+
+        for (GlobalGroupType group : confType.getGlobalGroup()) {
+            c.globalGroupsByCode.putIfAbsent(group.getGroupCode(), group);
+            c.globalGroupMembers.computeIfAbsent(group.getGroupCode(), k -> new HashSet<>())
+                    .addAll(group.getGroupMember());
+        }
+    }
+
+    private void addServerClient(Caches c, ClientId client, SecurityServerType server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
-            addToMap(memberAddresses, client, server.getAddress());
+            addToMap(c.memberAddresses, client, server.getAddress());
         }
 
         // Add the mapping from client to authentication certificate.
         for (byte[] authCert : server.getAuthCertHash()) {
-            addToMap(memberAuthCerts, client, authCert);
+            addToMap(c.memberAuthCerts, client, encodeBase64(authCert));
         }
 
         MemberType owner = getOwner(server);
@@ -304,7 +354,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
                 owner.getMemberClass().getCode(),
                 owner.getMemberCode(), server.getServerCode());
 
-        addToMap(securityServerClients, securityServerId, client);
+        addToMap(c.securityServerClients, securityServerId, client);
     }
 
     private Map<String, ClientId> getClientIds() {
@@ -322,12 +372,20 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         return ret;
     }
 
-    private void cacheOcspData(List<CaInfoType> typesUnderCA)
+    private static void cacheOcspData(Caches c, List<CaInfoType> typesUnderCA)
             throws CertificateException, IOException {
         for (CaInfoType caType : typesUnderCA) {
             X509Certificate cert = readCertificate(caType.getCert());
             List<OcspInfoType> caOcspTypes = caType.getOcsp();
-            caCertsAndOcspData.put(cert, caOcspTypes);
+            c.caCertsAndOcspData.put(cert, caOcspTypes);
+
+            Set<X509Certificate> responderCerts = new HashSet<>();
+            for (OcspInfoType ocspType : caOcspTypes) {
+                if (ocspType.getCert() != null) {
+                    responderCerts.add(readCertificate(ocspType.getCert()));
+                }
+            }
+            c.ocspResponderCerts.put(cert, responderCerts);
         }
     }
 
@@ -346,4 +404,26 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
                 .map(c -> readCertificate(c.getCert()))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * The cached items of one configuration version. Filled before being
+     * published and not modified after that.
+     */
+    private static final class Caches {
+        private final Map<X500Name, X509Certificate> subjectsAndCaCerts = new HashMap<>();
+        private final Map<X509Certificate, String> caCertsAndCertProfiles = new HashMap<>();
+        private final Map<X509Certificate, ApprovedCATypeV2> caCertsAndApprovedCAData = new HashMap<>();
+        private final Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData = new HashMap<>();
+        private final Map<X509Certificate, Set<X509Certificate>> ocspResponderCerts = new HashMap<>();
+        private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
+        private final Map<ClientId, Set<String>> memberAuthCerts = new HashMap<>();
+        private final Map<String, SecurityServerType> serverByAuthCert = new HashMap<>();
+        private final Map<SecurityServerId, Set<ClientId>> securityServerClients = new HashMap<>();
+        private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
+        private final Set<String> knownAddresses = new HashSet<>();
+        private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
+        private final Map<ClientId, MemberType> membersById = new HashMap<>();
+        private final Map<String, GlobalGroupType> globalGroupsByCode = new HashMap<>();
+        private final Map<String, Set<ClientId>> globalGroupMembers = new HashMap<>();
+    }
 }
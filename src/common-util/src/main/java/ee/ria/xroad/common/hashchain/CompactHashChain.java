@@ -0,0 +1,322 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import ee.ria.xroad.common.CodedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_HASH_CHAIN;
+import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+import static ee.ria.xroad.common.util.MessageFileNames.attachment;
+
+/**
+ * Compact binary representation of the hash chain of a single input data
+ * item, i.e. the Merkle proof of the item.
+ *
+ * For every hash step, starting from the root of the tree, the compact
+ * form records the digest of the sibling subtree and whether the item lies
+ * in the left or the right subtree. The last step refers either to the
+ * digest of the data item or, for multipart inputs, to the digests of the
+ * message and its attachments.
+ *
+ * The compact form is encoded as a string starting with {@link #PREFIX} so
+ * that it can be stored in place of the XML hash chain. It is rendered to
+ * the standard HashChain XML element only when the XML is actually needed,
+ * e.g. when an ASiC container is produced.
+ */
+public final class CompactHashChain {
+
+    /** Prefix that distinguishes compact hash chains from XML hash chains. */
+    public static final String PREFIX = "xrd-hashchain-v1:";
+
+    private static final String STEP = "STEP";
+
+    /** Digest algorithm URI used in the hash chain. */
+    private final String digestMethodUri;
+
+    /** The file name to be used for data refs. */
+    private final String dataFileName;
+
+    /** Side (0 -- left, 1 -- right) of the data item in every hash step. */
+    private final byte[] directions;
+
+    /** Digest of the sibling subtree in every hash step. */
+    private final byte[][] siblings;
+
+    /** Digest of the data item, null for multipart inputs. */
+    private final byte[] digest;
+
+    /** Digests of the message and attachments for multipart inputs. */
+    private final byte[][] parts;
+
+    CompactHashChain(String digestMethodUri, String dataFileName,
+            byte[] directions, byte[][] siblings, byte[] digest,
+            byte[][] parts) {
+        this.digestMethodUri = digestMethodUri;
+        this.dataFileName = dataFileName;
+        this.directions = directions;
+        this.siblings = siblings;
+        this.digest = digest;
+        this.parts = parts != null ? parts : new byte[0][];
+    }
+
+    CompactHashChain(String digestMethodUri, String dataFileName,
+            List<Integer> directions, List<byte[]> siblings, byte[] digest,
+            byte[][] parts) {
+        this(digestMethodUri, dataFileName, toBytes(directions),
+                siblings.toArray(new byte[siblings.size()][]), digest, parts);
+    }
+
+    /**
+     * @param hashChain hash chain in either compact or XML form
+     * @return true, if the hash chain is in compact form
+     */
+    public static boolean isCompact(String hashChain) {
+        return hashChain != null && hashChain.startsWith(PREFIX);
+    }
+
+    /**
+     * Returns the hash chain as XML. Compact hash chains are rendered to
+     * the HashChain XML element, other values are returned as is.
+     * @param hashChain hash chain in either compact or XML form
+     * @return XML-encoded hash chain
+     * @throws Exception in case of any errors
+     */
+    public static String toXml(String hashChain) throws Exception {
+        if (!isCompact(hashChain)) {
+            return hashChain;
+        }
+
+        return decode(hashChain).toXml();
+    }
+
+    /**
+     * Decodes a compact hash chain.
+     * @param hashChain hash chain in compact form
+     * @return the decoded hash chain
+     */
+    public static CompactHashChain decode(String hashChain) {
+        if (!isCompact(hashChain)) {
+            throw new CodedException(X_MALFORMED_HASH_CHAIN,
+                    "Hash chain is not in compact form");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                decodeBase64(hashChain.substring(PREFIX.length()))))) {
+            String digestMethodUri = in.readUTF();
+            String dataFileName = in.readUTF();
+
+            int stepCount = in.readInt();
+            byte[] directions = new byte[stepCount];
+            byte[][] siblings = new byte[stepCount][];
+
+            for (int i = 0; i < stepCount; ++i) {
+                directions[i] = in.readByte();
+
+                if (directions[i] != 0 && directions[i] != 1) {
+                    throw new IOException("Invalid hash step direction");
+                }
+
+                siblings[i] = readDigest(in);
+            }
+
+            byte[] digest = readDigest(in);
+
+            byte[][] parts = new byte[in.readInt()][];
+
+            for (int i = 0; i < parts.length; ++i) {
+                parts[i] = readDigest(in);
+            }
+
+            return new CompactHashChain(digestMethodUri, dataFileName,
+                    directions, siblings, digest.length > 0 ? digest : null,
+                    parts);
+        } catch (IOException | RuntimeException e) {
+            throw new CodedException(X_MALFORMED_HASH_CHAIN, e,
+                    "Malformed compact hash chain");
+        }
+    }
+
+    /**
+     * @return the hash chain encoded in compact form
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(digestMethodUri);
+            out.writeUTF(dataFileName);
+
+            out.writeInt(siblings.length);
+
+            for (int i = 0; i < siblings.length; ++i) {
+                out.writeByte(directions[i]);
+                writeDigest(out, siblings[i]);
+            }
+
+            writeDigest(out, digest);
+
+            out.writeInt(parts.length);
+
+            for (byte[] part : parts) {
+                writeDigest(out, part);
+            }
+        } catch (IOException e) {
+            // Cannot happen when writing to a byte array.
+            throw new IllegalStateException(e);
+        }
+
+        return PREFIX + encodeBase64(bytes.toByteArray());
+    }
+
+    /**
+     * @return XML-encoded hash chain
+     * @throws Exception in case of any errors
+     */
+    public String toXml() throws Exception {
+        return HashChainBuilder.hashChainToString(toHashChainType());
+    }
+
+    /**
+     * Constructs the HashChain XML element from the compact form.
+     */
+    HashChainType toHashChainType() {
+        HashChainType hashChain = new HashChainType();
+
+        DigestMethodType digestMethod = new DigestMethodType();
+        digestMethod.setAlgorithm(digestMethodUri);
+        hashChain.setDefaultDigestMethod(digestMethod);
+
+        boolean multipart = parts.length > 0;
+
+        for (int stepCount = 0; stepCount < siblings.length; ++stepCount) {
+            int myDirection = directions[stepCount];
+
+            // The last step refers to the data item, unless the input
+            // has attachments. Other steps refer to the next step.
+            AbstractValueType myData =
+                    stepCount == siblings.length - 1 && !multipart
+                            ? dataRef(dataFileName, digest)
+                            : stepRef(stepCount + 1);
+
+            HashStepType hashStep = new HashStepType();
+            hashStep.setId(STEP + stepCount);
+            // Create two elements.
+            hashStep.getHashValueOrStepRefOrDataRef().add(null);
+            hashStep.getHashValueOrStepRefOrDataRef().add(null);
+
+            // Set the data items.
+            hashStep.getHashValueOrStepRefOrDataRef().set(
+                    myDirection, myData);
+            hashStep.getHashValueOrStepRefOrDataRef().set(
+                    1 - myDirection, hashValue(siblings[stepCount]));
+
+            hashChain.getHashStep().add(hashStep);
+        }
+
+        // If the input was a multipart, add final hash step that
+        // references all the individual parts.
+        if (multipart) {
+            hashChain.getHashStep().add(multipartStep(siblings.length));
+        }
+
+        return hashChain;
+    }
+
+    private HashStepType multipartStep(int stepCount) {
+        HashStepType ret = new HashStepType();
+        ret.setId(STEP + stepCount);
+
+        for (int i = 0; i < parts.length; ++i) {
+            // The first input is message, all the other inputs
+            // are attachments, starting from 1.
+            ret.getHashValueOrStepRefOrDataRef().add(
+                    dataRef(i == 0 ? dataFileName : attachment(i), parts[i]));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Creates reference to input data with given file name.
+     */
+    private static DataRefType dataRef(String fileName, byte[] digest) {
+        DataRefType dataRef = new DataRefType();
+        dataRef.setURI(fileName);
+        dataRef.setDigestValue(digest);
+        return dataRef;
+    }
+
+    /**
+     * Creates reference to another hash step.
+     */
+    private static StepRefType stepRef(int stepCount) {
+        StepRefType stepRef = new StepRefType();
+        stepRef.setURI("#" + STEP + stepCount);
+        return stepRef;
+    }
+
+    /**
+     * Creates a concrete hash value.
+     */
+    private static HashValueType hashValue(byte[] data) {
+        HashValueType hashValue = new HashValueType();
+        hashValue.setDigestValue(data);
+        return hashValue;
+    }
+
+    private static void writeDigest(DataOutputStream out, byte[] value)
+            throws IOException {
+        if (value == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(value.length);
+            out.write(value);
+        }
+    }
+
+    private static byte[] readDigest(DataInputStream in) throws IOException {
+        byte[] ret = new byte[in.readUnsignedShort()];
+        in.readFully(ret);
+        return ret;
+    }
+
+    private static byte[] toBytes(List<Integer> values) {
+        byte[] ret = new byte[values.size()];
+
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = values.get(i).byteValue();
+        }
+
+        return ret;
+    }
+}
@@ -39,7 +39,6 @@ import java.util.Map;
 
 import static ee.ria.xroad.common.hashchain.DigestList.digestHashStep;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
-import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static java.lang.Integer.numberOfLeadingZeros;
 
 /**
@@ -54,6 +53,9 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * - getHashChainResult -- returns XML-encoded form of the hash chain result.
  * - getHashChains -- returns array of XML-encoded hash chains, one for
  *   each input data item.
+ * - getCompactHashChains -- returns array of hash chains in compact form
+ *   (see {@link CompactHashChain}), one for each input data item. These
+ *   are much cheaper to compute and store and can be rendered to XML later.
  *
  * Implementation: the binary Merkle tree is stored as an array.
  * This representation does not use pointers to child nodes, the indexes of
@@ -98,9 +100,6 @@ public final class HashChainBuilder {
      */
     private final Map<Integer, byte[][]> multiparts = new HashMap<>();
 
-    /** The file name to be used for data refs. */
-    private String dataRefFileName;
-
     /** Array of intermediate Merkle tree nodes. */
     private byte[][] nodes;
 
@@ -125,9 +124,7 @@ public final class HashChainBuilder {
         this.hashAlgorithm = hashAlgorithm;
         hashAlgorithmUri = getDigestAlgorithmURI(hashAlgorithm);
 
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        marshaller = createMarshaller();
     }
 
     /**
@@ -232,6 +229,49 @@ public final class HashChainBuilder {
      * @throws Exception in case of any errors
      */
     public String[] getHashChains(String dataFileName) throws Exception {
+        CompactHashChain[] hashChains = makeHashChains(dataFileName);
+
+        if (hashChains == null) {
+            return null;
+        }
+
+        String[] ret = new String[hashChains.length];
+
+        for (int i = 0; i < hashChains.length; ++i) {
+            ret[i] = elementToString(objectFactory.createHashChain(
+                    hashChains[i].toHashChainType()));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns hash chain in compact form for every input data item.
+     * The compact hash chains can be converted to the XML-encoded form
+     * using {@link CompactHashChain#toXml(String)}.
+     * @param dataFileName name of the file containing data input items
+     * @return compact hash chain for every input data item
+     * @throws Exception in case of any errors
+     */
+    public String[] getCompactHashChains(String dataFileName)
+            throws Exception {
+        CompactHashChain[] hashChains = makeHashChains(dataFileName);
+
+        if (hashChains == null) {
+            return null;
+        }
+
+        String[] ret = new String[hashChains.length];
+
+        for (int i = 0; i < hashChains.length; ++i) {
+            ret[i] = hashChains[i].encode();
+        }
+
+        return ret;
+    }
+
+    private CompactHashChain[] makeHashChains(String dataFileName)
+            throws Exception {
         if (nodes == null) {
             throw new IllegalStateException("Tree must be finished");
         }
@@ -246,21 +286,20 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        this.dataRefFileName = dataFileName;
         if (dataFileName == null) {
             throw new IllegalArgumentException(
                     "dataRefFileName must not be null");
         }
 
-        String[] ret = new String[inputs.size()];
+        CompactHashChain[] ret = new CompactHashChain[inputs.size()];
 
         if (inputs.size() > 1) {
             for (int i = 0; i < inputs.size(); ++i) {
-                ret[i] = makeHashChain(i);
+                ret[i] = makeHashChain(i, dataFileName);
             }
         } else {
             // Special case for one input.
-            ret[0] = makeSingleInputHashChain();
+            ret[0] = makeSingleInputHashChain(dataFileName);
         }
 
         return ret;
@@ -406,16 +445,14 @@ public final class HashChainBuilder {
     }
 
     /**
-     * Returns XML-encoded hash chain for a n-th input data item.
+     * Returns hash chain for a n-th input data item.
      */
-    private String makeHashChain(int itemIndex) throws Exception {
+    private CompactHashChain makeHashChain(int itemIndex, String dataFileName) {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
-
-        // Hash step count is used to generate references.
-        int stepCount = 0;
+        // Side of the data item and the sibling digest for every hash step.
+        List<Integer> directions = new ArrayList<>();
+        List<byte[]> siblings = new ArrayList<>();
 
         // Start with root node
         int currentNodeIdx = ROOT_IDX;
@@ -442,119 +479,31 @@ public final class HashChainBuilder {
             }
 
             // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
-
-            // If the child is leaf node and there are no attachments,
-            // use the data ref. Otherwise use the StepRef.
-            if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
-                // Plain data ref.
-                myData = dataRef(get(myChildIdx));
-            } else {
-                // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
-            }
-
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
-
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            directions.add(myDirection);
+            siblings.add(getDeep(otherChildIdx));
 
             // Update state variables.
-            ++stepCount;
             currentNodeIdx = myChildIdx;
             --currentLevel;
         }
 
-        // If the input was a multipart, we need to add final hash
-        // step that references all the individual parts.
-        if (multiparts.containsKey(itemIndex)) {
-            LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
-        }
-
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
-    }
-
-    /**
-     * Creates reference to input data with given file name.
-     */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
-    }
-
-    /**
-     * Creates a concrete hash value.
-     */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+        // If the input was a multipart, the hash chain ends with
+        // a hash step that references all the individual parts.
+        return new CompactHashChain(hashAlgorithmUri, dataFileName,
+                directions, siblings, get(currentNodeIdx),
+                multiparts.get(itemIndex));
     }
 
     /**
      * Makes hash chain for special case of inputs.size() == 1.
      */
-    private String makeSingleInputHashChain() throws Exception {
+    private CompactHashChain makeSingleInputHashChain(String dataFileName) {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
-
-        // This is a multipart input. Add single step for all
-        // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
-
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
-
-        for (int i = 0; i < inputSet.length; ++i) {
-            if (i == 0) {
-                // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
-            } else {
-                // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
-            }
-        }
-
-        return ret;
+        // This is a multipart input. The hash chain consists of single
+        // step for all the input parts.
+        return new CompactHashChain(hashAlgorithmUri, dataFileName,
+                new byte[0], new byte[0][], inputs.get(0), multiparts.get(0));
     }
 
     /**
@@ -566,6 +515,23 @@ public final class HashChainBuilder {
         return digestMethod;
     }
 
+    /**
+     * Serializes the given hash chain to a string.
+     */
+    static String hashChainToString(HashChainType hashChain) throws Exception {
+        StringWriter writer = new StringWriter();
+        createMarshaller().marshal(
+                new ObjectFactory().createHashChain(hashChain), writer);
+        return writer.toString();
+    }
+
+    private static Marshaller createMarshaller() throws Exception {
+        Marshaller ret = jaxbCtx.createMarshaller();
+        // Format the XML, good for debugging.
+        ret.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        return ret;
+    }
+
     /**
      * Serializes the given XML element to a string.
      */
@@ -604,13 +570,6 @@ public final class HashChainBuilder {
         return 2 * parentIdx + 1 + n;
     }
 
-    /**
-     * Returns true, if node identified by nodeIdx is a leaf node.
-     */
-    private boolean isLeaf(int nodeIdx) {
-        return nodeIdx >= nodes.length;
-    }
-
     /**
      * Returns size of the array that will hold the non-leaf nodes
      * of the tree.
@@ -49,6 +49,7 @@ import javax.xml.validation.Schema;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -151,8 +152,20 @@ public final class HashChainVerifier {
     }
 
 
-    private static HashChainType parseHashChain(InputStream xml) throws Exception {
-        return validateAndParse(xml, HashChainType.class);
+    /**
+     * Parses hash chain that is either XML-encoded or in compact form.
+     */
+    private static HashChainType parseHashChain(InputStream is) throws Exception {
+        byte[] hashChainBytes = IOUtils.toByteArray(is);
+        String prefix = new String(hashChainBytes, 0,
+                Math.min(hashChainBytes.length, CompactHashChain.PREFIX.length()), StandardCharsets.UTF_8);
+
+        if (CompactHashChain.isCompact(prefix)) {
+            return CompactHashChain.decode(new String(hashChainBytes, StandardCharsets.UTF_8).trim())
+                    .toHashChainType();
+        }
+
+        return validateAndParse(new ByteArrayInputStream(hashChainBytes), HashChainType.class);
     }
 
     @SuppressWarnings("unchecked")
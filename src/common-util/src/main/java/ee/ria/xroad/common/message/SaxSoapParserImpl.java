@@ -25,6 +25,7 @@
 package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
@@ -38,8 +39,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.NullWriter;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.xml.sax.Attributes;
@@ -170,6 +175,11 @@ public class SaxSoapParserImpl implements SoapParser {
 
     private static final SAXParserFactory PARSER_FACTORY = createSaxParserFactory();
 
+    // SAX parsers are not thread safe, but can be reused for parsing consecutive messages
+    private static final ThreadLocal<SAXParser> PARSERS = ThreadLocal.withInitial(SaxSoapParserImpl::newSaxParser);
+
+    private static final DefaultHandler2 EMPTY_HANDLER = new DefaultHandler2();
+
     @Override
     public Soap parse(String contentType, InputStream is) {
         String mimeType = MimeUtils.getBaseContentType(contentType);
@@ -194,40 +204,71 @@ public class SaxSoapParserImpl implements SoapParser {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
         ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        // the processed XML is only collected if it is required from the start of the message
+        ByteArrayOutputStream processedXml = isProcessedXmlRequired() ? new ByteArrayOutputStream() : null;
+
+        Writer outputWriter = processedXml != null ? new OutputStreamWriter(processedXml, charset) : new NullWriter();
+        XRoadSoapHandler handler;
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        try (InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml))) {
+            // the parser closes the stream also when it is stopped before the end of the message
+            handler = handleSoap(outputWriter, new CloseShieldInputStream(proxyStream));
+
+            if (handler.isBodySkipped()) {
+                // read the rest of the body into the raw XML without parsing it
+                IOUtils.copy(proxyStream, NullOutputStream.NULL_OUTPUT_STREAM);
+            }
+        }
 
         CodedException fault = handler.getFault();
         if (fault != null) {
             return createSoapFault(charset, rawXml, fault);
         }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+        byte[] xmlBytes = processedXml != null && isProcessedXmlRequired()
+                ? processedXml.toByteArray() : rawXml.toByteArray();
 
         return createSoapMessage(contentType, charset, handler, xmlBytes);
     }
 
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
             throws Exception {
+        SAXParser saxParser = PARSERS.get();
         try (BufferedWriter out = new BufferedWriter(writer)) {
             XRoadSoapHandler handler = new XRoadSoapHandler(out);
-            SAXParser saxParser = PARSER_FACTORY.newSAXParser();
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
             // ensure both builtin entities and character entities are reported to the parser
             xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-char-refs", true);
             xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-builtin-refs", true);
 
-            saxParser.parse(inputStream, handler);
+            try {
+                saxParser.parse(inputStream, handler);
+            } catch (BodyReachedException e) {
+                log.trace("Stopped parsing at the beginning of the SOAP body");
+            }
             return handler;
         } catch (SAXException ex) {
             throw new SOAPException(ex);
+        } finally {
+            releaseSaxParser(saxParser);
         }
     }
 
+    /*
+     * Detaches the handlers of the parsed message from the parser, so that the parser kept for reuse
+     * does not hold on to the message.
+     */
+    private static void releaseSaxParser(SAXParser saxParser) throws SAXException {
+        XMLReader xmlReader = saxParser.getXMLReader();
+        xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, EMPTY_HANDLER);
+        xmlReader.setContentHandler(EMPTY_HANDLER);
+        xmlReader.setErrorHandler(EMPTY_HANDLER);
+        xmlReader.setDTDHandler(EMPTY_HANDLER);
+        xmlReader.setEntityResolver(EMPTY_HANDLER);
+        saxParser.reset();
+    }
+
     private static Soap createSoapMessage(String contentType, String charset,
             XRoadSoapHandler handler, byte[] xmlBytes) throws Exception {
         return new SoapMessageImpl(xmlBytes, charset, handler.getHeader(),
@@ -241,6 +282,11 @@ public class SaxSoapParserImpl implements SoapParser {
                 rawXml.toByteArray(), charset);
     }
 
+    @SneakyThrows
+    private static SAXParser newSaxParser() {
+        return PARSER_FACTORY.newSAXParser();
+    }
+
     @SneakyThrows
     private static SAXParserFactory createSaxParserFactory() {
         SAXParserFactory factory = SAXParserFactory.newInstance();
@@ -263,6 +309,16 @@ public class SaxSoapParserImpl implements SoapParser {
         return false;
     }
 
+    /**
+     * Determines whether parsing can stop at the beginning of the SOAP body. If so, the body is read without parsing
+     * it once the name of the first body element is known (unless the body contains a SOAP fault or processed XML
+     * is required), which means that the body is not checked for well-formedness or for additional elements.
+     * @return the value of the system property {@link SystemProperties#isSoapHeaderOnlyParsingEnabled()} by default
+     */
+    protected boolean isHeaderOnlyParsing() {
+        return SystemProperties.isSoapHeaderOnlyParsingEnabled();
+    }
+
     private InputStream excludeUtf8Bom(String contentType, InputStream soapStream) {
         return hasUtf8Charset(contentType) ? new BOMInputStream(soapStream) : soapStream;
     }
@@ -304,6 +360,8 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private static final String XML_VERSION_ENCODING = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
+        private static final int BODY_ELEMENT_DEPTH = 3;
+
         private final BufferedWriter out;
 
         private char[] xmlEntity;
@@ -315,6 +373,9 @@ public class SaxSoapParserImpl implements SoapParser {
         @Getter
         private SoapHeader header;
 
+        @Getter
+        private boolean bodySkipped;
+
         public String getServiceName() {
             return envelopeHandler != null ? envelopeHandler.getServiceName() : null;
         }
@@ -329,6 +390,7 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private void reset() {
             envelopeHandler = null;
+            bodySkipped = false;
 
             header = new SoapHeader();
 
@@ -346,7 +408,8 @@ public class SaxSoapParserImpl implements SoapParser {
         }
 
         @Override
-        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
             QName element = new QName(uri, localName);
 
             if (elementHandlers.isEmpty()) {
@@ -358,9 +421,18 @@ public class SaxSoapParserImpl implements SoapParser {
             if (isProcessedXmlRequired()) {
                 String prefix = findNamespacePrefix(qName);
                 writeStartElementXml(prefix, element, attributes, out);
+            } else if (isBodyElementStart() && isHeaderOnlyParsing()) {
+                envelopeHandler.validate();
+                bodySkipped = true;
+                throw new BodyReachedException();
             }
         }
 
+        // envelope, body and the (non-fault) body element
+        private boolean isBodyElementStart() {
+            return elementHandlers.size() == BODY_ELEMENT_DEPTH && envelopeHandler.isBodyElementStarted();
+        }
+
         private void handleElement(Attributes attributes, QName element) {
             XmlElementHandler elementHandler = elementHandlers.peek().getChildElementHandler(element);
             elementHandler.setAttributes(attributes);
@@ -618,11 +690,19 @@ public class SaxSoapParserImpl implements SoapParser {
         @Override
         protected void closeTag() {
             if (getFault() == null) {
-                validateHeader();
-                validateBody();
+                validate();
             }
         }
 
+        boolean isBodyElementStarted() {
+            return bodyHandler != null && bodyHandler.isBodyElementStarted();
+        }
+
+        void validate() {
+            validateHeader();
+            validateBody();
+        }
+
         private void validateHeader() {
             if (!headerHandler.isFinished()) {
                 throw new CodedException(X_MISSING_HEADER, MISSING_HEADER_MESSAGE);
@@ -1038,6 +1118,9 @@ public class SaxSoapParserImpl implements SoapParser {
     private static class SoapBodyHandler extends XmlElementHandler {
         private SoapFaultHandler soapFaultHandler;
 
+        @Getter
+        private boolean bodyElementStarted;
+
         @Getter
         private CodedException fault;
 
@@ -1053,6 +1136,7 @@ public class SaxSoapParserImpl implements SoapParser {
                 // If no body elements have been encountered yet we assume
                 // the first one to be the request wrapper element
                 serviceName = element.getLocalPart();
+                bodyElementStarted = true;
             } else {
                 // If one body element has already been closed then we know
                 // it's name to be the service name and expect no more top
@@ -1123,4 +1207,11 @@ public class SaxSoapParserImpl implements SoapParser {
         }
 
     }
+
+    /**
+     * Thrown to stop parsing at the beginning of the SOAP body in header only parsing mode.
+     */
+    private static final class BodyReachedException extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
 }
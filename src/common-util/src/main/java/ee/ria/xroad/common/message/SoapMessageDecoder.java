@@ -31,8 +31,10 @@ import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
 import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -62,6 +64,9 @@ public class SoapMessageDecoder {
     private final String baseContentType;
     private final SoapParser parser;
 
+    private MimeTokenStream partStream;
+    private MultipartHandler partHandler;
+
     /**
      * Callback interface for handling the outcome of the decoding process.
      */
@@ -153,6 +158,97 @@ public class SoapMessageDecoder {
         callback.onCompleted();
     }
 
+    /**
+     * Decodes only the SOAP part of the message from the given input stream.
+     * The attachments (if any) are left unread in the stream and must be
+     * decoded afterwards by calling {@link #parseAttachments()} on the same
+     * thread. This allows the caller to act on the SOAP message before the
+     * rest of the stream is consumed.
+     *
+     * @param soapStream input stream with the SOAP message data
+     * @throws Exception if any errors occur
+     */
+    public void parseSoap(InputStream soapStream) throws Exception {
+        if (baseContentType == null) {
+            throw new CodedException(X_INVALID_REQUEST,
+                    "Could not get content type from request");
+        }
+
+        try {
+            switch (baseContentType.toLowerCase()) {
+                case TEXT_XML:
+                case XOP_XML:
+                    readSoapMessage(soapStream);
+                    break;
+                case MULTIPART_RELATED:
+                    partStream = new MimeTokenStream(MimeConfig.DEFAULT);
+                    partStream.parseHeadless(soapStream, contentType);
+                    partHandler = new MultipartHandler();
+
+                    readMultipartParts(true);
+                    break;
+                default:
+                    throw new CodedException(X_INVALID_CONTENT_TYPE,
+                            "Invalid content type: %s", baseContentType);
+            }
+        } catch (Exception e) {
+            callback.onError(e);
+        }
+    }
+
+    /**
+     * Decodes the remaining attachments of a message whose SOAP part was
+     * decoded with {@link #parseSoap(InputStream)} and completes the decoding.
+     *
+     * @throws Exception if any errors occur
+     */
+    public void parseAttachments() throws Exception {
+        try {
+            if (partStream != null) {
+                readMultipartParts(false);
+            }
+        } catch (Exception e) {
+            callback.onError(e);
+        }
+
+        callback.onCompleted();
+    }
+
+    private void readMultipartParts(boolean untilSoap) throws Exception {
+        log.trace("readMultipartParts({})", untilSoap);
+
+        try {
+            for (EntityState state = partStream.next(); state != EntityState.T_END_OF_STREAM;
+                    state = partStream.next()) {
+                switch (state) {
+                    case T_START_HEADER:
+                        partHandler.startHeader();
+                        break;
+                    case T_FIELD:
+                        partHandler.field(partStream.getField());
+                        break;
+                    case T_BODY:
+                        partHandler.body(partStream.getBodyDescriptor(), partStream.getInputStream());
+
+                        if (untilSoap && partHandler.soapBody != null) {
+                            return;
+                        }
+
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            // The token stream cannot be advanced past its end
+            partStream = null;
+        } catch (MimeException ex) {
+            // We catch the mime parsing separately because this indicates
+            // invalid request from client and we want to report it as that.
+            throw new CodedException(X_MIME_PARSING_FAILED, ex);
+        }
+    }
+
     private void readSoapMessage(InputStream is) throws Exception {
         log.trace("readSoapMessage");
 
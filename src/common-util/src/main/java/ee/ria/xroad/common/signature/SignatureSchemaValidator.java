@@ -27,7 +27,11 @@ package ee.ria.xroad.common.signature;
 import ee.ria.xroad.common.ErrorCodes;
 import ee.ria.xroad.common.util.SchemaValidator;
 
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.validation.Schema;
 
 /**
@@ -51,4 +55,16 @@ public class SignatureSchemaValidator extends SchemaValidator {
     public static void validate(Source source) throws Exception {
         validate(schema, source, ErrorCodes.X_MALFORMED_SIGNATURE);
     }
+
+    /**
+     * Validates the provided XML signature node. Signatures that follow the X-Road XAdES profile are checked in a
+     * single pass over the parsed node, other signatures are validated against the schema.
+     * @param signature the XML signature node to be validated
+     * @throws Exception if validation is unsuccessful
+     */
+    public static void validate(Node signature) throws Exception {
+        if (!(signature instanceof Element) || !XadesProfileValidator.accepts((Element) signature)) {
+            validate(new DOMSource(signature));
+        }
+    }
 }
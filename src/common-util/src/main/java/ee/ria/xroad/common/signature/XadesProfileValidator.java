@@ -0,0 +1,590 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static ee.ria.xroad.common.signature.Helper.NS_DS;
+import static ee.ria.xroad.common.signature.Helper.NS_XADES;
+
+/**
+ * Validates signatures that follow the XAdES profile produced by X-Road in a single pass over the parsed signature
+ * element, without going through the schema validator.
+ *
+ * The profile is a subset of the XAdES and XML signature schemas: every signature accepted here is also valid
+ * according to the schema. Signatures that use anything outside the profile are not accepted, so they must be
+ * validated against the schema, which also reports the actual error.
+ */
+final class XadesProfileValidator {
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final String ALGORITHM = "Algorithm";
+    private static final String ENCODING = "Encoding";
+    private static final String ID = "Id";
+    private static final String TYPE = "Type";
+    private static final String URI_ATTRIBUTE = "URI";
+
+    // XML Signature
+
+    private static final ElementType ALGORITHM_METHOD = new ElementType().mixed()
+            .requiredAttribute(ALGORITHM, Value.ANY_URI);
+
+    private static final ElementType DIGEST_VALUE = new ElementType().text(Value.BASE64);
+
+    private static final ElementType TRANSFORMS = new ElementType()
+            .sequence(1, UNBOUNDED, ds("Transform", ALGORITHM_METHOD));
+
+    private static final ElementType REFERENCE = new ElementType()
+            .attribute(ID, Value.ID)
+            .attribute(URI_ATTRIBUTE, Value.ANY_URI)
+            .attribute(TYPE, Value.ANY_URI)
+            .sequence(0, 1, ds("Transforms", TRANSFORMS))
+            .sequence(1, 1, ds("DigestMethod", ALGORITHM_METHOD))
+            .sequence(1, 1, ds("DigestValue", DIGEST_VALUE));
+
+    private static final ElementType SIGNED_INFO = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(1, 1, ds("CanonicalizationMethod", ALGORITHM_METHOD))
+            .sequence(1, 1, ds("SignatureMethod", ALGORITHM_METHOD))
+            .sequence(1, UNBOUNDED, ds("Reference", REFERENCE));
+
+    private static final ElementType SIGNATURE_VALUE = new ElementType()
+            .attribute(ID, Value.ID)
+            .text(Value.BASE64);
+
+    private static final ElementType X509_DATA = new ElementType()
+            .sequence(1, UNBOUNDED, ds("X509Certificate", new ElementType().text(Value.BASE64)));
+
+    private static final ElementType KEY_INFO = new ElementType().mixed()
+            .attribute(ID, Value.ID)
+            .sequence(1, UNBOUNDED, ds("X509Data", X509_DATA));
+
+    private static final ElementType MANIFEST = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(1, UNBOUNDED, ds("Reference", REFERENCE));
+
+    private static final ElementType X509_ISSUER_SERIAL = new ElementType()
+            .sequence(1, 1, ds("X509IssuerName", new ElementType().text(Value.STRING)))
+            .sequence(1, 1, ds("X509SerialNumber", new ElementType().text(Value.INTEGER)));
+
+    // XAdES
+
+    private static final ElementType DIGEST_ALG_AND_VALUE = new ElementType()
+            .sequence(1, 1, ds("DigestMethod", ALGORITHM_METHOD))
+            .sequence(1, 1, ds("DigestValue", DIGEST_VALUE));
+
+    private static final ElementType ENCAPSULATED_PKI_DATA = new ElementType()
+            .attribute(ID, Value.ID)
+            .attribute(ENCODING, Value.ANY_URI)
+            .text(Value.BASE64);
+
+    private static final ElementType CERT_ID_LIST = new ElementType()
+            .sequence(1, UNBOUNDED, xades("Cert", new ElementType()
+                    .attribute(URI_ATTRIBUTE, Value.ANY_URI)
+                    .sequence(1, 1, xades("CertDigest", DIGEST_ALG_AND_VALUE))
+                    .sequence(1, 1, xades("IssuerSerial", X509_ISSUER_SERIAL))));
+
+    private static final ElementType SIGNATURE_POLICY_ID = new ElementType()
+            .sequence(1, 1, xades("SigPolicyId", new ElementType()
+                    .sequence(1, 1, xades("Identifier", new ElementType()
+                            .attribute("Qualifier", Value.QUALIFIER)
+                            .text(Value.ANY_URI)))
+                    .sequence(0, 1, xades("Description", new ElementType().text(Value.STRING)))))
+            .sequence(0, 1, ds("Transforms", TRANSFORMS))
+            .sequence(1, 1, xades("SigPolicyHash", DIGEST_ALG_AND_VALUE))
+            .sequence(0, 1, xades("SigPolicyQualifiers", new ElementType()
+                    .sequence(1, UNBOUNDED, xades("SigPolicyQualifier", new ElementType().mixed()
+                            .sequence(0, UNBOUNDED, xades("SPURI", new ElementType().text(Value.ANY_URI)))))));
+
+    private static final ElementType SIGNED_PROPERTIES = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(0, 1, xades("SignedSignatureProperties", new ElementType()
+                    .attribute(ID, Value.ID)
+                    .sequence(0, 1, xades("SigningTime", new ElementType().text(Value.DATE_TIME)))
+                    .sequence(0, 1, xades("SigningCertificate", CERT_ID_LIST))
+                    .sequence(0, 1, xades("SignaturePolicyIdentifier", new ElementType()
+                            .sequence(1, 1, xades("SignaturePolicyId", SIGNATURE_POLICY_ID))))))
+            .sequence(0, 1, xades("SignedDataObjectProperties", new ElementType()
+                    .attribute(ID, Value.ID)
+                    .sequence(0, UNBOUNDED, xades("DataObjectFormat", new ElementType()
+                            .requiredAttribute("ObjectReference", Value.ANY_URI)
+                            .sequence(0, 1, xades("Description", new ElementType().text(Value.STRING)))
+                            .sequence(0, 1, xades("MimeType", new ElementType().text(Value.STRING)))
+                            .sequence(0, 1, xades(ENCODING, new ElementType().text(Value.ANY_URI)))))));
+
+    private static final ElementType XADES_TIMESTAMP = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(0, UNBOUNDED, xades("Include", new ElementType()
+                    .requiredAttribute(URI_ATTRIBUTE, Value.ANY_URI)
+                    .attribute("referencedData", Value.BOOLEAN)))
+            .sequence(0, 1, ds("CanonicalizationMethod", ALGORITHM_METHOD))
+            .sequence(1, UNBOUNDED, xades("EncapsulatedTimeStamp", ENCAPSULATED_PKI_DATA));
+
+    private static final ElementType COMPLETE_REVOCATION_REFS = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(0, 1, xades("OCSPRefs", new ElementType()
+                    .sequence(1, UNBOUNDED, xades("OCSPRef", new ElementType()
+                            .sequence(1, 1, xades("OCSPIdentifier", new ElementType()
+                                    .attribute(URI_ATTRIBUTE, Value.ANY_URI)
+                                    .sequence(1, 1, xades("ResponderID", new ElementType()
+                                            .sequence(1, 1,
+                                                    xades("ByName", new ElementType().text(Value.STRING)),
+                                                    xades("ByKey", new ElementType().text(Value.BASE64)))))
+                                    .sequence(1, 1, xades("ProducedAt", new ElementType().text(Value.DATE_TIME)))))
+                            .sequence(0, 1, xades("DigestAlgAndValue", DIGEST_ALG_AND_VALUE))))));
+
+    private static final ElementType UNSIGNED_PROPERTIES = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(0, 1, xades("UnsignedSignatureProperties", new ElementType()
+                    .attribute(ID, Value.ID)
+                    .sequence(1, UNBOUNDED,
+                            xades("SignatureTimeStamp", XADES_TIMESTAMP),
+                            xades("CompleteCertificateRefs", new ElementType()
+                                    .attribute(ID, Value.ID)
+                                    .sequence(1, 1, xades("CertRefs", CERT_ID_LIST))),
+                            xades("CompleteRevocationRefs", COMPLETE_REVOCATION_REFS),
+                            xades("CertificateValues", new ElementType()
+                                    .attribute(ID, Value.ID)
+                                    .sequence(0, UNBOUNDED, xades("EncapsulatedX509Certificate",
+                                            ENCAPSULATED_PKI_DATA))),
+                            xades("RevocationValues", new ElementType()
+                                    .attribute(ID, Value.ID)
+                                    .sequence(0, 1, xades("OCSPValues", new ElementType()
+                                            .sequence(1, UNBOUNDED, xades("EncapsulatedOCSPValue",
+                                                    ENCAPSULATED_PKI_DATA))))))));
+
+    private static final ElementType QUALIFYING_PROPERTIES = new ElementType()
+            .requiredAttribute("Target", Value.ANY_URI)
+            .attribute(ID, Value.ID)
+            .sequence(0, 1, xades("SignedProperties", SIGNED_PROPERTIES))
+            .sequence(0, 1, xades("UnsignedProperties", UNSIGNED_PROPERTIES));
+
+    private static final ElementType SIGNATURE = new ElementType()
+            .attribute(ID, Value.ID)
+            .sequence(1, 1, ds("SignedInfo", SIGNED_INFO))
+            .sequence(1, 1, ds("SignatureValue", SIGNATURE_VALUE))
+            .sequence(0, 1, ds("KeyInfo", KEY_INFO))
+            .sequence(0, UNBOUNDED, ds("Object", new ElementType().mixed()
+                    .attribute(ID, Value.ID)
+                    .attribute("MimeType", Value.STRING)
+                    .attribute(ENCODING, Value.ANY_URI)
+                    .sequence(0, UNBOUNDED,
+                            xades("QualifyingProperties", QUALIFYING_PROPERTIES),
+                            ds("Manifest", MANIFEST))));
+
+    private XadesProfileValidator() {
+    }
+
+    /**
+     * @param signature the ds:Signature element
+     * @return true if the signature follows the X-Road XAdES profile and is valid according to the schema,
+     * false if the signature must be validated against the schema
+     */
+    static boolean accepts(Element signature) {
+        return NS_DS.equals(signature.getNamespaceURI()) && "Signature".equals(signature.getLocalName())
+                && accepts(signature, SIGNATURE, new HashSet<>());
+    }
+
+    private static boolean accepts(Element element, ElementType type, Set<String> ids) {
+        return acceptsAttributes(element, type, ids)
+                && (type.value != null ? acceptsText(element, type.value) : acceptsChildren(element, type, ids));
+    }
+
+    private static boolean acceptsAttributes(Element element, ElementType type, Set<String> ids) {
+        NamedNodeMap attributes = element.getAttributes();
+        int required = 0;
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                continue;
+            }
+
+            // the profile has no qualified attributes, xsi:type and the like go to the schema validator
+            Value value = attribute.getNamespaceURI() == null ? type.attributes.get(attribute.getLocalName()) : null;
+
+            if (value == null || !value.accepts(attribute.getValue())
+                    || value == Value.ID && !ids.add(attribute.getValue())) {
+                return false;
+            }
+
+            if (type.requiredAttributes.contains(attribute.getLocalName())) {
+                required++;
+            }
+        }
+
+        return required == type.requiredAttributes.size();
+    }
+
+    private static boolean acceptsText(Element element, Value value) {
+        Node first = element.getFirstChild();
+
+        // usually the value is a single text node that needs no copying
+        if (first == null || first.getNextSibling() == null && first.getNodeType() == Node.TEXT_NODE) {
+            return value.accepts(first == null ? "" : first.getNodeValue());
+        }
+
+        StringBuilder text = new StringBuilder();
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    text.append(child.getNodeValue());
+                    break;
+                case Node.COMMENT_NODE:
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    break;
+                default:
+                    return false;
+            }
+        }
+
+        return value.accepts(text.toString());
+    }
+
+    private static boolean acceptsChildren(Element element, ElementType type, Set<String> ids) {
+        int particle = 0;
+        int count = 0;
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.COMMENT_NODE:
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    continue;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    if (!type.allowsText(child.getNodeValue())) {
+                        return false;
+                    }
+
+                    continue;
+                case Node.ELEMENT_NODE:
+                    break;
+                default:
+                    return false;
+            }
+
+            // the content models are deterministic, so the first particle that matches is the only one
+            ElementType childType = null;
+
+            while (particle < type.particles.size()) {
+                Particle current = type.particles.get(particle);
+
+                childType = count < current.max ? current.get((Element) child) : null;
+
+                if (childType != null) {
+                    count++;
+                    break;
+                }
+
+                if (count < current.min) {
+                    return false;
+                }
+
+                particle++;
+                count = 0;
+            }
+
+            if (childType == null || !accepts((Element) child, childType, ids)) {
+                return false;
+            }
+        }
+
+        for (; particle < type.particles.size(); particle++, count = 0) {
+            if (count < type.particles.get(particle).min) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Declaration ds(String name, ElementType type) {
+        return new Declaration(NS_DS, name, type);
+    }
+
+    private static Declaration xades(String name, ElementType type) {
+        return new Declaration(NS_XADES, name, type);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Content model of an element: its attributes and either simple content or a sequence of particles.
+     */
+    private static final class ElementType {
+        private final Map<String, Value> attributes = new HashMap<>();
+        private final Set<String> requiredAttributes = new HashSet<>();
+        private final List<Particle> particles = new ArrayList<>();
+        private Value value;
+        private boolean mixed;
+
+        ElementType attribute(String name, Value type) {
+            attributes.put(name, type);
+            return this;
+        }
+
+        ElementType requiredAttribute(String name, Value type) {
+            requiredAttributes.add(name);
+            return attribute(name, type);
+        }
+
+        ElementType text(Value type) {
+            value = type;
+            return this;
+        }
+
+        ElementType mixed() {
+            mixed = true;
+            return this;
+        }
+
+        ElementType sequence(int min, int max, Declaration... choice) {
+            particles.add(new Particle(min, max, choice));
+            return this;
+        }
+
+        boolean allowsText(String text) {
+            if (mixed) {
+                return true;
+            }
+
+            // element-only content allows whitespace, empty content allows no text at all
+            if (particles.isEmpty()) {
+                return false;
+            }
+
+            for (int i = 0; i < text.length(); i++) {
+                if (!isWhitespace(text.charAt(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * A choice of elements that occurs from min to max times in a sequence.
+     */
+    private static final class Particle {
+        private final int min;
+        private final int max;
+        private final Map<String, Declaration> elements = new HashMap<>();
+
+        Particle(int min, int max, Declaration... choice) {
+            this.min = min;
+            this.max = max;
+
+            Arrays.stream(choice).forEach(d -> elements.put(d.name, d));
+        }
+
+        ElementType get(Element element) {
+            Declaration declaration = elements.get(element.getLocalName());
+
+            return declaration != null && declaration.namespace.equals(element.getNamespaceURI())
+                    ? declaration.type : null;
+        }
+    }
+
+    /**
+     * An element declaration in a particle.
+     */
+    private static final class Declaration {
+        private final String namespace;
+        private final String name;
+        private final ElementType type;
+
+        Declaration(String namespace, String name, ElementType type) {
+            this.namespace = namespace;
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Simple types of the profile. Each accepts a subset of the lexical space of the corresponding schema type.
+     */
+    private enum Value {
+        STRING(value -> true),
+        BASE64(Value::isBase64),
+        INTEGER(value -> Patterns.INTEGER.matcher(value).matches()),
+        DATE_TIME(Value::isDateTime),
+        ANY_URI(Value::isUri),
+        ID(value -> Patterns.NC_NAME.matcher(value).matches()),
+        BOOLEAN(value -> Patterns.BOOLEAN.matcher(value).matches()),
+        QUALIFIER(value -> "OIDAsURI".equals(value) || "OIDAsURN".equals(value));
+
+        private static final String BASE64_ALPHABET =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        private static final byte[] BASE64_VALUES = new byte[128];
+        private static final int BASE64_QUANTUM = 4;
+        private static final int[] BASE64_UNUSED_BITS = {0, 0b11, 0b1111};
+        private static final char DEL = 0x7f;
+        private static final String URI_EXCLUDED = "<>\"{}|\\^`[]";
+
+        // algorithm identifiers and references repeat in every signature, remember the ones already accepted
+        private static final int MAX_KNOWN_URIS = 1000;
+        private static final Set<String> KNOWN_URIS = ConcurrentHashMap.newKeySet();
+
+        static {
+            Arrays.fill(BASE64_VALUES, (byte) -1);
+
+            for (int i = 0; i < BASE64_ALPHABET.length(); i++) {
+                BASE64_VALUES[BASE64_ALPHABET.charAt(i)] = (byte) i;
+            }
+        }
+
+        private final Predicate<String> predicate;
+
+        Value(Predicate<String> predicate) {
+            this.predicate = predicate;
+        }
+
+        boolean accepts(String value) {
+            return predicate.test(value);
+        }
+
+        private static boolean isBase64(String value) {
+            int length = 0;
+            int padding = 0;
+            int last = 0;
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                if (isWhitespace(c)) {
+                    continue;
+                }
+
+                if (c == '=') {
+                    padding++;
+                } else {
+                    last = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+
+                    if (padding > 0 || last < 0) {
+                        return false;
+                    }
+                }
+
+                length++;
+            }
+
+            // the bits that the padding leaves over in the last character must be zero
+            return length % BASE64_QUANTUM == 0 && padding < BASE64_UNUSED_BITS.length
+                    && (last & BASE64_UNUSED_BITS[padding]) == 0;
+        }
+
+        private static boolean isDateTime(String value) {
+            if (!Patterns.DATE_TIME.matcher(value).matches()) {
+                return false;
+            }
+
+            try {
+                DateTimeFormatter.ISO_DATE_TIME.parse(value);
+
+                return true;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        private static boolean isUri(String value) {
+            if (KNOWN_URIS.contains(value)) {
+                return true;
+            }
+
+            if (!isValidUri(value)) {
+                return false;
+            }
+
+            if (KNOWN_URIS.size() < MAX_KNOWN_URIS) {
+                KNOWN_URIS.add(value);
+            }
+
+            return true;
+        }
+
+        private static boolean isValidUri(String value) {
+            // java.net.URI accepts non-ASCII characters that would need escaping
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                if (c <= ' ' || c >= DEL || URI_EXCLUDED.indexOf(c) >= 0) {
+                    return false;
+                }
+            }
+
+            try {
+                URI uri = new URI(value);
+
+                // registry based authorities are left to the schema validator
+                return uri.getRawAuthority() == null || uri.getHost() != null;
+            } catch (URISyntaxException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Lexical forms of the simple types.
+     */
+    private static final class Patterns {
+        static final Pattern INTEGER = Pattern.compile("[+-]?[0-9]+");
+        static final Pattern NC_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9._-]*");
+        static final Pattern BOOLEAN = Pattern.compile("true|false|1|0");
+        // the ranges of the fields are left to the date time parser
+        static final Pattern DATE_TIME = Pattern.compile("[1-9][0-9]{3}-[0-9]{2}-[0-9]{2}T[0-9]{2}:[0-9]{2}:[0-9]{2}"
+                + "(?:\\.[0-9]{1,9})?(?:Z|[+-](?:0[0-9]|1[0-3]):[0-5][0-9])?");
+
+        private Patterns() {
+        }
+    }
+}
@@ -39,6 +39,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -61,6 +63,8 @@ public class AsyncHttpSender extends AbstractHttpSender {
 
     private Future<HttpResponse> futureResponse;
 
+    private final CompletableFuture<HttpResponse> completedResponse = new CompletableFuture<>();
+
     /**
      * Configures an asynchronous HTTP sender using the given HTTP client.
      * @param client asynchronous closeable HTTP client this sender should use
@@ -87,6 +91,7 @@ public class AsyncHttpSender extends AbstractHttpSender {
         LOG.trace("doPost({})", address);
 
         HttpPost post = new HttpPost(address);
+        post.setConfig(getRequestConfig());
         post.setEntity(createStringEntity(content, contentType));
 
         PerformanceLogger.log(LOG, "doPost(" + address + ") done");
@@ -112,6 +117,7 @@ public class AsyncHttpSender extends AbstractHttpSender {
         LOG.trace("doPost({})", address);
 
         HttpPost post = new HttpPost(address);
+        post.setConfig(getRequestConfig());
         post.setEntity(createInputStreamEntity(content, contentLength,
                 contentType));
 
@@ -126,7 +132,37 @@ public class AsyncHttpSender extends AbstractHttpSender {
 
         PerformanceLogger.log(LOG, "doGet(" + address + ") done");
 
-        doRequest(new HttpGet(address));
+        HttpGet get = new HttpGet(address);
+        get.setConfig(getRequestConfig());
+
+        doRequest(get);
+    }
+
+    /**
+     * Returns a future that completes when the response becomes available.
+     * Unlike {@link #waitForResponse(int)}, this method does not block, so the
+     * calling thread can be released while the request is in flight. When the
+     * future has completed normally, {@link #getResponseContent()} and
+     * {@link #getResponseContentType()} can be used to retrieve the response.
+     * Either this method or {@link #waitForResponse(int)} should be used, not both.
+     *
+     * @return future that completes when the response has been handled
+     */
+    public CompletableFuture<Void> responseAsync() {
+        if (futureResponse == null) {
+            throw new CodedException(X_INTERNAL_ERROR, "Request uninitialized");
+        }
+
+        return completedResponse.thenAccept(response -> {
+            try {
+                handleResponse(response);
+            } catch (Exception e) {
+                cancelRequest();
+                throw translateException(e);
+            } finally {
+                PerformanceLogger.log(LOG, "responseAsync() done");
+            }
+        });
     }
 
     /**
@@ -184,7 +220,11 @@ public class AsyncHttpSender extends AbstractHttpSender {
         }
     }
 
-    private void cancelRequest() {
+    /**
+     * Cancels the request if it is still in flight. A future returned by {@link #responseAsync()} completes
+     * exceptionally with a {@link CancellationException}.
+     */
+    public void cancelRequest() {
         if (futureResponse != null) {
             futureResponse.cancel(true);
         }
@@ -195,17 +235,20 @@ public class AsyncHttpSender extends AbstractHttpSender {
         @Override
         public void cancelled() {
             consumeEntity();
+            completedResponse.completeExceptionally(new CancellationException("Request cancelled"));
         }
 
         @Override
         public void completed(HttpResponse arg0) {
             consumeEntity();
+            completedResponse.complete(arg0);
         }
 
         @Override
         public void failed(Exception e) {
             LOG.trace("failed()", e);
             consumeEntity();
+            completedResponse.completeExceptionally(e);
         }
     }
 }
@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of fixed size byte buffers. Released buffers are kept for reuse up to the maximum number of pooled
+ * buffers, the rest are left to the garbage collector. The buffers are allocated on the heap or, if requested,
+ * as direct buffers that can be written to channels without copying.
+ */
+public final class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final LongAdder allocated = new LongAdder();
+
+    /**
+     * @param bufferSize size of the buffers in bytes
+     * @param maxPooled maximum number of released buffers kept for reuse
+     * @param direct whether to allocate direct buffers
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * @return a cleared buffer from the pool or a newly allocated one if the pool is empty
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+
+        if (buffer == null) {
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            allocated.increment();
+        } else {
+            pooled.decrementAndGet();
+            buffer.clear();
+        }
+
+        inUse.incrementAndGet();
+
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer acquired from this pool. The buffer must not be used after it has been released.
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        inUse.decrementAndGet();
+
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return number of buffers acquired and not yet released
+     */
+    public int getInUseCount() {
+        return inUse.get();
+    }
+
+    /**
+     * @return number of released buffers waiting for reuse
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * @return number of buffers allocated by the pool
+     */
+    public long getAllocatedCount() {
+        return allocated.sum();
+    }
+}
@@ -26,42 +26,80 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory, spilling over to a temporary file.
+ *
+ * The contents are kept in pooled byte buffers until they exceed the memory threshold. At that point the buffered
+ * contents are written to a temporary file, the buffers are returned to the pool and the rest of the contents go
+ * to the file.
+ *
+ * The cached contents may be read on other threads than the one consuming the stream. Reading the buffers and
+ * returning them to the pool are mutually exclusive, so a late read fails instead of reading a buffer that has
+ * already been reused by another stream.
  */
 @Slf4j
-public class CachingStream extends FilterOutputStream {
-    private SeekableByteChannel channel;
+public class CachingStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ByteBufferPool BUFFER_POOL = new ByteBufferPool(BUFFER_SIZE,
+            SystemProperties.getCachingStreamBufferPoolSize(), SystemProperties.isCachingStreamDirectBuffers());
+
+    private static final LongAdder CACHES = new LongAdder();
+    private static final LongAdder SPILLS = new LongAdder();
+
+    private final long memoryThreshold;
+
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private long size;
+
+    private FileChannel channel;
+    private OutputStream fileOut;
     private Path tempFile;
 
+    // Held for reading the buffers and exclusively for returning them to the pool
+    private final ReadWriteLock consumeLock = new ReentrantReadWriteLock();
+
+    private boolean consumed;
+
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory up to the configured threshold and in a
+     * temporary file beyond it.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        this(SystemProperties.getCachingStreamMemoryThreshold());
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    CachingStream(long memoryThreshold) throws IOException {
+        this.memoryThreshold = memoryThreshold;
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        CACHES.increment();
+
+        if (memoryThreshold <= 0) {
+            spill();
+        }
     }
 
     @Override
@@ -70,10 +108,54 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        if (fileOut == null && size + len > memoryThreshold) {
+            spill();
+        }
+
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            int offset = off;
+            int remaining = len;
+
+            while (remaining > 0) {
+                ByteBuffer buffer = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+
+                if (buffer == null || !buffer.hasRemaining()) {
+                    buffer = BUFFER_POOL.acquire();
+                    buffers.add(buffer);
+                }
+
+                int count = Math.min(remaining, buffer.remaining());
+                buffer.put(b, offset, count);
+
+                offset += count;
+                remaining -= count;
+            }
+        }
+
+        size += len;
+    }
+
+    /**
+     * @return true if the contents did not fit in memory and were written to a temporary file
+     */
+    public boolean isSpilled() {
+        return channel != null;
     }
 
     /**
@@ -83,21 +165,218 @@ public class CachingStream extends FilterOutputStream {
      */
     public CacheInputStream getCachedContents() {
         try {
-            return new CacheInputStream(channel);
+            if (channel != null) {
+                return new CacheInputStream(channel);
+            }
+
+            return new CacheInputStream(new BufferInputStream(), size);
         } catch (IOException ex) { // the position shouldn't really throw
             throw ErrorCodes.translateException(ex);
         }
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * Writes the cached contents to the given channel. Contents cached in a temporary file are transferred
+     * with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which avoids copying them through
+     * the heap, and contents cached in memory are written from the buffers.
+     *
+     * @param target the channel to write to
+     * @return number of bytes written
+     * @throws IOException if I/O errors occurred
+     */
+    public long writeTo(WritableByteChannel target) throws IOException {
+        Lock lock = consumeLock.readLock();
+        lock.lock();
+
+        try {
+            return writeContentsTo(target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long writeContentsTo(WritableByteChannel target) throws IOException {
+        checkNotConsumed();
+
+        if (channel != null) {
+            flush();
+
+            long count = channel.size();
+            long position = 0;
+
+            while (position < count) {
+                position += channel.transferTo(position, count - position, target);
+            }
+
+            return count;
+        }
+
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer contents = (ByteBuffer) buffer.duplicate().flip();
+
+            while (contents.hasRemaining()) {
+                target.write(contents);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Finalize caching stream. Use to avoid file handle leaks and to return the buffers to the pool.
+     * The cached contents must not be read after the stream has been consumed.
      */
     public void consume() {
+        Lock lock = consumeLock.writeLock();
+        lock.lock();
+
         try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            if (consumed) {
+                return;
+            }
+
+            consumed = true;
+
+            buffers.forEach(BUFFER_POOL::release);
+            buffers.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the pool of the buffers the contents are cached in
+     */
+    public static ByteBufferPool getBufferPool() {
+        return BUFFER_POOL;
+    }
+
+    /**
+     * @return number of caching streams created
+     */
+    public static long getCacheCount() {
+        return CACHES.sum();
+    }
+
+    /**
+     * @return number of caching streams that spilled over to a temporary file
+     */
+    public static long getSpillCount() {
+        return SPILLS.sum();
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+
+        for (ByteBuffer buffer : buffers) {
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            BUFFER_POOL.release(buffer);
+        }
+
+        buffers.clear();
+
+        fileOut = Channels.newOutputStream(channel);
+
+        SPILLS.increment();
+    }
+
+    private void checkNotConsumed() throws IOException {
+        if (consumed) {
+            throw new IOException("The cached contents have already been consumed");
         }
     }
 
+    /**
+     * Reads the contents of the buffers, failing if the caching stream gets consumed meanwhile. Each read holds
+     * the read lock of the caching stream, so the buffers are not returned to the pool during the read.
+     */
+    private final class BufferInputStream extends InputStream {
+        private final ByteBuffer[] contents = new ByteBuffer[buffers.size()];
+        private int index;
+
+        BufferInputStream() {
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = (ByteBuffer) buffers.get(i).duplicate().flip();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            Lock lock = consumeLock.readLock();
+            lock.lock();
+
+            try {
+                ByteBuffer buffer = current();
+
+                return buffer == null ? -1 : Byte.toUnsignedInt(buffer.get());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            Lock lock = consumeLock.readLock();
+            lock.lock();
+
+            try {
+                ByteBuffer buffer = current();
+
+                if (buffer == null) {
+                    return -1;
+                }
+
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            Lock lock = consumeLock.readLock();
+            lock.lock();
+
+            try {
+                ByteBuffer buffer = current();
+
+                return buffer == null ? 0 : buffer.remaining();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ByteBuffer current() throws IOException {
+            checkNotConsumed();
+
+            while (index < contents.length && !contents[index].hasRemaining()) {
+                index++;
+            }
+
+            return index < contents.length ? contents[index] : null;
+        }
+    }
 }
@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A modification time and size based file modification tracker. Unlike
+ * {@link FileContentChangeChecker}, the file is not read, and the check runs
+ * periodically in a background thread instead of the callers' threads.
+ *
+ * Every detected modification increments the generation of the file, so the
+ * callers only need to compare the generation to the one their data is based
+ * on, which costs no more than a volatile read.
+ */
+@Slf4j
+public class FileModificationTracker {
+
+    private final Path path;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private FileState state;
+
+    private ScheduledExecutorService poller;
+
+    /**
+     * Creates a tracker for the given file. The tracking begins when the
+     * tracker is started.
+     * @param fileName the tracked file
+     */
+    public FileModificationTracker(String fileName) {
+        this.path = Paths.get(fileName);
+    }
+
+    /**
+     * @return the generation of the file, incremented every time a
+     * modification of the file is detected
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Reads the current state of the file and starts checking it for
+     * modifications at the given interval.
+     * @param checkIntervalMillis the interval between the checks
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void start(long checkIntervalMillis) throws IOException {
+        if (poller != null) {
+            return;
+        }
+
+        state = readState();
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "file-modification-tracker-" + path.getFileName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        poller.scheduleWithFixedDelay(this::checkQuietly, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops checking the file.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    /**
+     * Checks the file for modifications immediately.
+     * @return true, if the file has been modified since the previous check
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized boolean checkForModifications() throws IOException {
+        FileState previous = state;
+
+        state = readState();
+
+        if (previous == null || previous.equals(state)) {
+            return false;
+        }
+
+        generation.incrementAndGet();
+
+        log.debug("Detected a modification of {}", path);
+
+        return true;
+    }
+
+    private void checkQuietly() {
+        try {
+            checkForModifications();
+        } catch (Exception e) {
+            log.error("Failed to check if {} has been modified", path, e);
+        }
+    }
+
+    private FileState readState() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+            // The file key changes when the file is replaced by another one.
+            return new FileState(attributes.lastModifiedTime(), attributes.size(),
+                    Objects.toString(attributes.fileKey(), null));
+        } catch (NoSuchFileException e) {
+            if (state == null) {
+                throw e;
+            }
+
+            // A missing file is a state of its own, it might be replaced soon.
+            return new FileState(null, -1, null);
+        }
+    }
+
+    @Value
+    private static class FileState {
+        private final FileTime lastModifiedTime;
+        private final long size;
+        private final String fileKey;
+    }
+}
@@ -72,6 +72,23 @@ public class ConfigurationDirectoryTest {
         assertNull(dir.getShared("xxx"));
     }
 
+    /**
+     * Test to ensure the generation does not change when the configuration is reloaded without changes.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void generationV2() throws Exception {
+        ConfigurationDirectoryV2 dir = new ConfigurationDirectoryV2("src/test/resources/globalconf_good_v2");
+
+        long generation = dir.getGeneration();
+
+        dir.reload();
+        dir.getShared("foo");
+
+        assertEquals(generation, dir.getGeneration());
+    }
+
     /**
      * Test to ensure an empty configuration directory is read properly.
      *
@@ -37,6 +37,7 @@ import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests to verify hash chain builder functionality.
@@ -212,4 +213,59 @@ public class HashChainBuilderTest {
         LOG.debug("Hash chain result:\n{}", builder.getHashChainResult("foo"));
         printChains(builder);
     }
+
+    /**
+     * Test that ensures compact hash chains are rendered to the same XML
+     * as the XML-encoded hash chains.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void compactHashChains() throws Exception {
+        LOG.info("compactHashChains()");
+
+        for (int treeSize = 2; treeSize < 40; ++treeSize) {
+            HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+            for (int i = 0; i < treeSize; ++i) {
+                add(builder, String.valueOf(i));
+            }
+            builder.finishBuilding();
+
+            assertCompactMatchesXml(builder);
+        }
+
+        HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+        builder.addInputHash(new byte[][] {new byte[] {(byte) 0 }});
+        builder.addInputHash(new byte[][] {
+                new byte[] {(byte) 11 },
+                new byte[] {(byte) 12 },
+                new byte[] {(byte) 13 },
+        });
+        builder.addInputHash(new byte[] {(byte) 3});
+        builder.finishBuilding();
+
+        assertCompactMatchesXml(builder);
+
+        builder = new HashChainBuilder(SHA256_ID);
+        builder.addInputHash(new byte[][] {
+                new byte[] {(byte) 11 },
+                new byte[] {(byte) 12 },
+        });
+        builder.finishBuilding();
+
+        assertCompactMatchesXml(builder);
+    }
+
+    private static void assertCompactMatchesXml(HashChainBuilder builder)
+            throws Exception {
+        String[] chains = builder.getHashChains("foo.xml");
+        String[] compactChains = builder.getCompactHashChains("foo.xml");
+
+        assertEquals(chains.length, compactChains.length);
+
+        for (int i = 0; i < chains.length; ++i) {
+            assertTrue(CompactHashChain.isCompact(compactChains[i]));
+            assertTrue(compactChains[i].length() < chains[i].length());
+            assertEquals(chains[i], CompactHashChain.toXml(compactChains[i]));
+        }
+    }
 }
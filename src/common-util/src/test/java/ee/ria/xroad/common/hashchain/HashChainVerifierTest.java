@@ -33,13 +33,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.xml.crypto.dsig.DigestMethod;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import static ee.ria.xroad.common.ErrorCodes.X_HASHCHAIN_UNUSED_INPUTS;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HASH_CHAIN_REF;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HASH_CHAIN_RESULT;
+import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_HASH_CHAIN;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmId;
 import static ee.ria.xroad.common.util.MessageFileNames.MESSAGE;
@@ -260,6 +264,59 @@ public class HashChainVerifierTest {
                 resolver, inputs);
     }
 
+    /**
+     * Test case with hash chains in compact form and rendered to XML.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void compactHashChain() throws Exception {
+        LOG.info("compactHashChain()");
+
+        byte[][] data = new byte[5][];
+
+        HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = ("data" + i).getBytes(StandardCharsets.UTF_8);
+            builder.addInputHash(calculateDigest(SHA256_ID, data[i]));
+        }
+        builder.finishBuilding();
+
+        String hashChainResult = builder.getHashChainResult(HASH_CHAIN);
+        String[] hashChains = builder.getCompactHashChains(MESSAGE);
+
+        for (int i = 0; i < data.length; ++i) {
+            HashChainVerifier.verify(stream(hashChainResult),
+                    new StringResolver(HASH_CHAIN, hashChains[i]),
+                    makeInputs(MESSAGE, data[i]));
+
+            HashChainVerifier.verify(stream(hashChainResult),
+                    new StringResolver(HASH_CHAIN,
+                            CompactHashChain.toXml(hashChains[i])),
+                    makeInputs(MESSAGE, data[i]));
+        }
+    }
+
+    /**
+     * Test case with a malformed hash chain in compact form.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void compactHashChainMalformed() throws Exception {
+        LOG.info("compactHashChainMalformed()");
+
+        HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+        builder.addInputHash(calculateDigest(SHA256_ID, new byte[] {1}));
+        builder.addInputHash(calculateDigest(SHA256_ID, new byte[] {2}));
+        builder.finishBuilding();
+
+        thrown.expectErrorSuffix(X_MALFORMED_HASH_CHAIN);
+
+        HashChainVerifier.verify(
+                stream(builder.getHashChainResult(HASH_CHAIN)),
+                new StringResolver(HASH_CHAIN, CompactHashChain.PREFIX + "AAAA"),
+                makeInputs(MESSAGE, new byte[] {1}));
+    }
+
     private static Map<String, DigestValue> makeInputs(Object... items)
             throws Exception {
         Map<String, DigestValue> ret = new HashMap<>();
@@ -321,6 +378,36 @@ public class HashChainVerifierTest {
         }
     }
 
+    private static class StringResolver implements HashChainReferenceResolver {
+
+        private final String uri;
+        private final String content;
+
+        StringResolver(String uri, String content) {
+            this.uri = uri;
+            this.content = content;
+        }
+
+        @Override
+        public InputStream resolve(String resolvedUri) {
+            LOG.debug("resolve({})", resolvedUri);
+            if (uri.equals(resolvedUri)) {
+                return stream(content);
+            } else {
+                throw new IllegalArgumentException("Invalid URI: " + resolvedUri);
+            }
+        }
+
+        @Override
+        public boolean shouldResolve(String resolvedUri, byte[] digestValue) {
+            return true;
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
     private static InputStream load(String fileName) {
         LOG.debug("load({})", fileName);
         return Thread.currentThread()
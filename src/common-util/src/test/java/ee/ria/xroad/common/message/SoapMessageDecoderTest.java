@@ -0,0 +1,163 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.message;
+
+import ee.ria.xroad.common.CodedException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that decoding the SOAP part and the attachments in two steps produces the same callbacks as decoding the
+ * whole message at once.
+ */
+public class SoapMessageDecoderTest {
+
+    private static final String MULTIPART_CONTENT_TYPE =
+            "multipart/related; charset=UTF-8; boundary=jetty771207119h3h10dty";
+
+    /**
+     * Test that a plain SOAP message is decoded in the same way in both modes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void decodeSoap() throws Exception {
+        List<String> events = decode("text/xml; charset=UTF-8", fileToBytes("simple.query"));
+
+        assertEquals(Arrays.asList("soap testQuery", "completed"), events);
+    }
+
+    /**
+     * Test that the attachments of a multipart message are decoded in the same way in both modes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void decodeMultipartWithAttachments() throws Exception {
+        List<String> events = decode(MULTIPART_CONTENT_TYPE, fileToBytes("attachments.query"));
+
+        assertEquals(Arrays.asList("soap test",
+                "attachment text/plain; charset=UTF-8 blaah",
+                "attachment text/plain; charset=UTF-8 blaah1",
+                "attachment text/plain; charset=UTF-8 blaah2",
+                "completed"), events);
+    }
+
+    /**
+     * Test that a multipart message without any parts is completed without a SOAP message in both modes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void decodeMultipartWithoutSoap() throws Exception {
+        byte[] message = "--jetty771207119h3h10dty--\r\n".getBytes(StandardCharsets.UTF_8);
+
+        List<String> events = decode(MULTIPART_CONTENT_TYPE, message);
+
+        assertEquals(Collections.singletonList("completed"), events);
+    }
+
+    /**
+     * Test that a multipart message whose first part is not a SOAP message fails in the same way in both modes.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void decodeMultipartWithInvalidSoapPart() throws Exception {
+        List<String> events = decode(MULTIPART_CONTENT_TYPE, fileToBytes("attachm-no-soap.query"));
+
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).startsWith("error "));
+        assertEquals("completed", events.get(1));
+    }
+
+    /**
+     * Decodes the message with {@link SoapMessageDecoder#parse(InputStream)} and in two steps with
+     * {@link SoapMessageDecoder#parseSoap(InputStream)} and {@link SoapMessageDecoder#parseAttachments()},
+     * checks that both produce the same callbacks and returns them.
+     */
+    private static List<String> decode(String contentType, byte[] message) throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        new SoapMessageDecoder(contentType, callback).parse(new ByteArrayInputStream(message));
+
+        RecordingCallback streamingCallback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(contentType, streamingCallback);
+        decoder.parseSoap(new ByteArrayInputStream(message));
+
+        assertTrue("Attachments must not be decoded with the SOAP part",
+                streamingCallback.events.stream().noneMatch(e -> e.startsWith("attachment ")));
+        assertFalse(streamingCallback.events.contains("completed"));
+
+        decoder.parseAttachments();
+
+        assertEquals(callback.events, streamingCallback.events);
+
+        return callback.events;
+    }
+
+    private static class RecordingCallback implements SoapMessageDecoder.Callback {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void soap(SoapMessage message, Map<String, String> additionalHeaders) {
+            events.add("soap " + ((SoapMessageImpl) message).getService().getServiceCode());
+        }
+
+        @Override
+        public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders)
+                throws Exception {
+            events.add("attachment " + contentType + " "
+                    + IOUtils.toString(content, StandardCharsets.UTF_8).trim());
+        }
+
+        @Override
+        public void fault(SoapFault fault) {
+            events.add("fault " + fault.getCode());
+        }
+
+        @Override
+        public void onCompleted() {
+            events.add("completed");
+        }
+
+        @Override
+        public void onError(Exception t) {
+            events.add("error " + (t instanceof CodedException ? ((CodedException) t).getFaultCode()
+                    : t.getClass().getName()));
+        }
+    }
+}
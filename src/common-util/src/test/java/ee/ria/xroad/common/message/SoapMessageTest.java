@@ -224,6 +224,53 @@ public class SoapMessageTest {
         }
     }
 
+    /**
+     * Test that the header and the service name are parsed and the message is passed through unchanged when parsing
+     * stops at the beginning of the SOAP body.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyParsing() throws Exception {
+        byte[] in = fileToBytes("simple.query");
+
+        // the parsers are reused, parse more than once
+        for (int i = 0; i < 2; i++) {
+            Soap soap = new HeaderOnlySaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(in));
+            assertTrue(soap instanceof SoapMessageImpl);
+
+            SoapMessageImpl message = (SoapMessageImpl) soap;
+            assertEquals("testQuery", message.getService().getServiceCode());
+            assertEquals("1234567890", message.getQueryId());
+            assertTrue(Arrays.areEqual(in, message.getBytes()));
+        }
+    }
+
+    /**
+     * Test that the header is still validated when parsing stops at the beginning of the SOAP body.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyParsingMissingHeaderField() throws Exception {
+        thrown.expectError(X_MISSING_HEADER_FIELD);
+
+        new HeaderOnlySaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(fileToBytes("faulty-header.query")));
+    }
+
+    /**
+     * Test that faults are parsed in full when parsing would stop at the beginning of the SOAP body.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void headerOnlyParsingFault() throws Exception {
+        String soapFaultXml = SoapFault.createFaultXml("foo.bar", "baz", "xxx", "yyy");
+        Soap message = new HeaderOnlySaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(soapFaultXml.getBytes()));
+
+        assertTrue(message instanceof SoapFault);
+        assertEquals("baz", ((SoapFault) message).getString());
+    }
+
     /**
      * Tests that SoapMessage class understands fault messages.
      * @throws Exception in case of any unexpected errors
@@ -424,4 +471,11 @@ public class SoapMessageTest {
         thrown.expectError(X_INVALID_PROTOCOL_VERSION);
         createRequest("wrong-version.query");
     }
+
+    private static class HeaderOnlySaxSoapParserImpl extends SaxSoapParserImpl {
+        @Override
+        protected boolean isHeaderOnlyParsing() {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.CodedException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static ee.ria.xroad.common.ErrorCodes.X_HTTP_ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the non-blocking response handling of the asynchronous HTTP sender.
+ */
+public class AsyncHttpSenderTest {
+
+    private static final URI ADDRESS = URI.create("http://127.0.0.1:8080/service");
+
+    private BasicFuture<HttpResponse> exchange;
+    private AsyncHttpSender sender;
+
+    /**
+     * Creates a sender whose requests are completed by the tests.
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        CloseableHttpAsyncClient client = mock(CloseableHttpAsyncClient.class);
+
+        when(client.execute(any(HttpUriRequest.class), any(HttpContext.class), any(FutureCallback.class)))
+                .thenAnswer(invocation -> {
+                    exchange = new BasicFuture<>((FutureCallback<HttpResponse>) invocation.getArguments()[2]);
+
+                    return exchange;
+                });
+
+        sender = new AsyncHttpSender(client);
+    }
+
+    /**
+     * Test that the future completes with the response once it has been received.
+     */
+    @Test
+    public void responseAsyncCompletesWhenResponseReceived() throws Exception {
+        sender.doPost(ADDRESS, "<request/>", MimeTypes.TEXT_XML);
+
+        CompletableFuture<Void> response = sender.responseAsync();
+
+        assertFalse(response.isDone());
+
+        exchange.completed(createResponse(HttpStatus.OK_200));
+
+        response.join();
+
+        assertEquals(MimeTypes.TEXT_XML, MimeUtils.getBaseContentType(sender.getResponseContentType()));
+        assertEquals("<response/>", IOUtils.toString(sender.getResponseContent(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test that the future completes exceptionally with the cause when the request fails.
+     */
+    @Test
+    public void responseAsyncFailsWhenRequestFails() throws Exception {
+        sender.doPost(ADDRESS, "<request/>", MimeTypes.TEXT_XML);
+
+        CompletableFuture<Void> response = sender.responseAsync();
+
+        exchange.failed(new ConnectException("Connection refused"));
+
+        assertTrue(getFailure(response) instanceof ConnectException);
+    }
+
+    /**
+     * Test that the future completes exceptionally when the service responds with an unexpected status.
+     */
+    @Test
+    public void responseAsyncFailsOnErrorStatus() throws Exception {
+        sender.doPost(ADDRESS, "<request/>", MimeTypes.TEXT_XML);
+
+        CompletableFuture<Void> response = sender.responseAsync();
+
+        exchange.completed(createResponse(HttpStatus.NOT_FOUND_404));
+
+        Throwable failure = getFailure(response);
+
+        assertTrue(failure instanceof CodedException);
+        assertEquals(X_HTTP_ERROR, ((CodedException) failure).getFaultCode());
+    }
+
+    /**
+     * Test that the future completes exceptionally when the request is cancelled.
+     */
+    @Test
+    public void responseAsyncFailsWhenCancelled() throws Exception {
+        sender.doPost(ADDRESS, "<request/>", MimeTypes.TEXT_XML);
+
+        CompletableFuture<Void> response = sender.responseAsync();
+
+        sender.cancelRequest();
+
+        assertTrue(exchange.isCancelled());
+        assertTrue(getFailure(response) instanceof CancellationException);
+    }
+
+    /**
+     * Test that the response cannot be waited for before a request has been sent.
+     */
+    @Test(expected = CodedException.class)
+    public void responseAsyncRequiresRequest() {
+        sender.responseAsync();
+    }
+
+    private static HttpResponse createResponse(int status) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+        response.setEntity(new StringEntity("<response/>", ContentType.TEXT_XML));
+
+        return response;
+    }
+
+    private static Throwable getFailure(CompletableFuture<Void> future) {
+        assertTrue(future.isCompletedExceptionally());
+
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+
+        fail("Future should have completed exceptionally");
+
+        return null;
+    }
+}
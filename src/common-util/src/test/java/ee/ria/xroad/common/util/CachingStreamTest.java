@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the caching stream keeps small contents in memory and spills large ones to a temporary file.
+ */
+public class CachingStreamTest {
+
+    private static final int THRESHOLD = 20000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
+
+    /**
+     * Test to ensure contents below the threshold are cached in memory and the buffers are returned to the pool.
+     */
+    @Test
+    public void cacheInMemory() throws Exception {
+        byte[] data = randomBytes(THRESHOLD);
+        int inUse = CachingStream.getBufferPool().getInUseCount();
+        long spills = CachingStream.getSpillCount();
+
+        CachingStream cache = write(data);
+
+        assertFalse(cache.isSpilled());
+        assertEquals(spills, CachingStream.getSpillCount());
+        assertTrue(CachingStream.getBufferPool().getInUseCount() > inUse);
+        assertContents(data, cache);
+
+        cache.consume();
+
+        assertEquals(inUse, CachingStream.getBufferPool().getInUseCount());
+    }
+
+    /**
+     * Test to ensure contents above the threshold are spilled to a temporary file, including the part that had
+     * been written to memory already.
+     */
+    @Test
+    public void spillToFile() throws Exception {
+        byte[] data = randomBytes(THRESHOLD + 1);
+        int inUse = CachingStream.getBufferPool().getInUseCount();
+        long spills = CachingStream.getSpillCount();
+
+        CachingStream cache = write(data);
+
+        assertTrue(cache.isSpilled());
+        assertEquals(spills + 1, CachingStream.getSpillCount());
+        assertEquals(inUse, CachingStream.getBufferPool().getInUseCount());
+        assertContents(data, cache);
+
+        cache.consume();
+    }
+
+    /**
+     * Test to ensure the cached contents in memory can not be read after the cache has been consumed.
+     */
+    @Test(expected = IOException.class)
+    public void readAfterConsume() throws Exception {
+        CachingStream cache = write(randomBytes(100));
+        CacheInputStream in = cache.getCachedContents();
+
+        cache.consume();
+        in.read();
+    }
+
+    /**
+     * Test to ensure the buffers are not returned to the pool while the cached contents are being read.
+     */
+    @Test
+    public void consumeWaitsForRead() throws Exception {
+        byte[] data = randomBytes(100);
+        CachingStream cache = write(data);
+        int inUse = CachingStream.getBufferPool().getInUseCount();
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel outChannel = Channels.newChannel(out);
+
+        WritableByteChannel target = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                reading.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+
+                return outChannel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // Do nothing.
+            }
+        };
+
+        Thread reader = new Thread(() -> {
+            try {
+                cache.writeTo(target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        reader.start();
+        reading.await();
+
+        Thread consumer = new Thread(cache::consume);
+        consumer.start();
+        consumer.join(200);
+
+        assertTrue(consumer.isAlive());
+        assertEquals(inUse, CachingStream.getBufferPool().getInUseCount());
+
+        release.countDown();
+        reader.join();
+        consumer.join();
+
+        assertArrayEquals(data, out.toByteArray());
+        assertTrue(CachingStream.getBufferPool().getInUseCount() < inUse);
+    }
+
+    private static CachingStream write(byte[] data) throws IOException {
+        CachingStream cache = new CachingStream(THRESHOLD);
+
+        // write in uneven pieces to cross the buffer boundaries
+        for (int offset = 0; offset < data.length; offset += 1000) {
+            cache.write(data, offset, Math.min(1000, data.length - offset));
+        }
+
+        cache.close();
+
+        return cache;
+    }
+
+    private static void assertContents(byte[] expected, CachingStream cache) throws IOException {
+        CacheInputStream in = cache.getCachedContents();
+
+        assertEquals(expected.length, in.size());
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+
+        // the contents can be read again
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(expected.length, cache.writeTo(Channels.newChannel(out)));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        return data;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for FileModificationTracker.
+ */
+public class FileModificationTrackerTest {
+
+    private Path file;
+    private FileModificationTracker tracker;
+
+    /**
+     * Creates the tracked file.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("tracked", ".xml");
+        Files.write(file, "foo".getBytes());
+
+        tracker = new FileModificationTracker(file.toString());
+    }
+
+    /**
+     * Stops the tracker and removes the tracked file.
+     * @throws Exception if an error occurs
+     */
+    @After
+    public void tearDown() throws Exception {
+        tracker.stop();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Tests whether the file modifications are detected.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void checkModifications() throws Exception {
+        assertFalse("Should not have been modified yet", tracker.checkForModifications());
+        assertEquals(0, tracker.getGeneration());
+
+        Files.write(file, "foobar".getBytes());
+
+        assertTrue("Should have been modified", tracker.checkForModifications());
+        assertEquals(1, tracker.getGeneration());
+
+        assertFalse("Should not have been modified again", tracker.checkForModifications());
+        assertEquals(1, tracker.getGeneration());
+
+        Path replacement = Files.createTempFile(file.getParent(), "replacement", ".xml");
+        Files.write(replacement, "foobar".getBytes());
+        Files.move(replacement, file, REPLACE_EXISTING);
+
+        assertTrue("Should have been replaced", tracker.checkForModifications());
+        assertEquals(2, tracker.getGeneration());
+
+        Files.delete(file);
+
+        assertTrue("Should have been deleted", tracker.checkForModifications());
+        assertEquals(3, tracker.getGeneration());
+    }
+
+    /**
+     * Tests whether the modifications are detected in the background.
+     * @throws Exception if an error occurs
+     */
+    @Test(timeout = 5000)
+    public void trackModifications() throws Exception {
+        tracker.start(10);
+
+        Files.write(file, "foobar".getBytes());
+
+        while (tracker.getGeneration() == 0) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, tracker.getGeneration());
+    }
+
+    /**
+     * Tests that the tracker cannot be started for a missing file.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = NoSuchFileException.class)
+    public void missingFile() throws Exception {
+        new FileModificationTracker(file.resolveSibling("missing.xml").toString()).start(10);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of successfully verified certificate chains. A chain is verified
+ * together with the OCSP responses of its certificates; the verification
+ * result stays valid under the same global configuration as long as the
+ * certificates are valid and the OCSP responses are fresh, so repeated
+ * signatures of the same signer do not need the path validation and OCSP
+ * signature checks again. Failed verifications are not cached.
+ */
+@Slf4j
+public final class VerifiedCertChainCache {
+
+    private static final int CACHE_SIZE = SystemProperties.getCertChainVerifierCacheSize();
+
+    private static final Cache<Key, Validity> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(SystemProperties.getOcspVerifierCachePeriod(), TimeUnit.SECONDS)
+            .build();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private VerifiedCertChainCache() {
+    }
+
+    /**
+     * Verifies the certificate chain with the OCSP responses at the given
+     * date, unless the same chain and OCSP responses have already been
+     * verified under the current global configuration and the result
+     * covers the date.
+     * @param certChain the certificate chain
+     * @param ocspResponses OCSP responses of the certificates in the chain
+     * @param atDate the date at which the verification is performed
+     * @see CertChainVerifier#verify(List, Date)
+     */
+    public static void verify(CertChain certChain, List<OCSPResp> ocspResponses, Date atDate) {
+        if (CACHE_SIZE <= 0 || ocspResponses == null) {
+            new CertChainVerifier(certChain).verify(ocspResponses, atDate);
+            return;
+        }
+
+        Key key = new Key(GlobalConf.getVersion(), certChain.getInstanceIdentifier(), certChain.getAllCerts(),
+                new ArrayList<>(ocspResponses));
+        Validity validity = CACHE.getIfPresent(key);
+
+        if (validity != null && validity.covers(atDate != null ? atDate : new Date())) {
+            HITS.increment();
+            return;
+        }
+
+        MISSES.increment();
+
+        new CertChainVerifier(certChain).verify(ocspResponses, atDate);
+
+        try {
+            CACHE.put(key, Validity.of(key.getCerts(), ocspResponses));
+        } catch (OCSPException e) {
+            // the responses have just been verified, so this should not happen, just do not cache the result
+            log.warn("Could not cache verified certificate chain", e);
+        }
+    }
+
+    /**
+     * @return the number of verifications answered from the cache
+     */
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return the number of verifications that were not found in the cache
+     */
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public static void clear() {
+        CACHE.invalidateAll();
+    }
+
+    @Value
+    private static class Key {
+        private final Object confVersion;
+        private final String instanceIdentifier;
+        private final List<X509Certificate> certs;
+        private final List<OCSPResp> ocspResponses;
+    }
+
+    /**
+     * The period in which the verification result holds: all the certificates
+     * are valid and all the OCSP responses are fresh enough.
+     */
+    @Value
+    private static class Validity {
+        private final long notBefore;
+        private final long notAfter;
+
+        static Validity of(List<X509Certificate> certs, List<OCSPResp> ocspResponses) throws OCSPException {
+            long notBefore = Long.MIN_VALUE;
+            long notAfter = Long.MAX_VALUE;
+
+            for (X509Certificate cert : certs) {
+                notBefore = Math.max(notBefore, cert.getNotBefore().getTime());
+                notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+            }
+
+            long freshnessMillis = TimeUnit.SECONDS.toMillis(GlobalConf.getOcspFreshnessSeconds(false));
+            boolean verifyNextUpdate = GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate();
+
+            for (OCSPResp response : ocspResponses) {
+                for (SingleResp singleResp : ((BasicOCSPResp) response.getResponseObject()).getResponses()) {
+                    notAfter = Math.min(notAfter, singleResp.getThisUpdate().getTime() + freshnessMillis);
+
+                    if (verifyNextUpdate && singleResp.getNextUpdate() != null) {
+                        notAfter = Math.min(notAfter, singleResp.getNextUpdate().getTime());
+                    }
+                }
+            }
+
+            return new Validity(notBefore, notAfter);
+        }
+
+        boolean covers(Date atDate) {
+            return atDate.getTime() >= notBefore && atDate.getTime() <= notAfter;
+        }
+    }
+}
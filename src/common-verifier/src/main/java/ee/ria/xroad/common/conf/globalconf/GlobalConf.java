@@ -36,6 +36,8 @@ import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.file.Path;
@@ -195,6 +197,30 @@ public final class GlobalConf {
         return provider.isValid();
     }
 
+    /**
+     * Returns the generation of the current configuration, which changes every
+     * time the configuration is reloaded with changes. Caches of data derived
+     * from the configuration can use it for detecting when to refresh.
+     * Note that the generation is specific to the configuration instance.
+     * @return the generation of the configuration
+     */
+    public static long getGeneration() {
+        return getInstance().getGeneration();
+    }
+
+    /**
+     * Returns the version of the current configuration. Versions are equal
+     * only if they refer to the same configuration instance with the same
+     * generation, so unlike the generation, the version can be used for
+     * caching data derived from whichever configuration is current.
+     * @return the version of the current configuration
+     */
+    public static Object getVersion() {
+        GlobalConfProvider provider = getInstance();
+
+        return new Version(provider, provider.getGeneration());
+    }
+
     /**
      * @return the instance identifier for this configuration source
      */
@@ -716,4 +742,11 @@ public final class GlobalConf {
 
         return getInstance().getApprovedCA(instanceIdentifier, cert);
     }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Version {
+        private final GlobalConfProvider provider;
+        private final long generation;
+    }
 }
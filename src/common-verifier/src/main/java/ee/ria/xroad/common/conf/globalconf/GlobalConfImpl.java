@@ -48,6 +48,7 @@ import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
 import ee.ria.xroad.common.util.CryptoUtils;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -87,6 +88,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     private ConfigurationDirectoryV2 confDir;
 
+    // Known addresses of all the instances, collected at the given configuration generation
+    private volatile KnownAddresses knownAddresses;
+
     GlobalConfImpl(boolean reloadIfChanged) {
         try {
             confDir = new CachingConfigurationDirectory(getConfigurationPath(),
@@ -193,11 +197,13 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getMembers().stream()
-                .filter(m -> p.createMemberId(m).memberEquals(clientId))
-                .map(MemberType::getName)
-                .findFirst()
-                .orElse(null);
+        if (p == null) {
+            return null;
+        }
+
+        MemberType member = p.findMember(clientId);
+
+        return member != null ? member.getName() : null;
     }
 
     @Override
@@ -236,11 +242,13 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(
-                        globalGroupId.getGroupCode()))
-                .map(GlobalGroupType::getDescription)
-                .findFirst().orElse(null);
+        if (p == null) {
+            return null;
+        }
+
+        GlobalGroupType group = p.findGlobalGroup(globalGroupId);
+
+        return group != null ? group.getDescription() : null;
     }
 
     @Override
@@ -410,12 +418,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
         return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(o -> o.stream())
-                .map(OcspInfoType::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .filter(c -> c.equals(ocspCert))
-                .findFirst().isPresent();
+                .anyMatch(p -> p.isOcspResponderCert(ca, ocspCert));
     }
 
     @Override
@@ -463,12 +466,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean authCertMatchesMember(X509Certificate cert,
             ClientId memberId) throws Exception {
-        byte[] inputCertHash = certHash(cert);
+        String b64 = encodeBase64(certHash(cert));
+
         return getSharedParameters().stream()
-                .map(p -> p.getMemberAuthCerts().get(memberId))
-                .filter(Objects::nonNull).flatMap(h -> h.stream())
-                .filter(h -> Arrays.equals(inputCertHash, h)).findFirst()
-                .isPresent();
+                .anyMatch(p -> p.authCertMatchesMember(b64, memberId));
     }
 
     @Override
@@ -550,9 +551,18 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public Set<String> getKnownAddresses() {
-        return getSharedParameters().stream()
-                .flatMap(p -> p.getKnownAddresses().stream())
-                .collect(Collectors.toSet());
+        long generation = confDir.getGeneration();
+        KnownAddresses cached = knownAddresses;
+
+        if (cached == null || cached.getGeneration() != generation) {
+            cached = new KnownAddresses(generation, Collections.unmodifiableSet(getSharedParameters().stream()
+                    .flatMap(p -> p.getKnownAddresses().stream())
+                    .collect(Collectors.toSet())));
+
+            knownAddresses = cached;
+        }
+
+        return cached.getAddresses();
     }
 
     @Override
@@ -571,13 +581,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             return false;
         }
 
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return p.isGlobalGroupMember(groupId, subjectId);
     }
 
     @Override
@@ -645,6 +649,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     // ------------------------------------------------------------------------
 
+    @Override
+    public long getGeneration() {
+        return confDir.getGeneration();
+    }
+
     @Override
     public boolean hasChanged() {
         return false;
@@ -743,4 +752,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
         return createApprovedCAInfo(approvedCAType);
     }
 
+    @Value
+    private static class KnownAddresses {
+        private final long generation;
+        private final Set<String> addresses;
+    }
 }
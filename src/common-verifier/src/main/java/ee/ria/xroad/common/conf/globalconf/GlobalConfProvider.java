@@ -56,6 +56,16 @@ public interface GlobalConfProvider extends ConfProvider {
      */
     boolean isValid();
 
+    /**
+     * Returns the generation of the configuration, which changes every time
+     * the configuration is reloaded with changes. Data derived from the
+     * configuration can be cached as long as the generation stays the same.
+     * @return the generation of the configuration
+     */
+    default long getGeneration() {
+        return 0;
+    }
+
     /**
      * @return the instance identifier for this configuration source
      */
@@ -27,8 +27,10 @@ package ee.ria.xroad.common.ocsp;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
-import ee.ria.xroad.common.conf.globalconf.TimeBasedObjectCache;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 import org.bouncycastle.asn1.DERBitString;
@@ -52,6 +54,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_VALIDATION_INFO;
@@ -68,7 +71,6 @@ public final class OcspVerifier {
 
     private static final String ID_KP_OCSPSIGNING = "1.3.6.1.5.5.7.3.9";
 
-    private static final String SINGLE_RESP = "single_resp";
     private static final String SIGNATURE = "signature";
     private static final String CERTIFICATE = "certificate";
 
@@ -76,8 +78,13 @@ public final class OcspVerifier {
 
     private final OcspVerifierOptions options;
 
-    private static final TimeBasedObjectCache CACHE = new TimeBasedObjectCache(SystemProperties
-            .getOcspVerifierCachePeriod());;
+    // upper bound for the number of verified responses kept in the cache
+    private static final int CACHE_MAX_SIZE = 10000;
+
+    private static final Cache<CacheKey, SingleResp> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_MAX_SIZE)
+            .expireAfterWrite(SystemProperties.getOcspVerifierCachePeriod(), TimeUnit.SECONDS)
+            .build();
 
     /**
      * Constructor
@@ -182,15 +189,18 @@ public final class OcspVerifier {
         }
     }
 
-    private synchronized SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
-                                                                 X509Certificate issuer)
+    private SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
+                                                    X509Certificate issuer)
             throws Exception {
-        String key = SINGLE_RESP + response.hashCode() + subject.hashCode() + issuer.hashCode();
-        if (!CACHE.isValid(key)) {
-            CACHE.setValue(key, verifyResponseValidity(response, subject, issuer));
+        CacheKey key = new CacheKey(response, subject, issuer);
+        SingleResp singleResp = CACHE.getIfPresent(key);
+
+        if (singleResp == null) {
+            singleResp = verifyResponseValidity(response, subject, issuer);
+            CACHE.put(key, singleResp);
         }
 
-        return (SingleResp) CACHE.getValue(key);
+        return singleResp;
     }
 
     private SingleResp verifyResponseValidity(OCSPResp response, X509Certificate subject, X509Certificate issuer)
@@ -368,6 +378,13 @@ public final class OcspVerifier {
 
     }
 
+    @Value
+    private static class CacheKey {
+        private final OCSPResp response;
+        private final X509Certificate subject;
+        private final X509Certificate issuer;
+    }
+
     private static boolean isAuthorizedOcspSigner(X509Certificate ocspCert,
             X509Certificate issuer) throws Exception {
         // 1. Matches a local configuration of OCSP signing authority for the
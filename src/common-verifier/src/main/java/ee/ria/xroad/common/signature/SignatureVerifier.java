@@ -26,8 +26,8 @@ package ee.ria.xroad.common.signature;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.cert.CertChain;
-import ee.ria.xroad.common.cert.CertChainVerifier;
 import ee.ria.xroad.common.cert.CertHelper;
+import ee.ria.xroad.common.cert.VerifiedCertChainCache;
 import ee.ria.xroad.common.certificateprofile.impl.SignCertificateProfileInfoParameters;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.hashchain.DigestValue;
@@ -48,8 +48,6 @@ import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.w3c.dom.Node;
 
-import javax.xml.transform.dom.DOMSource;
-
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -256,7 +254,7 @@ public class SignatureVerifier {
     private void verifySchema() throws Exception {
         Node signatureNode =
                 signature.getDocument().getDocumentElement().getFirstChild();
-        SignatureSchemaValidator.validate(new DOMSource(signatureNode));
+        SignatureSchemaValidator.validate(signatureNode);
     }
 
     private void verifyHashChain() throws Exception {
@@ -329,7 +327,7 @@ public class SignatureVerifier {
         CertChain certChain =
                 CertChain.create(signer.getXRoadInstance(), signingCert,
                         signature.getExtraCertificates());
-        new CertChainVerifier(certChain).verify(signature.getOcspResponses(),
+        VerifiedCertChainCache.verify(certChain, signature.getOcspResponses(),
                 atDate);
     }
 
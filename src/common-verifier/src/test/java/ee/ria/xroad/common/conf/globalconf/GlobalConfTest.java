@@ -65,6 +65,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -143,6 +144,30 @@ public class GlobalConfTest {
         assertNull("Description", GlobalConf.getGlobalGroupDescription(GlobalGroupId.create("EE", "foo")));
     }
 
+    /**
+     * Tests checking the global group membership.
+     */
+    @Test
+    public void isSubjectInGlobalGroup() {
+        GlobalGroupId group = GlobalGroupId.create("EE", "Test group");
+
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member5"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"), GlobalGroupId.create("EE", "foo")));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"),
+                GlobalGroupId.create("foo", "Test group")));
+    }
+
+    /**
+     * Tests getting the member names.
+     */
+    @Test
+    public void getMemberName() {
+        assertEquals("Experimental producer", GlobalConf.getMemberName(newClientId("producer")));
+        assertEquals("Org with no address", GlobalConf.getMemberName(newClientId("foo", "foosubsystem")));
+        assertNull(GlobalConf.getMemberName(newClientId("bar")));
+    }
+
     /**
      * Tests getting the actual service identifier for a given identifier.
      *
@@ -380,6 +405,9 @@ public class GlobalConfTest {
         Set<String> actualAddresses = GlobalConf.getKnownAddresses();
 
         assertEquals(expectedAddresses, actualAddresses);
+
+        // the addresses are collected once per configuration generation
+        assertSame(actualAddresses, GlobalConf.getKnownAddresses());
     }
 
     /**
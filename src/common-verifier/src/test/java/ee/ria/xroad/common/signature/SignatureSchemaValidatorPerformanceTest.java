@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Element;
+
+import javax.xml.transform.dom.DOMSource;
+
+import static ee.ria.xroad.common.signature.XadesProfileValidatorTest.read;
+import static ee.ria.xroad.common.signature.XadesProfileValidatorTest.signatureElement;
+
+/**
+ * Compares validating a signature with the XAdES profile validator to validating it against the schema.
+ */
+@Slf4j
+public class SignatureSchemaValidatorPerformanceTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        Element signature = signatureElement(read("../common-test/src/test/signatures/sign-0.xml"));
+
+        measure("profile", () -> SignatureSchemaValidator.validate(signature));
+        measure("schema", () -> SignatureSchemaValidator.validate(new DOMSource(signature)));
+    }
+
+    private static void measure(String name, Validation validation) throws Exception {
+        run(validation, WARMUP_ITERATIONS);
+
+        long start = System.nanoTime();
+        run(validation, ITERATIONS);
+        long nanos = System.nanoTime() - start;
+
+        log.info("{}: {} ns per signature", name, nanos / ITERATIONS);
+    }
+
+    private static void run(Validation validation, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            validation.validate();
+        }
+    }
+
+    private interface Validation {
+        void validate() throws Exception;
+    }
+}
@@ -24,10 +24,12 @@
  */
 package ee.ria.xroad.common.signature;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
 import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.cert.VerifiedCertChainCache;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconf.TestGlobalConfImpl;
 import ee.ria.xroad.common.hashchain.HashChainReferenceResolver;
@@ -50,6 +52,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_CERTIFICATE;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_SIGNATURE_VALUE;
@@ -57,6 +60,8 @@ import static ee.ria.xroad.common.ErrorCodes.X_INVALID_XML;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SIGNATURE;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA512_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  * Tests the signature verifier.
@@ -137,7 +142,39 @@ public class SignatureVerifierTest {
         verifyValidSignature("../common-test/src/test/signatures/sign-0-old-format.xml");
     }
 
+    /**
+     * Tests that verifying a signature again uses the cached certificate chain verification while the OCSP
+     * responses are fresh, and verifies the chain again when they are not.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void verifyCachedCertChain() throws Exception {
+        VerifiedCertChainCache.clear();
+
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+
+        long hits = VerifiedCertChainCache.getHitCount();
+        long misses = VerifiedCertChainCache.getMissCount();
+
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+
+        assertEquals(hits + 1, VerifiedCertChainCache.getHitCount());
+        assertEquals(misses, VerifiedCertChainCache.getMissCount());
+
+        try {
+            verifySignature("../common-test/src/test/signatures/sign-0.xml",
+                    new Date(CORRECT_VALIDATION_DATE.getTime() + TimeUnit.DAYS.toMillis(1)));
+            fail("OCSP responses should not be fresh a day later");
+        } catch (CodedException expected) {
+            assertEquals(misses + 1, VerifiedCertChainCache.getMissCount());
+        }
+    }
+
     private void verifyValidSignature(String signatureFileName) throws Exception {
+        verifySignature(signatureFileName, CORRECT_VALIDATION_DATE);
+    }
+
+    private void verifySignature(String signatureFileName, Date atDate) throws Exception {
         List<MessagePart> hashes = new ArrayList<>();
         byte[] messageBytes = fileToBytes("../common-test/src/test/signatures/message-0.xml");
 
@@ -147,7 +184,7 @@ public class SignatureVerifierTest {
         SignatureVerifier verifier = createSignatureVerifier(signatureFileName);
         verifier.addParts(hashes);
 
-        verifier.verify(CONSUMER_ID, CORRECT_VALIDATION_DATE);
+        verifier.verify(CONSUMER_ID, atDate);
     }
 
     /**
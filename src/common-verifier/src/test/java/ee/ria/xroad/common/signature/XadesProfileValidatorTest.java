@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.ExpectedCodedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SIGNATURE;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the XAdES profile validator against signatures that are valid or invalid according to the schema.
+ */
+public class XadesProfileValidatorTest {
+
+    private static final String SIGNATURE = "../common-test/src/test/signatures/sign-0.xml";
+
+    @Rule
+    public ExpectedCodedException thrown = ExpectedCodedException.none();
+
+    /**
+     * Signatures produced by X-Road are accepted without the schema validator.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void acceptSignatures() throws Exception {
+        assertTrue(XadesProfileValidator.accepts(signatureElement(read(SIGNATURE))));
+        assertTrue(XadesProfileValidator.accepts(signatureElement(read(
+                "../common-test/src/test/signatures/sign-0-old-format.xml"))));
+        assertTrue(XadesProfileValidator.accepts(signatureElement(read("src/test/signatures/batch-sig.xml"))));
+    }
+
+    /**
+     * Signatures that are valid but use elements outside the profile are left to the schema validator.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void leaveSignaturesOutsideProfileToSchema() throws Exception {
+        Element signature = signatureElement(read(SIGNATURE).replace("<ds:X509Data>",
+                "<ds:X509Data><ds:X509SubjectName>CN=consumer</ds:X509SubjectName>"));
+
+        assertFalse(XadesProfileValidator.accepts(signature));
+
+        SignatureSchemaValidator.validate(signature);
+    }
+
+    /**
+     * Signatures with a value that is invalid according to the schema are not accepted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rejectInvalidValue() throws Exception {
+        Element signature = signatureElement(read(SIGNATURE).replace("2017-09-08T09:15:11.580Z",
+                "2017-02-30T09:15:11.580Z"));
+
+        assertFalse(XadesProfileValidator.accepts(signature));
+
+        thrown.expectError(X_MALFORMED_SIGNATURE);
+        SignatureSchemaValidator.validate(signature);
+    }
+
+    /**
+     * Signatures with duplicate identifiers are not accepted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rejectDuplicateId() throws Exception {
+        Element signature = signatureElement(read(SIGNATURE).replace("Id=\"signed-properties\"",
+                "Id=\"signature\""));
+
+        assertFalse(XadesProfileValidator.accepts(signature));
+
+        thrown.expectError(X_MALFORMED_SIGNATURE);
+        SignatureSchemaValidator.validate(signature);
+    }
+
+    /**
+     * Signatures with elements in the wrong place are not accepted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rejectInvalidStructure() throws Exception {
+        Element signature = signatureElement(read("src/test/signatures/sign-0-schema-fail.xml"));
+
+        assertFalse(XadesProfileValidator.accepts(signature));
+
+        thrown.expectError(X_MALFORMED_SIGNATURE);
+        SignatureSchemaValidator.validate(signature);
+    }
+
+    static String read(String fileName) throws Exception {
+        return new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+    }
+
+    static Element signatureElement(String signatureXml) {
+        return (Element) new Signature(signatureXml).getDocument().getDocumentElement().getFirstChild();
+    }
+}
@@ -32,7 +32,6 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.HashMap;
@@ -183,7 +182,7 @@ final class HealthDataMetrics {
         if (histogram == null) {
             // Add a histogram corresponding to the service and update it.
             histogram = registry.register(histogramName,
-                    new Histogram(new SlidingTimeWindowReservoir(
+                    new Histogram(new SlidingTimeWindowSketchReservoir(
                             OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
                             TimeUnit.SECONDS)));
         }
@@ -35,6 +35,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.google.gson.Gson;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.server.Request;
 
 import javax.servlet.ServletException;
@@ -133,6 +134,9 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
 
             log.info("Received store request from {}", request.getRemoteAddr());
 
+            // Announce the compressed requests are accepted (RFC 7694)
+            response.setHeader(HttpHeader.ACCEPT_ENCODING.asString(), StoreRequestProcessor.CONTENT_ENCODING_GZIP);
+
             new StoreRequestProcessor(
                     request, healthMetricRegistry).process();
         } catch (Throwable t) { // We want to catch serious errors as well
@@ -31,12 +31,20 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.query.Query;
+import org.hibernate.type.Type;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -55,6 +63,9 @@ final class OperationalDataRecordManager {
 
     private static int configuredBatchSize = 0;
 
+    // The columns of the multi-row INSERT statement, in the order of the mapping
+    private static volatile List<String> insertColumns;
+
     private OperationalDataRecordManager() {
     }
 
@@ -85,23 +96,93 @@ final class OperationalDataRecordManager {
         return records;
     }
 
+    /**
+     * Stores the records with multi-row INSERT statements over the JDBC connection of the session, which is
+     * considerably faster than saving the records one by one through the session. The identifiers are still
+     * generated, the interceptor of the session applied and the property values bound by Hibernate, according to
+     * the mapping of OperationalDataRecord.
+     */
     private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
-        int storedCount = 0;
-        int batchSize = getConfiguredBatchSize(session);
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        SharedSessionContractImplementor sessionImpl = (SharedSessionContractImplementor) session;
+        AbstractEntityPersister persister = (AbstractEntityPersister) sessionImpl.getFactory().getMetamodel()
+                .entityPersister(OperationalDataRecord.class);
 
         for (OperationalDataRecord record : records) {
             record.setMonitoringDataTs(timestamp);
-            session.save(record);
+            record.setId((Long) persister.getIdentifierGenerator().generate(sessionImpl, record));
+        }
+
+        int batchSize = getConfiguredBatchSize(session);
+
+        session.doWork(connection -> {
+            for (int from = 0; from < records.size(); from += batchSize) {
+                List<OperationalDataRecord> rows = records.subList(from, Math.min(from + batchSize, records.size()));
+
+                try (PreparedStatement statement = connection.prepareStatement(
+                        getInsertStatement(persister, rows.size()))) {
+                    int index = 1;
+
+                    for (OperationalDataRecord record : rows) {
+                        index = bindRecord(statement, index, persister, sessionImpl, record);
+                    }
 
-            if (++storedCount % batchSize == 0) {
-                session.flush();
-                session.clear();
+                    statement.executeUpdate();
+                }
             }
-        }
+        });
 
         return null;
     }
 
+    private static String getInsertStatement(AbstractEntityPersister persister, int rowCount) {
+        if (insertColumns == null) {
+            List<String> columns = new ArrayList<>(Arrays.asList(persister.getIdentifierColumnNames()));
+
+            for (int i = 0; i < persister.getPropertyNames().length; i++) {
+                if (persister.getPropertyInsertability()[i]) {
+                    columns.addAll(Arrays.asList(persister.getPropertyColumnNames(i)));
+                }
+            }
+
+            insertColumns = columns;
+        }
+
+        String row = insertColumns.stream().map(column -> "?").collect(Collectors.joining(",", "(", ")"));
+
+        return "INSERT INTO " + persister.getTableName()
+                + " (" + String.join(",", insertColumns) + ") VALUES "
+                + String.join(",", Collections.nCopies(rowCount, row));
+    }
+
+    private static int bindRecord(PreparedStatement statement, int firstIndex, AbstractEntityPersister persister,
+            SharedSessionContractImplementor sessionImpl, OperationalDataRecord record) throws SQLException {
+        int index = firstIndex;
+
+        persister.getIdentifierType().nullSafeSet(statement, record.getId(), index, sessionImpl);
+        index += persister.getIdentifierColumnNames().length;
+
+        Type[] types = persister.getPropertyTypes();
+        Object[] values = persister.getPropertyValues(record);
+
+        // Let the interceptor of the session (truncating the string values) process the values as on save.
+        if (sessionImpl.getInterceptor().onSave(record, record.getId(), values, persister.getPropertyNames(), types)) {
+            persister.setPropertyValues(record, values);
+        }
+
+        for (int i = 0; i < types.length; i++) {
+            if (persister.getPropertyInsertability()[i]) {
+                types[i].nullSafeSet(statement, values[i], index, sessionImpl);
+                index += persister.getPropertyColumnNames(i).length;
+            }
+        }
+
+        return index;
+    }
+
     private static int getConfiguredBatchSize(Session session) {
         if (configuredBatchSize == 0) {
             configuredBatchSize = HibernateUtil.getConfiguredBatchSize(session, DEFAULT_BATCH_SIZE);
@@ -24,15 +24,19 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
- * support periodic and configurable resetting.
+ * A counter metric that counts the increments over a sliding window of time
+ * to support periodic and configurable resetting.
+ * The window is divided into a fixed number of time buckets, so the memory
+ * used by the counter does not depend on the number of increments. The
+ * increments expire one bucket at a time, i.e. the count covers the last
+ * window of time with the precision of one bucket.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -41,7 +45,17 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    static final int NUM_BUCKETS = 60;
+
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    private final Clock clock;
+    private final long bucketDuration;
+
+    // The counts of the buckets and the indexes of the time periods they are
+    // counting, the bucket of time period i is at position i % NUM_BUCKETS.
+    private final long[] counts = new long[NUM_BUCKETS];
+    private final long[] bucketIndexes = new long[NUM_BUCKETS];
 
     /**
      * Creates a counter with the given window of time.
@@ -50,27 +64,60 @@ class SlidingTimeWindowCounter extends Counter {
      * @param windowUnit the unit of {@code window}
      */
     SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a counter with the given window of time and clock.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used for measuring the time
+     */
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, Clock clock) {
+        this.clock = clock;
+        this.bucketDuration = Math.max(1L, windowUnit.toNanos(window) / NUM_BUCKETS);
+
+        Arrays.fill(bucketIndexes, NO_BUCKET);
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * @return the number of increments in the sliding time window.
      */
     @Override
-    public long getCount() {
-        return reservoir.getSnapshot().size();
+    public synchronized long getCount() {
+        long currentIndex = getCurrentBucketIndex();
+        long count = 0;
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (bucketIndexes[i] != NO_BUCKET && currentIndex - bucketIndexes[i] < NUM_BUCKETS) {
+                count += counts[i];
+            }
+        }
+
+        return count;
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        inc(1L);
     }
 
     @Override
-    public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
+    public synchronized void inc(long n) {
+        if (n <= 0) {
+            return;
+        }
+
+        long currentIndex = getCurrentBucketIndex();
+        int bucket = (int) Math.floorMod(currentIndex, (long) NUM_BUCKETS);
+
+        if (bucketIndexes[bucket] != currentIndex) {
+            bucketIndexes[bucket] = currentIndex;
+            counts[bucket] = 0;
         }
+
+        counts[bucket] += n;
     }
 
     @Override
@@ -83,4 +130,8 @@ class SlidingTimeWindowCounter extends Counter {
         throw new RuntimeException("This counter can be incremented only");
     }
 
+    private long getCurrentBucketIndex() {
+        return Math.floorDiv(clock.getTick(), bucketDuration);
+    }
+
 }
@@ -0,0 +1,135 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reservoir that summarizes the values of a sliding window of time. In
+ * contrast to {@link com.codahale.metrics.SlidingTimeWindowReservoir}, the
+ * values are not kept: the window is divided into a fixed number of time
+ * buckets, each holding a {@link ValueSketch} of its values. Hence the memory
+ * used by the reservoir does not depend on the number of values.
+ * The values expire one bucket at a time, i.e. the snapshot covers the last
+ * window of time with the precision of one bucket.
+ */
+class SlidingTimeWindowSketchReservoir implements Reservoir {
+
+    static final int NUM_BUCKETS = 10;
+
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    private final Clock clock;
+    private final long bucketDuration;
+
+    // The sketches of the buckets and the indexes of the time periods they
+    // are summarizing, the bucket of time period i is at position
+    // i % NUM_BUCKETS.
+    private final ValueSketch[] sketches = new ValueSketch[NUM_BUCKETS];
+    private final long[] bucketIndexes = new long[NUM_BUCKETS];
+
+    /**
+     * Creates a reservoir with the given window of time.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     */
+    SlidingTimeWindowSketchReservoir(long window, TimeUnit windowUnit) {
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a reservoir with the given window of time and clock.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used for measuring the time
+     */
+    SlidingTimeWindowSketchReservoir(long window, TimeUnit windowUnit, Clock clock) {
+        this.clock = clock;
+        this.bucketDuration = Math.max(1L, windowUnit.toNanos(window) / NUM_BUCKETS);
+
+        Arrays.fill(bucketIndexes, NO_BUCKET);
+    }
+
+    @Override
+    public synchronized int size() {
+        long currentIndex = getCurrentBucketIndex();
+        long size = 0;
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (isInWindow(i, currentIndex)) {
+                size += sketches[i].getCount();
+            }
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        long currentIndex = getCurrentBucketIndex();
+        int bucket = (int) Math.floorMod(currentIndex, (long) NUM_BUCKETS);
+
+        if (sketches[bucket] == null) {
+            sketches[bucket] = new ValueSketch();
+        }
+
+        if (bucketIndexes[bucket] != currentIndex) {
+            bucketIndexes[bucket] = currentIndex;
+            sketches[bucket].clear();
+        }
+
+        sketches[bucket].add(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long currentIndex = getCurrentBucketIndex();
+        ValueSketch merged = new ValueSketch();
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (isInWindow(i, currentIndex)) {
+                merged.merge(sketches[i]);
+            }
+        }
+
+        return merged.toSnapshot();
+    }
+
+    private boolean isInWindow(int bucket, long currentIndex) {
+        return bucketIndexes[bucket] != NO_BUCKET && currentIndex - bucketIndexes[bucket] < NUM_BUCKETS;
+    }
+
+    private long getCurrentBucketIndex() {
+        return Math.floorDiv(clock.getTick(), bucketDuration);
+    }
+
+}
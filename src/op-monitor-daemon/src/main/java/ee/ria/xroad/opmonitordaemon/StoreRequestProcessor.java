@@ -29,13 +29,17 @@ import ee.ria.xroad.common.util.JsonUtils;
 import com.codahale.metrics.MetricRegistry;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.http.HttpHeader;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 
@@ -45,6 +49,8 @@ import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 @Slf4j
 class StoreRequestProcessor {
 
+    static final String CONTENT_ENCODING_GZIP = "gzip";
+
     private static final Gson GSON = JsonUtils.getSerializer();
 
     /** The servlet request. */
@@ -65,12 +71,15 @@ class StoreRequestProcessor {
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
-                StandardCharsets.UTF_8);
+        List<OperationalDataRecord> records;
 
-        log.trace("Incoming JSON: {}", rawJson);
+        // The records are decoded while reading the request, without
+        // buffering the raw JSON.
+        try (Reader reader = new InputStreamReader(getRequestContent(), StandardCharsets.UTF_8)) {
+            records = prepareRawStoreData(reader);
+        }
 
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
+        log.trace("Incoming records: {}", records);
 
         log.debug("Process {} record{}", records.size(),
                 records.size() == 1 ? "" : "s");
@@ -80,15 +89,22 @@ class StoreRequestProcessor {
         HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
 
+    // The operational monitoring buffer compresses the request with gzip
+    // after the daemon has announced it accepts compressed requests.
+    private InputStream getRequestContent() throws IOException {
+        InputStream content = servletRequest.getInputStream();
+
+        if (CONTENT_ENCODING_GZIP.equalsIgnoreCase(servletRequest.getHeader(HttpHeader.CONTENT_ENCODING.asString()))) {
+            return new GZIPInputStream(content);
+        }
+
+        return content;
+    }
+
     // Get usable operational data to be stored. If no such data is found,
     // send an error message right away.
     private static List<OperationalDataRecord> prepareRawStoreData(
-            String rawJsonData) throws Exception {
-        if (StringUtils.isBlank(rawJsonData)) {
-            throw new Exception(
-                    "No data was found in the request to store data");
-        }
-
+            Reader rawJsonData) throws Exception {
         OperationalDataRecords records;
 
         try {
@@ -97,6 +113,11 @@ class StoreRequestProcessor {
             throw new Exception("Received invalid request", e);
         }
 
+        if (records == null || records.getRecords() == null) {
+            throw new Exception(
+                    "No data was found in the request to store data");
+        }
+
         return records.getRecords();
     }
 
@@ -0,0 +1,287 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A fixed-memory summary of long values. The count, minimum, maximum, mean and
+ * standard deviation of the values are exact, the quantiles are estimated from
+ * logarithmically sized bins (like in DDSketch) within the relative accuracy
+ * of {@link #RELATIVE_ACCURACY}. Values smaller than 1 share a single bin.
+ * The number of bins depends on the range of the values only, and is
+ * bounded by the range of long.
+ * This class is not thread safe.
+ */
+final class ValueSketch {
+
+    static final double RELATIVE_ACCURACY = 0.02;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private static final int MIN_BINS = 16;
+
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+    private double sumOfSquares;
+
+    private long zeroCount;
+
+    // bins[i] counts the values v for which gamma^(j - 1) < v <= gamma^j,
+    // where j = binOffset + i
+    private long[] bins;
+    private int binOffset;
+
+    /**
+     * Adds the value to the sketch.
+     * @param value the value
+     */
+    void add(long value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        sumOfSquares += (double) value * value;
+
+        if (value < 1) {
+            zeroCount++;
+        } else {
+            int index = binIndex(value);
+            ensureBin(index);
+            bins[index - binOffset]++;
+        }
+    }
+
+    /**
+     * Adds the values of the other sketch to this sketch.
+     * @param other the sketch to merge
+     */
+    void merge(ValueSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        zeroCount += other.zeroCount;
+
+        if (other.bins != null) {
+            for (int i = 0; i < other.bins.length; i++) {
+                if (other.bins[i] != 0) {
+                    int index = other.binOffset + i;
+                    ensureBin(index);
+                    bins[index - binOffset] += other.bins[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the values from the sketch. The memory of the bins is kept
+     * for reuse.
+     */
+    void clear() {
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        sum = 0;
+        sumOfSquares = 0;
+        zeroCount = 0;
+
+        if (bins != null) {
+            Arrays.fill(bins, 0);
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return a snapshot of the values in this sketch. The sketch must not be
+     * modified after creating the snapshot.
+     */
+    Snapshot toSnapshot() {
+        return new SketchSnapshot(this);
+    }
+
+    private static int binIndex(long value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    private static double binValue(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    private void ensureBin(int index) {
+        if (bins == null) {
+            bins = new long[MIN_BINS];
+            binOffset = index - MIN_BINS / 2;
+            return;
+        }
+
+        int first = Math.min(binOffset, index);
+        int last = Math.max(binOffset + bins.length - 1, index);
+
+        if (first == binOffset && last == binOffset + bins.length - 1) {
+            return;
+        }
+
+        // Reserve some room in the direction of growth to avoid copying on
+        // every new bin.
+        int slack = Math.max(MIN_BINS, bins.length / 2);
+        first = first < binOffset ? first - slack : first;
+        last = last > binOffset + bins.length - 1 ? last + slack : last;
+
+        long[] newBins = new long[last - first + 1];
+        System.arraycopy(bins, 0, newBins, binOffset - first, bins.length);
+
+        bins = newBins;
+        binOffset = first;
+    }
+
+    /**
+     * A snapshot backed by a sketch.
+     */
+    private static final class SketchSnapshot extends Snapshot {
+
+        private final ValueSketch sketch;
+
+        SketchSnapshot(ValueSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+
+            if (sketch.count == 0) {
+                return 0.0;
+            }
+
+            long rank = (long) (quantile * (sketch.count - 1));
+
+            if (rank < sketch.zeroCount) {
+                return clamp(0.0);
+            }
+
+            long seen = sketch.zeroCount;
+
+            for (int i = 0; i < sketch.bins.length; i++) {
+                seen += sketch.bins[i];
+
+                if (rank < seen) {
+                    return clamp(binValue(sketch.binOffset + i));
+                }
+            }
+
+            return sketch.max;
+        }
+
+        /**
+         * @return the estimated value of each non-empty bin in ascending
+         * order, since the sketch does not keep the values themselves.
+         */
+        @Override
+        public long[] getValues() {
+            if (sketch.count == 0) {
+                return new long[0];
+            }
+
+            long[] values = new long[sketch.bins == null ? 1 : sketch.bins.length + 1];
+            int size = 0;
+
+            if (sketch.zeroCount > 0) {
+                values[size++] = (long) clamp(0.0);
+            }
+
+            for (int i = 0; sketch.bins != null && i < sketch.bins.length; i++) {
+                if (sketch.bins[i] != 0) {
+                    values[size++] = Math.round(clamp(binValue(sketch.binOffset + i)));
+                }
+            }
+
+            return Arrays.copyOf(values, size);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(sketch.count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return sketch.count == 0 ? 0 : sketch.max;
+        }
+
+        @Override
+        public double getMean() {
+            return sketch.count == 0 ? 0 : sketch.sum / sketch.count;
+        }
+
+        @Override
+        public long getMin() {
+            return sketch.count == 0 ? 0 : sketch.min;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (sketch.count <= 1) {
+                return 0;
+            }
+
+            double variance = (sketch.sumOfSquares - sketch.sum * sketch.sum / sketch.count) / (sketch.count - 1);
+
+            return Math.sqrt(Math.max(0, variance));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+
+        private double clamp(double value) {
+            return Math.min(Math.max(value, sketch.min), sketch.max);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Health data metrics performance test program. Compares the sliding time
+ * window counter and histogram reservoir with the Codahale sliding time
+ * window reservoir they replace.
+ */
+@Slf4j
+public final class HealthDataMetricsPerformanceTest {
+
+    // length of the health statistics period
+    private static final long WINDOW_SECONDS = 600;
+
+    // number of updates per iteration
+    private static final int NUM_UPDATES = 1_000_000;
+
+    // number of iterations, the first ones warm up the JIT
+    private static final int NUM_ITERATIONS = 5;
+
+    private HealthDataMetricsPerformanceTest() {
+    }
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     */
+    public static void main(String[] args) {
+        log.info("Starting health data metrics performance test...");
+
+        for (int i = 0; i < NUM_ITERATIONS; i++) {
+            measureCounter("SlidingTimeWindowReservoir counter",
+                    () -> new ReservoirCounter(new SlidingTimeWindowReservoir(WINDOW_SECONDS, TimeUnit.SECONDS)));
+            measureCounter("SlidingTimeWindowCounter",
+                    () -> new SlidingTimeWindowCounter(WINDOW_SECONDS, TimeUnit.SECONDS));
+
+            measureHistogram("SlidingTimeWindowReservoir",
+                    () -> new SlidingTimeWindowReservoir(WINDOW_SECONDS, TimeUnit.SECONDS));
+            measureHistogram("SlidingTimeWindowSketchReservoir",
+                    () -> new SlidingTimeWindowSketchReservoir(WINDOW_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void measureCounter(String name, Supplier<Counter> counterFactory) {
+        long usedBefore = usedMemory();
+        Counter counter = counterFactory.get();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_UPDATES; i++) {
+            counter.inc();
+        }
+        long updated = System.nanoTime();
+        long count = counter.getCount();
+        long end = System.nanoTime();
+
+        log.info("{}: {} ns/update, count {} in {} us, ~{} KiB retained", name,
+                (updated - start) / NUM_UPDATES, count, TimeUnit.NANOSECONDS.toMicros(end - updated),
+                (usedMemory() - usedBefore) / 1024);
+    }
+
+    private static void measureHistogram(String name, Supplier<Reservoir> reservoirFactory) {
+        long usedBefore = usedMemory();
+        Histogram histogram = new Histogram(reservoirFactory.get());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_UPDATES; i++) {
+            histogram.update(ThreadLocalRandom.current().nextLong(1, 100_000));
+        }
+        long updated = System.nanoTime();
+        double p99 = histogram.getSnapshot().get99thPercentile();
+        long end = System.nanoTime();
+
+        log.info("{}: {} ns/update, snapshot (p99 {}) in {} us, ~{} KiB retained", name,
+                (updated - start) / NUM_UPDATES, p99, TimeUnit.NANOSECONDS.toMicros(end - updated),
+                (usedMemory() - usedBefore) / 1024);
+    }
+
+    @SuppressWarnings("squid:S1215")
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The previous counter implementation, counting the values of a sliding
+     * time window reservoir.
+     */
+    private static final class ReservoirCounter extends Counter {
+
+        private final Reservoir reservoir;
+
+        ReservoirCounter(Reservoir reservoir) {
+            this.reservoir = reservoir;
+        }
+
+        @Override
+        public long getCount() {
+            return reservoir.getSnapshot().size();
+        }
+
+        @Override
+        public void inc() {
+            reservoir.update(1L);
+        }
+    }
+}
@@ -104,6 +104,24 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(record, resultRecord);
     }
 
+    @Test
+    public void storeRecordsInMultipleInsertStatements() throws Exception {
+        // More records than fit in one multi-row INSERT statement.
+        storeFullOperationalDataRecords(123, 1474968970L);
+
+        OperationalDataRecords result =
+                OperationalDataRecordManager.queryAllRecords();
+
+        assertEquals(123, result.size());
+        assertEquals(123, result.getRecords().stream()
+                .map(OperationalDataRecord::getId).distinct().count());
+
+        for (OperationalDataRecord rec : result.getRecords()) {
+            assertEquals(1474968970L, rec.getMonitoringDataTs().longValue());
+            assertNotNull(rec.getMessageId());
+        }
+    }
+
     @Test
     public void storeAndQueryDataFromPeriods() throws Exception {
         storeFullOperationalDataRecords(1, 1474968960L);
@@ -38,9 +38,11 @@ import org.apache.commons.cli.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Generates operational data records into the database.
+ * Generates operational data records into the database and reports the
+ * rate of storing them.
  */
 @Slf4j
 public final class OperationalDataRecordsGenerator {
@@ -104,11 +106,18 @@ public final class OperationalDataRecordsGenerator {
         log.info("first timestamp: {}, batch-size: {}, batch-count: {}",
                 startTimestamp, batchSize, batchCount);
 
+        long storeNanos = 0;
+
         for (int i = 0; i < batchCount; ++i) {
-            storeRecords(batchSize, startTimestamp++, longString, shortString);
+            storeNanos += storeRecords(batchSize, startTimestamp++, longString, shortString);
         }
 
-        log.info("{} records generated", batchCount * batchSize);
+        long storeMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(storeNanos));
+
+        // The records are stored by a single thread, so this is the ingest
+        // rate per core.
+        log.info("{} records generated, stored in {} ms ({} records/s)", batchCount * batchSize, storeMillis,
+                batchCount * batchSize * 1000L / storeMillis);
     }
 
     private static CommandLine parseCommandLine(String args[]) {
@@ -169,12 +178,15 @@ public final class OperationalDataRecordsGenerator {
         formatter.printHelp("OperationalDataRecordsGenerator", OPTIONS);
     }
 
-    private static void storeRecords(int count, long timestamp,
+    private static long storeRecords(int count, long timestamp,
             String longString, String shortString) throws Exception {
         List<OperationalDataRecord> records = generateRecords(count, timestamp,
                 longString, shortString);
 
+        long start = System.nanoTime();
         OperationalDataRecordManager.storeRecords(records, timestamp);
+
+        return System.nanoTime() - start;
     }
 
     private static List<OperationalDataRecord> generateRecords(int count,
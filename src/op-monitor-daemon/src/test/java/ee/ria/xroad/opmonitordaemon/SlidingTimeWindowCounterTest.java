@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sliding time window counter.
+ */
+public class SlidingTimeWindowCounterTest {
+
+    private final TestClock clock = new TestClock();
+
+    @Test
+    public void countsIncrementsInWindow() {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock);
+
+        counter.inc();
+        counter.inc(4);
+        assertEquals(5, counter.getCount());
+
+        clock.advance(30, TimeUnit.SECONDS);
+        counter.inc();
+        assertEquals(6, counter.getCount());
+
+        // The first increments expire after the window.
+        clock.advance(30, TimeUnit.SECONDS);
+        assertEquals(1, counter.getCount());
+
+        clock.advance(30, TimeUnit.SECONDS);
+        assertEquals(0, counter.getCount());
+    }
+
+    @Test
+    public void reusesBucketsAfterWindow() {
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock);
+
+        for (int i = 0; i < 3 * SlidingTimeWindowCounter.NUM_BUCKETS; i++) {
+            counter.inc();
+            clock.advance(1, TimeUnit.SECONDS);
+        }
+
+        assertEquals(SlidingTimeWindowCounter.NUM_BUCKETS - 1, counter.getCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void cannotDecrement() {
+        new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock).dec();
+    }
+
+    static final class TestClock extends Clock {
+
+        private long tick = TimeUnit.DAYS.toNanos(1);
+
+        void advance(long duration, TimeUnit unit) {
+            tick += unit.toNanos(duration);
+        }
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sliding time window reservoir and the value sketch it uses.
+ */
+public class SlidingTimeWindowSketchReservoirTest {
+
+    private static final double DELTA = 1e-6;
+
+    private final SlidingTimeWindowCounterTest.TestClock clock = new SlidingTimeWindowCounterTest.TestClock();
+
+    @Test
+    public void summarizesValuesInWindow() {
+        SlidingTimeWindowSketchReservoir reservoir = new SlidingTimeWindowSketchReservoir(60, TimeUnit.SECONDS, clock);
+
+        reservoir.update(10);
+        clock.advance(30, TimeUnit.SECONDS);
+        reservoir.update(20);
+        reservoir.update(30);
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(3, reservoir.size());
+        assertEquals(3, snapshot.size());
+        assertEquals(10, snapshot.getMin());
+        assertEquals(30, snapshot.getMax());
+        assertEquals(20.0, snapshot.getMean(), DELTA);
+        assertEquals(10.0, snapshot.getStdDev(), DELTA);
+
+        // The first value expires after the window.
+        clock.advance(30, TimeUnit.SECONDS);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals(20, snapshot.getMin());
+        assertEquals(25.0, snapshot.getMean(), DELTA);
+
+        clock.advance(60, TimeUnit.SECONDS);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(0, snapshot.size());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), DELTA);
+        assertEquals(0.0, snapshot.getStdDev(), DELTA);
+        assertEquals(0.0, snapshot.getMedian(), DELTA);
+    }
+
+    @Test
+    public void estimatesQuantilesWithinRelativeAccuracy() {
+        SlidingTimeWindowSketchReservoir reservoir = new SlidingTimeWindowSketchReservoir(60, TimeUnit.SECONDS, clock);
+
+        for (int i = 1; i <= 100000; i++) {
+            reservoir.update(i);
+
+            if (i % 10000 == 0) {
+                clock.advance(1, TimeUnit.SECONDS);
+            }
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100000, snapshot.size());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(100000, snapshot.getMax());
+
+        for (double quantile : new double[] {0.0, 0.01, 0.5, 0.75, 0.95, 0.99, 0.999, 1.0}) {
+            double expected = 1 + quantile * (100000 - 1);
+            double actual = snapshot.getValue(quantile);
+
+            assertTrue(quantile + ": " + actual,
+                    Math.abs(actual - expected) <= expected * ValueSketch.RELATIVE_ACCURACY + 1);
+        }
+    }
+
+    @Test
+    public void keepsZeroAndNegativeValuesInMinimum() {
+        ValueSketch sketch = new ValueSketch();
+        sketch.add(-5);
+        sketch.add(0);
+        sketch.add(7);
+
+        Snapshot snapshot = sketch.toSnapshot();
+        assertEquals(-5, snapshot.getMin());
+        assertEquals(7, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMedian(), DELTA);
+        assertEquals(2, snapshot.getValues().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidQuantile() {
+        new ValueSketch().toSnapshot().getValue(1.5);
+    }
+}
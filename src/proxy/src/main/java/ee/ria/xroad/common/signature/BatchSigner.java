@@ -31,13 +31,19 @@ import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
 import ee.ria.xroad.signer.protocol.message.Sign;
 import ee.ria.xroad.signer.protocol.message.SignResponse;
 
-import akka.actor.AbstractActorWithStash;
+import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.actor.UntypedAbstractActor;
+import akka.pattern.AskTimeoutException;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -47,8 +53,13 @@ import scala.concurrent.Await;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.SIGNER_X;
@@ -69,7 +80,8 @@ import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
  *
  * The batch signer is an Akka actor, it creates child actors per
  * signing certificate, which means there is essentially one batch signer
- * per signing certificate.
+ * per signing certificate. The batch sizes and signing latencies of each
+ * of them are recorded in the metrics registry given at initialization.
  */
 @Slf4j
 public class BatchSigner extends UntypedAbstractActor {
@@ -77,17 +89,40 @@ public class BatchSigner extends UntypedAbstractActor {
     private static final int TIMEOUT_MILLIS = SystemProperties.getSignerClientTimeout();
     private static final Timeout DEFAULT_TIMEOUT = new Timeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
 
+    private static final String METRICS_PREFIX = "batchsigner";
+
     // Holds the actor instance, which sends and receives messages.
     private static ActorRef instance;
 
+    // The signing certificates are the same instances from request to request,
+    // so their hashes are cached by identity instead of calculating them for
+    // every request.
+    private final Cache<X509Certificate, String> certHashes = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final MetricRegistry metrics;
+
+    BatchSigner(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Initializes the batch signer with the given actor system.
      *
      * @param actorSystem actor system the batch signer should use
      */
     public static void init(ActorSystem actorSystem) {
+        init(actorSystem, new MetricRegistry());
+    }
+
+    /**
+     * Initializes the batch signer with the given actor system.
+     *
+     * @param actorSystem actor system the batch signer should use
+     * @param metrics registry of the batch size and signing latency histograms
+     */
+    public static void init(ActorSystem actorSystem, MetricRegistry metrics) {
         if (instance == null) {
-            instance = actorSystem.actorOf(Props.create(BatchSigner.class));
+            instance = actorSystem.actorOf(Props.create(BatchSigner.class, metrics));
         }
     }
 
@@ -141,46 +176,108 @@ public class BatchSigner extends UntypedAbstractActor {
 
     private ActorRef getWorker(SigningRequestWrapper signRequest) throws Exception {
         // Signing worker based on cert hash.
-        String name = calculateCertHexHash(signRequest.getSigningCert());
+        String name = getCertHash(signRequest.getSigningCert());
 
         ActorRef worker = getContext().findChild(name).orElse(null);
 
         if (worker == null) {
             log.trace("Creating new worker for cert '{}'", name);
 
-            worker = getContext().actorOf(Props.create(WorkerImpl.class), name);
+            worker = getContext().actorOf(Props.create(WorkerImpl.class, metrics, name), name);
         }
 
         return worker;
     }
 
+    private String getCertHash(X509Certificate cert) throws Exception {
+        try {
+            return certHashes.get(cert, () -> calculateCertHexHash(cert));
+        } catch (ExecutionException e) {
+            throw translateException(e.getCause());
+        }
+    }
+
     /**
      * This is the worker that does the heavy lifting.
+     *
+     * Up to maxConcurrentSigns signature calculations are in progress at the same
+     * time. Requests arriving while all of them are busy are queued and signed
+     * together in batches once a calculation finishes. The batch size adapts to
+     * the request rate and the signing latency, so that the queued requests are
+     * spread over the available calculations instead of all of them going to the
+     * first free one. Tokens that do not support batch signing get one request
+     * per signature and one calculation at a time.
+     *
+     * The sizes of the batches, the signing latencies in milliseconds and the
+     * current batch size limit are published as batchsigner.[cert hash].batchSize,
+     * .latency and .batchSizeLimit.
      */
-    private static class WorkerImpl extends AbstractActorWithStash {
+    private static class WorkerImpl extends AbstractActor {
+
+        private static final double EWMA_ALPHA = 0.2;
+        private static final long RATE_SAMPLE_MILLIS = 1000;
 
-        // The currently active signing ctx.
-        private BatchSignatureCtx workingSigningCtx;
+        private static final String BATCH_SIZE = "batchSize";
+        private static final String LATENCY = "latency";
+        private static final String BATCH_SIZE_LIMIT = "batchSizeLimit";
 
-        // The next signing ctx, if batch signing.
-        private BatchSignatureCtx nextSigningCtx;
+        private final int maxConcurrentSigns = Math.max(1, SystemProperties.getBatchSignerMaxConcurrentSigns());
+        private final int maxBatchSize = Math.max(1, SystemProperties.getBatchSignerMaxBatchSize());
 
-        private long signStartTime;
-        private boolean workerBusy;
+        // Requests waiting for a signature calculation, oldest first.
+        private final Deque<PendingRequest> pendingRequests = new ArrayDeque<>();
+
+        private int signsInFlight;
 
         private Boolean batchSigningEnabled;
 
+        // Smoothed signing latency (ms) and request rate (requests per ms).
+        private double avgLatency = -1;
+        private double avgRequestRate;
+
+        private long rateSampleStartTime = System.currentTimeMillis();
+        private long rateSampleRequests;
+
+        // Read by the metrics reporter.
+        private volatile int batchSizeLimit = 1;
+
+        private final MetricRegistry metrics;
+        private final String name;
+
+        private final Histogram batchSizes;
+        private final Histogram latencies;
+
+        WorkerImpl(MetricRegistry metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+
+            batchSizes = metrics.histogram(metricName(BATCH_SIZE));
+            latencies = metrics.histogram(metricName(LATENCY));
+
+            metrics.register(metricName(BATCH_SIZE_LIMIT), (Gauge<Integer>) () -> batchSizeLimit);
+        }
+
+        @Override
+        public void postStop() {
+            metrics.remove(metricName(BATCH_SIZE));
+            metrics.remove(metricName(LATENCY));
+            metrics.remove(metricName(BATCH_SIZE_LIMIT));
+        }
+
+        private String metricName(String metric) {
+            return MetricRegistry.name(METRICS_PREFIX, name, metric);
+        }
+
         @Override
         public Receive createReceive() {
             return receiveBuilder()
                     .match(SigningRequestWrapper.class, this::handleSignRequest)
-                    .match(SignResponse.class, this::handleSignResponse)
-                    .match(Exception.class, this::handleException)
+                    .match(SignResult.class, this::handleSignResult)
                     .matchAny(this::unhandled)
                     .build();
         }
 
-        private void handleSignRequest(SigningRequestWrapper signRequest) throws Exception {
+        private void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
 
             // If we do not know whether batch signing is enabled for the token,
@@ -190,23 +287,10 @@ public class BatchSigner extends UntypedAbstractActor {
                 queryBatchSigningEnabled(signRequest.getKeyId());
             }
 
-            // Handle incoming sign request. If the token worker is currently
-            // busy (signing, generating key, etc...) and batch signing is
-            // enabled then create signing context and collect all following
-            // sign requests to be signed in batch. Otherwise just sign the
-            // data straight away.
-            if (isWorkerBusy()) {
-                if (batchSigningEnabled) {
-                    doBatchSign(signRequest);
-                } else {
-                    log.trace("Batch signing not enabled, stashing request");
-                    // Batch signing not enabled, but currently busy,
-                    // so stash this message for future.
-                    stash();
-                }
-            } else {
-                doSign(signRequest);
-            }
+            rateSampleRequests++;
+            pendingRequests.addLast(new PendingRequest(getSender(), signRequest));
+
+            startSigning();
         }
 
         private void queryBatchSigningEnabled(String keyId) {
@@ -217,114 +301,131 @@ public class BatchSigner extends UntypedAbstractActor {
             }
         }
 
-        private void doBatchSign(SigningRequestWrapper wrapper) {
-            log.trace("doBatchSign()");
+        private boolean isBatchSigningEnabled() {
+            return Boolean.TRUE.equals(batchSigningEnabled);
+        }
 
-            if (nextSigningCtx == null) {
-                nextSigningCtx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            }
+        private void startSigning() {
+            int maxSigns = isBatchSigningEnabled() ? maxConcurrentSigns : 1;
 
-            nextSigningCtx.add(getSender(), wrapper.getRequest());
-        }
+            while (signsInFlight < maxSigns && !pendingRequests.isEmpty()) {
+                BatchSignatureCtx ctx = nextBatch(maxSigns - signsInFlight);
 
-        private void doSign(SigningRequestWrapper wrapper) throws Exception {
-            log.trace("doSign()");
+                try {
+                    doCalculateSignature(ctx);
+                } catch (Exception e) {
+                    sendResponse(ctx, translateException(e));
+                }
+            }
+        }
 
-            BatchSignatureCtx ctx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            ctx.add(getSender(), wrapper.getRequest());
+        private BatchSignatureCtx nextBatch(int freeSigns) {
+            int batchSize = 1;
 
-            workingSigningCtx = ctx;
+            if (isBatchSigningEnabled()) {
+                // Take at least the fair share of the queue for each free
+                // calculation, so that the queue is drained, but keep
+                // calculations free for the requests to come if the queue is
+                // shorter than the current batch size limit.
+                int fairShare = (pendingRequests.size() + freeSigns - 1) / freeSigns;
 
-            doCalculateSignature(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), ctx.getDataToBeSigned());
-        }
+                batchSize = Math.min(maxBatchSize, Math.max(batchSizeLimit, fairShare));
+            }
 
-        private void handleSignResponse(SignResponse signResponse) {
-            log.trace("handleSignResponse()");
+            PendingRequest first = pendingRequests.removeFirst();
 
-            workerBusy = false;
+            BatchSignatureCtx ctx = new BatchSignatureCtx(first.getRequest().getKeyId(),
+                    first.getRequest().getSignatureAlgorithmId());
+            ctx.add(first.getClient(), first.getRequest().getRequest());
 
-            // Handle the (successful) signature calculation result that came
-            // from Signer -- send the signature to the clients.
-            sendResponse(signResponse);
+            // All the requests in a batch must use the same signature algorithm.
+            while (ctx.getClients().size() < batchSize && !pendingRequests.isEmpty()
+                    && ctx.getSignatureAlgorithmId().equals(
+                            pendingRequests.getFirst().getRequest().getSignatureAlgorithmId())) {
+                PendingRequest next = pendingRequests.removeFirst();
 
-            // If batch signing is not enabled, then start signing the next
-            // stashed messages.
-            if (!batchSigningEnabled) {
-                unstashAll();
-            } else if (nextSigningCtx != null) {
-                // Start the next batch signing (if any).
-                startNextBatchSigning();
+                ctx.add(next.getClient(), next.getRequest().getRequest());
             }
+
+            return ctx;
         }
 
-        private void handleException(Exception exception) {
-            log.trace("handleException()");
+        private void doCalculateSignature(BatchSignatureCtx ctx)
+                throws NoSuchAlgorithmException, IOException, OperatorCreationException {
+            byte[] digest = calculateDigest(getDigestAlgorithmId(ctx.getSignatureAlgorithmId()),
+                    ctx.getDataToBeSigned());
 
-            workerBusy = false;
+            long startTime = System.currentTimeMillis();
 
-            sendResponse(exception);
-        }
+            // Proxy this request to the Signer. The response is piped back to
+            // this actor along with the context it belongs to.
+            CompletionStage<SignResult> result = SignerClient.ask(
+                    new Sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest))
+                    .handle((response, error) -> new SignResult(ctx, startTime,
+                            error != null ? unwrap(error) : response));
 
-        private void startNextBatchSigning() {
-            log.trace("startNextBatchSigning()");
+            signsInFlight++;
 
-            workingSigningCtx = nextSigningCtx;
-            nextSigningCtx = null;
+            Patterns.pipe(result, getContext().getDispatcher()).to(getSelf());
+        }
 
-            try {
-                doCalculateSignature(workingSigningCtx.getKeyId(), workingSigningCtx.getSignatureAlgorithmId(),
-                        workingSigningCtx.getDataToBeSigned());
-            } catch (Exception e) {
-                sendResponse(workingSigningCtx, translateException(e));
+        private void handleSignResult(SignResult result) {
+            log.trace("handleSignResult()");
 
-                workerBusy = true;
-                workingSigningCtx = null;
-            }
-        }
+            signsInFlight--;
 
-        private boolean isWorkerBusy() {
-            if (isSignatureCreationTimedOut()) {
-                workerBusy = false;
+            BatchSignatureCtx ctx = result.getCtx();
+            Object response = result.getResponse();
 
-                throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+            if (response instanceof SignResponse) {
+                // Handle the (successful) signature calculation result that
+                // came from Signer -- send the signature to the clients.
+                try {
+                    sendSignatureResponse(ctx, ((SignResponse) response).getSignature());
+                } catch (Exception e) {
+                    sendResponse(ctx, translateException(e));
+                }
+            } else if (response instanceof AskTimeoutException) {
+                sendResponse(ctx, new CodedException(X_INTERNAL_ERROR, "Signature creation timed out"));
+            } else {
+                sendResponse(ctx, response);
             }
 
-            return workerBusy;
-        }
+            long now = System.currentTimeMillis();
 
-        private boolean isSignatureCreationTimedOut() {
-            return workerBusy && System.currentTimeMillis() - signStartTime >= DEFAULT_TIMEOUT.duration().length();
-        }
+            long latency = now - result.getStartTime();
 
-        private void doCalculateSignature(String keyId, String signatureAlgorithmId, byte[] data)
-                throws NoSuchAlgorithmException, IOException, OperatorCreationException {
-            workerBusy = true;
-            signStartTime = System.currentTimeMillis();
+            batchSizes.update(ctx.getClients().size());
+            latencies.update(latency);
 
-            byte[] digest = calculateDigest(getDigestAlgorithmId(signatureAlgorithmId), data);
+            updateBatchSizeLimit(now, latency);
 
-            // Proxy this request to the Signer.
-            SignerClient.execute(new Sign(keyId, signatureAlgorithmId, digest), getSelf());
+            // Start signing the requests that came in meanwhile (if any).
+            startSigning();
         }
 
-        private void sendResponse(Object message) {
-            log.trace("sendResponse({})", message);
+        private void updateBatchSizeLimit(long now, long latency) {
+            avgLatency = avgLatency < 0 ? latency : EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * avgLatency;
 
-            if (workingSigningCtx != null) {
-                try {
-                    if (message instanceof SignResponse) {
-                        sendSignatureResponse(workingSigningCtx, ((SignResponse) message).getSignature());
-                    } else {
-                        sendResponse(workingSigningCtx, message);
-                    }
-                } catch (Exception e) {
-                    sendResponse(workingSigningCtx, e);
-                }
+            long elapsed = now - rateSampleStartTime;
 
-                workingSigningCtx = null;
-            } else {
-                throw new RuntimeException("No signing context");
+            if (elapsed >= RATE_SAMPLE_MILLIS) {
+                double rate = (double) rateSampleRequests / elapsed;
+
+                avgRequestRate = EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * avgRequestRate;
+                rateSampleStartTime = now;
+                rateSampleRequests = 0;
             }
+
+            // The number of requests expected to arrive during one signature
+            // calculation, divided over the concurrent calculations.
+            double expectedRequests = avgRequestRate * avgLatency / maxConcurrentSigns;
+
+            batchSizeLimit = (int) Math.max(1, Math.min(maxBatchSize, Math.ceil(expectedRequests)));
+        }
+
+        private static Object unwrap(Throwable error) {
+            return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
         }
 
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
@@ -356,6 +457,26 @@ public class BatchSigner extends UntypedAbstractActor {
 
     }
 
+    /**
+     * A signing request waiting for a signature calculation.
+     */
+    @Data
+    private static class PendingRequest {
+        private final ActorRef client;
+        private final SigningRequestWrapper request;
+    }
+
+    /**
+     * The response of Signer to a signature calculation, along with the
+     * context it was calculated for.
+     */
+    @Data
+    private static class SignResult {
+        private final BatchSignatureCtx ctx;
+        private final long startTime;
+        private final Object response;
+    }
+
     /**
      * Convenience class that wraps the request along with the keyId
      * and algorithm id.
@@ -56,6 +56,7 @@ import akka.actor.ActorSelection;
 import akka.actor.ActorSystem;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
+import com.codahale.metrics.MetricRegistry;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigValueFactory;
 import lombok.extern.slf4j.Slf4j;
@@ -179,10 +180,11 @@ public final class ProxyMain {
 
     private static void createServices() throws Exception {
         JobManager jobManager = new JobManager();
+        MetricRegistry metrics = new MetricRegistry();
 
         MonitorAgent.init(actorSystem);
         SignerClient.init(actorSystem);
-        BatchSigner.init(actorSystem);
+        BatchSigner.init(actorSystem, metrics);
         MessageLog.init(actorSystem, jobManager);
         OpMonitoring.init(actorSystem);
 
@@ -191,7 +193,7 @@ public final class ProxyMain {
         }
 
         SERVICES.add(jobManager);
-        SERVICES.add(new ClientProxy());
+        SERVICES.add(new ClientProxy(metrics));
         SERVICES.add(new ServerProxy());
 
         SERVICES.add(new CertHashBasedOcspResponder());
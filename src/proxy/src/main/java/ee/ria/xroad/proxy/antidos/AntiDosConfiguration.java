@@ -58,4 +58,22 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the interval in milliseconds during which the sampled system
+     * resource usage is reused when deciding whether to process a connection
+     */
+    long getResourceSampleInterval() {
+        return SystemProperties.getAntiDosResourceSampleInterval();
+    }
+
+    /**
+     * @return the interval in milliseconds after which the known member
+     * addresses are read again from the global configuration. The global
+     * configuration cannot change more often than the configuration client
+     * downloads it.
+     */
+    long getKnownAddressesRefreshInterval() {
+        return SystemProperties.getConfigurationClientUpdateIntervalSeconds() * 1000L;
+    }
 }
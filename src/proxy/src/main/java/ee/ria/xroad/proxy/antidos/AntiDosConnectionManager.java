@@ -31,22 +31,49 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Connections are queued per partner and partners with waiting connections
+ * are served in round-robin order. Accepting a connection does not take
+ * a global lock: the partner queues live in a concurrent map and every
+ * partner carries a flag telling whether it is already in the active
+ * partner buffer.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
     // Tiny wrapper class for active connections of a partner
     private class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+        final Deque<T> connections = new ConcurrentLinkedDeque<>();
+
+        // True if this partner is currently in the active partner buffer
+        final AtomicBoolean active = new AtomicBoolean();
+    }
+
+    // Snapshot of the system resource usage
+    private static final class ResourceUsage {
+        final long freeFileDescriptorCount;
+        final double cpuLoad;
+        final double heapUsage;
+        final long sampledAt;
+
+        ResourceUsage(long freeFileDescriptorCount, double cpuLoad,
+                double heapUsage, long sampledAt) {
+            this.freeFileDescriptorCount = freeFileDescriptorCount;
+            this.cpuLoad = cpuLoad;
+            this.heapUsage = heapUsage;
+            this.sampledAt = sampledAt;
+        }
     }
 
     // The IP used for unknown members
@@ -56,15 +83,25 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     protected final AntiDosConfiguration configuration;
 
     // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    protected final ConcurrentMap<String, HostData> database =
+            new ConcurrentHashMap<>();
 
     // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
+    protected final BlockingQueue<HostData> activePartners =
             new LinkedBlockingQueue<>();
 
     // Holds a cache of previously known member IPs.
     // Used to determine if should sync the database when conf changed.
-    private Set<String> previousKnownOrganizations = new HashSet<>();
+    private volatile Set<String> previousKnownOrganizations = new HashSet<>();
+
+    // Time after which the known member IPs are read again from global conf
+    private volatile long nextDatabaseSync;
+
+    // Guards against several threads synchronizing the database at once
+    private final AtomicBoolean syncInProgress = new AtomicBoolean();
+
+    // Most recently sampled resource usage, null if not sampled yet
+    private volatile ResourceUsage resourceUsage;
 
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
@@ -94,9 +131,9 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
+    void accept(T connection) {
+        // Pick up the changes in the registered members, if it is time.
+        syncDatabaseIfNeeded();
 
         // Find the host data for the incoming connection and register
         // the new connection to this host data
@@ -105,9 +142,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
-        }
+        activate(currentPartner);
     }
 
     /**
@@ -115,6 +150,8 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      */
     T takeNextConnection() throws InterruptedException {
         while (true) {
+            // Blocks until a partner with waiting connections is available,
+            // null means the connection was closed due to lack of resources.
             T next = getNextConnection();
             if (next != null) {
                 return next;
@@ -137,16 +174,25 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // Take the oldest connection.
         T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
-        }
 
         // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
-        if (!oldestPartner.connections.isEmpty()) {
+        // back to the buffer as the newest partner.
+        if (oldestPartner.connections.isEmpty()) {
+            oldestPartner.active.set(false);
+
+            // A connection might have been added after the emptiness check
+            // while the partner was still marked active.
+            if (!oldestPartner.connections.isEmpty()) {
+                activate(oldestPartner);
+            }
+        } else {
             activePartners.add(oldestPartner);
         }
 
+        if (sock == null) {
+            return null;
+        }
+
         // Processing a connection consumes file handles and other resources
         if (hasSufficientResources()) {
             return sock;
@@ -180,12 +226,35 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getHeapUsage();
     }
 
+    private void activate(HostData partner) {
+        if (partner.active.compareAndSet(false, true)) {
+            activePartners.add(partner);
+        }
+    }
+
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        HostData hostData = database.get(ip);
+
+        return hostData != null ? hostData : database.get(UNKNOWN_ORG_IP);
+    }
+
+    private void syncDatabaseIfNeeded() {
+        if (System.currentTimeMillis() < nextDatabaseSync
+                || !syncInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            syncDatabase();
+        } finally {
+            syncInProgress.set(false);
+        }
     }
 
     private void syncDatabase() {
+        nextDatabaseSync = System.currentTimeMillis()
+                + configuration.getKnownAddressesRefreshInterval();
+
         Set<String> knownAddresses = getAllAddresses();
 
         if (previousKnownOrganizations.equals(knownAddresses)) {
@@ -193,48 +262,56 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
             return;
         }
 
-        Map<String, HostData> newDatabase = new HashMap<>();
-
-        // Retain existing members connections
-        database.keySet().stream()
-                .filter(knownAddresses::contains)
-                .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
+        // Remove members that are no longer known, their waiting
+        // connections are still served from the active partner buffer.
+        database.keySet().retainAll(knownAddresses);
 
         // Add new members
-        knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
-                .forEach(knownAddress ->
-                        registerHostData(newDatabase, knownAddress));
+        knownAddresses.forEach(knownAddress ->
+                database.computeIfAbsent(knownAddress, this::registerHostData));
 
         previousKnownOrganizations = knownAddresses;
-        database = newDatabase;
     }
 
-    private void registerHostData(
-            Map<String, HostData> newDatabase, String knownAddress) {
+    private HostData registerHostData(String knownAddress) {
         log.trace("Registering HostData for " + knownAddress);
-        newDatabase.put(knownAddress, new HostData());
+        return new HostData();
     }
 
     private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        ResourceUsage usage = getResourceUsage();
         int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
         double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
         log.trace("Resource usage when considering connection:\n"
                 + "freeFileDescriptorCount: {} ( >= {})\n"
                 + "cpuLoad: {} ( < {})\n"
                 + "heapUsage: {} ( < {})",
-                new Object[] {freeFileDescriptorCount, minFreeFileHandles,
-                    cpuLoad, maxCpuLoad, heapUsage, maxHeapUsage});
+                new Object[] {usage.freeFileDescriptorCount, minFreeFileHandles,
+                    usage.cpuLoad, maxCpuLoad, usage.heapUsage, maxHeapUsage});
+
+        return usage.freeFileDescriptorCount >= minFreeFileHandles
+                && usage.cpuLoad < maxCpuLoad
+                && usage.heapUsage < maxHeapUsage;
+    }
+
+    /**
+     * Returns the resource usage, sampling the system metrics again only
+     * if the previous sample is older than the configured interval.
+     */
+    private ResourceUsage getResourceUsage() {
+        long now = System.currentTimeMillis();
+        ResourceUsage usage = resourceUsage;
+
+        if (usage == null
+                || now - usage.sampledAt >= configuration.getResourceSampleInterval()) {
+            usage = new ResourceUsage(getFreeFileDescriptorCount(),
+                    getCpuLoad(), getHeapUsage(), now);
+            resourceUsage = usage;
+        }
 
-        return freeFileDescriptorCount >= minFreeFileHandles
-                && cpuLoad < maxCpuLoad
-                && heapUsage < maxHeapUsage;
+        return usage;
     }
 
     private static Set<String> getAllAddresses() {
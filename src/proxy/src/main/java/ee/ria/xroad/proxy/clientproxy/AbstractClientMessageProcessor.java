@@ -41,6 +41,7 @@ import ee.ria.xroad.proxy.ProxyMain;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -124,7 +125,8 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
         if (SystemProperties.isEnableClientProxyPooledConnectionReuse()) {
             // set the servers with this subsystem as the user token, this will pool the connections per groups of
             // security servers.
-            httpSender.setAttribute(HttpClientContext.USER_TOKEN, new TargetHostsUserToken(addresses));
+            httpSender.setAttribute(HttpClientContext.USER_TOKEN,
+                    new TargetHostsUserToken(addresses, requestServiceId));
         }
 
         httpSender.setConnectionTimeout(SystemProperties.getClientProxyTimeout());
@@ -222,11 +224,21 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
         IsAuthentication.verifyClientAuthentication(sender, clientCert);
     }
 
+    /**
+     * Identifies the pooled connections to a group of security servers. The service the connections were first
+     * opened for is carried along so that the connections can be re-established in the background, it does not
+     * take part in matching the connections.
+     */
     @EqualsAndHashCode
     public static final class TargetHostsUserToken {
+        @Getter
         private final Set<URI> targetHosts;
 
-        TargetHostsUserToken(URI[] uris) {
+        @Getter
+        @EqualsAndHashCode.Exclude
+        private final ServiceId provider;
+
+        TargetHostsUserToken(URI[] uris, ServiceId provider) {
             if (uris == null || uris.length == 0) {
                 this.targetHosts = Collections.emptySet();
             } else {
@@ -236,6 +248,8 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
                     this.targetHosts = new HashSet<>(java.util.Arrays.asList(uris));
                 }
             }
+
+            this.provider = provider;
         }
     }
 }
@@ -0,0 +1,255 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps score of the security server addresses the client proxy connects to. For each address the scoreboard
+ * tracks an exponentially weighted moving average of the connect latency and the failed connection attempts.
+ * An address that failed is backed off for a period that doubles with each consecutive failure, during which
+ * it is not selected or raced against the other addresses of a provider.
+ *
+ * The scores are exported as gauges in the given metric registry. Scores of addresses that have not been
+ * connected to for {@link #MAX_IDLE} are removed together with their gauges.
+ */
+final class AddressScoreboard {
+
+    static final String PREFIX = "clientproxy.address";
+
+    static final String CONNECT_LATENCY = "connectLatency";
+    static final String FAILURES = "failures";
+    static final String BACKED_OFF = "backedOff";
+
+    // Weight of the latest connect latency in the moving average
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(1);
+    private static final int MAX_BACKOFF_DOUBLINGS = 6;
+
+    static final long MAX_IDLE = TimeUnit.HOURS.toNanos(1);
+    private static final long EXPIRY_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final MetricRegistry registry;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<URI, Score> scores = new ConcurrentHashMap<>();
+
+    // Time of the next check for idle scores
+    private final AtomicLong nextExpiry;
+
+    AddressScoreboard(MetricRegistry registry) {
+        this(registry, System::nanoTime);
+    }
+
+    AddressScoreboard(MetricRegistry registry, LongSupplier clock) {
+        this.registry = registry;
+        this.clock = clock;
+        this.nextExpiry = new AtomicLong(clock.getAsLong() + EXPIRY_INTERVAL);
+    }
+
+    /**
+     * Records a successful connection to the address.
+     * @param address the address
+     * @param latencyNanos time it took to connect
+     */
+    void success(URI address, long latencyNanos) {
+        long now = clock.getAsLong();
+
+        getScore(address).success(latencyNanos, now);
+        expireIdle(now);
+    }
+
+    /**
+     * Records a failed connection attempt to the address and backs the address off.
+     * @param address the address
+     */
+    void failure(URI address) {
+        long now = clock.getAsLong();
+
+        getScore(address).failure(now);
+        expireIdle(now);
+    }
+
+    /**
+     * @param address the address
+     * @return true if the address is backed off after a failure
+     */
+    boolean isBackedOff(URI address) {
+        Score score = scores.get(address);
+
+        return score != null && score.isBackedOff(clock.getAsLong());
+    }
+
+    /**
+     * @param addresses the addresses of a provider
+     * @return the address with the lowest connect latency among the addresses that have been connected to and are
+     * not backed off, or null if there is no such address
+     */
+    URI best(URI[] addresses) {
+        long now = clock.getAsLong();
+        URI best = null;
+        double bestLatency = Double.MAX_VALUE;
+
+        for (URI address : addresses) {
+            Score score = scores.get(address);
+
+            if (score != null && !score.isBackedOff(now)) {
+                double latency = score.getLatency();
+
+                if (latency >= 0 && latency < bestLatency) {
+                    best = address;
+                    bestLatency = latency;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @param addresses the addresses of a provider
+     * @return the addresses that are not backed off, or all of the addresses if every one of them is backed off
+     */
+    URI[] healthy(URI[] addresses) {
+        long now = clock.getAsLong();
+        List<URI> healthy = new ArrayList<>(addresses.length);
+
+        for (URI address : addresses) {
+            Score score = scores.get(address);
+
+            if (score == null || !score.isBackedOff(now)) {
+                healthy.add(address);
+            }
+        }
+
+        return healthy.isEmpty() || healthy.size() == addresses.length ? addresses : healthy.toArray(new URI[0]);
+    }
+
+    private Score getScore(URI address) {
+        return scores.computeIfAbsent(address, this::createScore);
+    }
+
+    /**
+     * Removes the scores of the addresses that have not been connected to for {@link #MAX_IDLE}. Checked at most
+     * once per {@link #EXPIRY_INTERVAL} by the thread that first notices the check is due.
+     */
+    private void expireIdle(long now) {
+        long next = nextExpiry.get();
+
+        if (now - next < 0 || !nextExpiry.compareAndSet(next, now + EXPIRY_INTERVAL)) {
+            return;
+        }
+
+        for (URI address : scores.keySet()) {
+            scores.computeIfPresent(address, (a, score) -> {
+                if (!score.isIdle(now)) {
+                    return score;
+                }
+
+                String name = metricName(a);
+
+                registry.remove(MetricRegistry.name(PREFIX, name, CONNECT_LATENCY));
+                registry.remove(MetricRegistry.name(PREFIX, name, FAILURES));
+                registry.remove(MetricRegistry.name(PREFIX, name, BACKED_OFF));
+
+                return null;
+            });
+        }
+    }
+
+    private static String metricName(URI address) {
+        return address.getHost() + ":" + address.getPort();
+    }
+
+    private Score createScore(URI address) {
+        Score score = new Score(clock.getAsLong());
+        String name = metricName(address);
+
+        registry.register(MetricRegistry.name(PREFIX, name, CONNECT_LATENCY),
+                (Gauge<Double>) () -> Math.max(0, score.getLatency()) / TimeUnit.MILLISECONDS.toNanos(1));
+        registry.register(MetricRegistry.name(PREFIX, name, FAILURES), (Gauge<Long>) score::getFailures);
+        registry.register(MetricRegistry.name(PREFIX, name, BACKED_OFF),
+                (Gauge<Boolean>) () -> score.isBackedOff(clock.getAsLong()));
+
+        return score;
+    }
+
+    private static final class Score {
+        // Moving average of the connect latency in nanoseconds, negative until the first connection
+        private double latency = -1;
+        private long failures;
+        private int consecutiveFailures;
+        private long backoffUntil;
+        private long lastUsed;
+
+        Score(long now) {
+            lastUsed = now;
+        }
+
+        synchronized void success(long latencyNanos, long now) {
+            latency = latency < 0 ? latencyNanos : LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * latency;
+            consecutiveFailures = 0;
+            backoffUntil = 0;
+            lastUsed = now;
+        }
+
+        synchronized void failure(long now) {
+            lastUsed = now;
+            failures++;
+            consecutiveFailures++;
+
+            long backoff = MIN_BACKOFF << Math.min(consecutiveFailures - 1, MAX_BACKOFF_DOUBLINGS);
+            backoffUntil = now + Math.min(backoff, MAX_BACKOFF);
+        }
+
+        synchronized boolean isBackedOff(long now) {
+            return consecutiveFailures > 0 && now - backoffUntil < 0;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now - lastUsed > MAX_IDLE;
+        }
+
+        synchronized double getLatency() {
+            return latency;
+        }
+
+        synchronized long getFailures() {
+            return failures;
+        }
+    }
+}
@@ -55,6 +55,7 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -64,7 +65,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
@@ -85,6 +88,7 @@ import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SIGNATURE;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SOAP;
 import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
+import static ee.ria.xroad.common.SystemProperties.isClientProxySoapStreamingEnabled;
 import static ee.ria.xroad.common.SystemProperties.isSslEnabled;
 import static ee.ria.xroad.common.util.AbstractHttpSender.CHUNKED_LENGTH;
 import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
@@ -92,6 +96,9 @@ import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_SOAP_ACTION;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_REQUEST_ID;
+import static ee.ria.xroad.common.util.MimeUtils.getBoundary;
+import static ee.ria.xroad.common.util.MimeUtils.mpMixedContentType;
+import static ee.ria.xroad.common.util.MimeUtils.randomBoundary;
 import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 
 @Slf4j
@@ -121,6 +128,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     /** Holds the incoming request SOAP message. */
     private volatile String originalSoapAction;
     private volatile SoapMessageImpl requestSoap;
+    private volatile Map<String, String> requestSoapHeaders;
     private volatile ServiceId requestServiceId;
 
     /** If the request failed, will contain SOAP fault. */
@@ -131,6 +139,12 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private volatile PipedOutputStream reqOuts;
     private volatile String outputContentType;
 
+    /**
+     * Holds the request decoder in the streaming mode, in which the request is decoded and
+     * sent to the server proxy on the same thread without the piped stream.
+     */
+    private SoapMessageDecoder streamingDecoder;
+
     /** Holds the request to the server proxy. */
     private ProxyMessageEncoder request;
     private String xRequestId;
@@ -157,8 +171,6 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -169,6 +181,19 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
+        if (isClientProxySoapStreamingEnabled()) {
+            processStreaming();
+        } else {
+            processPiped();
+        }
+    }
+
+    private void processPiped() throws Exception {
+        log.trace("processPiped()");
+
+        reqIns = new PipedInputStream();
+        reqOuts = new PipedOutputStream(reqIns);
+
         Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
 
         try {
@@ -206,6 +231,44 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    private void processStreaming() throws Exception {
+        log.trace("processStreaming()");
+
+        streamingDecoder = new SoapMessageDecoder(servletRequest.getContentType(), new StreamingSoapMessageHandler(),
+                new RequestSoapParserImpl());
+
+        try {
+            // Read only the request SOAP message, the attachments are read while the request is being sent.
+            try {
+                originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
+                streamingDecoder.parseSoap(servletRequest.getInputStream());
+            } catch (Exception ex) {
+                throw new ClientException(translateException(ex));
+            }
+
+            if (requestSoap == null) {
+                throw new ClientException(X_MISSING_SOAP, "Request does not contain SOAP message");
+            }
+
+            // Verify that the client is registered.
+            ClientId client = requestSoap.getClient();
+            verifyClientStatus(client);
+
+            // Check client authentication mode.
+            verifyClientAuthentication(client);
+
+            processRequest();
+
+            if (response != null) {
+                sendResponse();
+            }
+        } finally {
+            if (response != null) {
+                response.consume();
+            }
+        }
+    }
+
     @Override
     public boolean verifyMessageExchangeSucceeded() {
         return response != null && response.getFault() == null;
@@ -227,7 +290,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             sendRequest(httpSender);
 
             // Check for any errors from the handler thread once more.
-            waitForRequestSent();
+            if (streamingDecoder == null) {
+                waitForRequestSent();
+            }
+
             checkError();
 
             parseResponse(httpSender);
@@ -251,9 +317,20 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+
+                if (streamingDecoder != null) {
+                    httpSender.doPost(getServiceAddress(addresses), new SoapRequestEntity());
+                } else {
+                    httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                }
+
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
+                // In the streaming mode, writing the request is aborted if encoding or signing it fails
+                if (streamingDecoder != null) {
+                    checkError();
+                }
+
                 // Failed to connect to server proxy
                 MonitorAgent.serverProxyFailed(createRequestMessageInfo());
 
@@ -544,25 +621,111 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             throw e;
         }
 
-        private void writeOcspResponses() throws Exception {
-            CertChain chain = KeyConf.getAuthKey().getCertChain();
-            // exclude TopCA
-            List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
 
-            for (OCSPResp ocsp : ocspResponses) {
-                request.ocspResponse(ocsp);
+        @Override
+        public void close() {
+            if (request != null) {
+                try {
+                    request.close();
+                } catch (Exception e) {
+                    setError(e);
+                }
+            }
+        }
+    }
+
+    private void writeOcspResponses() throws Exception {
+        CertChain chain = KeyConf.getAuthKey().getCertChain();
+        // exclude TopCA
+        List<OCSPResp> ocspResponses = KeyConf.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
+
+        for (OCSPResp ocsp : ocspResponses) {
+            request.ocspResponse(ocsp);
+        }
+    }
+
+    /**
+     * Handler for the streaming mode that only stores the request SOAP message. The SOAP message and the
+     * attachments are written to the server proxy by {@link SoapRequestEntity} when the request is sent.
+     */
+    private class StreamingSoapMessageHandler extends SoapMessageHandler {
+
+        @Override
+        public void soap(SoapMessage message, Map<String, String> headers) throws Exception {
+            if (log.isTraceEnabled()) {
+                log.trace("soap({})", message.getXml());
             }
+
+            requestSoap = (SoapMessageImpl) message;
+            requestSoapHeaders = headers;
+            requestServiceId = requestSoap.getService();
+
+            updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
+        }
+    }
+
+    /**
+     * Request entity for the streaming mode that encodes the request directly into the connection to the server
+     * proxy, reading the attachments from the client request as it goes.
+     */
+    private class SoapRequestEntity extends AbstractHttpEntity {
+
+        SoapRequestEntity() {
+            setContentType(mpMixedContentType("xtop" + randomBoundary()));
+            setChunked(true);
         }
 
         @Override
-        public void close() {
-            if (request != null) {
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            log.trace("writeTo()");
+
+            request = new ProxyMessageEncoder(outstream, SoapUtils.getHashAlgoId(),
+                    getBoundary(getContentType().getValue()));
+
+            try {
+                // In SSL mode, we need to send the OCSP response of our SSL cert.
+                if (isSslEnabled()) {
+                    writeOcspResponses();
+                }
+
+                request.soap(requestSoap, requestSoapHeaders);
+
+                // Attachments are streamed to the encoder and the request is signed when decoding completes.
+                streamingDecoder.parseAttachments();
+            } catch (Exception ex) {
+                setError(new ClientException(translateException(ex)));
+            } finally {
                 try {
                     request.close();
                 } catch (Exception e) {
                     setError(e);
                 }
             }
+
+            // Abort the request so that an unsigned or truncated message is not sent to the server proxy.
+            if (executionException != null) {
+                throw new IOException("Writing the request failed", executionException);
+            }
         }
     }
 
@@ -26,17 +26,22 @@ package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.db.HibernateUtil;
+import ee.ria.xroad.common.util.ByteBufferPool;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.proxy.serverproxy.IdleConnectionMonitorThread;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
-import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -44,7 +49,6 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.eclipse.jetty.server.CustomRequestLog;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -70,6 +74,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.clientproxy.HandlerLoader.loadHandler;
 
@@ -87,8 +92,13 @@ public class ClientProxy implements StartStop {
 
     private static final int CONNECTOR_SO_LINGER_MILLIS = SystemProperties.getClientProxyConnectorSoLinger() * 1000;
 
+    // Partners are pre-warmed for this many idle connection timeouts after their last request
+    static final int PARTNER_RETAIN_FACTOR = 5;
+
     private static final String CLIENTPROXY_HANDLERS = SystemProperties.PREFIX + "proxy.clientHandlers";
 
+    private static final String CACHING_STREAM_METRICS = "cachingstream";
+
     private static final String CLIENT_HTTP_CONNECTOR_NAME = "ClientConnector";
     private static final String CLIENT_HTTPS_CONNECTOR_NAME = "ClientSSLConnector";
 
@@ -96,17 +106,38 @@ public class ClientProxy implements StartStop {
 
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
+    private ConnectionPrewarmThread connectionPrewarmer;
+
+    private final MetricRegistry metrics;
+    private final PartnerConnectionMetrics connectionMetrics;
+    private final JmxReporter metricsReporter;
 
     /**
      * Constructs and configures a new client proxy.
      * @throws Exception in case of any errors
      */
     public ClientProxy() throws Exception {
+        this(new MetricRegistry());
+    }
+
+    /**
+     * Constructs and configures a new client proxy.
+     * @param metrics the registry of the proxy metrics, the client proxy exports it over JMX while running
+     * @throws Exception in case of any errors
+     */
+    public ClientProxy(MetricRegistry metrics) throws Exception {
+        this.metrics = metrics;
+        this.connectionMetrics = new PartnerConnectionMetrics(metrics);
+        this.metricsReporter = JmxReporter.forRegistry(metrics)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
         configureServer();
 
         createClient();
         createConnectors();
         createHandlers();
+        registerCachingStreamMetrics();
     }
 
     private void configureServer() throws Exception {
@@ -133,7 +164,7 @@ public class ClientProxy implements StartStop {
 
         HttpClientBuilder cb = HttpClients.custom();
 
-        HttpClientConnectionManager connectionManager = getClientConnectionManager();
+        PartnerConnectionManager connectionManager = getClientConnectionManager();
         cb.setConnectionManager(connectionManager);
 
         if (SystemProperties.isClientUseIdleConnectionMonitor()) {
@@ -143,6 +174,19 @@ public class ClientProxy implements StartStop {
                     SystemProperties.getClientProxyIdleConnectionMonitorIdleTime());
         }
 
+        if (SystemProperties.isSslEnabled() && SystemProperties.isEnableClientProxyPooledConnectionReuse()
+                && SystemProperties.getClientProxyPoolPrewarmConnections() > 0) {
+            connectionPrewarmer = new ConnectionPrewarmThread(connectionManager);
+            connectionPrewarmer.setIntervalMilliseconds(SystemProperties.getClientProxyPoolPrewarmInterval());
+            connectionPrewarmer.setMaxPartners(SystemProperties.getClientProxyPoolPrewarmPartners());
+            connectionPrewarmer.setConnections(SystemProperties.getClientProxyPoolPrewarmConnections());
+            connectionPrewarmer.setTimeoutMilliseconds(timeout);
+            // Remember the partners well past the time their idle connections would be closed
+            connectionPrewarmer.setRetainMilliseconds(
+                    PARTNER_RETAIN_FACTOR * (long) SystemProperties.getClientProxyIdleConnectionMonitorIdleTime());
+            connectionManager.setTrackUsage(true);
+        }
+
         cb.setDefaultRequestConfig(rb.build());
 
         // Disable request retry
@@ -151,7 +195,7 @@ public class ClientProxy implements StartStop {
         client = cb.build();
     }
 
-    private HttpClientConnectionManager getClientConnectionManager() throws Exception {
+    private PartnerConnectionManager getClientConnectionManager() throws Exception {
         RegistryBuilder<ConnectionSocketFactory> sfr = RegistryBuilder.create();
 
         sfr.register("http", PlainConnectionSocketFactory.INSTANCE);
@@ -165,7 +209,7 @@ public class ClientProxy implements StartStop {
         sockBuilder.setSoTimeout(SystemProperties.getClientProxyHttpClientTimeout());
         SocketConfig socketConfig = sockBuilder.build();
 
-        PoolingHttpClientConnectionManager poolingManager = new PoolingHttpClientConnectionManager(sfr.build());
+        PartnerConnectionManager poolingManager = new PartnerConnectionManager(sfr.build(), connectionMetrics);
         poolingManager.setMaxTotal(SystemProperties.getClientProxyPoolTotalMaxConnections());
         poolingManager.setDefaultMaxPerRoute(SystemProperties.getClientProxyPoolDefaultMaxConnectionsPerRoute());
         poolingManager.setDefaultSocketConfig(socketConfig);
@@ -175,9 +219,9 @@ public class ClientProxy implements StartStop {
         return poolingManager;
     }
 
-    private static SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
-        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext()
-        );
+    private SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
+        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext(),
+                connectionMetrics);
     }
 
     private void createConnectors() throws Exception {
@@ -245,6 +289,23 @@ public class ClientProxy implements StartStop {
                         .getHttpConfiguration().setSendServerVersion(false));
     }
 
+    // The attachment caches are shared by the client and the server proxy
+    private void registerCachingStreamMetrics() {
+        ByteBufferPool bufferPool = CachingStream.getBufferPool();
+
+        metrics.register(CACHING_STREAM_METRICS + ".caches", (Gauge<Long>) CachingStream::getCacheCount);
+        metrics.register(CACHING_STREAM_METRICS + ".spills", (Gauge<Long>) CachingStream::getSpillCount);
+        metrics.register(CACHING_STREAM_METRICS + ".spillRatio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(CachingStream.getSpillCount(), CachingStream.getCacheCount());
+            }
+        });
+        metrics.register(CACHING_STREAM_METRICS + ".buffersInUse", (Gauge<Integer>) bufferPool::getInUseCount);
+        metrics.register(CACHING_STREAM_METRICS + ".buffersPooled", (Gauge<Integer>) bufferPool::getPooledCount);
+        metrics.register(CACHING_STREAM_METRICS + ".buffersAllocated", (Gauge<Long>) bufferPool::getAllocatedCount);
+    }
+
     private void createHandlers() throws Exception {
         log.trace("createHandlers()");
 
@@ -297,6 +358,12 @@ public class ClientProxy implements StartStop {
         if (connectionMonitor != null) {
             connectionMonitor.start();
         }
+
+        if (connectionPrewarmer != null) {
+            connectionPrewarmer.start();
+        }
+
+        metricsReporter.start();
     }
 
     @Override
@@ -316,6 +383,12 @@ public class ClientProxy implements StartStop {
             connectionMonitor.shutdown();
         }
 
+        if (connectionPrewarmer != null) {
+            connectionPrewarmer.shutdown();
+        }
+
+        metricsReporter.stop();
+
         client.close();
         server.stop();
 
@@ -44,9 +44,9 @@ import ee.ria.xroad.proxy.messagelog.MessageLog;
 import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
+import ee.ria.xroad.proxy.util.ServletOutputChannel;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.Header;
 import org.apache.http.client.HttpClient;
@@ -278,7 +278,7 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
             servletResponse.addHeader(h.getName(), h.getValue());
         }
         if (response.hasRestBody()) {
-            IOUtils.copy(response.getRestBody(), servletResponse.getOutputStream());
+            response.writeRestBody(ServletOutputChannel.of(servletResponse.getOutputStream()));
         }
     }
 
@@ -0,0 +1,76 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Thread that periodically opens connections to the most used partners of the client proxy.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class ConnectionPrewarmThread extends Thread {
+
+    private static final int DEFAULT_INTERVAL = 10000;
+    private static final int DEFAULT_MAX_PARTNERS = 20;
+    private static final int DEFAULT_TIMEOUT = 30000;
+    private static final long DEFAULT_RETAIN = 300000;
+
+    private final PartnerConnectionManager connectionManager;
+
+    private volatile boolean shutdown;
+
+    @Setter
+    private int intervalMilliseconds = DEFAULT_INTERVAL;
+    @Setter
+    private int maxPartners = DEFAULT_MAX_PARTNERS;
+    @Setter
+    private int connections = 1;
+    @Setter
+    private int timeoutMilliseconds = DEFAULT_TIMEOUT;
+    @Setter
+    private long retainMilliseconds = DEFAULT_RETAIN;
+
+    @Override
+    public void run() {
+        while (!shutdown && !isInterrupted()) {
+            try {
+                sleep(intervalMilliseconds);
+                connectionManager.prewarm(maxPartners, connections, timeoutMilliseconds, retainMilliseconds);
+            } catch (InterruptedException ex) {
+                //ignored (stopping controlled by shutdown)
+            } catch (RuntimeException e) {
+                log.error("Failed to open connections to partners", e);
+            }
+        }
+    }
+
+    void shutdown() {
+        shutdown = true;
+        interrupt();
+    }
+}
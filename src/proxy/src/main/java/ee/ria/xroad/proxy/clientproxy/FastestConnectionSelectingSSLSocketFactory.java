@@ -30,6 +30,7 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +40,7 @@ import org.apache.http.protocol.HttpContext;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import java.io.Closeable;
@@ -63,6 +65,11 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  *
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
+ *
+ * The connection attempts are scored in an {@link AddressScoreboard}. While the
+ * addresses of a provider have been raced within the URI cache period, the
+ * address with the best score is connected to without racing. Addresses that
+ * failed are backed off and left out of the races.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -86,7 +93,14 @@ class FastestConnectionSelectingSSLSocketFactory
     private final Cache<CacheKey, URI> selectedHosts;
     private final boolean cachingEnabled;
 
+    private final PartnerConnectionMetrics metrics;
+    private final AddressScoreboard scoreboard;
+
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
+        this(sslContext, new PartnerConnectionMetrics(new MetricRegistry()));
+    }
+
+    FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext, PartnerConnectionMetrics metrics) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
         this.socketfactory = sslContext.getSocketFactory();
         this.selectedHosts = CacheBuilder.newBuilder()
@@ -94,6 +108,8 @@ class FastestConnectionSelectingSSLSocketFactory
                 .maximumSize(CACHE_MAXIMUM_SIZE)
                 .build();
         this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.metrics = metrics;
+        this.scoreboard = new AddressScoreboard(metrics.getRegistry());
     }
 
     @Override
@@ -111,7 +127,7 @@ class FastestConnectionSelectingSSLSocketFactory
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
-        final FastestSocketSelector selector = new FastestSocketSelector();
+        final FastestSocketSelector selector = new FastestSocketSelector(scoreboard);
 
         CacheKey cacheKey = null;
         URI cachedURI = null;
@@ -121,10 +137,14 @@ class FastestConnectionSelectingSSLSocketFactory
                     Thread.currentThread().getId());
         }
 
-        // If URI cache is enabled, check for a previously selected host, avoiding the selection process.
+        // If URI cache is enabled and the addresses have been raced recently, use the best scored address,
+        // avoiding the selection process.
         if (useCache) {
             cacheKey = new CacheKey(addressesFromContext);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
+
+            if (selectedHosts.getIfPresent(cacheKey) != null) {
+                cachedURI = scoreboard.best(addressesFromContext);
+            }
 
             if (cachedURI != null) {
                 log.trace("Use cached URI {}", cachedURI);
@@ -133,7 +153,7 @@ class FastestConnectionSelectingSSLSocketFactory
         }
 
         if (selector.isEmpty()) {
-            selector.addAll(addressesFromContext);
+            selector.addAll(scoreboard.healthy(addressesFromContext));
         }
 
         Exception deferredException = null;
@@ -146,7 +166,7 @@ class FastestConnectionSelectingSSLSocketFactory
                 // see also FastestSocketSelector
                 selectedSocket = selector.select(connectTimeout);
                 sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
-                prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+                prepareAndVerify(sslSocket, selectedSocket.getUri(), addressesFromContext, context);
                 configureSocket(sslSocket);
                 log.trace("Connected to {}", selectedSocket.getUri());
                 updateOpMonitoringData(context, selectedSocket);
@@ -162,12 +182,13 @@ class FastestConnectionSelectingSSLSocketFactory
                 if (selectedSocket != null) {
                     log.trace("Failed to connect to {}", selectedSocket.getUri(), e);
                     closeQuietly(selectedSocket.getSocket());
+                    scoreboard.failure(selectedSocket.getUri());
                 } else {
                     log.debug("Failed to connect", e);
                 }
                 if (cachedURI != null) {
-                    selectedHosts.asMap().remove(cacheKey, cachedURI);
-                    selector.addAll(addressesFromContext);
+                    selectedHosts.invalidate(cacheKey);
+                    selector.addAll(scoreboard.healthy(addressesFromContext));
                     selector.remove(cachedURI);
                     cachedURI = null;
                     connectTimeout = timeout;
@@ -237,10 +258,21 @@ class FastestConnectionSelectingSSLSocketFactory
         socket.setKeepAlive(true);
     }
 
-    private void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress,
+    private void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress, URI[] addresses,
             HttpContext context) throws IOException {
         prepareSocket(sslSocket);
-        verify(context, sslSocket.getSession(), selectedAddress);
+
+        // Getting the session performs the handshake. A resumed session was created before the handshake started.
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        SSLSession session = sslSocket.getSession();
+
+        if (session.isValid()) {
+            metrics.handshake(PartnerConnectionMetrics.partnerName(addresses),
+                    session.getCreationTime() < startMillis, System.nanoTime() - startNanos);
+        }
+
+        verify(context, session, selectedAddress);
     }
 
     private SSLSocket wrapToSSLSocket(Socket socket, int connectTimeout) throws IOException {
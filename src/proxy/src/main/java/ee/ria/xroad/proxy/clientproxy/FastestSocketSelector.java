@@ -51,6 +51,9 @@ import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocket
  *
  * Note! During selection, the selector will remove addresses from the provided list if the address is
  * unresolvable or there is an error during connecting to the address.
+ *
+ * The connect latency of the selected address and the failed connection attempts are recorded to the given
+ * {@link AddressScoreboard}.
  */
 @Slf4j
 final class FastestSocketSelector {
@@ -61,8 +64,14 @@ final class FastestSocketSelector {
         private final Socket socket;
     }
 
+    private final AddressScoreboard scoreboard;
+
     private List<URI> addresses = new ArrayList<>();
 
+    FastestSocketSelector(AddressScoreboard scoreboard) {
+        this.scoreboard = scoreboard;
+    }
+
     void add(URI address) {
         addresses.add(address);
     }
@@ -96,13 +105,16 @@ final class FastestSocketSelector {
     private SocketInfo connect(int timeout) throws IOException {
         final URI uri = addresses.get(0);
         Socket socket = null;
+        final long start = System.nanoTime();
         try {
             socket = SocketFactory.getDefault().createSocket();
             final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
             socket.connect(address, timeout);
+            scoreboard.success(uri, System.nanoTime() - start);
             return new SocketInfo(uri, socket);
         } catch (Exception e) {
             addresses.remove(uri);
+            scoreboard.failure(uri);
             log.error("Could not connect to '{}'", uri, e);
             closeQuietly(socket);
             throw e;
@@ -112,13 +124,16 @@ final class FastestSocketSelector {
     private SocketInfo doSelect(int timeout) throws IOException {
         log.trace("select()");
         Selector selector = Selector.open();
+        final long start = System.nanoTime();
         try {
             initConnections(selector);
             SelectionKey key = selectFirstConnectedSocketChannel(selector, timeout);
             final SocketChannel channel = (SocketChannel)key.channel();
+            final URI uri = (URI)key.attachment();
+            scoreboard.success(uri, System.nanoTime() - start);
             key.cancel();
             channel.configureBlocking(true);
-            return new SocketInfo((URI)key.attachment(), channel.socket());
+            return new SocketInfo(uri, channel.socket());
         } finally {
             try {
                 closeSelector(selector);
@@ -145,6 +160,12 @@ final class FastestSocketSelector {
                 it.remove();
             }
         }
+        // the addresses still connecting did not respond in time
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                scoreboard.failure((URI)key.attachment());
+            }
+        }
         throw new IOException("Unable to connect to any of the provided addresses.");
     }
 
@@ -156,6 +177,7 @@ final class FastestSocketSelector {
             } catch (Exception e) {
                 //connection failed, do not consider this address any more
                 addresses.remove(key.attachment());
+                scoreboard.failure((URI)key.attachment());
                 key.cancel();
                 closeQuietly(channel);
                 log.trace("Error connecting socket channel: {}", e.getMessage());
@@ -172,6 +194,7 @@ final class FastestSocketSelector {
             final InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
             if (address.isUnresolved()) {
                 iterator.remove();
+                scoreboard.failure(target);
                 continue;
             }
             SocketChannel channel = null;
@@ -191,6 +214,7 @@ final class FastestSocketSelector {
                     iterator.remove();
                 }
                 closeQuietly(channel);
+                scoreboard.failure(target);
                 log.trace("Error connecting to '{}': {}", target, e);
             }
         }
@@ -0,0 +1,232 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.AbstractClientMessageProcessor.TargetHostsUserToken;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+
+/**
+ * Connection manager of the client proxy that keeps the pooled connections of each partner apart and warm.
+ *
+ * The connections are pooled per partner, i.e. per group of security servers, by the
+ * {@link TargetHostsUserToken} of the requests. The manager measures how long the requests wait for a pooled
+ * connection and, if usage tracking is enabled, keeps a decaying count of the requests of each partner.
+ * {@link #prewarm(int, int, int, long)} makes sure that the most used partners have open connections in the pool,
+ * so that the requests do not have to wait for a full TLS handshake after the connections have been closed.
+ */
+@Slf4j
+class PartnerConnectionManager extends PoolingHttpClientConnectionManager {
+
+    // Weight of the earlier requests of a partner, applied once per pre-warming round
+    private static final double USAGE_DECAY = 0.8;
+
+    private final PartnerConnectionMetrics metrics;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<TargetHostsUserToken, Usage> usage = new ConcurrentHashMap<>();
+
+    // The requests of the partners are counted only if they are pre-warmed
+    @Setter
+    private volatile boolean trackUsage;
+
+    PartnerConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            PartnerConnectionMetrics metrics) {
+        this(new DefaultHttpClientConnectionOperator(socketFactoryRegistry, null, null), metrics,
+                System::currentTimeMillis);
+    }
+
+    PartnerConnectionManager(HttpClientConnectionOperator connectionOperator, PartnerConnectionMetrics metrics,
+            LongSupplier clock) {
+        super(connectionOperator, null, -1, TimeUnit.MILLISECONDS);
+
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final String partner;
+
+        if (trackUsage && state instanceof TargetHostsUserToken) {
+            Usage partnerUsage = usage.computeIfAbsent((TargetHostsUserToken) state,
+                    token -> new Usage(token, clock.getAsLong()));
+            partnerUsage.route = route;
+            partnerUsage.requests.increment();
+
+            partner = partnerUsage.partner;
+        } else if (state instanceof TargetHostsUserToken) {
+            partner = PartnerConnectionMetrics.partnerName(((TargetHostsUserToken) state).getTargetHosts());
+        } else {
+            partner = route.getTargetHost().getHostName();
+        }
+
+        final ConnectionRequest request = super.requestConnection(route, state);
+
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+
+                try {
+                    return request.get(timeout, tunit);
+                } finally {
+                    metrics.poolWait(partner, System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    /**
+     * Opens connections to the most used partners. The usage of a partner is the count of its requests, with the
+     * requests of each earlier call weighted down by {@link #USAGE_DECAY}, so a partner stays among the most used
+     * ones for a while after its requests stop. The idle connections leased on the way are validated if they have
+     * been inactive for long enough, the closed ones are replaced and all of them are returned to the pool as
+     * freshly used, which also keeps them from being closed as idle for as long as the partner stays among the
+     * most used ones. Partners that have sent no requests for longer than the retain time are forgotten.
+     * @param maxPartners maximum number of partners to open connections to
+     * @param connections number of connections to keep open to each partner
+     * @param timeoutMillis timeout for leasing and opening a connection
+     * @param retainMillis time after the last request of a partner until it is forgotten, should be longer than
+     * the time after which idle connections are closed
+     */
+    void prewarm(int maxPartners, int connections, int timeoutMillis, long retainMillis) {
+        long now = clock.getAsLong();
+        List<Usage> used = new ArrayList<>();
+
+        for (Iterator<Usage> it = usage.values().iterator(); it.hasNext();) {
+            Usage partnerUsage = it.next();
+            long requests = partnerUsage.requests.sumThenReset();
+
+            if (requests > 0) {
+                partnerUsage.lastRequestTime = now;
+            }
+
+            partnerUsage.score = partnerUsage.score * USAGE_DECAY + requests;
+
+            if (now - partnerUsage.lastRequestTime > retainMillis) {
+                it.remove();
+                metrics.removePartner(partnerUsage.partner);
+            } else {
+                used.add(partnerUsage);
+            }
+        }
+
+        used.sort(Comparator.comparingDouble((Usage u) -> u.score).reversed());
+
+        for (Usage partnerUsage : used.subList(0, Math.min(maxPartners, used.size()))) {
+            try {
+                prewarm(partnerUsage, connections, timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } catch (Exception e) {
+                log.warn("Failed to open connections to {}", partnerUsage.partner, e);
+            }
+        }
+    }
+
+    private void prewarm(Usage partnerUsage, int connections, int timeoutMillis) throws Exception {
+        List<HttpClientConnection> leased = new ArrayList<>(connections);
+        int opened = 0;
+
+        try {
+            for (int i = 0; i < connections; i++) {
+                HttpClientConnection conn = super.requestConnection(partnerUsage.route, partnerUsage.token)
+                        .get(timeoutMillis, TimeUnit.MILLISECONDS);
+                leased.add(conn);
+
+                if (!conn.isOpen()) {
+                    HttpContext context = new BasicHttpContext();
+                    context.setAttribute(ID_TARGETS, partnerUsage.token.getTargetHosts().toArray(new URI[0]));
+                    context.setAttribute(AuthTrustVerifier.ID_PROVIDERNAME, partnerUsage.token.getProvider());
+
+                    connect(conn, partnerUsage.route, timeoutMillis, context);
+                    routeComplete(conn, partnerUsage.route, context);
+                    opened++;
+                }
+            }
+        } finally {
+            for (HttpClientConnection conn : leased) {
+                releaseConnection(conn, partnerUsage.token, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        log.trace("Opened {} connections to {}", opened, partnerUsage.partner);
+    }
+
+    int getPartnerCount() {
+        return usage.size();
+    }
+
+    private static final class Usage {
+        private final TargetHostsUserToken token;
+        private final String partner;
+        private final LongAdder requests = new LongAdder();
+
+        private volatile HttpRoute route;
+        private double score;
+        private long lastRequestTime;
+
+        Usage(TargetHostsUserToken token, long now) {
+            this.token = token;
+            this.partner = PartnerConnectionMetrics.partnerName(token.getTargetHosts());
+            this.lastRequestTime = now;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Connection metrics of the client proxy per partner, i.e. per group of security servers the requests are sent to.
+ * For each partner the metrics contain the TLS handshakes with their durations, the handshakes that resumed an
+ * earlier session, the session resumption ratio and the time the requests waited for a pooled connection.
+ *
+ * The metrics of a partner are removed when the connection manager forgets the partner. At most
+ * {@link #MAX_PARTNERS} partners are tracked, the metrics of the least recently used one are removed to make room
+ * for a new one.
+ */
+final class PartnerConnectionMetrics {
+
+    static final String PREFIX = "clientproxy.partner";
+
+    static final String HANDSHAKES = "handshakes";
+    static final String RESUMED_HANDSHAKES = "resumedHandshakes";
+    static final String RESUMPTION_RATIO = "resumptionRatio";
+    static final String POOL_WAIT = "poolWait";
+
+    static final int MAX_PARTNERS = 1000;
+
+    private final MetricRegistry registry;
+    private final ConcurrentMap<String, Partner> partners = new ConcurrentHashMap<>();
+
+    PartnerConnectionMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param addresses addresses of the security servers of the partner
+     * @return the name of the partner, the sorted host names of the addresses
+     */
+    static String partnerName(URI[] addresses) {
+        return partnerName(Arrays.asList(addresses));
+    }
+
+    /**
+     * @param addresses addresses of the security servers of the partner
+     * @return the name of the partner, the sorted host names of the addresses
+     */
+    static String partnerName(Collection<URI> addresses) {
+        return addresses.stream()
+                .map(URI::getHost)
+                .sorted()
+                .distinct()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Records a completed TLS handshake with a security server of the partner.
+     * @param partner the partner name
+     * @param resumed whether the handshake resumed an earlier session
+     * @param durationNanos duration of the handshake
+     */
+    void handshake(String partner, boolean resumed, long durationNanos) {
+        Partner metrics = getPartner(partner);
+
+        metrics.handshakes.update(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (resumed) {
+            metrics.resumedHandshakes.mark();
+        }
+    }
+
+    /**
+     * Records the time a request waited for a pooled connection to the partner.
+     * @param partner the partner name
+     * @param durationNanos duration of the wait
+     */
+    void poolWait(String partner, long durationNanos) {
+        getPartner(partner).poolWait.update(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Removes the metrics of the partner.
+     * @param partner the partner name
+     */
+    void removePartner(String partner) {
+        partners.computeIfPresent(partner, (name, metrics) -> {
+            for (String metric : new String[] {HANDSHAKES, RESUMED_HANDSHAKES, RESUMPTION_RATIO, POOL_WAIT}) {
+                registry.remove(MetricRegistry.name(PREFIX, name, metric));
+            }
+
+            return null;
+        });
+    }
+
+    private Partner getPartner(String partner) {
+        Partner metrics = partners.get(partner);
+
+        if (metrics == null) {
+            if (partners.size() >= MAX_PARTNERS) {
+                removeLeastRecentlyUsed();
+            }
+
+            metrics = partners.computeIfAbsent(partner, this::createPartner);
+        }
+
+        metrics.lastUsed = System.nanoTime();
+
+        return metrics;
+    }
+
+    private void removeLeastRecentlyUsed() {
+        partners.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().lastUsed))
+                .ifPresent(e -> removePartner(e.getKey()));
+    }
+
+    private Partner createPartner(String partner) {
+        Timer handshakes = registry.timer(MetricRegistry.name(PREFIX, partner, HANDSHAKES));
+        Meter resumedHandshakes = registry.meter(MetricRegistry.name(PREFIX, partner, RESUMED_HANDSHAKES));
+
+        registry.register(MetricRegistry.name(PREFIX, partner, RESUMPTION_RATIO), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(resumedHandshakes.getCount(), handshakes.getCount());
+            }
+        });
+
+        return new Partner(handshakes, resumedHandshakes, registry.timer(MetricRegistry.name(PREFIX, partner,
+                POOL_WAIT)));
+    }
+
+    private static final class Partner {
+        private final Timer handshakes;
+        private final Meter resumedHandshakes;
+        private final Timer poolWait;
+
+        private volatile long lastUsed;
+
+        Partner(Timer handshakes, Meter resumedHandshakes, Timer poolWait) {
+            this.handshakes = handshakes;
+            this.resumedHandshakes = resumedHandshakes;
+            this.poolWait = poolWait;
+        }
+    }
+}
@@ -31,7 +31,7 @@ import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
+import ee.ria.xroad.common.util.FileModificationTracker;
 import ee.ria.xroad.signer.protocol.SignerClient;
 import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
 import ee.ria.xroad.signer.protocol.message.GetAuthKey;
@@ -48,6 +48,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
@@ -61,7 +62,16 @@ class CachingKeyConfImpl extends KeyConfImpl {
     // Specifies how long data is cached
     private static final int CACHE_PERIOD_SECONDS = 300;
 
-    private final FileContentChangeChecker keyConfChangeChecker;
+    // Specifies how often the key conf file is checked for modifications
+    private static final int KEY_CONF_CHECK_INTERVAL_MILLIS = 1000;
+
+    // The key conf file tracker shared by all the instances
+    private static FileModificationTracker sharedKeyConfTracker;
+
+    private final FileModificationTracker keyConfTracker;
+
+    // The key conf generation the cached data of this instance is based on
+    private final AtomicLong keyConfGeneration = new AtomicLong();
 
     private static final Cache<ClientId, SigningInfo> SIGNING_INFO_CACHE;
 
@@ -81,11 +91,20 @@ class CachingKeyConfImpl extends KeyConfImpl {
     }
 
     CachingKeyConfImpl() throws Exception {
-        keyConfChangeChecker = getKeyConfChangeChecker();
+        keyConfTracker = getKeyConfTracker();
     }
 
-    protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-        return new FileContentChangeChecker(SystemProperties.getKeyConfFile());
+    protected FileModificationTracker getKeyConfTracker() throws Exception {
+        synchronized (CachingKeyConfImpl.class) {
+            if (sharedKeyConfTracker == null) {
+                FileModificationTracker tracker = new FileModificationTracker(SystemProperties.getKeyConfFile());
+                tracker.start(KEY_CONF_CHECK_INTERVAL_MILLIS);
+
+                sharedKeyConfTracker = tracker;
+            }
+
+            return sharedKeyConfTracker;
+        }
     }
 
     @Override
@@ -144,12 +163,14 @@ class CachingKeyConfImpl extends KeyConfImpl {
     }
 
     boolean keyConfHasChanged() {
-        try {
-            return keyConfChangeChecker.hasChanged();
-        } catch (Exception e) {
-            log.error("Failed to check if key conf has changed", e);
-            return true;
+        long generation = keyConfTracker.getGeneration();
+
+        if (generation <= keyConfGeneration.get()) {
+            return false;
         }
+
+        // Only the first thread to see a new generation reports the change
+        return generation > keyConfGeneration.getAndAccumulate(generation, Math::max);
     }
 
     protected AuthKeyInfo getAuthKeyInfo(SecurityServerId serverId) throws Exception {
@@ -43,7 +43,9 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -261,6 +263,15 @@ public class ProxyMessage implements ProxyMessageConsumer {
     public boolean hasRestBody() {
         return attachmentCache != null && (restMessage != null || restResponse != null);
     }
+    /**
+     * Writes the rest body to the given channel.
+     * @param target the channel
+     * @throws IOException if I/O errors occurred
+     */
+    public void writeRestBody(WritableByteChannel target) throws IOException {
+        attachmentCache.writeTo(target);
+    }
+
     /**
      * Get rest body as inputstream.
      */
@@ -32,6 +32,7 @@ import ee.ria.xroad.proxy.util.InternalKeyManager;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
@@ -42,6 +43,15 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -92,6 +102,8 @@ public class HttpClientCreator {
 
     private CloseableHttpClient httpClient;
 
+    private CloseableHttpAsyncClient httpAsyncClient;
+
     /**
      * @return the {@link PoolingHttpClientConnectionManager}. It is lazily created if it does not exist yet.
      * @throws HttpClientCreatorException if creation fails.
@@ -116,6 +128,62 @@ public class HttpClientCreator {
         return httpClient;
     }
 
+    /**
+     * Returns the asynchronous client that is used for sending requests to the services without blocking the
+     * request thread while the request is in flight. The client must be started before use. Note that the client
+     * does not verify the TLS certificates of the services, so it must not be used for services that require
+     * TLS authentication.
+     * @return the {@link CloseableHttpAsyncClient}. It is lazily created if it does not exist yet.
+     * @throws HttpClientCreatorException if creation fails.
+     */
+    public CloseableHttpAsyncClient getHttpAsyncClient() throws HttpClientCreatorException {
+        if (httpAsyncClient == null) {
+            buildAsync();
+        }
+
+        return httpAsyncClient;
+    }
+
+    private void buildAsync() throws HttpClientCreatorException {
+        PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+        try {
+            Registry<SchemeIOSessionStrategy> sessionStrategyRegistry =
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(createSSLContext(),
+                            SystemProperties.getProxyClientTLSProtocols(),
+                            SystemProperties.getProxyClientTLSCipherSuites(), NoopHostnameVerifier.INSTANCE))
+                    .build();
+
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(Runtime.getRuntime().availableProcessors())
+                    .setConnectTimeout(CLIENT_TIMEOUT)
+                    .setSoTimeout(CLIENT_TIMEOUT)
+                    .setTcpNoDelay(true)
+                    .build();
+
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(ioReactorConfig), sessionStrategyRegistry);
+        } catch (Exception e) {
+            throw new HttpClientCreatorException("Creating asynchronous connection manager failed", e);
+        }
+
+        asyncConnectionManager.setMaxTotal(CLIENT_MAX_TOTAL_CONNECTIONS);
+        asyncConnectionManager.setDefaultMaxPerRoute(CLIENT_MAX_CONNECTIONS_PER_ROUTE);
+
+        RequestConfig.Builder rb = RequestConfig.custom();
+        rb.setConnectTimeout(CLIENT_TIMEOUT);
+        rb.setConnectionRequestTimeout(CLIENT_TIMEOUT);
+        rb.setSocketTimeout(CLIENT_TIMEOUT);
+
+        HttpAsyncClientBuilder cb = HttpAsyncClients.custom();
+        cb.setDefaultRequestConfig(rb.build());
+        cb.setConnectionManager(asyncConnectionManager);
+
+        httpAsyncClient = cb.build();
+    }
+
     private void build() throws HttpClientCreatorException {
         RegistryBuilder<ConnectionSocketFactory> sfr = RegistryBuilder.create();
         sfr.register("http", PlainConnectionSocketFactory.INSTANCE);
@@ -148,13 +216,17 @@ public class HttpClientCreator {
     }
 
     private static SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
+        return new CustomSSLSocketFactory(createSSLContext(), SystemProperties.getProxyClientTLSProtocols(),
+                SystemProperties.getProxyClientTLSCipherSuites(), NoopHostnameVerifier.INSTANCE);
+    }
+
+    private static SSLContext createSSLContext() throws Exception {
         SSLContext ctx = SSLContext.getInstance(CryptoUtils.SSL_PROTOCOL);
         ctx.init(createServiceKeyManager(), new TrustManager[]{new ServiceTrustManager()}, new SecureRandom());
 
         log.info("SSL context successfully created");
 
-        return new CustomSSLSocketFactory(ctx, SystemProperties.getProxyClientTLSProtocols(),
-                SystemProperties.getProxyClientTLSCipherSuites(), NoopHostnameVerifier.INSTANCE);
+        return ctx;
     }
 
     private static KeyManager[] createServiceKeyManager() throws Exception {
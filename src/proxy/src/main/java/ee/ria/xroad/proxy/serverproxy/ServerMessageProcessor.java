@@ -47,6 +47,8 @@ import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.monitoring.MessageInfo.Origin;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.AbstractHttpSender;
+import ee.ria.xroad.common.util.AsyncHttpSender;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConf;
@@ -58,9 +60,11 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.AttributesImpl;
 
@@ -77,6 +81,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
 import static ee.ria.xroad.common.ErrorCodes.X_ACCESS_DENIED;
@@ -110,6 +119,9 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
     private static final String SERVERPROXY_SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
 
+    // The HTTP client may spend both the connect timeout and the socket timeout of the service on a request
+    private static final int ASYNC_TIMEOUT_FACTOR = 2;
+
     private final X509Certificate[] clientSslCerts;
 
     private final List<ServiceHandler> handlers = new ArrayList<>();
@@ -129,6 +141,10 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private HttpClient opMonitorHttpClient;
     private OpMonitoringData opMonitoringData;
 
+    private volatile AsyncServiceHandlerImpl asyncServiceHandler;
+    private final AtomicBoolean asyncResponseStarted = new AtomicBoolean();
+    private long asyncTimeout;
+
     ServerMessageProcessor(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
             HttpClient httpClient, X509Certificate[] clientSslCerts, HttpClient opMonitorHttpClient,
             OpMonitoringData opMonitoringData) {
@@ -145,30 +161,218 @@ class ServerMessageProcessor extends MessageProcessorBase {
     public void process() throws Exception {
         log.info("process({})", servletRequest.getContentType());
 
-        xRequestId = servletRequest.getHeader(HEADER_REQUEST_ID);
+        startProcessing();
 
-        opMonitoringData.setXRequestId(xRequestId);
-        updateOpMonitoringClientSecurityServerAddress();
-        updateOpMonitoringServiceSecurityServerAddress();
+        try {
+            readMessage();
+
+            handleRequest(getServiceHandler(requestMessage));
+
+            finishProcessing();
+        } catch (Exception ex) {
+            handleException(ex);
+        } finally {
+            if (requestMessage != null) {
+                requestMessage.consume();
+            }
+        }
+    }
+
+    /**
+     * Processes the incoming message without blocking the calling thread while the request to the service is in
+     * flight. The request is read and verified on the calling thread. The service response is processed on the
+     * given executor once it has been received. Requests that are served by other service handlers than the
+     * default one and requests to services that require TLS authentication are processed synchronously.
+     *
+     * @param asyncClient the asynchronous HTTP client for sending the request to the service
+     * @param executor the executor that processes the service response
+     * @return future that completes when the response has been sent to the client proxy
+     */
+    CompletableFuture<Void> processAsync(CloseableHttpAsyncClient asyncClient, Executor executor) {
+        log.info("processAsync({})", servletRequest.getContentType());
+
+        AsyncServiceHandlerImpl asyncHandler = null;
 
         try {
+            startProcessing();
+
             readMessage();
 
-            handleRequest();
+            ServiceHandler handler = getServiceHandler(requestMessage);
+
+            if (handler instanceof DefaultServiceHandlerImpl && !requiresTlsAuthentication()) {
+                verifyRequest(handler);
 
-            sign();
-            logResponseMessage();
-            writeSignature();
+                asyncTimeout = ASYNC_TIMEOUT_FACTOR
+                        * (long) TimeUtils.secondsToMillis(ServerConf.getServiceTimeout(requestServiceId));
 
-            close();
+                asyncHandler = new AsyncServiceHandlerImpl(asyncClient);
+                asyncHandler.startHandling(servletRequest, requestMessage, opMonitorHttpClient, opMonitoringData);
+            } else {
+                handleRequest(handler);
 
-            postprocess();
+                finishProcessing();
+            }
         } catch (Exception ex) {
+            return completeWithException(ex, asyncHandler);
+        }
+
+        if (asyncHandler == null) {
+            consumeRequest();
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final AsyncServiceHandlerImpl serviceHandler = asyncHandler;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        asyncServiceHandler = serviceHandler;
+
+        serviceHandler.getResponseFuture().whenComplete((response, error) -> {
+            try {
+                executor.execute(() -> completeAsync(serviceHandler, error, result));
+            } catch (RejectedExecutionException e) {
+                rejectAsync(serviceHandler, result);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Cancels the asynchronous request to the service, unless the response is already being sent to the client
+     * proxy.
+     *
+     * @return true if the request was cancelled and this processor does not send a response
+     */
+    boolean cancelAsync() {
+        if (!asyncResponseStarted.compareAndSet(false, true)) {
+            return false;
+        }
+
+        AsyncServiceHandlerImpl handler = asyncServiceHandler;
+
+        if (handler != null) {
+            handler.cancel();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the time in milliseconds after which an asynchronously processed request should be failed if it has
+     * not completed, 0 for no limit
+     */
+    long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    private CompletableFuture<Void> completeWithException(Exception ex, AsyncServiceHandlerImpl asyncHandler) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+
+        try {
             handleException(ex);
+
+            result.complete(null);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
         } finally {
-            if (requestMessage != null) {
-                requestMessage.consume();
+            if (asyncHandler != null) {
+                asyncHandler.finishHandling();
+            }
+
+            consumeRequest();
+        }
+
+        return result;
+    }
+
+    private void completeAsync(AsyncServiceHandlerImpl handler, Throwable error, CompletableFuture<Void> result) {
+        log.trace("completeAsync()");
+
+        Throwable failure = null;
+
+        try {
+            // The response is not sent if the request has been cancelled after a timeout
+            if (asyncResponseStarted.compareAndSet(false, true)) {
+                sendAsyncResponse(handler, error);
+            }
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            handler.finishHandling();
+
+            consumeRequest();
+        }
+
+        if (failure == null) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private void rejectAsync(AsyncServiceHandlerImpl handler, CompletableFuture<Void> result) {
+        log.warn("Service response rejected, {} responses are already waiting to be processed",
+                SystemProperties.getServerProxyAsyncResponseQueueSize());
+
+        try {
+            handler.finishHandling();
+
+            consumeRequest();
+        } finally {
+            result.completeExceptionally(new CodedException(X_INTERNAL_ERROR,
+                    "Too many service responses are waiting to be processed"));
+        }
+    }
+
+    private void sendAsyncResponse(AsyncServiceHandlerImpl handler, Throwable error) throws Exception {
+        try {
+            // The configuration is cached per thread, so it must be set up again for the response thread.
+            cacheConfigurationForCurrentThread();
+
+            if (error != null) {
+                handler.handleFailure(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
             }
+
+            handler.handleResponse();
+
+            parseResponse(handler);
+
+            finishProcessing();
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+    }
+
+    private void startProcessing() {
+        xRequestId = servletRequest.getHeader(HEADER_REQUEST_ID);
+
+        opMonitoringData.setXRequestId(xRequestId);
+        updateOpMonitoringClientSecurityServerAddress();
+        updateOpMonitoringServiceSecurityServerAddress();
+    }
+
+    private void finishProcessing() throws Exception {
+        sign();
+        logResponseMessage();
+        writeSignature();
+
+        close();
+
+        postprocess();
+    }
+
+    private boolean requiresTlsAuthentication() {
+        String address = ServerConf.getServiceAddress(requestServiceId);
+
+        return address != null && address.startsWith("https") && ServerConf.isSslAuthentication(requestServiceId);
+    }
+
+    private void consumeRequest() {
+        if (requestMessage != null) {
+            requestMessage.consume();
         }
     }
 
@@ -234,16 +438,21 @@ class ServerMessageProcessor extends MessageProcessorBase {
             }
         }
 
-        return null;
+        return new DefaultServiceHandlerImpl();
     }
 
-    private void handleRequest() throws Exception {
-        ServiceHandler handler = getServiceHandler(requestMessage);
+    private void handleRequest(ServiceHandler handler) throws Exception {
+        verifyRequest(handler);
 
-        if (handler == null) {
-            handler = new DefaultServiceHandlerImpl();
+        try {
+            handler.startHandling(servletRequest, requestMessage, opMonitorHttpClient, opMonitoringData);
+            parseResponse(handler);
+        } finally {
+            handler.finishHandling();
         }
+    }
 
+    private void verifyRequest(ServiceHandler handler) throws Exception {
         if (handler.shouldVerifyAccess()) {
             verifyAccess();
         }
@@ -255,13 +464,6 @@ class ServerMessageProcessor extends MessageProcessorBase {
         if (handler.shouldLogSignature()) {
             logRequestMessage();
         }
-
-        try {
-            handler.startHandling(servletRequest, requestMessage, opMonitorHttpClient, opMonitoringData);
-            parseResponse(handler);
-        } finally {
-            handler.finishHandling();
-        }
     }
 
     private void readMessage() throws Exception {
@@ -443,13 +645,7 @@ class ServerMessageProcessor extends MessageProcessorBase {
     private void sendRequest(String serviceAddress, HttpSender httpSender) throws Exception {
         log.trace("sendRequest({})", serviceAddress);
 
-        URI uri;
-        try {
-            uri = new URI(serviceAddress);
-        } catch (URISyntaxException e) {
-            throw new CodedException(X_SERVICE_MALFORMED_URL, "Malformed service address '%s': %s", serviceAddress,
-                    e.getMessage());
-        }
+        URI uri = getServiceUri(serviceAddress);
 
         log.info("Sending request to {}", uri);
         try (InputStream in = requestMessage.getSoapContent()) {
@@ -457,12 +653,47 @@ class ServerMessageProcessor extends MessageProcessorBase {
             httpSender.doPost(uri, in, CHUNKED_LENGTH, servletRequest.getHeader(HEADER_ORIGINAL_CONTENT_TYPE));
             opMonitoringData.setResponseInTs(getEpochMillisecond());
         } catch (Exception ex) {
-            if (ex instanceof CodedException) {
-                opMonitoringData.setResponseInTs(getEpochMillisecond());
-            }
+            throw serviceFailed(ex);
+        }
+    }
 
-            throw translateException(ex).withPrefix(X_SERVICE_FAILED_X);
+    private CodedException serviceFailed(Throwable ex) {
+        if (ex instanceof CodedException) {
+            opMonitoringData.setResponseInTs(getEpochMillisecond());
+        }
+
+        return translateException(ex).withPrefix(X_SERVICE_FAILED_X);
+    }
+
+    private static URI getServiceUri(String serviceAddress) {
+        try {
+            return new URI(serviceAddress);
+        } catch (URISyntaxException e) {
+            throw new CodedException(X_SERVICE_MALFORMED_URL, "Malformed service address '%s': %s", serviceAddress,
+                    e.getMessage());
+        }
+    }
+
+    private String prepareServiceRequest(AbstractHttpSender sender) throws Exception {
+        log.trace("processRequest({})", requestServiceId);
+
+        String address = ServerConf.getServiceAddress(requestServiceId);
+
+        if (address == null || address.isEmpty()) {
+            throw new CodedException(X_SERVICE_MISSING_URL, "Service address not specified for '%s'",
+                    requestServiceId);
         }
+
+        int timeout = TimeUtils.secondsToMillis(ServerConf.getServiceTimeout(requestServiceId));
+
+        sender.setConnectionTimeout(timeout);
+        sender.setSocketTimeout(timeout);
+        sender.setAttribute(ServiceId.class.getName(), requestServiceId);
+
+        sender.addHeader("accept-encoding", "");
+        sender.addHeader("SOAPAction", originalSoapAction);
+
+        return address;
     }
 
     private void parseResponse(ServiceHandler handler) throws Exception {
@@ -615,30 +846,93 @@ class ServerMessageProcessor extends MessageProcessorBase {
                 HttpClient opMonitorClient, OpMonitoringData monitoringData) throws Exception {
             sender = createHttpSender();
 
-            log.trace("processRequest({})", requestServiceId);
+            sendRequest(prepareServiceRequest(sender), sender);
+        }
+
+        @Override
+        public void finishHandling() throws Exception {
+            sender.close();
+            sender = null;
+        }
+
+        @Override
+        public String getResponseContentType() {
+            return sender.getResponseContentType();
+        }
+
+        @Override
+        public InputStream getResponseContent() {
+            return sender.getResponseContent();
+        }
+    }
+
+    /**
+     * Service handler that sends the request to the service with an asynchronous HTTP client. The response is
+     * handled when the future returned by {@link #getResponseFuture()} completes.
+     */
+    private class AsyncServiceHandlerImpl extends DefaultServiceHandlerImpl {
+
+        private final CloseableHttpAsyncClient asyncClient;
+
+        private volatile AsyncHttpSender sender;
+        private InputStream requestContent;
+        private CompletableFuture<Void> responseFuture;
+
+        AsyncServiceHandlerImpl(CloseableHttpAsyncClient asyncClient) {
+            this.asyncClient = asyncClient;
+        }
+
+        @Override
+        public void startHandling(HttpServletRequest servletRequest, ProxyMessage proxyRequestMessage,
+                HttpClient opMonitorClient, OpMonitoringData monitoringData) throws Exception {
+            sender = new AsyncHttpSender(asyncClient);
 
-            String address = ServerConf.getServiceAddress(requestServiceId);
+            URI uri = getServiceUri(prepareServiceRequest(sender));
 
-            if (address == null || address.isEmpty()) {
-                throw new CodedException(X_SERVICE_MISSING_URL, "Service address not specified for '%s'",
-                        requestServiceId);
+            log.info("Sending request asynchronously to {}", uri);
+
+            // The request content is read by the client after this method returns, so it is closed
+            // only when the handling is finished.
+            requestContent = requestMessage.getSoapContent();
+
+            try {
+                opMonitoringData.setRequestOutTs(getEpochMillisecond());
+                sender.doPost(uri, requestContent, CHUNKED_LENGTH,
+                        servletRequest.getHeader(HEADER_ORIGINAL_CONTENT_TYPE));
+                responseFuture = sender.responseAsync();
+            } catch (Exception ex) {
+                throw serviceFailed(ex);
             }
+        }
 
-            int timeout = TimeUtils.secondsToMillis(ServerConf.getServiceTimeout(requestServiceId));
+        CompletableFuture<Void> getResponseFuture() {
+            return responseFuture;
+        }
+
+        void handleResponse() {
+            opMonitoringData.setResponseInTs(getEpochMillisecond());
+        }
+
+        void handleFailure(Throwable error) {
+            throw serviceFailed(error);
+        }
 
-            sender.setConnectionTimeout(timeout);
-            sender.setSocketTimeout(timeout);
-            sender.setAttribute(ServiceId.class.getName(), requestServiceId);
+        void cancel() {
+            AsyncHttpSender currentSender = sender;
 
-            sender.addHeader("accept-encoding", "");
-            sender.addHeader("SOAPAction", originalSoapAction);
-            sendRequest(address, sender);
+            if (currentSender != null) {
+                currentSender.cancelRequest();
+            }
         }
 
         @Override
-        public void finishHandling() throws Exception {
-            sender.close();
-            sender = null;
+        public void finishHandling() {
+            IOUtils.closeQuietly(requestContent);
+
+            if (sender != null) {
+                sender.close();
+                sender = null;
+            }
         }
 
         @Override
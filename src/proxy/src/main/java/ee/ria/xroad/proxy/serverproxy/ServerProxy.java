@@ -35,8 +35,10 @@ import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.proxy.antidos.AntiDosConnector;
 import ee.ria.xroad.proxy.util.SSLContextUtil;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.eclipse.jetty.server.CustomRequestLog;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
@@ -51,6 +53,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Server proxy that handles requests of client proxies.
@@ -75,6 +81,9 @@ public class ServerProxy implements StartStop {
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connMonitor;
 
+    private CloseableHttpAsyncClient asyncClient;
+    private ExecutorService asyncResponseExecutor;
+
     private String listenAddress;
 
     private CloseableHttpClient opMonitorClient;
@@ -127,6 +136,27 @@ public class ServerProxy implements StartStop {
         connMonitor.setConnectionIdleTimeMilliseconds(IDLE_MONITOR_TIMEOUT);
 
         client = creator.getHttpClient();
+
+        if (SystemProperties.isServerProxyAsyncServiceRequestsEnabled()) {
+            asyncClient = creator.getHttpAsyncClient();
+            asyncResponseExecutor = createAsyncResponseExecutor();
+
+            log.info("Service requests are sent asynchronously");
+        }
+    }
+
+    /**
+     * Creates the executor that processes the asynchronously received service responses. The queue is bounded so that
+     * the responses do not pile up in memory when the services answer faster than the responses can be processed.
+     * The responses that do not fit into the queue are rejected and their requests fail.
+     */
+    private static ExecutorService createAsyncResponseExecutor() {
+        int threads = SystemProperties.getServerProxyAsyncResponseThreads();
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SystemProperties.getServerProxyAsyncResponseQueueSize()),
+                new ThreadFactoryBuilder().setNameFormat("serverproxy-async-response-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
     }
 
     private void createOpMonitorClient() throws Exception {
@@ -168,7 +198,8 @@ public class ServerProxy implements StartStop {
         RequestLogHandler logHandler = new RequestLogHandler();
         logHandler.setRequestLog(reqLog);
 
-        ServerProxyHandler proxyHandler = new ServerProxyHandler(client, opMonitorClient);
+        ServerProxyHandler proxyHandler = new ServerProxyHandler(client, opMonitorClient, asyncClient,
+                asyncResponseExecutor);
 
         HandlerCollection handler = new HandlerCollection();
         handler.addHandler(logHandler);
@@ -181,6 +212,10 @@ public class ServerProxy implements StartStop {
     public void start() throws Exception {
         log.trace("start()");
 
+        if (asyncClient != null) {
+            asyncClient.start();
+        }
+
         server.start();
         connMonitor.start();
     }
@@ -203,6 +238,11 @@ public class ServerProxy implements StartStop {
         opMonitorClient.close();
         server.stop();
 
+        if (asyncClient != null) {
+            asyncClient.close();
+            asyncResponseExecutor.shutdown();
+        }
+
         HibernateUtil.closeSessionFactories();
     }
 
@@ -40,8 +40,12 @@ import ee.ria.xroad.proxy.util.MessageProcessorBase;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.eclipse.jetty.server.Request;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -49,9 +53,15 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HTTP_METHOD;
+import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.X_SERVICE_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.translateWithPrefix;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.SecurityServerType.PRODUCER;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_MESSAGE_TYPE;
@@ -65,11 +75,24 @@ class ServerProxyHandler extends HandlerBase {
 
     private final HttpClient client;
     private final HttpClient opMonitorClient;
+    private final CloseableHttpAsyncClient asyncClient;
+    private final Executor asyncResponseExecutor;
     private final long idleTimeout = SystemProperties.getServerProxyConnectorMaxIdleTime();
 
     ServerProxyHandler(HttpClient client, HttpClient opMonitorClient) {
+        this(client, opMonitorClient, null, null);
+    }
+
+    /**
+     * Creates a handler that sends SOAP requests to the services asynchronously, using the given client, if it is
+     * not null. The service responses are processed on the given executor.
+     */
+    ServerProxyHandler(HttpClient client, HttpClient opMonitorClient, CloseableHttpAsyncClient asyncClient,
+            Executor asyncResponseExecutor) {
         this.client = client;
         this.opMonitorClient = opMonitorClient;
+        this.asyncClient = asyncClient;
+        this.asyncResponseExecutor = asyncResponseExecutor;
     }
 
     @Override
@@ -84,6 +107,8 @@ class ServerProxyHandler extends HandlerBase {
             response.addHeader("Connection", "close");
         }
 
+        boolean async = false;
+
         try {
             if (!request.getMethod().equalsIgnoreCase("POST")) {
                 throw new CodedException(X_INVALID_HTTP_METHOD, "Must use POST request method instead of %s",
@@ -95,33 +120,128 @@ class ServerProxyHandler extends HandlerBase {
             logProxyVersion(request);
             baseRequest.getHttpChannel().setIdleTimeout(idleTimeout);
             final MessageProcessorBase processor = createRequestProcessor(request, response, opMonitoringData);
-            processor.process();
 
-            final MessageInfo messageInfo = processor.createRequestMessageInfo();
-            if (processor.verifyMessageExchangeSucceeded()) {
-                MonitorAgent.success(messageInfo, new Date(start), new Date());
+            if (asyncClient != null && processor instanceof ServerMessageProcessor) {
+                processAsync((ServerMessageProcessor) processor, request, response, opMonitoringData, start);
+                async = true;
             } else {
-                MonitorAgent.failure(messageInfo, null, null);
+                processor.process();
+
+                success(processor, start);
             }
         } catch (Throwable e) { // We want to catch serious errors as well
-            CodedException cex = translateWithPrefix(SERVER_SERVERPROXY_X, e);
+            handleError(request, response, opMonitoringData, e);
+        } finally {
+            baseRequest.setHandled(true);
+
+            if (!async) {
+                requestHandled(opMonitoringData, start);
+            }
+        }
+    }
 
-            log.error("Request processing error ({})", cex.getFaultDetail(), e);
+    private void processAsync(ServerMessageProcessor processor, HttpServletRequest request,
+            HttpServletResponse response, OpMonitoringData opMonitoringData, long start) {
+        AsyncContext asyncContext = request.startAsync();
+        AtomicBoolean completed = new AtomicBoolean();
 
-            opMonitoringData.setFaultCodeAndString(cex);
-            opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (!completed.compareAndSet(false, true)) {
+                    return;
+                }
 
-            failure(request, response, cex);
-        } finally {
-            baseRequest.setHandled(true);
+                try {
+                    if (processor.cancelAsync()) {
+                        handleError(request, response, opMonitoringData,
+                                new CodedException(X_NETWORK_ERROR, "Service request timed out")
+                                        .withPrefix(X_SERVICE_FAILED_X));
+                    } else {
+                        log.error("Request timed out while the response was being sent");
+                    }
+                } catch (Throwable e) {
+                    log.error("Failing timed out asynchronous request failed", e);
+                } finally {
+                    requestHandled(opMonitoringData, start);
+
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                // Nothing to do
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // Nothing to do
+            }
 
-            opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
-            OpMonitoring.store(opMonitoringData);
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // Nothing to do
+            }
+        });
+
+        CompletableFuture<Void> processed = processor.processAsync(asyncClient, asyncResponseExecutor);
+
+        // The HTTP client enforces the service timeouts, this timeout ends the exchanges that never complete
+        asyncContext.setTimeout(processor.getAsyncTimeout());
+
+        processed.whenComplete((result, error) -> {
+            if (!completed.compareAndSet(false, true)) {
+                // The request has timed out
+                return;
+            }
+
+            try {
+                if (error == null) {
+                    success(processor, start);
+                } else {
+                    handleError(request, response, opMonitoringData,
+                            error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error);
+                }
+            } catch (Throwable e) {
+                log.error("Completing asynchronous request failed", e);
+            } finally {
+                requestHandled(opMonitoringData, start);
+
+                asyncContext.complete();
+            }
+        });
+    }
 
-            PerformanceLogger.log(log, start, "Request handled");
+    private static void success(MessageProcessorBase processor, long start) {
+        final MessageInfo messageInfo = processor.createRequestMessageInfo();
+        if (processor.verifyMessageExchangeSucceeded()) {
+            MonitorAgent.success(messageInfo, new Date(start), new Date());
+        } else {
+            MonitorAgent.failure(messageInfo, null, null);
         }
     }
 
+    private void handleError(HttpServletRequest request, HttpServletResponse response,
+            OpMonitoringData opMonitoringData, Throwable e) throws IOException {
+        CodedException cex = translateWithPrefix(SERVER_SERVERPROXY_X, e);
+
+        log.error("Request processing error ({})", cex.getFaultDetail(), e);
+
+        opMonitoringData.setFaultCodeAndString(cex);
+        opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
+
+        failure(request, response, cex);
+    }
+
+    private static void requestHandled(OpMonitoringData opMonitoringData, long start) {
+        opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
+        OpMonitoring.store(opMonitoringData);
+
+        PerformanceLogger.log(log, start, "Request handled");
+    }
+
     private MessageProcessorBase createRequestProcessor(HttpServletRequest request, HttpServletResponse response,
             OpMonitoringData opMonitoringData) throws Exception {
 
@@ -74,7 +74,7 @@ public abstract class MessageProcessorBase {
      * Saves the current configurations in thread local storage, to protect
      * against configuration reloads during message processing.
      */
-    private void cacheConfigurationForCurrentThread() {
+    protected final void cacheConfigurationForCurrentThread() {
         GlobalConf.initForCurrentThread();
         GlobalConf.verifyValidity();
 
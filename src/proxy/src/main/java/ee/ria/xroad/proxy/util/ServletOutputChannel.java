@@ -0,0 +1,79 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel that writes to the output stream of a servlet response. Buffers written to a Jetty response output are
+ * passed to Jetty as they are, so that direct buffers reach the socket without being copied to the heap.
+ */
+public final class ServletOutputChannel implements WritableByteChannel {
+
+    private final HttpOutput output;
+
+    private ServletOutputChannel(HttpOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * @param out the servlet response output stream
+     * @return channel that writes to the given output stream
+     */
+    public static WritableByteChannel of(OutputStream out) {
+        if (out instanceof HttpOutput) {
+            return new ServletOutputChannel((HttpOutput) out);
+        }
+
+        return Channels.newChannel(out);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int count = src.remaining();
+
+        // blocking write of the whole buffer
+        output.write(src);
+        src.position(src.limit());
+
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !output.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
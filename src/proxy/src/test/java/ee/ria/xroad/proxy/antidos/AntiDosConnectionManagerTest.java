@@ -32,7 +32,13 @@ import org.junit.Test;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -156,6 +162,79 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure the sampled resource usage is reused within the
+     * sampling interval.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void resourceUsageIsSampledAtInterval() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+        conf.setResourceSampleInterval(TimeUnit.MINUTES.toMillis(1));
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+        sm.addLoad(3, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel member2 = createConnection("test2");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+        cm.accept(member1, member2);
+
+        // The second connection is processed using the first sample
+        cm.assertConnections(member1, member2);
+
+        cm.assertEmpty();
+    }
+
+    /**
+     * Test to ensure no connections are lost when connections are accepted
+     * and taken concurrently.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentAcceptAndTake() throws Exception {
+        final int acceptors = 4;
+        final int connectionsPerAcceptor = 10000;
+        final String[] addresses = {"test1", "test2", "test3", "attacker1"};
+
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        ExecutorService executor = Executors.newFixedThreadPool(acceptors + 1);
+        try {
+            Future<Integer> taken = executor.submit(() -> {
+                int count = 0;
+                while (count < acceptors * connectionsPerAcceptor) {
+                    assertNotNull(cm.takeNextConnection());
+                    count++;
+                }
+
+                return count;
+            });
+
+            for (int i = 0; i < acceptors; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < connectionsPerAcceptor; j++) {
+                        cm.accept(createConnection(addresses[j % addresses.length]));
+                    }
+                });
+            }
+
+            assertEquals(acceptors * connectionsPerAcceptor,
+                    (int) taken.get(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        cm.assertEmpty();
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
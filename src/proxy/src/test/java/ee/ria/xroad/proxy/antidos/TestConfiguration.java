@@ -26,10 +26,15 @@ package ee.ria.xroad.proxy.antidos;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
 @RequiredArgsConstructor
 @Getter
 class TestConfiguration extends AntiDosConfiguration {
     private final int minFreeFileHandles;
     private final double maxCpuLoad;
+
+    // Sample the resources for every connection unless told otherwise
+    @Setter
+    private long resourceSampleInterval;
 }
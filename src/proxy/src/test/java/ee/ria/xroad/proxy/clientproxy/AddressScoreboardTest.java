@@ -0,0 +1,179 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.clientproxy.AddressScoreboard.BACKED_OFF;
+import static ee.ria.xroad.proxy.clientproxy.AddressScoreboard.CONNECT_LATENCY;
+import static ee.ria.xroad.proxy.clientproxy.AddressScoreboard.FAILURES;
+import static ee.ria.xroad.proxy.clientproxy.AddressScoreboard.PREFIX;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the scoring of the security server addresses.
+ */
+public class AddressScoreboardTest {
+
+    private static final URI SS1 = URI.create("https://ss1.example.com:5500/");
+    private static final URI SS2 = URI.create("https://ss2.example.com:5500/");
+    private static final URI SS3 = URI.create("https://ss3.example.com:5500/");
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private long now;
+    private AddressScoreboard scoreboard;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        scoreboard = new AddressScoreboard(registry, () -> now);
+    }
+
+    /**
+     * Test to ensure the address with the lowest moving average of the connect latency is the best one and that
+     * addresses that have not been connected to are not considered.
+     */
+    @Test
+    public void bestByLatency() {
+        URI[] addresses = {SS1, SS2, SS3};
+
+        assertNull(scoreboard.best(addresses));
+
+        scoreboard.success(SS1, millis(10));
+        scoreboard.success(SS2, millis(20));
+
+        assertEquals(SS1, scoreboard.best(addresses));
+
+        // a single slow connection does not outweigh the history
+        scoreboard.success(SS1, millis(50));
+
+        assertEquals(SS1, scoreboard.best(addresses));
+        assertEquals(18.0, (Double) gauge(SS1, CONNECT_LATENCY), 0.001);
+
+        scoreboard.success(SS1, millis(50));
+
+        assertEquals(SS2, scoreboard.best(addresses));
+    }
+
+    /**
+     * Test to ensure failed addresses are backed off for a period that doubles with consecutive failures and that
+     * a successful connection clears the backoff.
+     */
+    @Test
+    public void backOffFailedAddresses() {
+        URI[] addresses = {SS1, SS2};
+
+        scoreboard.success(SS1, millis(10));
+        scoreboard.success(SS2, millis(20));
+        scoreboard.failure(SS1);
+
+        assertTrue(scoreboard.isBackedOff(SS1));
+        assertEquals(SS2, scoreboard.best(addresses));
+        assertArrayEquals(new URI[] {SS2}, scoreboard.healthy(addresses));
+        assertEquals(1L, gauge(SS1, FAILURES));
+        assertEquals(true, gauge(SS1, BACKED_OFF));
+
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        assertFalse(scoreboard.isBackedOff(SS1));
+
+        scoreboard.failure(SS1);
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        assertTrue(scoreboard.isBackedOff(SS1));
+
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        assertFalse(scoreboard.isBackedOff(SS1));
+
+        scoreboard.failure(SS1);
+        scoreboard.success(SS1, millis(10));
+
+        assertFalse(scoreboard.isBackedOff(SS1));
+        assertEquals(SS1, scoreboard.best(addresses));
+    }
+
+    /**
+     * Test to ensure all addresses are raced when every one of them is backed off.
+     */
+    @Test
+    public void raceAllWhenAllBackedOff() {
+        URI[] addresses = {SS1, SS2};
+
+        scoreboard.failure(SS1);
+        scoreboard.failure(SS2);
+
+        assertNull(scoreboard.best(addresses));
+        assertArrayEquals(addresses, scoreboard.healthy(addresses));
+    }
+
+    /**
+     * Test to ensure the scores and gauges of the addresses that have not been connected to for a while are
+     * removed and the other ones are kept.
+     */
+    @Test
+    public void expireIdleScores() {
+        URI[] addresses = {SS1, SS2};
+
+        scoreboard.success(SS1, millis(10));
+        scoreboard.success(SS2, millis(20));
+        assertEquals(6, registry.getGauges().size());
+
+        now += AddressScoreboard.MAX_IDLE;
+        scoreboard.success(SS2, millis(20));
+
+        now += millis(TimeUnit.MINUTES.toMillis(1));
+        scoreboard.success(SS2, millis(20));
+
+        assertEquals(3, registry.getGauges().size());
+        assertNull(registry.getGauges().get(MetricRegistry.name(PREFIX, "ss1.example.com:5500", FAILURES)));
+        assertEquals(SS2, scoreboard.best(addresses));
+
+        // the score is recreated on the next connection
+        scoreboard.failure(SS1);
+        assertEquals(1L, gauge(SS1, FAILURES));
+        assertEquals(6, registry.getGauges().size());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private Object gauge(URI address, String name) {
+        return registry.getGauges()
+                .get(MetricRegistry.name(PREFIX, address.getHost() + ":" + address.getPort(), name))
+                .getValue();
+    }
+}
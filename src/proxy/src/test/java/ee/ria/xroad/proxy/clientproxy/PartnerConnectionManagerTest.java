@@ -0,0 +1,250 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.proxy.clientproxy.AbstractClientMessageProcessor.TargetHostsUserToken;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.POOL_WAIT;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.PREFIX;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the pre-warming of the partner connections of the client proxy.
+ */
+public class PartnerConnectionManagerTest {
+
+    private static final int TIMEOUT = 1000;
+    private static final long IDLE_TIME = TimeUnit.SECONDS.toMillis(30);
+
+    private static final URI SS1 = URI.create("https://ss1.example.com:5500/");
+    private static final URI SS2 = URI.create("https://ss2.example.com:5500/");
+    private static final URI SS3 = URI.create("https://ss3.example.com:5500/");
+
+    private static final ServiceId PROVIDER = ServiceId.create(
+            ClientId.create("EE", "BUSINESS", "producer"), "getRandom");
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    // Hosts of the connections opened by the manager, in order
+    private final List<String> connected = new ArrayList<>();
+    private final List<HttpContext> contexts = new ArrayList<>();
+
+    private long now;
+    private PartnerConnectionManager manager;
+
+    @Before
+    public void setUp() {
+        now = 0;
+
+        manager = new PartnerConnectionManager(new FakeConnectionOperator(), new PartnerConnectionMetrics(registry),
+                () -> now);
+        manager.setDefaultMaxPerRoute(2);
+        // The fake connections cannot be validated
+        manager.setValidateAfterInactivity(Integer.MAX_VALUE);
+        manager.setTrackUsage(true);
+    }
+
+    /**
+     * Test to ensure only the most used partners are pre-warmed, with the given number of connections each, and
+     * that the connections are opened for the security servers and the provider of the partner.
+     */
+    @Test
+    public void prewarmMostUsedPartners() throws Exception {
+        request(SS1, 3);
+        request(SS2, 2);
+        request(SS3, 1);
+
+        manager.prewarm(2, 2, TIMEOUT, retainTime());
+
+        assertEquals(4, connected.size());
+        assertEquals(2, count(SS1));
+        assertEquals(2, count(SS2));
+        assertEquals(0, count(SS3));
+
+        assertArrayEquals(new URI[] {SS1}, (URI[]) contexts.get(0).getAttribute(ID_TARGETS));
+        assertEquals(PROVIDER, contexts.get(0).getAttribute(AuthTrustVerifier.ID_PROVIDERNAME));
+
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(4, manager.getTotalStats().getAvailable());
+    }
+
+    /**
+     * Test to ensure the earlier requests of a partner count less and less, so a partner stays among the most used
+     * ones for a while after its requests stop, but not for good.
+     */
+    @Test
+    public void usageDecays() throws Exception {
+        request(SS1, 10);
+        prewarmAgain(1);
+
+        assertEquals(1, count(SS1));
+
+        // 10 * 0.8 = 8 > 7
+        request(SS2, 7);
+        prewarmAgain(1);
+
+        assertEquals(2, count(SS1));
+        assertEquals(0, count(SS2));
+
+        // 8 * 0.8 = 6.4 < 7 * 0.8 + 3 = 8.6
+        request(SS2, 3);
+        prewarmAgain(1);
+
+        assertEquals(2, count(SS1));
+        assertEquals(1, count(SS2));
+    }
+
+    /**
+     * Test to ensure the open connections in the pool are leased and released as they are, and only the closed
+     * ones are replaced with new connections.
+     */
+    @Test
+    public void replaceClosedConnections() throws Exception {
+        request(SS1, 1);
+
+        manager.prewarm(1, 2, TIMEOUT, retainTime());
+        assertEquals(2, count(SS1));
+
+        manager.prewarm(1, 2, TIMEOUT, retainTime());
+        assertEquals(2, count(SS1));
+
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        manager.prewarm(1, 2, TIMEOUT, retainTime());
+        assertEquals(4, count(SS1));
+
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(2, manager.getTotalStats().getAvailable());
+    }
+
+    /**
+     * Test to ensure a partner is pre-warmed for several idle connection timeouts after its last request and then
+     * forgotten along with its metrics.
+     */
+    @Test
+    public void retainPartnersPastIdleTime() throws Exception {
+        request(SS1, 1);
+        request(SS2, 1);
+
+        manager.prewarm(2, 1, TIMEOUT, retainTime());
+        assertEquals(2, manager.getPartnerCount());
+
+        // The connections are closed as idle, but the partners are still pre-warmed
+        now += 2 * IDLE_TIME;
+        request(SS2, 1);
+        prewarmAgain(2);
+
+        assertEquals(2, count(SS1));
+        assertEquals(2, count(SS2));
+
+        now += retainTime() - 2 * IDLE_TIME;
+        prewarmAgain(2);
+
+        assertEquals(2, manager.getPartnerCount());
+        assertEquals(3, count(SS1));
+
+        now += 1;
+        prewarmAgain(2);
+
+        assertEquals(1, manager.getPartnerCount());
+        assertEquals(3, count(SS1));
+        assertEquals(4, count(SS2));
+
+        assertFalse(registry.getTimers().containsKey(MetricRegistry.name(PREFIX, SS1.getHost(), POOL_WAIT)));
+        assertTrue(registry.getTimers().containsKey(MetricRegistry.name(PREFIX, SS2.getHost(), POOL_WAIT)));
+    }
+
+    private static long retainTime() {
+        return ClientProxy.PARTNER_RETAIN_FACTOR * IDLE_TIME;
+    }
+
+    private void prewarmAgain(int maxPartners) {
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        manager.prewarm(maxPartners, 1, TIMEOUT, retainTime());
+    }
+
+    private void request(URI address, int count) throws Exception {
+        TargetHostsUserToken token = new TargetHostsUserToken(new URI[] {address}, PROVIDER);
+
+        for (int i = 0; i < count; i++) {
+            HttpClientConnection conn = manager.requestConnection(route(address), token)
+                    .get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            manager.releaseConnection(conn, token, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static HttpRoute route(URI address) {
+        return new HttpRoute(new HttpHost(address.getHost(), address.getPort(), address.getScheme()));
+    }
+
+    private long count(URI address) {
+        return connected.stream().filter(address.getHost()::equals).count();
+    }
+
+    /**
+     * Opens the connections by binding them to unconnected sockets, which is enough for them to count as open.
+     */
+    private class FakeConnectionOperator implements HttpClientConnectionOperator {
+
+        @Override
+        public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress,
+                int connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+            conn.bind(new Socket());
+
+            connected.add(host.getHostName());
+            contexts.add(context);
+        }
+
+        @Override
+        public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
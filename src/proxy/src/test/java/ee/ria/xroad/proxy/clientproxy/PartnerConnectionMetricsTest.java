@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.HANDSHAKES;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.POOL_WAIT;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.PREFIX;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.RESUMED_HANDSHAKES;
+import static ee.ria.xroad.proxy.clientproxy.PartnerConnectionMetrics.RESUMPTION_RATIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the client proxy connection metrics of the partners.
+ */
+public class PartnerConnectionMetricsTest {
+
+    /**
+     * Test to ensure the partner is named by its sorted host names regardless of the order of the addresses.
+     */
+    @Test
+    public void partnerName() throws Exception {
+        URI[] addresses = {new URI("https://ss2.example.com:5500/"), new URI("https://ss1.example.com:5500/")};
+
+        assertEquals("ss1.example.com,ss2.example.com", PartnerConnectionMetrics.partnerName(addresses));
+    }
+
+    /**
+     * Test to ensure the handshakes, the resumption ratio and the pool waits are recorded per partner.
+     */
+    @Test
+    public void recordPerPartner() {
+        MetricRegistry registry = new MetricRegistry();
+        PartnerConnectionMetrics metrics = new PartnerConnectionMetrics(registry);
+
+        metrics.handshake("ss1", false, TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.handshake("ss1", true, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.handshake("ss1", true, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.handshake("ss1", true, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.handshake("ss2", false, TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.poolWait("ss2", TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals(4, registry.timer(MetricRegistry.name(PREFIX, "ss1", HANDSHAKES)).getCount());
+        assertEquals(3, registry.meter(MetricRegistry.name(PREFIX, "ss1", RESUMED_HANDSHAKES)).getCount());
+        assertEquals(0.75, resumptionRatio(registry, "ss1"), 0);
+
+        assertEquals(1, registry.timer(MetricRegistry.name(PREFIX, "ss2", HANDSHAKES)).getCount());
+        assertEquals(0, resumptionRatio(registry, "ss2"), 0);
+        assertEquals(1, registry.timer(MetricRegistry.name(PREFIX, "ss2", POOL_WAIT)).getCount());
+        assertEquals(0, registry.timer(MetricRegistry.name(PREFIX, "ss1", POOL_WAIT)).getCount());
+    }
+
+    /**
+     * Test to ensure the metrics of a partner are removed from the registry with the partner.
+     */
+    @Test
+    public void removePartner() {
+        MetricRegistry registry = new MetricRegistry();
+        PartnerConnectionMetrics metrics = new PartnerConnectionMetrics(registry);
+
+        metrics.handshake("ss1", false, TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.handshake("ss2", false, TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(8, registry.getMetrics().size());
+
+        metrics.removePartner("ss1");
+        assertEquals(4, registry.getMetrics().size());
+        assertFalse(registry.getTimers().containsKey(MetricRegistry.name(PREFIX, "ss1", HANDSHAKES)));
+
+        metrics.handshake("ss1", true, TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, registry.timer(MetricRegistry.name(PREFIX, "ss1", HANDSHAKES)).getCount());
+    }
+
+    /**
+     * Test to ensure the least recently used partner is removed when too many partners are tracked.
+     */
+    @Test
+    public void limitPartners() {
+        MetricRegistry registry = new MetricRegistry();
+        PartnerConnectionMetrics metrics = new PartnerConnectionMetrics(registry);
+
+        for (int i = 0; i < PartnerConnectionMetrics.MAX_PARTNERS; i++) {
+            metrics.poolWait("ss" + i, 0);
+        }
+
+        metrics.poolWait("ss0", 0);
+        metrics.poolWait("new", 0);
+
+        assertEquals(4 * PartnerConnectionMetrics.MAX_PARTNERS, registry.getMetrics().size());
+        assertTrue(registry.getTimers().containsKey(MetricRegistry.name(PREFIX, "ss0", POOL_WAIT)));
+        assertTrue(registry.getTimers().containsKey(MetricRegistry.name(PREFIX, "new", POOL_WAIT)));
+    }
+
+    private static double resumptionRatio(MetricRegistry registry, String partner) {
+        Gauge<?> gauge = registry.getGauges().get(MetricRegistry.name(PREFIX, partner, RESUMPTION_RATIO));
+
+        return (Double) gauge.getValue();
+    }
+}
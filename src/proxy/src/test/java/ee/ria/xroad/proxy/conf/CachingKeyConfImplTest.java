@@ -25,14 +25,13 @@ package ee.ria.xroad.proxy.conf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
+import ee.ria.xroad.common.util.FileModificationTracker;
 import ee.ria.xroad.proxy.testsuite.EmptyServerConf;
 
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -42,6 +41,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BooleanSupplier;
 
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
@@ -359,6 +359,7 @@ public class CachingKeyConfImplTest {
         final BooleanSupplier authKeyIsValid;
         final BooleanSupplier signingInfoIsValid;
         final int cacheReadDelayMs;
+        final AtomicLong keyConfGenerations = new AtomicLong();
 
         TestCachingKeyConfImpl(AtomicInteger dataRefreshes,
                 BooleanSupplier keyConfHasChanged,
@@ -374,17 +375,14 @@ public class CachingKeyConfImplTest {
         }
 
         @Override
-        protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-            return new FileContentChangeChecker("dummyFileName") {
+        protected FileModificationTracker getKeyConfTracker() throws Exception {
+            return new FileModificationTracker("dummyFileName") {
                 @Override
-                protected String calculateConfFileChecksum(File file) throws Exception {
-                    return "dummyChecksum";
-                }
-
-                @Override
-                public boolean hasChanged() throws Exception {
+                public long getGeneration() {
                     log.debug("asking if key conf has changed, answer: " + keyConfHasChanged.getAsBoolean());
-                    return keyConfHasChanged.getAsBoolean();
+                    // every change is a new generation
+                    return keyConfHasChanged.getAsBoolean()
+                            ? keyConfGenerations.incrementAndGet() : keyConfGenerations.get();
                 }
             };
         }
@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.FileContentChangeChecker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of CachingKeyConfImpl.getSigningCtx() with cached
+ * signing info, comparing checking the key conf file by its checksum on every
+ * call (the earlier implementation) to tracking its modifications in the
+ * background.
+ */
+@Slf4j
+public class CachingKeyConfPerformanceTest {
+
+    // size of the generated key conf file, a key conf with some tokens and certificates
+    private static final int KEY_CONF_SIZE = 64 * 1024;
+
+    private static final int NUM_THREADS = 8;
+
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long DURATION_MILLIS = 5000;
+
+    private static final ClientId CLIENT = ClientId.create("EE", "GOV", "1234");
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        Path keyConf = Files.createTempFile("keyconf", ".xml");
+
+        try {
+            Files.write(keyConf, new byte[KEY_CONF_SIZE]);
+            System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE, keyConf.toString());
+
+            FileContentChangeChecker checker = new FileContentChangeChecker(keyConf.toString());
+
+            run("checksum on every call", new TestCachingKeyConfImpl() {
+                @Override
+                boolean keyConfHasChanged() {
+                    try {
+                        return checker.hasChanged();
+                    } catch (Exception e) {
+                        return true;
+                    }
+                }
+            });
+
+            run("modification tracker", new TestCachingKeyConfImpl());
+        } finally {
+            Files.deleteIfExists(keyConf);
+        }
+    }
+
+    private static void run(String name, CachingKeyConfImpl keyConf) throws Exception {
+        CachingKeyConfImpl.invalidateCaches();
+
+        measure(keyConf, WARMUP_MILLIS);
+
+        long calls = measure(keyConf, DURATION_MILLIS);
+
+        log.info("{}: {} calls/s with {} threads", name, calls * 1000 / DURATION_MILLIS, NUM_THREADS);
+    }
+
+    private static long measure(CachingKeyConfImpl keyConf, long durationMillis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        LongAdder calls = new LongAdder();
+        long end = System.currentTimeMillis() + durationMillis;
+
+        for (int i = 0; i < NUM_THREADS; i++) {
+            executor.execute(() -> {
+                while (System.currentTimeMillis() < end) {
+                    keyConf.getSigningCtx(CLIENT);
+                    calls.increment();
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(durationMillis * 2, TimeUnit.MILLISECONDS);
+
+        return calls.sum();
+    }
+
+    private static class TestCachingKeyConfImpl extends CachingKeyConfImpl {
+
+        TestCachingKeyConfImpl() throws Exception {
+            super();
+        }
+
+        @Override
+        protected SigningInfo getSigningInfo(ClientId clientId) {
+            return new SigningInfo("keyid", "signmechanismname", clientId, null, null) {
+                @Override
+                boolean verifyValidity(Date atDate) {
+                    return true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestCertUtil.PKCS12;
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.proxy.AbstractProxyIntegrationTest;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+import ee.ria.xroad.proxy.testutil.TestServerConf;
+import ee.ria.xroad.proxy.testutil.TestService;
+
+import io.restassured.response.ValidatableResponse;
+import org.apache.http.client.HttpClient;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the server proxy with asynchronous service requests enabled.
+ */
+public class AsyncServiceRequestTest extends AbstractProxyIntegrationTest {
+
+    private static final String ASYNC_SERVICE_REQUESTS =
+            SystemProperties.PREFIX + "proxy.server-async-service-requests";
+    private static final String SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
+
+    private static final char[] KEYSTORE_PASSWORD = "test".toCharArray();
+
+    private static Server tlsService;
+
+    private AsyncTestServerConf serverConf;
+
+    /**
+     * Enables the asynchronous service requests before the proxies are started. Shadows the setup of the
+     * superclass.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+        System.setProperty(ASYNC_SERVICE_REQUESTS, "true");
+
+        AbstractProxyIntegrationTest.setup();
+
+        tlsService = createTlsService();
+        tlsService.start();
+    }
+
+    /**
+     * Stops the proxies and restores the default request mode. Shadows the teardown of the superclass.
+     */
+    @AfterClass
+    public static void teardown() throws Exception {
+        try {
+            tlsService.stop();
+
+            AbstractProxyIntegrationTest.teardown();
+        } finally {
+            System.clearProperty(ASYNC_SERVICE_REQUESTS);
+        }
+    }
+
+    /**
+     * Configures the services as SOAP services.
+     */
+    @Before
+    public void setUp() {
+        serverConf = new AsyncTestServerConf(servicePort);
+
+        ServerConf.reload(serverConf);
+    }
+
+    /**
+     * Test that the request is sent to the service with the asynchronous client and the response is returned.
+     */
+    @Test
+    public void shouldSendRequestAsynchronously() {
+        AtomicReference<String> userAgent = new AtomicReference<>();
+
+        service.setHandler((target, request, response) -> {
+            userAgent.set(request.getHeader("User-Agent"));
+
+            TestService.ECHO.handle(target, request, response);
+        });
+
+        String queryId = UUID.randomUUID().toString();
+
+        sendRequest("echo", queryId)
+                .body(containsString(queryId))
+                .body(not(containsString("faultcode")));
+
+        assertNotNull(userAgent.get());
+        assertTrue(userAgent.get(), userAgent.get().startsWith("Apache-HttpAsyncClient"));
+    }
+
+    /**
+     * Test that a failed service request is answered with a fault.
+     */
+    @Test
+    public void shouldFailIfServiceFails() {
+        service.setHandler((target, request, response) -> response.setStatus(HttpServletResponse.SC_NOT_FOUND));
+
+        sendRequest("echo", UUID.randomUUID().toString())
+                .body(containsString("ServiceFailed.HttpError"));
+    }
+
+    /**
+     * Test that a request that fails verification is answered with a fault without calling the service.
+     */
+    @Test
+    public void shouldFailIfAccessDenied() {
+        AtomicBoolean serviceCalled = recordServiceCalls();
+
+        serverConf.queryAllowed = false;
+
+        sendRequest("echo", UUID.randomUUID().toString())
+                .body(containsString("AccessDenied"));
+
+        assertFalse(serviceCalled.get());
+    }
+
+    /**
+     * Test that a request to a service that requires TLS authentication is sent synchronously, so that the TLS
+     * certificate of the service is verified.
+     */
+    @Test
+    public void shouldVerifyServiceCertificateSynchronously() {
+        serverConf.serviceAddress = "https://127.0.0.1:" + ((ServerConnector) tlsService.getConnectors()[0])
+                .getLocalPort();
+        serverConf.sslAuthentication = true;
+
+        // The service has no IS certificates, so only the asynchronous client would accept the connection.
+        sendRequest("echo", UUID.randomUUID().toString())
+                .body(containsString("SslAuthenticationFailed"));
+    }
+
+    /**
+     * Test that a request served by another service handler than the default one is processed synchronously.
+     */
+    @Test
+    public void shouldUseServiceHandlerSynchronously() {
+        AtomicBoolean serviceCalled = recordServiceCalls();
+
+        System.setProperty(SERVICE_HANDLERS, LocalServiceHandler.class.getName());
+
+        try {
+            String queryId = UUID.randomUUID().toString();
+
+            sendRequest(LocalServiceHandler.SERVICE_CODE, queryId)
+                    .body(containsString(queryId))
+                    .body(not(containsString("faultcode")));
+        } finally {
+            System.clearProperty(SERVICE_HANDLERS);
+        }
+
+        assertFalse(serviceCalled.get());
+    }
+
+    private static AtomicBoolean recordServiceCalls() {
+        AtomicBoolean serviceCalled = new AtomicBoolean();
+
+        service.setHandler((target, request, response) -> {
+            serviceCalled.set(true);
+
+            TestService.ECHO.handle(target, request, response);
+        });
+
+        return serviceCalled;
+    }
+
+    private static ValidatableResponse sendRequest(String serviceCode, String queryId) {
+        return given()
+                .baseUri("http://127.0.0.1")
+                .port(proxyClientPort)
+                .header("Content-Type", "text/xml; charset=UTF-8")
+                .header("SOAPAction", "")
+                .body(createRequest(serviceCode, queryId))
+                .post("/")
+                .then()
+                .statusCode(HttpServletResponse.SC_OK);
+    }
+
+    private static String createRequest(String serviceCode, String queryId) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+                + "        xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\"\n"
+                + "        xmlns:id=\"http://x-road.eu/xsd/identifiers\">\n"
+                + "    <SOAP-ENV:Header>\n"
+                + "        <xroad:client id:objectType=\"SUBSYSTEM\">\n"
+                + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+                + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+                + "            <id:memberCode>consumer</id:memberCode>\n"
+                + "            <id:subsystemCode>sub</id:subsystemCode>\n"
+                + "        </xroad:client>\n"
+                + "        <xroad:service id:objectType=\"SERVICE\">\n"
+                + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+                + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+                + "            <id:memberCode>producer</id:memberCode>\n"
+                + "            <id:subsystemCode>sub</id:subsystemCode>\n"
+                + "            <id:serviceCode>" + serviceCode + "</id:serviceCode>\n"
+                + "        </xroad:service>\n"
+                + "        <xroad:id>" + queryId + "</xroad:id>\n"
+                + "        <xroad:protocolVersion>4.0</xroad:protocolVersion>\n"
+                + "    </SOAP-ENV:Header>\n"
+                + "    <SOAP-ENV:Body>\n"
+                + "        <ns1:" + serviceCode + " xmlns:ns1=\"http://producer.x-road.eu\">value</ns1:" + serviceCode
+                + ">\n"
+                + "    </SOAP-ENV:Body>\n"
+                + "</SOAP-ENV:Envelope>\n";
+    }
+
+    private static Server createTlsService() throws Exception {
+        PKCS12 producer = TestCertUtil.getProducer();
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("producer", producer.key, KEYSTORE_PASSWORD, producer.certChain);
+
+        SslContextFactory.Server cf = new SslContextFactory.Server();
+        cf.setKeyStore(keyStore);
+        cf.setKeyStorePassword(new String(KEYSTORE_PASSWORD));
+
+        Server server = new Server();
+
+        ServerConnector connector = new ServerConnector(server, cf);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) {
+                try {
+                    TestService.ECHO.handle(target, request, response);
+                } catch (Exception e) {
+                    response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } finally {
+                    baseRequest.setHandled(true);
+                }
+            }
+        });
+
+        return server;
+    }
+
+    private static class AsyncTestServerConf extends TestServerConf {
+
+        private String serviceAddress;
+        private boolean sslAuthentication;
+        private boolean queryAllowed = true;
+
+        AsyncTestServerConf(int servicePort) {
+            super(servicePort);
+        }
+
+        @Override
+        public String getServiceAddress(ServiceId service) {
+            return serviceAddress != null ? serviceAddress : super.getServiceAddress(service);
+        }
+
+        @Override
+        public boolean isSslAuthentication(ServiceId service) {
+            return sslAuthentication;
+        }
+
+        @Override
+        public boolean isQueryAllowed(ClientId sender, ServiceId service, String method, String path) {
+            return queryAllowed;
+        }
+
+        @Override
+        public DescriptionType getDescriptionType(ServiceId service) {
+            return DescriptionType.WSDL;
+        }
+    }
+
+    /**
+     * Service handler that answers the requests itself by echoing the request SOAP message.
+     */
+    public static class LocalServiceHandler implements ServiceHandler {
+
+        static final String SERVICE_CODE = "localEcho";
+
+        private SoapMessageImpl requestSoap;
+
+        @Override
+        public boolean shouldVerifyAccess() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldVerifySignature() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldLogSignature() {
+            return true;
+        }
+
+        @Override
+        public boolean canHandle(ServiceId requestServiceId, ProxyMessage requestMessage) {
+            return SERVICE_CODE.equals(requestServiceId.getServiceCode());
+        }
+
+        @Override
+        public void startHandling(HttpServletRequest servletRequest, ProxyMessage requestMessage,
+                HttpClient opMonitorClient, OpMonitoringData opMonitoringData) {
+            requestSoap = requestMessage.getSoap();
+        }
+
+        @Override
+        public void finishHandling() {
+            requestSoap = null;
+        }
+
+        @Override
+        public String getResponseContentType() {
+            return requestSoap.getContentType();
+        }
+
+        @Override
+        public InputStream getResponseContent() {
+            return new ByteArrayInputStream(requestSoap.getBytes());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Precompiled access rights of a single service owner.
+ *
+ * <br/>
+ * The access rights are grouped by service code. Rights granted to a client directly or through a local group are
+ * indexed by the client identifier, rights granted to a global group by the group identifier. The endpoint paths
+ * of each subject are kept in a {@link PathTrie} together with the endpoint method, so that deciding whether a
+ * request is allowed does not need to query the database or test every endpoint pattern.
+ *
+ * <br/>
+ * The index is immutable once built.
+ */
+public final class AclIndex {
+
+    static final AclIndex EMPTY = new AclIndex(Collections.emptyMap(), 0);
+
+    private final Map<String, ServiceAcl> services;
+    private final int size;
+
+    private AclIndex(Map<String, ServiceAcl> services, int size) {
+        this.services = services;
+        this.size = size;
+    }
+
+    /**
+     * Builds the access rights index of a service owner.
+     * @param serviceOwner the service owner, whose local groups are used for resolving local group subjects
+     * @param accessRights the access rights of the service owner
+     * @return the access rights index
+     */
+    public static AclIndex build(ClientType serviceOwner, List<AccessRightType> accessRights) {
+        final Map<String, List<ClientId>> localGroups = new HashMap<>();
+        for (LocalGroupType group : serviceOwner.getLocalGroup()) {
+            final List<ClientId> members = localGroups.computeIfAbsent(group.getGroupCode(), c -> new ArrayList<>());
+            for (GroupMemberType member : group.getGroupMember()) {
+                members.add(copyOf(member.getGroupMemberId()));
+            }
+        }
+
+        final Map<String, ServiceAcl> services = new HashMap<>();
+        for (AccessRightType accessRight : accessRights) {
+            final EndpointType endpoint = accessRight.getEndpoint();
+            final XRoadId subject = accessRight.getSubjectId();
+            final ServiceAcl acl = services.computeIfAbsent(endpoint.getServiceCode(), c -> new ServiceAcl());
+
+            if (subject instanceof GlobalGroupId) {
+                acl.globalGroups.computeIfAbsent((GlobalGroupId) subject, g -> new PathTrie<>())
+                        .add(endpoint.getPath(), endpoint.getMethod());
+            } else if (subject instanceof LocalGroupId) {
+                final String groupCode = ((LocalGroupId) subject).getGroupCode();
+                for (ClientId member : localGroups.getOrDefault(groupCode, Collections.emptyList())) {
+                    acl.addClientEndpoint(member, endpoint);
+                }
+            } else if (subject instanceof ClientId) {
+                acl.addClientEndpoint(copyOf((ClientId) subject), endpoint);
+            }
+        }
+
+        return new AclIndex(services, accessRights.size());
+    }
+
+    /**
+     * Checks whether the client is allowed to call the service endpoint.
+     * @param client the client
+     * @param serviceCode the service code
+     * @param method the request method, or null if the check is not about a specific endpoint
+     * @param path the normalized request path, or null if the check is not about a specific endpoint
+     * @return true if the client is allowed to call the endpoint
+     */
+    public boolean isAllowed(ClientId client, String serviceCode, String method, String path) {
+        final ServiceAcl acl = services.get(serviceCode);
+        if (acl == null) {
+            return false;
+        }
+
+        final Predicate<String> methodMatches =
+                m -> EndpointType.ANY_METHOD.equals(m) || m.equalsIgnoreCase(method);
+
+        final PathTrie<String> clientEndpoints = acl.clients.get(client);
+        if (clientEndpoints != null && clientEndpoints.anyMatch(path, methodMatches)) {
+            return true;
+        }
+
+        for (Map.Entry<GlobalGroupId, PathTrie<String>> entry : acl.globalGroups.entrySet()) {
+            if (GlobalConf.isSubjectInGlobalGroup(client, entry.getKey())
+                    && entry.getValue().anyMatch(path, methodMatches)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of access rights in this index
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Identifiers loaded by Hibernate may be lazy proxies, which do not work as hash keys.
+     */
+    private static ClientId copyOf(ClientId id) {
+        return ClientId.create(id.getXRoadInstance(), id.getMemberClass(), id.getMemberCode(),
+                id.getSubsystemCode());
+    }
+
+    private static final class ServiceAcl {
+        private final Map<ClientId, PathTrie<String>> clients = new HashMap<>();
+        private final Map<GlobalGroupId, PathTrie<String>> globalGroups = new LinkedHashMap<>();
+
+        void addClientEndpoint(ClientId client, EndpointType endpoint) {
+            clients.computeIfAbsent(client, c -> new PathTrie<>()).add(endpoint.getPath(), endpoint.getMethod());
+        }
+    }
+}
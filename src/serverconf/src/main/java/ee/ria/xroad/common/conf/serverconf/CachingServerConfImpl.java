@@ -30,7 +30,6 @@ import ee.ria.xroad.common.conf.InternalSSLKey;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
-import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
@@ -39,7 +38,10 @@ import ee.ria.xroad.common.identifier.ServiceId;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import lombok.Value;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 
@@ -47,6 +49,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
@@ -60,11 +64,14 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
 
+    private static final ExecutorService ACL_REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("serverconf-acl-refresh").setDaemon(true).build());
+
     private final int expireSeconds;
     private volatile SecurityServerId serverId;
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final LoadingCache<ClientId, AclIndex> aclCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
@@ -99,12 +106,21 @@ public class CachingServerConfImpl extends ServerConfImpl {
                 .recordStats()
                 .build();
 
-        aclCache = CacheBuilder.newBuilder()
-                .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
+        /*
+         * The access rights index of a service owner is rebuilt in the background once it is older than the cache
+         * period, and the old index is used until the new one is ready. An index that has not been refreshed
+         * for two cache periods (i.e. that has not been used) is discarded.
+         */
+        CacheBuilder<ClientId, AclIndex> aclCacheBuilder = CacheBuilder.newBuilder()
+                .weigher((ClientId k, AclIndex v) -> v.size() + 1)
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .expireAfterWrite(2L * expireSeconds, TimeUnit.SECONDS)
+                .recordStats();
+        if (expireSeconds > 0) {
+            aclCacheBuilder.refreshAfterWrite(expireSeconds, TimeUnit.SECONDS);
+        }
+        aclCache = aclCacheBuilder.build(CacheLoader.asyncReloading(
+                CacheLoader.from(owner -> tx(s -> super.getAclIndex(s, owner))), ACL_REFRESH_EXECUTOR));
 
     }
 
@@ -213,21 +229,19 @@ public class CachingServerConfImpl extends ServerConfImpl {
     }
 
     @Override
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        final AclCacheKey key = new AclCacheKey(client, service);
+    protected AclIndex getAclIndex(Session session, ClientId serviceOwnerId) {
         try {
             /*
-             * Implementation note. It seems that the loader function is executed in the same thread, in which case the
-             * transaction simply joins the current one. However, this is not explicitly promised by the API,
-             * so we start a transaction if necessary.
+             * Implementation note. The initial load is executed in the calling thread, in which case the transaction
+             * simply joins the current one. Refreshes are executed in the background with a new transaction.
              */
-            return aclCache.get(key, () -> tx(s -> super.getEndpoints(s, client, service)));
-        } catch (ExecutionException e) {
+            return aclCache.get(serviceOwnerId);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
-            log.debug("Failed get list of endpoints", e);
-            return Collections.emptyList();
+            log.debug("Failed to get access rights", e);
+            return AclIndex.EMPTY;
         }
     }
 
@@ -268,10 +282,4 @@ public class CachingServerConfImpl extends ServerConfImpl {
                     aclCache.stats().toString());
         }
     }
-
-    @Value
-    private static class AclCacheKey {
-        final ClientId client;
-        final ServiceId serviceId;
-    }
 }
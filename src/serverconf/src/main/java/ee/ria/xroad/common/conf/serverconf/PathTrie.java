@@ -0,0 +1,188 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A prefix tree of path glob patterns (see {@link PathGlob}) for finding the values whose pattern matches a path
+ * without testing each pattern separately.
+ *
+ * <br/>
+ * Patterns are split into '/' separated segments. Literal segments are looked up from a hash map and segments
+ * containing '*' wildcards are matched one segment at a time. A pattern containing '**' can match any number of
+ * segments, so it is matched as a whole once the part of the path preceding the '**' segment has been matched.
+ * The pattern '**' matches any path, including a missing (null) path.
+ *
+ * <br/>
+ * The trie is not thread safe while it is being built, but can be shared freely once all values have been added.
+ * @param <T> type of the values
+ */
+public final class PathTrie<T> {
+    private static final String ANY_PATH = "**";
+    private static final char SEPARATOR = '/';
+
+    private final List<T> anyPathValues = new ArrayList<>();
+    private final Node<T> root = new Node<>();
+    private int size;
+
+    /**
+     * Adds a value matching the given path glob pattern.
+     * @param glob path glob pattern
+     * @param value value to add
+     */
+    public void add(String glob, T value) {
+        size++;
+
+        if (ANY_PATH.equals(glob)) {
+            anyPathValues.add(value);
+            return;
+        }
+
+        Node<T> node = root;
+        int start = 0;
+        while (true) {
+            if (glob.indexOf(ANY_PATH, start) >= 0) {
+                node.tails.add(new Tail<>(PathGlob.compile(glob), value));
+                return;
+            }
+
+            final int end = glob.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                node.child(glob.substring(start)).values.add(value);
+                return;
+            }
+
+            node = node.child(glob.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Checks whether any value whose pattern matches the path satisfies the predicate.
+     * @param path path to match, may be null
+     * @param predicate predicate the value must satisfy
+     * @return true if a matching value was found
+     */
+    public boolean anyMatch(String path, Predicate<? super T> predicate) {
+        if (anyMatch(anyPathValues, predicate)) {
+            return true;
+        }
+
+        return path != null && root.anyMatch(path, 0, predicate);
+    }
+
+    /**
+     * @return the number of values in this trie
+     */
+    public int size() {
+        return size;
+    }
+
+    private static <T> boolean anyMatch(List<T> values, Predicate<? super T> predicate) {
+        for (T value : values) {
+            if (predicate.test(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLiteral(String segment) {
+        return segment.indexOf('*') < 0 && segment.indexOf('\\') < 0;
+    }
+
+    private static final class Node<T> {
+        // values whose pattern ends at this node
+        private final List<T> values = new ArrayList<>();
+        // values whose pattern continues with a '**' wildcard from this node
+        private final List<Tail<T>> tails = new ArrayList<>();
+        private final Map<String, Node<T>> literals = new HashMap<>();
+        private final Map<String, Wildcard<T>> wildcards = new LinkedHashMap<>();
+
+        Node<T> child(String segment) {
+            if (isLiteral(segment)) {
+                return literals.computeIfAbsent(segment, s -> new Node<>());
+            }
+            return wildcards.computeIfAbsent(segment, s -> new Wildcard<>(PathGlob.compile(s))).node;
+        }
+
+        boolean anyMatch(String path, int start, Predicate<? super T> predicate) {
+            for (Tail<T> tail : tails) {
+                if (predicate.test(tail.value) && tail.pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+
+            final int end = path.indexOf(SEPARATOR, start);
+            final String segment = end < 0 ? path.substring(start) : path.substring(start, end);
+
+            final Node<T> literal = literals.get(segment);
+            if (literal != null && literal.matchRest(path, end, predicate)) {
+                return true;
+            }
+
+            for (Wildcard<T> wildcard : wildcards.values()) {
+                if (wildcard.pattern.matcher(segment).matches() && wildcard.node.matchRest(path, end, predicate)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean matchRest(String path, int segmentEnd, Predicate<? super T> predicate) {
+            if (segmentEnd < 0) {
+                return PathTrie.anyMatch(values, predicate);
+            }
+            return anyMatch(path, segmentEnd + 1, predicate);
+        }
+    }
+
+    private static final class Wildcard<T> {
+        private final Pattern pattern;
+        private final Node<T> node = new Node<>();
+
+        Wildcard(Pattern pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    private static final class Tail<T> {
+        private final Pattern pattern;
+        private final T value;
+
+        Tail(Pattern pattern, T value) {
+            this.pattern = pattern;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.AclIndex;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.identifier.ClientId;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures the number of authorization decisions per second for a REST service with many endpoints, comparing
+ * matching the path of every endpoint the client has access to (the earlier implementation) to the precompiled
+ * access rights index.
+ */
+@Slf4j
+public class AclIndexPerformanceTest {
+
+    private static final int NUM_ENDPOINTS = 500;
+    private static final int NUM_CLIENTS = 50;
+    private static final String SERVICE_CODE = "rest";
+
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long DURATION_MILLIS = 5000;
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     */
+    public static void main(String[] args) {
+        ClientType serviceOwner = new ClientType();
+        serviceOwner.setIdentifier(ClientId.create("EE", "GOV", "owner"));
+
+        List<ClientId> clients = new ArrayList<>();
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            clients.add(ClientId.create("EE", "GOV", "client" + i, "subsystem"));
+        }
+
+        List<EndpointType> endpoints = new ArrayList<>();
+        for (int i = 0; i < NUM_ENDPOINTS; i++) {
+            endpoints.add(new EndpointType(SERVICE_CODE, i % 2 == 0 ? "GET" : "POST",
+                    "/api/v1/resource" + i + (i % 3 == 0 ? "/*" : "/items/**"), false));
+        }
+
+        List<AccessRightType> accessRights = new ArrayList<>();
+        for (ClientId client : clients) {
+            for (EndpointType endpoint : endpoints) {
+                accessRights.add(TestUtil.createAccessRight(endpoint, client));
+            }
+        }
+
+        AclIndex index = AclIndex.build(serviceOwner, accessRights);
+
+        run("endpoint list", () -> {
+            ClientId client = clients.get(ThreadLocalRandom.current().nextInt(NUM_CLIENTS));
+            String path = randomPath();
+            return accessRights.stream()
+                    .filter(it -> client.equals(it.getSubjectId()))
+                    .map(AccessRightType::getEndpoint)
+                    .anyMatch(ep -> ep.matches("GET", path));
+        });
+
+        run("access rights index", () -> {
+            ClientId client = clients.get(ThreadLocalRandom.current().nextInt(NUM_CLIENTS));
+            return index.isAllowed(client, SERVICE_CODE, "GET", randomPath());
+        });
+    }
+
+    private static String randomPath() {
+        int resource = ThreadLocalRandom.current().nextInt(NUM_ENDPOINTS);
+        return "/api/v1/resource" + resource + (resource % 3 == 0 ? "/foo" : "/items/foo/bar");
+    }
+
+    private static void run(String name, BooleanSupplier decision) {
+        measure(decision, WARMUP_MILLIS);
+
+        long decisions = measure(decision, DURATION_MILLIS);
+
+        log.info("{}: {} decisions/s", name, decisions * 1000 / DURATION_MILLIS);
+    }
+
+    private static long measure(BooleanSupplier decision, long durationMillis) {
+        long decisions = 0;
+        long allowed = 0;
+        long end = System.currentTimeMillis() + durationMillis;
+
+        while (System.currentTimeMillis() < end) {
+            if (decision.getAsBoolean()) {
+                allowed++;
+            }
+            decisions++;
+        }
+
+        log.debug("{} of {} requests allowed", allowed, decisions);
+
+        return decisions;
+    }
+}
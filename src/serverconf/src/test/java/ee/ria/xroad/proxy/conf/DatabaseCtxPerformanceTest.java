@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
+import ee.ria.xroad.common.db.DatabaseMetrics;
+import ee.ria.xroad.common.db.HibernateUtil;
+
+import com.codahale.metrics.Snapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the number of transactions per second that concurrent threads can run through the server conf
+ * database context with a trivial callback, i.e. the overhead of acquiring the session and the pooled
+ * connection of a transaction.
+ */
+@Slf4j
+public class DatabaseCtxPerformanceTest {
+
+    private static final int[] NUM_THREADS = {1, 4, 16, 64};
+
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long DURATION_MILLIS = 5000;
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        TestUtil.prepareDB();
+
+        try {
+            for (int threads : NUM_THREADS) {
+                run(threads);
+            }
+        } finally {
+            HibernateUtil.closeSessionFactories();
+        }
+    }
+
+    private static void run(int threads) throws Exception {
+        measure(threads, WARMUP_MILLIS);
+
+        long transactions = measure(threads, DURATION_MILLIS);
+
+        Snapshot snapshot = DatabaseMetrics.transactionTimer("serverconf").getSnapshot();
+        log.info("{} threads: {} transactions/s, median {} us, 99th percentile {} us", threads,
+                transactions * 1000 / DURATION_MILLIS,
+                TimeUnit.NANOSECONDS.toMicros((long) snapshot.getMedian()),
+                TimeUnit.NANOSECONDS.toMicros((long) snapshot.get99thPercentile()));
+    }
+
+    private static long measure(int threads, long durationMillis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long end = System.currentTimeMillis() + durationMillis;
+
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    long transactions = 0;
+
+                    while (System.currentTimeMillis() < end) {
+                        ServerConfDatabaseCtx.doInTransaction(session -> session.isOpen());
+                        transactions++;
+                    }
+
+                    return transactions;
+                }));
+            }
+
+            long transactions = 0;
+            for (Future<Long> result : results) {
+                transactions += result.get();
+            }
+
+            return transactions;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
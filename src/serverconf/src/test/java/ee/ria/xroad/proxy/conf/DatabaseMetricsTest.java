@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
+import ee.ria.xroad.common.db.DatabaseMetrics;
+import ee.ria.xroad.common.db.HibernateUtil;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the connection pool and transaction metrics of the server conf database.
+ */
+public class DatabaseMetricsTest {
+
+    private static final String DATABASE = "serverconf";
+
+    /**
+     * Creates the test database.
+     * @throws Exception in case of any errors
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestUtil.prepareDB();
+    }
+
+    /**
+     * Test to ensure the connection pool is named after the database when no pool name is configured.
+     */
+    @Test
+    public void defaultPoolName() {
+        assertEquals(DATABASE, HibernateUtil.getSessionFactory(DATABASE).getProperties()
+                .get("hibernate.hikari.poolName"));
+    }
+
+    /**
+     * Test to ensure the connection pool reports its metrics into the database metrics registry.
+     */
+    @Test
+    public void poolMetrics() {
+        MetricRegistry registry = DatabaseMetrics.getRegistry();
+
+        assertTrue(registry.getTimers().containsKey(MetricRegistry.name(DATABASE, "pool", "Wait")));
+        assertTrue(registry.getGauges().containsKey(MetricRegistry.name(DATABASE, "pool", "ActiveConnections")));
+        assertTrue(registry.getGauges().containsKey(MetricRegistry.name(DATABASE, "pool", "IdleConnections")));
+    }
+
+    /**
+     * Test to ensure the transactions are timed.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void transactionTimer() throws Exception {
+        Timer timer = DatabaseMetrics.transactionTimer(DATABASE);
+        long count = timer.getCount();
+
+        ServerConfDatabaseCtx.doInTransaction(session -> session.isOpen());
+        assertEquals(count + 1, timer.getCount());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.serverconf.PathGlob;
+import ee.ria.xroad.common.conf.serverconf.PathTrie;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PathTrie Unit Tests. The trie must agree with PathGlob on every pattern.
+ */
+@RunWith(Parameterized.class)
+public class PathTrieTest {
+
+    /**
+     * test data
+     * glob, string, expected result
+     */
+    @Parameterized.Parameters(name = "{index}: <{0}> matches <{1}> is {2}")
+    public static List<Object[]> params() {
+        List<Object[]> params = new ArrayList<>(PathGlobTest.params());
+        params.addAll(Arrays.asList(new Object[][] {
+                {"/api/**", "/api/foo/bar", true},
+                {"/api/**", "/api", false},
+                {"/api/test/*", "/api/test/foo", true},
+                {"/api/test/*", "/api/test/foo/bar", false},
+                {"/api/*/x/**", "/api/a/x/b/c", true},
+                {"/api/*/x/**", "/api/a/y/b/c", false},
+                {"/a*b/c", "/aXXb/c", true},
+                {"/a*b/c", "/aXXb/d", false},
+                {"/api/test", "/api/test/", false},
+                {"/api/test/", "/api/test/", true},
+                {"/a/\\*/b", "/a/*/b", true},
+                {"/a/\\*/b", "/a/x/b", false},
+        }));
+        return params;
+    }
+
+    @Parameterized.Parameter(0)
+    public String glob;
+
+    @Parameterized.Parameter(1)
+    public String path;
+
+    @Parameterized.Parameter(2)
+    public Boolean expected;
+
+    @Test
+    public void testTrieMatches() {
+        final PathTrie<String> trie = new PathTrie<>();
+        trie.add("/other/path", "other");
+        trie.add("/other/**", "other");
+        trie.add(glob, "value");
+
+        assertEquals(PathGlob.matches(glob, path), trie.anyMatch(path, "value"::equals));
+        assertEquals(expected, trie.anyMatch(path, "value"::equals));
+    }
+
+    @Test
+    public void testMissingPathMatchesOnlyAnyPath() {
+        final PathTrie<String> trie = new PathTrie<>();
+        trie.add(glob, "value");
+
+        if ("**".equals(glob)) {
+            assertTrue(trie.anyMatch(null, "value"::equals));
+        } else {
+            assertFalse(trie.anyMatch(null, "value"::equals));
+        }
+    }
+}
@@ -35,6 +35,8 @@ import akka.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
 
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -98,6 +100,19 @@ public final class SignerClient {
         requestProcessor.tell(message, receiver);
     }
 
+    /**
+     * Sends a message without waiting for the response. The returned stage
+     * completes with the response (which may be an exception), or fails if
+     * no response arrives within the signer client timeout.
+     * @param message the message
+     * @return the stage of the response
+     */
+    public static CompletionStage<Object> ask(Object message) {
+        verifyInitialized();
+
+        return Patterns.ask(requestProcessor, message, Duration.ofMillis(TIMEOUT_MILLIS));
+    }
+
     /**
      * Sends a message and waits for a response, returning it. If the response
      * is an exception, throws it.
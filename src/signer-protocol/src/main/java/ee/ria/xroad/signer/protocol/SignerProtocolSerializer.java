@@ -0,0 +1,340 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.ConnectionPing;
+import ee.ria.xroad.signer.protocol.message.ConnectionPong;
+import ee.ria.xroad.signer.protocol.message.GetCertificateInfoForHash;
+import ee.ria.xroad.signer.protocol.message.GetCertificateInfoResponse;
+import ee.ria.xroad.signer.protocol.message.GetKeyIdForCertHash;
+import ee.ria.xroad.signer.protocol.message.GetKeyIdForCertHashResponse;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.GetSignMechanism;
+import ee.ria.xroad.signer.protocol.message.GetSignMechanismResponse;
+import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
+import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+import ee.ria.xroad.signer.protocol.message.SuccessResponse;
+
+import akka.serialization.SerializerWithStringManifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Akka serializer for the signer protocol messages that are exchanged on
+ * every request, most importantly {@link Sign} and {@link SignResponse}.
+ * The messages are written field by field in a fixed order, preceded by the
+ * format version. The manifest identifies the message type. Messages not
+ * handled here (including the exceptions sent as error responses) are
+ * serialized by the serializers Akka is configured with.
+ * The serializer is registered in the reference.conf of this module.
+ */
+public class SignerProtocolSerializer extends SerializerWithStringManifest {
+
+    // unique among the serializers of the actor system, 0-40 are reserved by Akka
+    static final int IDENTIFIER = 1100;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final Map<Class<?>, Codec<?>> CODECS_BY_CLASS = new HashMap<>();
+    private static final Map<String, Codec<?>> CODECS_BY_MANIFEST = new HashMap<>();
+
+    static {
+        register(Sign.class, "S",
+                (m, out) -> {
+                    writeString(out, m.getKeyId());
+                    writeString(out, m.getSignatureAlgorithmId());
+                    writeBytes(out, m.getDigest());
+                },
+                in -> new Sign(readString(in), readString(in), readBytes(in)));
+        register(SignResponse.class, "SR",
+                (m, out) -> writeBytes(out, m.getSignature()),
+                in -> new SignResponse(readBytes(in)));
+        register(GetMemberSigningInfo.class, "GMSI",
+                (m, out) -> writeClientId(out, m.getMemberId()),
+                in -> new GetMemberSigningInfo(readClientId(in)));
+        register(MemberSigningInfo.class, "MSI",
+                (m, out) -> {
+                    writeString(out, m.getKeyId());
+                    writeCertificateInfo(out, m.getCert());
+                    writeString(out, m.getSignMechanismName());
+                },
+                in -> new MemberSigningInfo(readString(in), readCertificateInfo(in), readString(in)));
+        register(GetOcspResponses.class, "GOR",
+                (m, out) -> writeStrings(out, m.getCertHash()),
+                in -> new GetOcspResponses(readStrings(in)));
+        register(GetOcspResponsesResponse.class, "GORR",
+                (m, out) -> writeStrings(out, m.getBase64EncodedResponses()),
+                in -> new GetOcspResponsesResponse(readStrings(in)));
+        register(SetOcspResponses.class, "SOR",
+                (m, out) -> {
+                    writeStrings(out, m.getCertHashes());
+                    writeStrings(out, m.getBase64EncodedResponses());
+                },
+                in -> new SetOcspResponses(readStrings(in), readStrings(in)));
+        register(GetKeyIdForCertHash.class, "GKI",
+                (m, out) -> writeString(out, m.getCertHash()),
+                in -> new GetKeyIdForCertHash(readString(in)));
+        register(GetKeyIdForCertHashResponse.class, "GKIR",
+                (m, out) -> {
+                    writeString(out, m.getKeyId());
+                    writeString(out, m.getSignMechanismName());
+                },
+                in -> new GetKeyIdForCertHashResponse(readString(in), readString(in)));
+        register(GetSignMechanism.class, "GSM",
+                (m, out) -> writeString(out, m.getKeyId()),
+                in -> new GetSignMechanism(readString(in)));
+        register(GetSignMechanismResponse.class, "GSMR",
+                (m, out) -> writeString(out, m.getSignMechanismName()),
+                in -> new GetSignMechanismResponse(readString(in)));
+        register(GetTokenBatchSigningEnabled.class, "GTBS",
+                (m, out) -> writeString(out, m.getKeyId()),
+                in -> new GetTokenBatchSigningEnabled(readString(in)));
+        register(GetCertificateInfoForHash.class, "GCI",
+                (m, out) -> writeString(out, m.getCertHash()),
+                in -> new GetCertificateInfoForHash(readString(in)));
+        register(GetCertificateInfoResponse.class, "GCIR",
+                (m, out) -> writeCertificateInfo(out, m.getCertificateInfo()),
+                in -> new GetCertificateInfoResponse(readCertificateInfo(in)));
+        register(ConnectionPing.class, "PING", (m, out) -> { }, in -> new ConnectionPing());
+        register(ConnectionPong.class, "PONG", (m, out) -> { }, in -> new ConnectionPong());
+        register(SuccessResponse.class, "OK", (m, out) -> { }, in -> new SuccessResponse());
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return codecFor(o).manifest;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] toBinary(Object o) {
+        Codec<Object> codec = (Codec<Object>) codecFor(o);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            codec.writer.write(o, out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize " + o.getClass().getName(), e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        Codec<?> codec = CODECS_BY_MANIFEST.get(manifest);
+
+        if (codec == null) {
+            throw new NotSerializableException("Unknown signer protocol message manifest '" + manifest + "'");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = in.readByte();
+
+            if (version != FORMAT_VERSION) {
+                throw new NotSerializableException("Unsupported signer protocol message format version " + version);
+            }
+
+            return codec.reader.read(in);
+        } catch (NotSerializableException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to deserialize signer protocol message '" + manifest + "'", e);
+        }
+    }
+
+    private static Codec<?> codecFor(Object o) {
+        Codec<?> codec = CODECS_BY_CLASS.get(o.getClass());
+
+        if (codec == null) {
+            throw new IllegalArgumentException("Cannot serialize " + o.getClass().getName());
+        }
+
+        return codec;
+    }
+
+    private static <T> void register(Class<T> clazz, String manifest, Writer<T> writer, Reader<T> reader) {
+        Codec<T> codec = new Codec<>(manifest, writer, reader);
+
+        CODECS_BY_CLASS.put(clazz, codec);
+        CODECS_BY_MANIFEST.put(manifest, codec);
+    }
+
+    // -- Field encoding ------------------------------------------------------
+
+    private static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        in.readFully(value);
+
+        return value;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(UTF_8) : null);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] value = readBytes(in);
+
+        return value != null ? new String(value, UTF_8) : null;
+    }
+
+    private static void writeStrings(DataOutput out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(values.length);
+
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static String[] readStrings(DataInput in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        String[] values = new String[length];
+
+        for (int i = 0; i < length; i++) {
+            values[i] = readString(in);
+        }
+
+        return values;
+    }
+
+    private static void writeClientId(DataOutput out, ClientId clientId) throws IOException {
+        out.writeBoolean(clientId != null);
+
+        if (clientId != null) {
+            writeString(out, clientId.getXRoadInstance());
+            writeString(out, clientId.getMemberClass());
+            writeString(out, clientId.getMemberCode());
+            writeString(out, clientId.getSubsystemCode());
+        }
+    }
+
+    private static ClientId readClientId(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return ClientId.create(readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeCertificateInfo(DataOutput out, CertificateInfo cert) throws IOException {
+        out.writeBoolean(cert != null);
+
+        if (cert != null) {
+            writeClientId(out, cert.getMemberId());
+            out.writeBoolean(cert.isActive());
+            out.writeBoolean(cert.isSavedToConfiguration());
+            writeString(out, cert.getStatus());
+            writeString(out, cert.getId());
+            writeBytes(out, cert.getCertificateBytes());
+            writeBytes(out, cert.getOcspBytes());
+        }
+    }
+
+    private static CertificateInfo readCertificateInfo(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return new CertificateInfo(readClientId(in), in.readBoolean(), in.readBoolean(), readString(in),
+                readString(in), readBytes(in), readBytes(in));
+    }
+
+    // ------------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(T message, DataOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    private static final class Codec<T> {
+        private final String manifest;
+        private final Writer<T> writer;
+        private final Reader<T> reader;
+
+        private Codec(String manifest, Writer<T> writer, Reader<T> reader) {
+            this.manifest = manifest;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorSelection;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Compares {@link SignerProtocolSerializer} to Java serialization for the
+ * {@link Sign} message: the serialized size, the time to serialize and
+ * deserialize the message, and the round trip latency of a sign request over
+ * a local Artery connection.
+ */
+@Slf4j
+public class SignerProtocolSerializerPerformanceTest {
+
+    private static final int WARMUP_ITERATIONS = 100_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static final int ROUND_TRIP_WARMUP = 10_000;
+    private static final int ROUND_TRIPS = 50_000;
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    // a SHA-512 digest and a 2048-bit RSA signature
+    private static final Sign SIGN = new Sign("9C5F3A0C7E1E4F2BA1D3E4F5A6B7C8D9E0F1A2B3", "SHA512withRSA",
+            new byte[64]);
+    private static final SignResponse SIGN_RESPONSE = new SignResponse(new byte[256]);
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        ActorSystem system = ActorSystem.create("SerializerTest", remoteConfig("signer-protocol"));
+
+        try {
+            measureSerialization("signer protocol", new SignerProtocolSerializer());
+            measureSerialization("java", new JavaSerializer((ExtendedActorSystem) system));
+        } finally {
+            system.terminate();
+        }
+
+        measureRoundTrip("signer protocol", "signer-protocol");
+        measureRoundTrip("java", "java");
+    }
+
+    private static void measureSerialization(String name, Serializer serializer) throws Exception {
+        run(serializer, WARMUP_ITERATIONS);
+
+        long start = System.nanoTime();
+        run(serializer, ITERATIONS);
+        long nanos = System.nanoTime() - start;
+
+        log.info("{}: {} + {} bytes, {} ns per serialize/deserialize of the request and response", name,
+                serializer.toBinary(SIGN).length, serializer.toBinary(SIGN_RESPONSE).length, nanos / ITERATIONS);
+    }
+
+    private static void run(Serializer serializer, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            roundTrip(serializer, SIGN);
+            roundTrip(serializer, SIGN_RESPONSE);
+        }
+    }
+
+    private static Object roundTrip(Serializer serializer, Object message) throws Exception {
+        if (serializer instanceof SerializerWithStringManifest) {
+            SerializerWithStringManifest withManifest = (SerializerWithStringManifest) serializer;
+
+            return withManifest.fromBinary(withManifest.toBinary(message), withManifest.manifest(message));
+        }
+
+        return serializer.fromBinary(serializer.toBinary(message), message.getClass());
+    }
+
+    private static void measureRoundTrip(String name, String serializer) throws Exception {
+        ActorSystem signer = ActorSystem.create("Signer", remoteConfig(serializer));
+        ActorSystem client = ActorSystem.create("Client", remoteConfig(serializer));
+
+        try {
+            signer.actorOf(Props.create(SignActor.class), "sign");
+
+            ActorSelection sign = client.actorSelection(
+                    ((ExtendedActorSystem) signer).provider().getDefaultAddress() + "/user/sign");
+
+            roundTrips(sign, ROUND_TRIP_WARMUP);
+
+            long start = System.nanoTime();
+            roundTrips(sign, ROUND_TRIPS);
+            long nanos = System.nanoTime() - start;
+
+            log.info("{}: {} us per sign round trip over Artery", name, nanos / ROUND_TRIPS / 1000);
+        } finally {
+            client.terminate();
+            signer.terminate();
+        }
+    }
+
+    private static void roundTrips(ActorSelection sign, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            Patterns.ask(sign, SIGN, TIMEOUT).toCompletableFuture().get();
+        }
+    }
+
+    private static Config remoteConfig(String serializer) {
+        return ConfigFactory.parseString("akka.actor.provider = remote\n"
+                + "akka.remote.artery.transport = tcp\n"
+                + "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                + "akka.remote.artery.canonical.port = 0\n"
+                + "akka.actor.allow-java-serialization = on\n"
+                + "akka.actor.warn-about-java-serializer-usage = off\n"
+                + "akka.actor.serialization-bindings {\n"
+                + "  \"" + Sign.class.getName() + "\" = " + serializer + "\n"
+                + "  \"" + SignResponse.class.getName() + "\" = " + serializer + "\n"
+                + "}")
+                .withFallback(ConfigFactory.load());
+    }
+
+    /**
+     * Replies to every sign request with the same signature.
+     */
+    public static class SignActor extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Sign.class, s -> getSender().tell(SIGN_RESPONSE, getSelf()))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.ConnectionPing;
+import ee.ria.xroad.signer.protocol.message.GetKeyIdForCertHashResponse;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import org.junit.Test;
+
+import java.io.NotSerializableException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that signer protocol messages survive a round trip through {@link SignerProtocolSerializer}.
+ */
+public class SignerProtocolSerializerTest {
+
+    private static final ClientId SUBSYSTEM = ClientId.create("EE", "GOV", "1234", "sub");
+
+    private final SignerProtocolSerializer serializer = new SignerProtocolSerializer();
+
+    /**
+     * Test that a sign request and response are restored.
+     */
+    @Test
+    public void sign() throws Exception {
+        Sign sign = roundTrip(new Sign("keyId", "SHA256withRSA", new byte[] {1, 2, 3}));
+
+        assertEquals("keyId", sign.getKeyId());
+        assertEquals("SHA256withRSA", sign.getSignatureAlgorithmId());
+        assertArrayEquals(new byte[] {1, 2, 3}, sign.getDigest());
+
+        SignResponse response = roundTrip(new SignResponse(new byte[0]));
+
+        assertArrayEquals(new byte[0], response.getSignature());
+    }
+
+    /**
+     * Test that client ids and certificate infos are restored.
+     */
+    @Test
+    public void memberSigningInfo() throws Exception {
+        assertEquals(SUBSYSTEM, roundTrip(new GetMemberSigningInfo(SUBSYSTEM)).getMemberId());
+        assertNull(roundTrip(new GetMemberSigningInfo(null)).getMemberId());
+
+        CertificateInfo cert = new CertificateInfo(SUBSYSTEM.getMemberId(), true, false,
+                CertificateInfo.STATUS_REGISTERED, "certId", new byte[] {4, 5}, null);
+        MemberSigningInfo info = roundTrip(new MemberSigningInfo("keyId", cert, "CKM_RSA_PKCS"));
+
+        assertEquals("keyId", info.getKeyId());
+        assertEquals("CKM_RSA_PKCS", info.getSignMechanismName());
+        assertEquals(SUBSYSTEM.getMemberId(), info.getCert().getMemberId());
+        assertTrue(info.getCert().isActive());
+        assertEquals(CertificateInfo.STATUS_REGISTERED, info.getCert().getStatus());
+        assertEquals("certId", info.getCert().getId());
+        assertArrayEquals(new byte[] {4, 5}, info.getCert().getCertificateBytes());
+        assertNull(info.getCert().getOcspBytes());
+    }
+
+    /**
+     * Test that string arrays, null values and messages without fields are restored.
+     */
+    @Test
+    public void otherMessages() throws Exception {
+        assertArrayEquals(new String[] {"a", "\u00f5"}, roundTrip(new GetOcspResponses(new String[] {"a", "\u00f5"}))
+                .getCertHash());
+
+        SetOcspResponses setOcspResponses = roundTrip(new SetOcspResponses(new String[] {"a"}, null));
+
+        assertArrayEquals(new String[] {"a"}, setOcspResponses.getCertHashes());
+        assertNull(setOcspResponses.getBase64EncodedResponses());
+
+        GetKeyIdForCertHashResponse keyId = roundTrip(new GetKeyIdForCertHashResponse("keyId", null));
+
+        assertEquals("keyId", keyId.getKeyId());
+        assertNull(keyId.getSignMechanismName());
+        assertEquals(ConnectionPing.class, roundTrip(new ConnectionPing()).getClass());
+    }
+
+    /**
+     * Test that an unknown manifest is rejected.
+     */
+    @Test(expected = NotSerializableException.class)
+    public void unknownManifest() throws Exception {
+        serializer.fromBinary(new byte[] {1}, "unknown");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T message) throws Exception {
+        byte[] bytes = serializer.toBinary(message);
+
+        return (T) serializer.fromBinary(bytes, serializer.manifest(message));
+    }
+}
@@ -41,7 +41,6 @@ import ee.ria.xroad.signer.tokenmanager.merge.MergeOntoFileTokensStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeAddedCertificatesListener;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy.MergeResult;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -56,7 +55,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_WRONG_CERT_USAGE;
 import static ee.ria.xroad.signer.util.ExceptionHelper.certWithHashNotFound;
@@ -74,6 +72,9 @@ public final class TokenManager {
 
     private static volatile List<Token> currentTokens = new ArrayList<>();
 
+    // Indexed copy of currentTokens for lock-free reads, null when it needs to be rebuilt
+    private static volatile TokenSnapshot snapshot;
+
     private static boolean initialized;
 
     // configure the implementation somewhere else if multiple implementations created
@@ -94,7 +95,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+            invalidateSnapshot();
+        }
 
         initialized = true;
     }
@@ -135,6 +139,7 @@ public final class TokenManager {
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
                 currentTokens = result.getResultTokens();
+                invalidateSnapshot();
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -153,11 +158,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return unmodifiableList(
-                currentTokens.stream()
-                        .map(t -> t.toDTO())
-                        .collect(Collectors.toList()));
+    public static List<TokenInfo> listTokens() {
+        return snapshot().getTokens();
     }
 
     /**
@@ -186,6 +188,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        invalidateSnapshot();
 
         return token.toDTO();
     }
@@ -208,13 +211,12 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(t -> t.toDTO())
-                .findFirst().orElse(null);
+        TokenSnapshot.TokenEntry token = snapshot().getToken(tokenId);
+
+        return token != null ? token.getTokenInfo() : null;
     }
 
     /**
@@ -222,82 +224,81 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
-        String tokenId = findTokenIdForKeyId(keyId);
-        return getTokenInfo(tokenId);
+
+        return findKeyEntry(keyId).getTokenInfo();
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        TokenSnapshot.KeyEntry key = findKeyEntry(keyId);
+
+        return new TokenAndKey(key.getTokenInfo().getId(), key.getKeyInfo());
     }
 
     /**
      * @param certHash the certificate hash
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        TokenSnapshot.CertEntry cert = snapshot().getCertForHash(certHash);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        if (cert == null) {
+            throw certWithHashNotFound(certHash);
+        }
+
+        return new TokenInfoAndKeyId(cert.getTokenInfo(), cert.getKeyInfo().getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        TokenSnapshot.CertRequestEntry certRequest = snapshot().getCertRequest(certRequestId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        if (certRequest == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
+
+        return new TokenInfoAndKeyId(certRequest.getTokenInfo(), certRequest.getKeyInfo().getId());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findKeyEntry(keyId).getTokenInfo().getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
-                t -> t.getId()).orElse(null);
+    public static String getSoftwareTokenId() {
+        return snapshot().getSoftwareTokenId();
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        TokenSnapshot.TokenEntry token = snapshot().getToken(tokenId);
+
+        return token != null ? token.getModuleId() : null;
     }
 
     /**
@@ -317,47 +318,25 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        TokenSnapshot.KeyEntry key = snapshot().getKey(keyId);
+
+        return key != null ? key.getKeyInfo() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
-        List<KeyInfo> keyInfo = new ArrayList<>();
+        List<KeyInfo> keyInfo = snapshot().getSigningKeys(clientId);
 
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
-
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
-            }
+        if (log.isDebugEnabled()) {
+            keyInfo.forEach(k -> log.debug("Found key '{}' for client '{}'", k.getId(), clientId));
         }
 
         return keyInfo;
@@ -381,49 +360,48 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
+    public static CertificateInfo getCertificateInfo(
             String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        TokenSnapshot.CertEntry cert = snapshot().getCert(certId);
+
+        return cert != null ? cert.getCertInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
+    public static CertificateInfo getCertificateInfoForCertHash(
             String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        TokenSnapshot.CertEntry cert = snapshot().getCertForHash(certHash);
+
+        return cert != null ? cert.getCertInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
+    public static X509Certificate getCertificateForCertHash(
             String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        TokenSnapshot.CertEntry cert = snapshot().getCertForHash(certHash);
+
+        return cert != null ? cert.getCertificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
-                .flatMap(k -> k.getCerts().stream())
-                .map(c -> c.toDTO())
-                .collect(Collectors.toList());
+        return snapshot().getCerts();
     }
 
     /**
@@ -441,6 +419,8 @@ public final class TokenManager {
                     c.setOcspResponse(response);
                     return null;
                 });
+
+        invalidateSnapshot();
     }
 
     /**
@@ -448,49 +428,51 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId,
-                                                                  ClientId memberId) {
+    public static CertRequestInfo getCertRequestInfo(String keyId,
+                                                     ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
-        Key key = findKey(keyId);
+        KeyInfo key = findKeyEntry(keyId).getKeyInfo();
         return key.getCertRequests().stream()
                 .filter(c -> key.getUsage() == KeyUsageInfo.AUTHENTICATION
                         || memberId.equals(c.getMemberId()))
-                .map(c -> c.toDTO()).findFirst().orElse(null);
+                .findFirst().orElse(null);
     }
 
     /**
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        TokenSnapshot.CertRequestEntry certRequest = snapshot().getCertRequest(certReqId);
+
+        return certRequest != null ? certRequest.getCertRequestInfo() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        TokenSnapshot.CertEntry cert = snapshot().getCertForHash(certHash);
+
+        return cert != null ? cert.getKeyInfo() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        TokenSnapshot.CertEntry cert = snapshot().getCert(certId);
+
+        return cert != null ? cert.getKeyInfo() : null;
     }
 
     /**
@@ -508,20 +490,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenInfo(tokenId).isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenInfo(tokenId).isActive();
     }
 
     /**
@@ -539,6 +521,7 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+        invalidateSnapshot();
     }
 
     /**
@@ -551,6 +534,7 @@ public final class TokenManager {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
         findToken(tokenId).setAvailable(available);
+        invalidateSnapshot();
     }
 
     /**
@@ -564,6 +548,7 @@ public final class TokenManager {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
         findToken(tokenId).setActive(active);
+        invalidateSnapshot();
     }
 
     /**
@@ -577,16 +562,17 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+        invalidateSnapshot();
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenInfo(tokenId).getStatus();
     }
 
     /**
@@ -600,6 +586,7 @@ public final class TokenManager {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
         findToken(tokenId).setStatus(status);
+        invalidateSnapshot();
     }
 
     /**
@@ -613,16 +600,17 @@ public final class TokenManager {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
         findKey(keyId).setAvailable(available);
+        invalidateSnapshot();
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyEntry(keyId).getKeyInfo().isAvailable();
     }
 
     /**
@@ -636,6 +624,7 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+        invalidateSnapshot();
     }
 
     /**
@@ -648,6 +637,7 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+        invalidateSnapshot();
     }
 
     /**
@@ -661,6 +651,7 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+        invalidateSnapshot();
     }
 
     /**
@@ -680,6 +671,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        invalidateSnapshot();
 
         return key.toDTO();
     }
@@ -693,8 +685,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        invalidateSnapshot();
+
+        return removed;
     }
 
     /**
@@ -708,6 +703,7 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+        invalidateSnapshot();
     }
 
     /**
@@ -725,6 +721,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        invalidateSnapshot();
     }
 
     /**
@@ -748,6 +745,7 @@ public final class TokenManager {
         cert.setStatus(certInfo.getStatus());
 
         key.addCert(cert);
+        invalidateSnapshot();
     }
 
     /**
@@ -761,6 +759,7 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+        invalidateSnapshot();
     }
 
     /**
@@ -774,6 +773,7 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+        invalidateSnapshot();
     }
 
     /**
@@ -785,8 +785,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        invalidateSnapshot();
+
+        return removed;
     }
 
     /**
@@ -812,6 +815,7 @@ public final class TokenManager {
         }
 
         key.setUsage(keyUsage);
+        invalidateSnapshot();
 
         for (CertRequest certRequest : key.getCertRequests()) {
             ClientId crMember = certRequest.getMemberId();
@@ -829,6 +833,7 @@ public final class TokenManager {
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        invalidateSnapshot();
 
         log.info("Added new certificate request (memberId: {}, "
                         + "subjectId: {}) under key {}",
@@ -846,7 +851,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (!k.getCertRequests().remove(c)) {
                         return null;
@@ -854,6 +859,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        invalidateSnapshot();
+
+        return keyId;
     }
 
     /**
@@ -864,20 +872,64 @@ public final class TokenManager {
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
         findToken(tokenId).setInfo(info);
+        invalidateSnapshot();
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        TokenSnapshot.TokenEntry token = snapshot().getToken(tokenId);
+
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return token.isBatchSigningEnabled();
     }
 
     // ------------------------------------------------------------------------
 
+    /**
+     * Returns the current snapshot of the tokens, building it if the tokens
+     * have been modified since the last snapshot was taken. Readers use the
+     * snapshot without locking; writers modify the models while holding the
+     * lock and invalidate the snapshot afterwards.
+     */
+    private static TokenSnapshot snapshot() {
+        TokenSnapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (TokenManager.class) {
+                current = snapshot;
+
+                if (current == null) {
+                    current = new TokenSnapshot(currentTokens);
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private static void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    private static TokenSnapshot.KeyEntry findKeyEntry(String keyId) {
+        TokenSnapshot.KeyEntry key = snapshot().getKey(keyId);
+
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return key;
+    }
+
     private static <T> Optional<T> forToken(Function<Token, Boolean> tester, Function<Token, T> mapper) {
         for (Token token : currentTokens) {
             if (tester.apply(token)) {
@@ -0,0 +1,229 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import lombok.Value;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the tokens, their keys and certificates, indexed for the
+ * lookups the signer does on every request. A snapshot is built from the
+ * token models while holding the token manager lock and is never modified
+ * afterwards, so it can be read by any number of threads without locking.
+ */
+final class TokenSnapshot {
+
+    private final List<TokenInfo> tokens = new ArrayList<>();
+
+    private final List<CertificateInfo> certs = new ArrayList<>();
+
+    private final Map<String, TokenEntry> tokensById = new HashMap<>();
+
+    private final Map<String, KeyEntry> keysById = new HashMap<>();
+
+    private final Map<String, CertEntry> certsById = new HashMap<>();
+
+    private final Map<String, CertEntry> certsByHash = new HashMap<>();
+
+    private final Map<String, CertRequestEntry> certRequestsById = new HashMap<>();
+
+    private final Map<ClientId, List<SigningEntry>> signingKeysByMember = new HashMap<>();
+
+    private final String softwareTokenId;
+
+    /**
+     * Creates the snapshot of the given token models. Must be called while
+     * the models cannot be modified.
+     * @param currentTokens the token models
+     */
+    TokenSnapshot(List<Token> currentTokens) {
+        String softTokenId = null;
+        int sequence = 0;
+
+        for (Token token : currentTokens) {
+            TokenInfo tokenInfo = token.toDTO();
+
+            tokens.add(tokenInfo);
+            tokensById.putIfAbsent(token.getId(), new TokenEntry(tokenInfo, token.getModuleId(),
+                    token.isBatchSigningEnabled()));
+
+            if (softTokenId == null && SoftwareModuleType.TYPE.equals(token.getType())) {
+                softTokenId = token.getId();
+            }
+
+            List<Key> keys = token.getKeys();
+
+            for (int i = 0; i < keys.size(); i++) {
+                Key key = keys.get(i);
+                KeyInfo keyInfo = tokenInfo.getKeyInfo().get(i);
+
+                keysById.putIfAbsent(key.getId(), new KeyEntry(tokenInfo, keyInfo));
+
+                boolean signing = !token.isInActive() && key.isValidForSigning();
+
+                for (int j = 0; j < key.getCerts().size(); j++) {
+                    Cert cert = key.getCerts().get(j);
+                    CertEntry entry = new CertEntry(tokenInfo, keyInfo, keyInfo.getCerts().get(j),
+                            cert.getCertificate());
+
+                    certs.add(entry.getCertInfo());
+                    certsById.putIfAbsent(cert.getId(), entry);
+
+                    if (cert.getHash() != null) {
+                        certsByHash.putIfAbsent(cert.getHash(), entry);
+                    }
+
+                    if (signing && !cert.isInvalid()) {
+                        signingKeysByMember.computeIfAbsent(cert.getMemberId(), m -> new ArrayList<>())
+                                .add(new SigningEntry(sequence++, keyInfo));
+                    }
+                }
+
+                for (int j = 0; j < key.getCertRequests().size(); j++) {
+                    CertRequest certRequest = key.getCertRequests().get(j);
+
+                    certRequestsById.putIfAbsent(certRequest.getId(),
+                            new CertRequestEntry(tokenInfo, keyInfo, keyInfo.getCertRequests().get(j)));
+                }
+            }
+        }
+
+        this.softwareTokenId = softTokenId;
+    }
+
+    List<TokenInfo> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    List<CertificateInfo> getCerts() {
+        return Collections.unmodifiableList(certs);
+    }
+
+    String getSoftwareTokenId() {
+        return softwareTokenId;
+    }
+
+    TokenEntry getToken(String tokenId) {
+        return tokensById.get(tokenId);
+    }
+
+    KeyEntry getKey(String keyId) {
+        return keysById.get(keyId);
+    }
+
+    CertEntry getCert(String certId) {
+        return certsById.get(certId);
+    }
+
+    CertEntry getCertForHash(String certHash) {
+        return certsByHash.get(certHash);
+    }
+
+    CertRequestEntry getCertRequest(String certRequestId) {
+        return certRequestsById.get(certRequestId);
+    }
+
+    /**
+     * Returns the signing keys of the client in the order the models list
+     * them. A key is listed once for every valid certificate that belongs to
+     * the client or, for subsystems, to the member owning the subsystem.
+     * @param clientId the client id
+     * @return the list of signing keys for the client
+     */
+    List<KeyInfo> getSigningKeys(ClientId clientId) {
+        List<SigningEntry> own = signingKeysByMember.getOrDefault(clientId, Collections.emptyList());
+        List<SigningEntry> owner = Collections.emptyList();
+
+        if (clientId.getObjectType() == XRoadObjectType.SUBSYSTEM) {
+            owner = signingKeysByMember.getOrDefault(clientId.getMemberId(), Collections.emptyList());
+        }
+
+        List<KeyInfo> result = new ArrayList<>(own.size() + owner.size());
+        int i = 0;
+        int j = 0;
+
+        while (i < own.size() || j < owner.size()) {
+            if (j >= owner.size() || (i < own.size() && own.get(i).getSequence() < owner.get(j).getSequence())) {
+                result.add(own.get(i++).getKeyInfo());
+            } else {
+                result.add(owner.get(j++).getKeyInfo());
+            }
+        }
+
+        return result;
+    }
+
+    @Value
+    static class TokenEntry {
+        private final TokenInfo tokenInfo;
+        private final String moduleId;
+        private final boolean batchSigningEnabled;
+    }
+
+    @Value
+    static class KeyEntry {
+        private final TokenInfo tokenInfo;
+        private final KeyInfo keyInfo;
+    }
+
+    @Value
+    static class CertEntry {
+        private final TokenInfo tokenInfo;
+        private final KeyInfo keyInfo;
+        private final CertificateInfo certInfo;
+        private final X509Certificate certificate;
+    }
+
+    @Value
+    static class CertRequestEntry {
+        private final TokenInfo tokenInfo;
+        private final KeyInfo keyInfo;
+        private final CertRequestInfo certRequestInfo;
+    }
+
+    @Value
+    private static class SigningEntry {
+        private final int sequence;
+        private final KeyInfo keyInfo;
+    }
+}
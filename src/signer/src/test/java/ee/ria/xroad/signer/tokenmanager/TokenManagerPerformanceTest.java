@@ -0,0 +1,197 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.tokenmanager.module.PrivKeyAttributes;
+import ee.ria.xroad.signer.tokenmanager.module.PubKeyAttributes;
+import ee.ria.xroad.signer.tokenmanager.token.TokenType;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of the TokenManager lookups done by the signer for
+ * every request, with a token holding 10000 signing keys and certificates.
+ * One thread keeps updating the key friendly names while the other threads
+ * look up keys by key id, certificate id and client id.
+ */
+@Slf4j
+public class TokenManagerPerformanceTest {
+
+    private static final int NUM_KEYS = 10000;
+
+    private static final int NUM_READERS = 8;
+
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long DURATION_MILLIS = 5000;
+
+    // pause between the writes, the key conf changes rarely compared to the lookups
+    private static final long WRITE_INTERVAL_MILLIS = 10;
+
+    private static final String TOKEN_ID = "perf";
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        createTokens();
+
+        measure(WARMUP_MILLIS);
+
+        LongAdder[] calls = measure(DURATION_MILLIS);
+
+        log.info("{} keys: {} lookups/s with {} threads, {} writes/s", NUM_KEYS,
+                calls[0].sum() * 1000 / DURATION_MILLIS, NUM_READERS, calls[1].sum() * 1000 / DURATION_MILLIS);
+    }
+
+    private static void createTokens() throws Exception {
+        byte[] certBytes = TestCertUtil.getConsumer().certChain[0].getEncoded();
+
+        TokenManager.createToken(new TestTokenType());
+        TokenManager.setTokenActive(TOKEN_ID, true);
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            String keyId = "key" + i;
+
+            TokenManager.addKey(TOKEN_ID, keyId, null);
+            TokenManager.setKeyUsage(keyId, KeyUsageInfo.SIGNING);
+            TokenManager.setKeyAvailable(keyId, true);
+            TokenManager.addCert(keyId, new CertificateInfo(member(i), true, true,
+                    CertificateInfo.STATUS_REGISTERED, "cert" + i, certBytes, null));
+        }
+    }
+
+    private static LongAdder[] measure(long durationMillis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_READERS + 1);
+        LongAdder lookups = new LongAdder();
+        LongAdder writes = new LongAdder();
+        long end = System.currentTimeMillis() + durationMillis;
+
+        for (int i = 0; i < NUM_READERS; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                while (System.currentTimeMillis() < end) {
+                    int n = random.nextInt(NUM_KEYS);
+
+                    TokenManager.findTokenAndKey("key" + n);
+                    TokenManager.getKeyInfoForCertId("cert" + n);
+                    TokenManager.getKeyInfo(member(n));
+                    lookups.add(3);
+                }
+            });
+        }
+
+        executor.execute(() -> {
+            while (System.currentTimeMillis() < end) {
+                int n = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+
+                TokenManager.setKeyFriendlyName("key" + n, "friendly" + System.nanoTime());
+                writes.increment();
+
+                try {
+                    Thread.sleep(WRITE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+
+        executor.shutdown();
+        executor.awaitTermination(durationMillis * 2, TimeUnit.MILLISECONDS);
+
+        return new LongAdder[] {lookups, writes};
+    }
+
+    private static ClientId member(int n) {
+        return ClientId.create("EE", "GOV", "member" + n);
+    }
+
+    private static class TestTokenType implements TokenType {
+
+        @Override
+        public String getModuleType() {
+            return "perf";
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return false;
+        }
+
+        @Override
+        public boolean isBatchSigningEnabled() {
+            return true;
+        }
+
+        @Override
+        public Integer getSlotIndex() {
+            return 0;
+        }
+
+        @Override
+        public String getSerialNumber() {
+            return null;
+        }
+
+        @Override
+        public String getLabel() {
+            return null;
+        }
+
+        @Override
+        public String getId() {
+            return TOKEN_ID;
+        }
+
+        @Override
+        public String getSignMechanismName() {
+            return CryptoUtils.CKM_RSA_PKCS_NAME;
+        }
+
+        @Override
+        public PrivKeyAttributes getPrivKeyAttributes() {
+            return null;
+        }
+
+        @Override
+        public PubKeyAttributes getPubKeyAttributes() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lookups of {@link TokenSnapshot}.
+ */
+public class TokenSnapshotTest {
+
+    private static final ClientId MEMBER = ClientId.create("EE", "GOV", "1234");
+    private static final ClientId SUBSYSTEM = ClientId.create("EE", "GOV", "1234", "sub");
+    private static final ClientId OTHER_MEMBER = ClientId.create("EE", "GOV", "5678");
+
+    private X509Certificate certificate;
+
+    private Token token;
+
+    /**
+     * Creates a software token with signing keys of a member and its subsystem.
+     */
+    @Before
+    public void setUp() {
+        certificate = TestCertUtil.getConsumer().certChain[0];
+
+        token = new Token(SoftwareModuleType.TYPE, "token", CryptoUtils.CKM_RSA_PKCS_NAME);
+        token.setActive(true);
+        token.setAvailable(true);
+
+        addKey("key1", KeyUsageInfo.SIGNING, cert("cert1", MEMBER), cert("cert2", SUBSYSTEM));
+        addKey("key2", KeyUsageInfo.SIGNING, cert("cert3", SUBSYSTEM));
+        addKey("key3", KeyUsageInfo.AUTHENTICATION, cert("cert4", MEMBER));
+        addKey("key4", KeyUsageInfo.SIGNING, cert("cert5", OTHER_MEMBER));
+    }
+
+    /**
+     * Test that keys and certificates are found by their ids.
+     */
+    @Test
+    public void findByIds() {
+        TokenSnapshot snapshot = new TokenSnapshot(Collections.singletonList(token));
+
+        assertEquals("token", snapshot.getSoftwareTokenId());
+        assertEquals("token", snapshot.getKey("key2").getTokenInfo().getId());
+        assertEquals("key2", snapshot.getCert("cert3").getKeyInfo().getId());
+        assertEquals("cert3", snapshot.getCert("cert3").getCertInfo().getId());
+        assertSame(certificate, snapshot.getCert("cert3").getCertificate());
+        assertEquals(5, snapshot.getCerts().size());
+        assertNull(snapshot.getKey("key5"));
+        assertNull(snapshot.getCert("cert6"));
+    }
+
+    /**
+     * Test that the signing keys of a subsystem include the keys of its member
+     * in the order the token lists them.
+     */
+    @Test
+    public void getSigningKeys() {
+        TokenSnapshot snapshot = new TokenSnapshot(Collections.singletonList(token));
+
+        assertEquals(asList("key1"), keyIds(snapshot.getSigningKeys(MEMBER)));
+        assertEquals(asList("key1", "key1", "key2"), keyIds(snapshot.getSigningKeys(SUBSYSTEM)));
+        assertEquals(asList("key4"), keyIds(snapshot.getSigningKeys(OTHER_MEMBER)));
+    }
+
+    /**
+     * Test that keys of inactive tokens and inactive certificates are not used for signing.
+     */
+    @Test
+    public void ignoreInactiveForSigning() {
+        token.getKeys().get(0).getCerts().get(0).setActive(false);
+
+        assertTrue(new TokenSnapshot(Collections.singletonList(token)).getSigningKeys(MEMBER).isEmpty());
+
+        token.setActive(false);
+
+        assertTrue(new TokenSnapshot(Collections.singletonList(token)).getSigningKeys(SUBSYSTEM).isEmpty());
+    }
+
+    private void addKey(String keyId, KeyUsageInfo usage, Cert... certs) {
+        Key key = new Key(token, keyId);
+        key.setAvailable(true);
+        key.setUsage(usage);
+
+        for (Cert cert : certs) {
+            key.addCert(cert);
+        }
+
+        token.addKey(key);
+    }
+
+    private Cert cert(String certId, ClientId memberId) {
+        Cert cert = new Cert(certId);
+        cert.setCertificate(certificate);
+        cert.setMemberId(memberId);
+        cert.setActive(true);
+
+        return cert;
+    }
+
+    private static List<String> keyIds(List<KeyInfo> keys) {
+        return keys.stream().map(KeyInfo::getId).collect(Collectors.toList());
+    }
+}